@@ -0,0 +1,114 @@
+package com.networkanalyzer.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IllegalRawDataException;
+import org.pcap4j.packet.IpPacket;
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.TcpPacket;
+import org.pcap4j.packet.UdpPacket;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.model.Protocol;
+
+// Protocol classification on its own, on the same frames parsed once by pcap4j up front:
+//   toStringMatcher     the old determineProtocol: pretty-print the packet, substring-match
+//   classifierHeaders   ProtocolClassifier fed from pcap4j's parsed headers (the pcap4j path)
+//   classifierRaw       FrameDecoder plus ProtocolClassifier on the frame bytes (the raw path)
+// The parse itself isn't measured here; CaptureBenchmark.processPacket includes it.
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassifierBenchmark {
+    private Packet[] packets;
+    private ByteBuffer[] frames;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final ProtocolClassifier classifier = ProtocolClassifier.withDefaults();
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, IllegalRawDataException {
+        List<byte[]> loaded = Frames.load(65536);
+        List<Packet> parsed = new ArrayList<>(loaded.size());
+        List<ByteBuffer> raw = new ArrayList<>(loaded.size());
+        for (byte[] frame : loaded) {
+            EthernetPacket packet = EthernetPacket.newPacket(frame, 0, frame.length);
+            // Both sides get only the IP packets the capture would have classified
+            if (packet.get(IpPacket.class) != null) {
+                parsed.add(packet);
+                raw.add(ByteBuffer.wrap(frame));
+            }
+        }
+        packets = parsed.toArray(new Packet[0]);
+        frames = raw.toArray(new ByteBuffer[0]);
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == packets.length ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public String toStringMatcher() {
+        return determineProtocol(packets[nextIndex()]);
+    }
+
+    @Benchmark
+    public Protocol classifierHeaders() {
+        Packet packet = packets[nextIndex()];
+        int ipProtocol = packet.get(IpPacket.class).getHeader().getProtocol().value() & 0xFF;
+        TcpPacket tcp = packet.get(TcpPacket.class);
+        if (tcp != null) {
+            return classifyTransport(ipProtocol, tcp.getHeader().getSrcPort().valueAsInt(),
+                tcp.getHeader().getDstPort().valueAsInt(), tcp.getPayload());
+        }
+        UdpPacket udp = packet.get(UdpPacket.class);
+        if (udp != null) {
+            return classifyTransport(ipProtocol, udp.getHeader().getSrcPort().valueAsInt(),
+                udp.getHeader().getDstPort().valueAsInt(), udp.getPayload());
+        }
+        return classifier.classify(ipProtocol, 0, 0, null, 0, 0);
+    }
+
+    @Benchmark
+    public Protocol classifierRaw() {
+        ByteBuffer frame = frames[nextIndex()];
+        return decoder.decode(frame, Frames.LINK_TYPE) ? classifier.classify(decoder, frame) : null;
+    }
+
+    // PacketCaptureService.determineProtocol as it was before the classifier
+    private static String determineProtocol(Packet packet) {
+        String packetString = packet.toString();
+        if (packetString.contains("TCP")) return "TCP";
+        if (packetString.contains("UDP")) return "UDP";
+        if (packetString.contains("HTTP")) return "HTTP";
+        if (packetString.contains("HTTPS")) return "HTTPS";
+        return "OTHER";
+    }
+
+    private Protocol classifyTransport(int ipProtocol, int srcPort, int dstPort, Packet payload) {
+        ByteBuffer payloadBytes = payload != null ? ByteBuffer.wrap(payload.getRawData()) : null;
+        int length = payloadBytes != null ? payloadBytes.remaining() : 0;
+        return classifier.classify(ipProtocol, srcPort, dstPort, payloadBytes, 0, length);
+    }
+}
@@ -0,0 +1,169 @@
+package com.networkanalyzer.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+// Ethernet frames for the benchmarks: recorded ones from a classic pcap file when
+// -Dbench.pcap=<file> is given, otherwise a synthetic mix shaped like desktop traffic
+// (mostly HTTPS and QUIC, some DNS and plain HTTP, a little ICMP, one in eight over IPv6)
+// with addresses drawn from a few hundred hosts. Synthetic frames are deterministic per seed.
+public final class Frames {
+    public static final int LINK_TYPE = FrameDecoder.LINKTYPE_ETHERNET;
+
+    private Frames() {
+    }
+
+    public static List<byte[]> load(int count) throws IOException {
+        String pcap = System.getProperty("bench.pcap");
+        return pcap != null ? recorded(Paths.get(pcap), count) : synthetic(count, 42);
+    }
+
+    public static List<byte[]> synthetic(int count, long seed) {
+        Random random = new Random(seed);
+        List<byte[]> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.add(syntheticFrame(random));
+        }
+        return frames;
+    }
+
+    // The same traffic as decoded rows, for the stages after the decoder
+    public static List<PacketData> packets(List<byte[]> frames) {
+        FrameDecoder decoder = new FrameDecoder();
+        List<PacketData> packets = new ArrayList<>(frames.size());
+        long timestamp = System.currentTimeMillis() * 1_000_000L;
+        for (byte[] frame : frames) {
+            timestamp += 20_000;
+            if (decoder.decode(ByteBuffer.wrap(frame), LINK_TYPE)) {
+                packets.add(decoder.toPacketData(timestamp, protocolFor(decoder), frame.length));
+            }
+        }
+        return packets;
+    }
+
+    private static Protocol protocolFor(FrameDecoder decoder) {
+        int port = Math.min(decoder.getSrcPort(), decoder.getDstPort());
+        return switch (decoder.getIpProtocol()) {
+            case 6 -> port == 443 ? Protocol.HTTPS : port == 80 ? Protocol.HTTP : Protocol.TCP;
+            case 17 -> port == 53 ? Protocol.DNS : port == 443 ? Protocol.QUIC : Protocol.UDP;
+            case 1, 58 -> Protocol.ICMP;
+            default -> Protocol.OTHER;
+        };
+    }
+
+    private static byte[] syntheticFrame(Random random) {
+        int kind = random.nextInt(100);
+        boolean v6 = random.nextInt(8) == 0;
+        int client = random.nextInt(256);
+        int server = random.nextInt(64);
+        int clientPort = 32768 + random.nextInt(28000);
+        if (kind < 45) {
+            byte[] payload = new byte[random.nextInt(1400)];
+            if (payload.length >= 5) {
+                // TLS application data record
+                payload[0] = 0x17;
+                payload[1] = 0x03;
+                payload[2] = 0x03;
+            }
+            return tcp(v6, client, server, clientPort, 443, payload);
+        }
+        if (kind < 55) {
+            byte[] request = ("GET /index.html HTTP/1.1\r\nHost: example.com\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            return tcp(v6, client, server, clientPort, 80, request);
+        }
+        if (kind < 65) {
+            return tcp(v6, client, server, clientPort, 8000 + random.nextInt(1000), new byte[random.nextInt(600)]);
+        }
+        if (kind < 80) {
+            byte[] payload = new byte[1200];
+            // QUIC long header, version 1
+            payload[0] = (byte) 0xC3;
+            payload[4] = 1;
+            return udp(v6, client, server, clientPort, 443, payload);
+        }
+        if (kind < 95) {
+            return udp(v6, client, server, clientPort, 53, new byte[30 + random.nextInt(60)]);
+        }
+        return icmp(client, server);
+    }
+
+    private static byte[] tcp(boolean v6, int client, int server, int srcPort, int dstPort, byte[] payload) {
+        ByteBuffer transport = ByteBuffer.allocate(20 + payload.length);
+        transport.putShort((short) srcPort).putShort((short) dstPort).putInt(1).putInt(1)
+            .put((byte) 0x50).put((byte) 0x18).putShort((short) 65535).putInt(0).put(payload);
+        return ip(v6, 6, client, server, transport.array());
+    }
+
+    private static byte[] udp(boolean v6, int client, int server, int srcPort, int dstPort, byte[] payload) {
+        ByteBuffer transport = ByteBuffer.allocate(8 + payload.length);
+        transport.putShort((short) srcPort).putShort((short) dstPort).putShort((short) (8 + payload.length))
+            .putShort((short) 0).put(payload);
+        return ip(v6, 17, client, server, transport.array());
+    }
+
+    private static byte[] icmp(int client, int server) {
+        ByteBuffer transport = ByteBuffer.allocate(64);
+        transport.put((byte) 8).put((byte) 0);
+        return ip(false, 1, client, server, transport.array());
+    }
+
+    private static byte[] ip(boolean v6, int ipProtocol, int client, int server, byte[] transport) {
+        int headerLength = v6 ? 40 : 20;
+        ByteBuffer frame = ByteBuffer.allocate(14 + headerLength + transport.length);
+        frame.put(new byte[] { 0, 0x1B, 0x21, 1, 2, 3, 0, 0x1B, 0x21, 4, 5, 6 });
+        if (v6) {
+            frame.putShort((short) 0x86DD)
+                .putInt(0x60000000).putShort((short) transport.length).put((byte) ipProtocol).put((byte) 64)
+                .putLong(0xFD00000000000000L).putLong(client)
+                .putLong(0x2001_0DB8_0000_0000L).putLong(server);
+        } else {
+            frame.putShort((short) 0x0800)
+                .put((byte) 0x45).put((byte) 0).putShort((short) (headerLength + transport.length))
+                .putInt(0).put((byte) 64).put((byte) ipProtocol).putShort((short) 0)
+                .putInt(0xC0A80000 | client).putInt(0x5DB8D800 | server);
+        }
+        return frame.put(transport).array();
+    }
+
+    // Frames of a classic pcap file (either byte order, micro- or nanosecond), up to max
+    public static List<byte[]> recorded(Path file, int max) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        int magic = buffer.getInt(0);
+        if (magic == 0xD4C3B2A1 || magic == 0x4D3CB2A1) {
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (magic != 0xA1B2C3D4 && magic != 0xA1B23C4D) {
+            throw new IOException("Not a classic pcap file (pcapng isn't supported here): " + file);
+        }
+        if (buffer.getInt(20) != LINK_TYPE) {
+            throw new IOException("Only Ethernet captures are supported: " + file);
+        }
+        List<byte[]> frames = new ArrayList<>();
+        int position = 24;
+        while (position + 16 <= buffer.limit() && frames.size() < max) {
+            int captured = buffer.getInt(position + 8);
+            if (captured < 0 || position + 16 + captured > buffer.limit()) {
+                break;
+            }
+            byte[] frame = new byte[captured];
+            buffer.get(position + 16, frame);
+            frames.add(frame);
+            position += 16 + captured;
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("No frames in " + file);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,103 @@
+package com.networkanalyzer.bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.stats.CaptureSummaries;
+import com.networkanalyzer.stats.TopTalkers;
+import com.networkanalyzer.stats.TrafficSnapshot;
+import com.networkanalyzer.stats.TrafficStatistics;
+
+// The statistics every packet updates, and the reads the controller's once-a-second refresh
+// makes. The collectors are shared by all benchmark threads like they are by the capture
+// threads, so run with -t 4 (or more) to see them under contention.
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final TrafficStatistics statistics = new TrafficStatistics();
+        final TopTalkers topTalkers = new TopTalkers();
+        final CaptureSummaries summaries = new CaptureSummaries();
+        final AtomicInteger sources = new AtomicInteger();
+        PacketData[] packets;
+
+        @Setup
+        public void setUp() throws IOException {
+            packets = Frames.packets(Frames.load(65536)).toArray(new PacketData[0]);
+            for (PacketData packet : packets) {
+                statistics.record(packet.getProtocolType(), packet.getSize());
+                topTalkers.record(packet.getIpVersion(), packet.getSrcHi(), packet.getSrcLo(), packet.getDstHi(),
+                    packet.getDstLo(), 6, 443, 0, packet.getSize());
+            }
+        }
+    }
+
+    // Each thread is one capture source, as summaries are recorded per source
+    @State(Scope.Thread)
+    public static class Source {
+        CaptureSummaries.Recorder recorder;
+        int next;
+
+        @Setup
+        public void setUp(Shared shared) {
+            recorder = shared.summaries.forSource("bench-" + shared.sources.incrementAndGet());
+            next = shared.sources.get() * 7919;
+        }
+
+        PacketData nextPacket(PacketData[] packets) {
+            next = next + 1 >= packets.length ? 0 : next + 1;
+            return packets[next];
+        }
+    }
+
+    @Benchmark
+    public void statisticsRecord(Shared shared, Source source) {
+        PacketData packet = source.nextPacket(shared.packets);
+        shared.statistics.record(packet.getProtocolType(), packet.getSize());
+    }
+
+    @Benchmark
+    public void topTalkersRecord(Shared shared, Source source) {
+        PacketData packet = source.nextPacket(shared.packets);
+        shared.topTalkers.record(packet.getIpVersion(), packet.getSrcHi(), packet.getSrcLo(), packet.getDstHi(),
+            packet.getDstLo(), 6, 443, 0, packet.getSize());
+    }
+
+    @Benchmark
+    public void summaryRecord(Shared shared, Source source) {
+        PacketData packet = source.nextPacket(shared.packets);
+        source.recorder.record(packet.getTimestampNanos(), packet.getSize(), packet.getIpVersion(), packet.getSrcHi(),
+            packet.getSrcLo(), packet.getDstHi(), packet.getDstLo(), FrameDecoder.flowHash(packet.getSrcHi(),
+                packet.getSrcLo(), 0, packet.getDstHi(), packet.getDstLo(), 0, 0));
+    }
+
+    // What the controller reads each second
+    @Benchmark
+    public TrafficSnapshot snapshot(Shared shared) {
+        return shared.statistics.snapshot();
+    }
+
+    @Benchmark
+    public List<TopTalkers.Talker> topTalkers(Shared shared) {
+        return shared.topTalkers.top(TopTalkers.Dimension.SOURCE, TopTalkers.Metric.BYTES, 10, 15);
+    }
+}
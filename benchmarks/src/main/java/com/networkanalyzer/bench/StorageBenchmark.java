@@ -0,0 +1,128 @@
+package com.networkanalyzer.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.service.DatabaseService;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.storage.SegmentStore;
+
+// One PacketWriter batch into each storage backend; scores are per packet.
+//   h2        DatabaseService's insert path (traffic_data rows plus both rollups in one
+//             transaction) against in-memory H2 in MySQL mode, with the same tables minus the
+//             partitioning. Measures the JDBC and batching work, not MySQL's.
+//   mysql     the real thing: a local netlyzer database, as configured in DatabaseService
+//   segments  SegmentStore in a temporary directory
+// Select with -p storage=mysql; the default runs h2 and segments.
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageBenchmark {
+    static final int BATCH = 1000;
+
+    @Param({ "h2", "segments" })
+    public String storage;
+
+    private PacketStorage store;
+    private Path directory;
+    private List<List<PacketData>> batches;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        List<PacketData> packets = Frames.packets(Frames.load(64 * BATCH));
+        batches = new ArrayList<>();
+        for (int i = 0; i + BATCH <= packets.size(); i += BATCH) {
+            batches.add(new ArrayList<>(packets.subList(i, i + BATCH)));
+        }
+        switch (storage) {
+            case "h2" -> store = new DatabaseService(h2(), false);
+            case "mysql" -> store = new DatabaseService();
+            case "segments" -> {
+                directory = Files.createTempDirectory("netlyzer-bench");
+                store = new SegmentStore(directory, 64L << 20, TimeUnit.HOURS.toNanos(1), 512L << 20, 0,
+                    TimeUnit.SECONDS.toNanos(1));
+            }
+            default -> throw new IllegalArgumentException("Unknown storage " + storage);
+        }
+    }
+
+    private static JdbcDataSource h2() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:netlyzer-bench;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP ALL OBJECTS");
+            stmt.execute("""
+                CREATE TABLE traffic_data (
+                    id BIGINT NOT NULL AUTO_INCREMENT,
+                    timestamp DATETIME(6) NOT NULL,
+                    source_ip VARBINARY(16),
+                    destination_ip VARBINARY(16),
+                    protocol TINYINT NOT NULL,
+                    size INT NOT NULL,
+                    PRIMARY KEY (id, timestamp))""");
+            stmt.execute("CREATE INDEX idx_time ON traffic_data (timestamp)");
+            stmt.execute("CREATE INDEX idx_protocol_time ON traffic_data (protocol, timestamp)");
+            stmt.execute("CREATE INDEX idx_source_time ON traffic_data (source_ip, timestamp)");
+            stmt.execute("CREATE INDEX idx_destination_time ON traffic_data (destination_ip, timestamp)");
+            for (String table : new String[] { "traffic_rollup_minute", "traffic_rollup_hour" }) {
+                stmt.execute("""
+                    CREATE TABLE %s (
+                        bucket DATETIME NOT NULL,
+                        protocol TINYINT NOT NULL,
+                        source_ip VARBINARY(16) NOT NULL,
+                        destination_ip VARBINARY(16) NOT NULL,
+                        packets BIGINT NOT NULL,
+                        bytes BIGINT NOT NULL,
+                        PRIMARY KEY (bucket, protocol, source_ip, destination_ip))""".formatted(table));
+            }
+        }
+        return dataSource;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        if (directory != null) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean savePackets() {
+        List<PacketData> batch = batches.get(next);
+        next = next + 1 == batches.size() ? 0 : next + 1;
+        return store.savePackets(batch);
+    }
+}
@@ -0,0 +1,86 @@
+package com.networkanalyzer.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.pcap4j.packet.EthernetPacket;
+import org.pcap4j.packet.IllegalRawDataException;
+
+import com.networkanalyzer.bench.Frames;
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.flow.FlowTable;
+import com.networkanalyzer.model.PacketData;
+
+// One packet through a capture thread, everything but the kernel: the raw-frame path
+// (processFrame: decode, classify, statistics, top talkers, flow table) and the pcap4j path
+// (parse, processPacket with determineProtocol, String-based PacketData). Nothing is
+// persisted; the consumer only keeps the last packet. Lives in the service package for the
+// package-private entry points.
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CaptureBenchmark {
+    private PacketCaptureService service;
+    private ByteBuffer[] frames;
+    private byte[][] raw;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private FlowTable flows;
+    private PacketData last;
+    private int next;
+    private long timestamp;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<byte[]> loaded = Frames.load(65536);
+        raw = loaded.toArray(new byte[0][]);
+        frames = new ByteBuffer[raw.length];
+        for (int i = 0; i < raw.length; i++) {
+            frames[i] = ByteBuffer.wrap(raw[i]);
+        }
+        service = new PacketCaptureService(packet -> last = packet);
+        flows = new FlowTable(131072, TimeUnit.SECONDS.toNanos(30), TimeUnit.SECONDS.toNanos(120));
+        timestamp = System.currentTimeMillis() * 1_000_000L;
+    }
+
+    private int nextIndex() {
+        int i = next;
+        next = i + 1 == raw.length ? 0 : i + 1;
+        timestamp += 20_000;
+        return i;
+    }
+
+    @Benchmark
+    public boolean processFrame() {
+        int i = nextIndex();
+        return service.processFrame(frames[i], Frames.LINK_TYPE, decoder, null, timestamp, raw[i].length);
+    }
+
+    @Benchmark
+    public boolean processFrameWithFlows() {
+        int i = nextIndex();
+        return service.processFrame(frames[i], Frames.LINK_TYPE, decoder, flows, timestamp, raw[i].length);
+    }
+
+    // Includes pcap4j's parse, which the live pcap4j path pays in getNextPacket
+    @Benchmark
+    public boolean processPacket() throws IllegalRawDataException {
+        int i = nextIndex();
+        EthernetPacket packet = EthernetPacket.newPacket(raw[i], 0, raw[i].length);
+        return service.processPacket(packet, timestamp, raw[i].length, null);
+    }
+}
@@ -0,0 +1,249 @@
+package com.networkanalyzer.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.pcap4j.core.BpfProgram;
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.core.Pcaps;
+
+import com.networkanalyzer.bench.Frames;
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.stats.CaptureSummaries;
+import com.networkanalyzer.stats.TrafficStatistics;
+
+// The capture loop before and after the pcap_dispatch engine, on the raw-frame path:
+//   polling   what startCapture ran before: getNextRawPacket per packet on a handle opened
+//             like openLive(65536, PROMISCUOUS, 1000), every exception swallowed
+//   dispatch  CaptureLoop on a PcapSource, batches of -Dnetlyzer.capture.dispatchBatch, on a
+//             handle opened with the capture profile (-Dnetlyzer.capture.*)
+//
+// Peak: both read the same offline pcap file (Frames, written to a temporary file, or
+// -Dbench.pcap) as fast as they can and report delivered packets per second.
+// Idle: both sit on a live interface (-Dbench.interface, default lo) with a filter nothing
+// matches for -Dbench.idleSeconds, and report the CPU time their capture thread used.
+// Needs capture permission for the idle half; without it only the peak half runs.
+//
+// Not JMH, as idle CPU isn't a throughput score. From the benchmarks directory:
+//   java -cp target/benchmarks.jar com.networkanalyzer.service.CaptureEngineBenchmark
+public final class CaptureEngineBenchmark {
+    private static final String NOTHING_MATCHES = "ether proto 0x88b5";
+
+    private CaptureEngineBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int frames = Integer.getInteger("bench.frames", 1_000_000);
+        int rounds = Integer.getInteger("bench.rounds", 3);
+        String pcap = System.getProperty("bench.pcap");
+        Path file = pcap != null ? Path.of(pcap) : writePcap(Frames.load(65536), frames);
+        try {
+            System.out.printf("Peak, %s, best of %d:%n", file, rounds);
+            double polling = 0;
+            double dispatch = 0;
+            for (int i = 0; i < rounds; i++) {
+                polling = Math.max(polling, peakPolling(file));
+                dispatch = Math.max(dispatch, peakDispatch(file));
+            }
+            System.out.printf("  polling   %,12.0f pps%n  dispatch  %,12.0f pps (%.2fx)%n", polling, dispatch, dispatch / polling);
+        } finally {
+            if (pcap == null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        String name = System.getProperty("bench.interface", "lo");
+        long idleNanos = TimeUnit.SECONDS.toNanos(Long.getLong("bench.idleSeconds", 5));
+        PcapNetworkInterface nif;
+        try {
+            nif = Pcaps.getDevByName(name);
+        } catch (PcapNativeException e) {
+            nif = null;
+        }
+        if (nif == null) {
+            System.out.println("Idle: no interface " + name + ", skipped");
+            return;
+        }
+        System.out.printf("Idle, %s for %d s, capture thread CPU:%n", name, TimeUnit.NANOSECONDS.toSeconds(idleNanos));
+        try {
+            long pollingCpu = idlePolling(nif, idleNanos);
+            long dispatchCpu = idleDispatch(nif, idleNanos);
+            System.out.printf("  polling   %,8.1f ms (%.2f%% of a core)%n  dispatch  %,8.1f ms (%.2f%% of a core)%n",
+                pollingCpu / 1e6, pollingCpu * 100.0 / idleNanos, dispatchCpu / 1e6, dispatchCpu * 100.0 / idleNanos);
+        } catch (PcapNativeException e) {
+            System.out.println("Idle: can't capture on " + name + " (" + e.getMessage() + "), skipped");
+        }
+    }
+
+    private static PacketCaptureService newService() {
+        PacketCaptureService service = new PacketCaptureService(packet -> { });
+        service.setRawDecoding(true);
+        return service;
+    }
+
+    private static double peakPolling(Path file) throws Exception {
+        long expected = countFrames(file);
+        PcapHandle handle = Pcaps.openOffline(file.toString(), PcapHandle.TimestampPrecision.NANO);
+        PollingLoop loop = new PollingLoop(newService(), handle, expected);
+        Thread thread = new Thread(loop, "capture-polling");
+        long started = System.nanoTime();
+        thread.start();
+        thread.join();
+        long elapsed = System.nanoTime() - started;
+        handle.close();
+        return loop.frames * 1e9 / elapsed;
+    }
+
+    private static double peakDispatch(Path file) throws Exception {
+        long expected = countFrames(file);
+        PcapHandle handle = Pcaps.openOffline(file.toString(), PcapHandle.TimestampPrecision.NANO);
+        CaptureLoop loop = newLoop(new PcapSource("offline", handle));
+        long started = System.nanoTime();
+        loop.start();
+        // At the end of a file dispatch returns 0 like a read timeout, so watch the counters
+        long frames;
+        while ((frames = framesOf(loop)) < expected) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - started;
+        loop.stop(1000);
+        loop.close();
+        return frames * 1e9 / elapsed;
+    }
+
+    private static long idlePolling(PcapNetworkInterface nif, long idleNanos) throws Exception {
+        PcapHandle handle = nif.openLive(65536, PcapNetworkInterface.PromiscuousMode.PROMISCUOUS, 1000);
+        handle.setFilter(NOTHING_MATCHES, BpfProgram.BpfCompileMode.OPTIMIZE);
+        PollingLoop loop = new PollingLoop(newService(), handle, Long.MAX_VALUE);
+        Thread thread = new Thread(loop, "capture-polling");
+        thread.start();
+        long cpu = cpuOver(thread, idleNanos);
+        loop.running = false;
+        handle.close();
+        thread.join(2000);
+        return cpu;
+    }
+
+    private static long idleDispatch(PcapNetworkInterface nif, long idleNanos) throws Exception {
+        PcapHandle handle = CaptureProfile.fromSystemProperties().open(nif);
+        handle.setFilter(NOTHING_MATCHES, BpfProgram.BpfCompileMode.OPTIMIZE);
+        CaptureLoop loop = newLoop(new PcapSource(nif.getName(), handle));
+        loop.start();
+        Thread thread = null;
+        for (Thread candidate : Thread.getAllStackTraces().keySet()) {
+            if (candidate.getName().equals("capture-" + nif.getName())) {
+                thread = candidate;
+            }
+        }
+        long cpu = cpuOver(thread, idleNanos);
+        loop.stop(2000);
+        loop.close();
+        return cpu;
+    }
+
+    private static CaptureLoop newLoop(FrameSource source) {
+        return new CaptureLoop(newService(), source, Integer.getInteger("netlyzer.capture.dispatchBatch", 256), null,
+            new TrafficStatistics().forInterface(source.name()), new CaptureSummaries().forSource(source.name()));
+    }
+
+    private static long framesOf(CaptureLoop loop) {
+        CaptureStats stats = loop.stats();
+        return stats == null ? 0 : stats.delivered() + stats.skipped() + stats.errors();
+    }
+
+    // CPU time the thread used over the next interval, after a second to settle
+    private static long cpuOver(Thread thread, long intervalNanos) throws InterruptedException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Thread.sleep(1000);
+        long before = threads.getThreadCpuTime(thread.getId());
+        TimeUnit.NANOSECONDS.sleep(intervalNanos);
+        return threads.getThreadCpuTime(thread.getId()) - before;
+    }
+
+    // The loop as it was, minus the pcap4j parse: a packet per call, timeouts and errors ignored.
+    // Stops after `expected` frames, as it has no way to tell the end of a file from a timeout.
+    private static final class PollingLoop implements Runnable {
+        private final PacketCaptureService service;
+        private final PcapHandle handle;
+        private final long expected;
+        private final int linkType;
+        private final FrameDecoder decoder = new FrameDecoder();
+        volatile boolean running = true;
+        volatile long frames;
+
+        PollingLoop(PacketCaptureService service, PcapHandle handle, long expected) {
+            this.service = service;
+            this.handle = handle;
+            this.expected = expected;
+            this.linkType = handle.getDlt().value();
+        }
+
+        @Override
+        public void run() {
+            long count = 0;
+            while (running && handle.isOpen() && count < expected) {
+                try {
+                    byte[] frame = handle.getNextRawPacket();
+                    if (frame != null) {
+                        service.processFrame(ByteBuffer.wrap(frame), linkType, decoder, null,
+                            PacketCaptureService.captureTimestamp(handle), PacketCaptureService.wireLength(handle, frame.length));
+                        count++;
+                    }
+                } catch (NotOpenException e) {
+                    break;
+                } catch (Exception e) {
+                    // Swallowed, like the original
+                }
+            }
+            frames = count;
+        }
+    }
+
+    private static long countFrames(Path file) throws PcapNativeException, NotOpenException {
+        PcapHandle handle = Pcaps.openOffline(file.toString());
+        long count = 0;
+        try {
+            while (handle.getNextRawPacket() != null) {
+                count++;
+            }
+        } finally {
+            handle.close();
+        }
+        return count;
+    }
+
+    // A classic little-endian pcap with nanosecond timestamps, the frames repeated up to count
+    private static Path writePcap(List<byte[]> frames, int count) throws IOException {
+        Path file = Files.createTempFile("netlyzer-engine", ".pcap");
+        ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(0xa1b23c4d).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535)
+            .putInt(Frames.LINK_TYPE);
+        long timestamp = System.currentTimeMillis() * 1_000_000L;
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 20)) {
+            out.write(header.array());
+            ByteBuffer record = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < count; i++) {
+                byte[] frame = frames.get(i % frames.size());
+                timestamp += 20_000;
+                record.clear();
+                record.putInt((int) (timestamp / 1_000_000_000L)).putInt((int) (timestamp % 1_000_000_000L))
+                    .putInt(frame.length).putInt(frame.length);
+                out.write(record.array());
+                out.write(frame);
+            }
+        }
+        return file;
+    }
+}
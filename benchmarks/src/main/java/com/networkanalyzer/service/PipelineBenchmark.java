@@ -0,0 +1,115 @@
+package com.networkanalyzer.service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.networkanalyzer.bench.Frames;
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.pipeline.ShardedPipeline;
+import com.networkanalyzer.storage.SegmentStore;
+
+// Capture to storage: frames are submitted the way a capture thread does, decoded and
+// classified by the shard workers, written behind by the PacketWriter and stored in a
+// SegmentStore. An operation is one burst of frames, timed until the last one is stored;
+// scores are per packet. Frames dropped on a full queue are reported as drops, not hidden.
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineBenchmark {
+    static final int BURST = 8192;
+
+    @Param({ "1", "4" })
+    public int shards;
+
+    private Path directory;
+    private SegmentStore store;
+    private PacketWriter writer;
+    private ShardedPipeline pipeline;
+    private byte[][] frames;
+    private final FrameDecoder decoder = new FrameDecoder();
+    private long expected;
+    private int next;
+    private long timestamp;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Drops {
+        public long dropped;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        List<byte[]> loaded = Frames.load(65536);
+        frames = loaded.toArray(new byte[0][]);
+        directory = Files.createTempDirectory("netlyzer-bench");
+        store = new SegmentStore(directory, 64L << 20, TimeUnit.HOURS.toNanos(1), 512L << 20, 0, TimeUnit.SECONDS.toNanos(1));
+        // A short flush interval, so the tail of a burst isn't left waiting for a full batch
+        writer = new PacketWriter(store, 1 << 20, PacketWriter.DEFAULT_BATCH_SIZE, 1);
+        PacketCaptureService service = new PacketCaptureService(packet -> { }, writer);
+        pipeline = new ShardedPipeline(shards, 65536, service::processFrame, () -> null);
+        writer.start();
+        pipeline.start();
+        timestamp = System.currentTimeMillis() * 1_000_000L;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        pipeline.stop();
+        writer.stop();
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void captureToStorage(Drops drops) {
+        long droppedBefore = droppedSoFar();
+        for (int i = 0; i < BURST; i++) {
+            byte[] frame = frames[next];
+            next = next + 1 == frames.length ? 0 : next + 1;
+            timestamp += 20_000;
+            if (pipeline.submit(frame, Frames.LINK_TYPE, timestamp, frame.length, decoder)) {
+                expected++;
+            }
+        }
+        while (writer.getWrittenCount() + droppedSoFar() < expected) {
+            LockSupport.parkNanos(10_000);
+        }
+        drops.dropped += droppedSoFar() - droppedBefore;
+    }
+
+    private long droppedSoFar() {
+        long dropped = writer.getDroppedCount() + writer.getFailedCount();
+        for (var stats : pipeline.getStats()) {
+            dropped += stats.dropped();
+        }
+        return dropped;
+    }
+}
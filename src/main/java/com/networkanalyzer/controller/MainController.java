@@ -1,23 +1,70 @@
 package com.networkanalyzer.controller;
 
+import com.networkanalyzer.loadgen.LoadHarness;
+import com.networkanalyzer.metrics.Histogram;
+import com.networkanalyzer.metrics.MetricsRegistry;
+import com.networkanalyzer.metrics.PrometheusServer;
 import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.PacketStore;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.pipeline.StageStats;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.query.QueryEngine;
+import com.networkanalyzer.service.CaptureStats;
 import com.networkanalyzer.service.DatabaseService;
+import com.networkanalyzer.service.FlowWriter;
+import com.networkanalyzer.service.PacketCursor;
 import com.networkanalyzer.service.PacketCaptureService;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PacketWriter;
+import com.networkanalyzer.service.PageKey;
+import com.networkanalyzer.service.SummaryWriter;
+import com.networkanalyzer.stats.SummaryBucket;
+import com.networkanalyzer.stats.TopTalkers;
+import com.networkanalyzer.stats.TrafficSnapshot;
+import com.networkanalyzer.storage.ArchivedStorage;
+import com.networkanalyzer.storage.ColumnArchive;
+import com.networkanalyzer.storage.SegmentStore;
+import com.networkanalyzer.util.MpscRingBuffer;
 import javafx.animation.*;
 import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.scene.chart.PieChart;
+import javafx.scene.control.skin.VirtualFlow;
 import javafx.scene.effect.DropShadow;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
 import javafx.scene.paint.Color;
+import javafx.stage.FileChooser;
 import javafx.util.Duration;
+import javafx.util.StringConverter;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class MainController {
+    private static final Logger log = LoggerFactory.getLogger(MainController.class);
+
     // Existing FXML components
     @FXML private TableView<PacketData> packetTable;
     @FXML private TableColumn<PacketData, String> timestampColumn;
@@ -27,7 +74,10 @@ public class MainController {
     @FXML private TableColumn<PacketData, Integer> sizeColumn;
     @FXML private ComboBox<String> protocolFilter;
     @FXML private TextField ipFilter;
+    @FXML private TextField capturePortField;
+    @FXML private CheckBox captureFilterToggle;
     @FXML private Button captureButton;
+    @FXML private Button openFileButton;
     
     // New chart components
     @FXML private PieChart protocolChart;
@@ -36,21 +86,97 @@ public class MainController {
     @FXML private Label udpPacketsLabel;
     @FXML private Label otherPacketsLabel;
     @FXML private Label captureRateLabel;
+    @FXML private Label captureStatsLabel;
+    @FXML private Label summaryLabel;
+
+    // Heavy hitters panel (-Dnetlyzer.ui.topTalkers rows)
+    private static final int TOP_TALKERS = Integer.getInteger("netlyzer.ui.topTalkers", 15);
+    @FXML private ComboBox<TopTalkers.Dimension> talkerDimension;
+    @FXML private ComboBox<TopTalkers.Metric> talkerMetric;
+    @FXML private ComboBox<Integer> talkerWindow;
+    @FXML private TableView<TopTalkers.Talker> topTalkersTable;
+    @FXML private TableColumn<TopTalkers.Talker, String> talkerKeyColumn;
+    @FXML private TableColumn<TopTalkers.Talker, String> talkerValueColumn;
     
     // Existing fields
     private PacketCaptureService captureService;
+    // MySQL, or the segment files with -Dnetlyzer.storage=segments; flows and summaries are
+    // only persisted to MySQL
+    private PacketStorage packetStorage;
+    // Set when packetStorage is MySQL, whose schema migration runs in the background at startup
     private DatabaseService databaseService;
-    private ObservableList<PacketData> packets;
+    private PacketWriter packetWriter;
+    private FlowWriter flowWriter;
+    private SummaryWriter summaryWriter;
+    // Generated or replayed traffic instead of the interfaces (-Dnetlyzer.loadgen), null for live capture
+    private LoadHarness loadHarness;
+    // Window of the summary row (-Dnetlyzer.ui.summaryMinutes)
+    private static final int SUMMARY_MINUTES = Integer.getInteger("netlyzer.ui.summaryMinutes", 5);
+    // Live view: bounded, oldest rows are evicted (-Dnetlyzer.ui.tableRows)
+    private RingBufferObservableList<PacketData> packets;
+    // Compact copy of the whole capture (-Dnetlyzer.store.maxPackets, -Dnetlyzer.store.offHeap)
+    private final PacketStore packetStore = new PacketStore(
+        Long.getLong("netlyzer.store.maxPackets", 8L << 20), Boolean.getBoolean("netlyzer.store.offHeap"));
     private boolean isCapturing = false;
+    // Between the stop click and the capture service having shut down
+    private boolean stoppingCapture;
+
+    // Hand-off from capture threads to the FX thread, drained once per frame
+    // (-Dnetlyzer.ui.queueSize, -Dnetlyzer.ui.maxFps)
+    private final MpscRingBuffer<PacketData> uiQueue = new MpscRingBuffer<>(Integer.getInteger("netlyzer.ui.queueSize", 65536));
+    private final LongAdder uiDroppedCount = new LongAdder();
+    private UiRefresher<PacketData> uiRefresher;
+    // Time the FX thread spends applying a frame's packets, and how old the oldest of them is
+    // by then; only live and generated traffic has timestamps to measure that lag against
+    private final Histogram uiRefreshTime = MetricsRegistry.global().histogram("netlyzer_ui_refresh_seconds",
+        "Time to apply one frame of packets on the FX thread");
+    private final Histogram uiLag = MetricsRegistry.global().histogram("netlyzer_ui_lag_seconds",
+        "Age of the oldest packet in a frame when the view applies it");
+    private boolean liveTimestamps;
+
+    // The table follows new packets until the user scrolls up; scrolling to the top pages
+    // older rows back in, from memory first and from the database once memory runs out
+    private static final int HISTORY_PAGE_SIZE = 500;
+    private boolean followLive = true;
+    private boolean historyLoading = false;
+    private boolean historyExhausted = false;
+    // Keyset position of the oldest database row in the table; null while the table's oldest
+    // row came from memory (then paging continues by timestamp)
+    private PageKey historyKey;
+
+    // Filters are answered by the query engine on its own thread. Typing in the IP box is
+    // debounced (-Dnetlyzer.ui.filterDebounceMillis) so only the last keystroke runs a query.
+    private static final long FILTER_DEBOUNCE_MILLIS = Long.getLong("netlyzer.ui.filterDebounceMillis", 200);
+    private final ScheduledExecutorService queryExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "query-engine");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Runs stopCapture(), which blocks for as long as the writers take to drain
+    private final ExecutorService captureControl = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "capture-control");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Only touched from queryExecutor
+    private final QueryEngine queryEngine = new QueryEngine(packetStore);
+    private ScheduledFuture<?> pendingFilter;
+    // Database query of the current filter or history page, cancelled when the filter changes
+    private volatile PacketCursor runningQuery;
+    private volatile int filterGeneration = 0;
+    private PacketFilter activeFilter = PacketFilter.ALL;
+    // Counts for the active filter, kept up to date as packets arrive; null when unfiltered
+    private long[] filteredCounts;
+    private long filteredTotal = 0;
     
     // New fields for chart functionality
-    private final Map<String, Integer> protocolCounts = new HashMap<>();
     private final ObservableList<PieChart.Data> chartData = FXCollections.observableArrayList();
-    private long captureStartTime = 0;
-    private int totalPacketCount = 0;
+    private final Map<String, PieChart.Data> chartSlices = new HashMap<>();
     
     // Animation fields
     private Timeline captureButtonPulse;
+    private Timeline captureStatsTimer;
+    private FadeTransition tableFlash;
 
     @FXML
     public void initialize() {
@@ -58,6 +184,7 @@ public class MainController {
         setupFilters();
         setupServices();
         setupChart(); // New method for chart setup
+        setupTopTalkers();
     }
 
     private void setupTable() {
@@ -67,31 +194,135 @@ public class MainController {
         protocolColumn.setCellValueFactory(new PropertyValueFactory<>("protocol"));
         sizeColumn.setCellValueFactory(new PropertyValueFactory<>("size"));
         
-        packets = FXCollections.observableArrayList();
+        packets = new RingBufferObservableList<>(Integer.getInteger("netlyzer.ui.tableRows", 10000));
         packetTable.setItems(packets);
+        // Only user scrolling changes follow mode; our own scrollTo calls don't count.
+        // Checked after the event so the table has laid out the new position.
+        packetTable.addEventHandler(ScrollEvent.SCROLL, e -> Platform.runLater(this::onTableScrolled));
+        packetTable.addEventHandler(MouseEvent.MOUSE_RELEASED, e -> Platform.runLater(this::onTableScrolled));
+        packetTable.addEventHandler(KeyEvent.KEY_RELEASED, e -> Platform.runLater(this::onTableScrolled));
     }
 
     private void setupFilters() {
         protocolFilter.setItems(FXCollections.observableArrayList(
-            "All", "TCP", "UDP", "HTTP", "HTTPS", "ICMP"
+            "All", "TCP", "UDP", "HTTP", "HTTPS", "DNS", "QUIC", "ICMP", "OTHER"
         ));
         protocolFilter.setValue("All");
         
-        protocolFilter.setOnAction(e -> applyFilters());
-        ipFilter.textProperty().addListener((obs, old, newValue) -> applyFilters());
+        protocolFilter.setOnAction(e -> applyFilters(0));
+        ipFilter.textProperty().addListener((obs, old, newValue) -> applyFilters(FILTER_DEBOUNCE_MILLIS));
+        // Kernel filter mode pushes the same selection (plus a port) into every capture handle
+        if (captureFilterToggle != null) {
+            captureFilterToggle.selectedProperty().addListener((obs, old, selected) -> applyFilters(0));
+        }
+        if (capturePortField != null) {
+            capturePortField.textProperty().addListener((obs, old, newValue) -> {
+                if (captureFilterToggle != null && captureFilterToggle.isSelected()) {
+                    applyFilters(FILTER_DEBOUNCE_MILLIS);
+                }
+            });
+        }
     }
 
     private void setupServices() {
-        databaseService = new DatabaseService();
-        captureService = new PacketCaptureService(packet -> {
-            Platform.runLater(() -> {
-                packets.add(packet);
-                databaseService.savePacket(packet);
-                
-                // Update chart with new packet data
-                updatePacketStatistics(packet);
+        if (System.getProperty("netlyzer.storage", "mysql").equals("segments")) {
+            try {
+                packetStorage = new SegmentStore();
+            } catch (IOException e) {
+                log.warn("segment store unavailable, falling back to MySQL cause=\"{}\"", e.getMessage());
+            }
+        }
+        if (packetStorage == null) {
+            databaseService = new DatabaseService();
+            packetStorage = databaseService;
+            flowWriter = new FlowWriter(databaseService);
+            summaryWriter = new SummaryWriter(databaseService);
+        }
+        // Persistence happens on the writer thread, the FX thread only updates the view
+        loadHarness = LoadHarness.fromProperties("table");
+        packetWriter = new PacketWriter(loadHarness != null ? loadHarness.measure(packetStorage) : packetStorage);
+        // Closed days are copied into the columnar archive before retention drops them. MySQL
+        // rows are only read once the schema is known to be migrated.
+        ColumnArchive archive = ColumnArchive.fromProperties();
+        if (archive != null && databaseService == null) {
+            archive.startCompaction(packetStorage);
+        } else if (archive != null) {
+            PacketStorage source = packetStorage;
+            databaseService.whenSchemaReady().thenAccept(migrated -> {
+                if (migrated) {
+                    archive.startCompaction(source);
+                } else {
+                    log.warn("archive compaction disabled, the schema migration failed");
+                }
             });
-        });
+        }
+        // History paging and counts reach the archived days once retention has dropped them
+        if (archive != null) {
+            packetStorage = new ArchivedStorage(packetStorage, archive);
+        }
+        captureService = new PacketCaptureService(packet -> {
+            packetStore.append(packet);
+            // Never block a capture thread on the UI; the store and the DB still get the packet
+            if (!uiQueue.offer(packet)) {
+                uiDroppedCount.increment();
+            }
+        }, packetWriter, flowWriter, summaryWriter);
+        // Summaries of earlier runs are already sketched, so loading them is a small read, once
+        // the schema is in place
+        if (databaseService != null) {
+            databaseService.whenSchemaReady().thenRunAsync(() -> {
+                long now = Timestamps.nowNanos();
+                List<SummaryBucket> saved = databaseService.loadSummaries(now - TimeUnit.HOURS.toNanos(1), now);
+                captureService.getSummaries().restore(saved);
+                Platform.runLater(this::updateSummary);
+            }, queryExecutor);
+            updateSummary();
+        }
+        uiRefresher = new UiRefresher<>(uiQueue, Integer.getInteger("netlyzer.ui.maxFps", 30),
+            Integer.getInteger("netlyzer.ui.maxBatch", 20000), this::applyPacketBatch);
+
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("netlyzer_ui_queue_depth", "Packets waiting for the FX thread", uiQueue::size);
+        metrics.counter("netlyzer_ui_dropped_total", "Packets the view skipped on a full queue", uiDroppedCount::sum);
+        // Prometheus text on -Dnetlyzer.metrics.port; JMX is always on
+        PrometheusServer.startFromProperties(metrics);
+    }
+
+    // Applies every packet that arrived since the last frame with a single list change,
+    // one chart update, one label update and at most one animation
+    private void applyPacketBatch(List<PacketData> batch) {
+        long started = System.nanoTime();
+        if (liveTimestamps && !batch.isEmpty()) {
+            uiLag.recordNanos(Timestamps.nowNanos() - batch.get(0).getTimestampNanos());
+        }
+        if (loadHarness != null) {
+            loadHarness.view().record(batch);
+        }
+        List<PacketData> visible = batch;
+        if (filteredCounts != null) {
+            visible = new ArrayList<>();
+            for (PacketData packet : batch) {
+                if (activeFilter.matches(packet)) {
+                    visible.add(packet);
+                    filteredCounts[packet.getProtocolType().code()]++;
+                    filteredTotal++;
+                }
+            }
+        }
+        if (followLive && !visible.isEmpty()) {
+            if (packets.isFull()) {
+                // The oldest rows, possibly the ones paged in from the database, are evicted
+                historyKey = null;
+            }
+            packets.addAll(visible);
+        }
+        animateNewPacketArrival();
+        if (filteredCounts != null) {
+            showFilteredCounts();
+        } else {
+            showTotals();
+        }
+        uiRefreshTime.recordNanos(System.nanoTime() - started);
     }
     
     // New method to setup chart
@@ -103,164 +334,367 @@ public class MainController {
             protocolChart.setStyle("-fx-background-color: transparent;");
         }
         
-        // Initialize protocol counts
-        protocolCounts.put("TCP", 0);
-        protocolCounts.put("UDP", 0);
-        protocolCounts.put("HTTP", 0);
-        protocolCounts.put("HTTPS", 0);
-        protocolCounts.put("ICMP", 0);
-        protocolCounts.put("OTHER", 0);
-        
         // Initialize chart and statistics
-        updateChart();
-        updateStatisticsLabels();
-        
-        // Set capture start time
-        captureStartTime = System.currentTimeMillis();
-    }
-    
-    // New method to update packet statistics
-    private void updatePacketStatistics(PacketData packet) {
-        // Update protocol counts
-        String protocol = packet.getProtocol().toUpperCase();
-        
-        // Map HTTP/HTTPS to TCP if they're detected as such
-        if (protocol.equals("HTTP") || protocol.equals("HTTPS")) {
-            // Keep HTTP/HTTPS separate if you want, or map to TCP
-            if (protocolCounts.containsKey(protocol)) {
-                protocolCounts.put(protocol, protocolCounts.get(protocol) + 1);
-            } else {
-                protocolCounts.put("OTHER", protocolCounts.get("OTHER") + 1);
-            }
-        } else if (protocolCounts.containsKey(protocol)) {
-            protocolCounts.put(protocol, protocolCounts.get(protocol) + 1);
-        } else {
-            protocolCounts.put("OTHER", protocolCounts.get("OTHER") + 1);
-        }
-        
-        totalPacketCount++;
-        
-        // Add subtle flash animation to table when new packet arrives
-        animateNewPacketArrival();
-        
-        // Update chart and statistics
-        updateChart();
-        updateStatisticsLabels();
+        showTotals();
     }
     
     // Animation for new packet arrival
     private void animateNewPacketArrival() {
         if (packetTable != null && isCapturing) {
-            // Quick flash effect
-            FadeTransition flash = new FadeTransition(Duration.millis(100), packetTable);
-            flash.setFromValue(1.0);
-            flash.setToValue(0.7);
-            flash.setCycleCount(2);
-            flash.setAutoReverse(true);
-            flash.play();
+            // Quick flash effect, reused and never stacked
+            if (tableFlash == null) {
+                tableFlash = new FadeTransition(Duration.millis(100), packetTable);
+                tableFlash.setFromValue(1.0);
+                tableFlash.setToValue(0.7);
+                tableFlash.setCycleCount(2);
+                tableFlash.setAutoReverse(true);
+            }
+            if (tableFlash.getStatus() != Animation.Status.RUNNING) {
+                tableFlash.playFromStart();
+            }
             
             // Scroll to bottom to show latest packet
-            Platform.runLater(() -> {
-                if (!packets.isEmpty()) {
-                    packetTable.scrollTo(packets.size() - 1);
-                }
-            });
+            if (followLive && !packets.isEmpty()) {
+                packetTable.scrollTo(packets.size() - 1);
+            }
         }
     }
     
-    // Method to update the pie chart
-    private void updateChart() {
+    // Updates slice values in place; slices are only created the first time a protocol shows up.
+    // counts is indexed by protocol code.
+    private void renderChart(long[] counts) {
         if (protocolChart == null) return;
         
-        chartData.clear();
-        
-        for (Map.Entry<String, Integer> entry : protocolCounts.entrySet()) {
-            if (entry.getValue() > 0) {
-                PieChart.Data data = new PieChart.Data(entry.getKey(), entry.getValue());
+        for (Protocol protocol : Protocol.values()) {
+            long count = counts[protocol.code()];
+            PieChart.Data slice = chartSlices.get(protocol.label());
+            if (slice != null) {
+                if (count > 0) {
+                    slice.setPieValue(count);
+                } else {
+                    chartData.remove(slice);
+                    chartSlices.remove(protocol.label());
+                }
+            } else if (count > 0) {
+                PieChart.Data data = new PieChart.Data(protocol.label(), count);
+                chartSlices.put(protocol.label(), data);
                 chartData.add(data);
+                styleSlice(data);
             }
         }
-        
-        // Apply custom colors to chart slices
+    }
+
+    // Apply custom colors to a chart slice once its node exists
+    private void styleSlice(PieChart.Data data) {
         Platform.runLater(() -> {
-            for (PieChart.Data data : chartData) {
-                if (data.getNode() != null) {
-                    switch (data.getName()) {
-                        case "TCP"   -> data.getNode().setStyle("-fx-pie-color: #81c784;");
-                        case "UDP"   -> data.getNode().setStyle("-fx-pie-color: #ffb74d;");
-                        case "HTTP"  -> data.getNode().setStyle("-fx-pie-color: #4fc3f7;");
-                        case "HTTPS" -> data.getNode().setStyle("-fx-pie-color: #ba68c8;");
-                        case "ICMP"  -> data.getNode().setStyle("-fx-pie-color: #64b5f6;");
-                        default      -> data.getNode().setStyle("-fx-pie-color: #f06292;");
-                    }
+            if (data.getNode() != null) {
+                switch (data.getName()) {
+                    case "TCP"   -> data.getNode().setStyle("-fx-pie-color: #81c784;");
+                    case "UDP"   -> data.getNode().setStyle("-fx-pie-color: #ffb74d;");
+                    case "HTTP"  -> data.getNode().setStyle("-fx-pie-color: #4fc3f7;");
+                    case "HTTPS" -> data.getNode().setStyle("-fx-pie-color: #ba68c8;");
+                    case "ICMP"  -> data.getNode().setStyle("-fx-pie-color: #64b5f6;");
+                    case "DNS"   -> data.getNode().setStyle("-fx-pie-color: #fff176;");
+                    case "QUIC"  -> data.getNode().setStyle("-fx-pie-color: #4db6ac;");
+                    default      -> data.getNode().setStyle("-fx-pie-color: #f06292;");
                 }
             }
         });
     }
     
-    // Method to update statistics labels
-    private void updateStatisticsLabels() {
+    // Chart and labels from the capture statistics, which count every packet even when the
+    // table or the database fell behind
+    private void showTotals() {
+        TrafficSnapshot snapshot = captureService.getStatistics().snapshot();
+        renderChart(snapshot.packetsByProtocol());
         if (totalPacketsLabel != null) {
-            totalPacketsLabel.setText(String.valueOf(totalPacketCount));
+            totalPacketsLabel.setText(String.valueOf(snapshot.packets()));
+        }
+        updateTransportLabels(snapshot.packetsByProtocol());
+    }
+
+    // Current load over the last second, with the 10 s and 60 s averages in the tooltip.
+    // Updated once a second; more often would only make the numbers flicker.
+    private void updateRateLabel() {
+        if (captureRateLabel == null) {
+            return;
+        }
+        TrafficSnapshot snapshot = captureService.getStatistics().snapshot();
+        captureRateLabel.setText(String.format("%,.0f pkt/s, %s", snapshot.pps1(), TrafficSnapshot.formatBitsPerSecond(snapshot.bps1())));
+        StringBuilder details = new StringBuilder(String.format("1 s:  %,.0f pkt/s, %s%n10 s: %,.0f pkt/s, %s%n60 s: %,.0f pkt/s, %s",
+            snapshot.pps1(), TrafficSnapshot.formatBitsPerSecond(snapshot.bps1()),
+            snapshot.pps10(), TrafficSnapshot.formatBitsPerSecond(snapshot.bps10()),
+            snapshot.pps60(), TrafficSnapshot.formatBitsPerSecond(snapshot.bps60())));
+        for (TrafficSnapshot.InterfaceTotals totals : snapshot.interfaces()) {
+            details.append(String.format("%n%s: %,d frames, %,d bytes", totals.name(), totals.packets(), totals.bytes()));
+        }
+        captureRateLabel.setTooltip(new Tooltip(details.toString()));
+    }
+    
+    // Distinct addresses and size quantiles over the last few minutes, the rest in the tooltip
+    private void updateSummary() {
+        if (summaryLabel == null) {
+            return;
+        }
+        SummaryBucket summary = captureService.getSummaries().lastMinutes(SUMMARY_MINUTES);
+        if (summary == null) {
+            summaryLabel.setText(databaseService != null && !databaseService.isSchemaReady() ? "Migrating database..." : "-");
+            return;
+        }
+        summaryLabel.setText(String.format("%,d IPs, p95 %d B", summary.distinctSources(), summary.sizes().quantile(0.95)));
+        summaryLabel.setTooltip(new Tooltip(String.format(
+            "%s to %s%n%,d packets, %,d bytes%n~%,d sources, ~%,d destinations, ~%,d flows%n"
+                + "Size p50/p95/p99: %d / %d / %d B (mean %.0f)%nInter-arrival p50/p95/p99: %.1f / %.1f / %.1f us",
+            Timestamps.toLocalDateTime(summary.startNanos()), Timestamps.toLocalDateTime(summary.endNanos()),
+            summary.packets(), summary.bytes(), summary.distinctSources(), summary.distinctDestinations(),
+            summary.distinctFlows(), summary.sizes().quantile(0.5), summary.sizes().quantile(0.95),
+            summary.sizes().quantile(0.99), summary.sizes().mean(), summary.gaps().quantile(0.5) / 1e3,
+            summary.gaps().quantile(0.95) / 1e3, summary.gaps().quantile(0.99) / 1e3)));
+    }
+
+    private void setupTopTalkers() {
+        if (topTalkersTable == null) {
+            return;
+        }
+        talkerDimension.setItems(FXCollections.observableArrayList(TopTalkers.Dimension.values()));
+        talkerDimension.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(TopTalkers.Dimension dimension) {
+                return dimension == null ? "" : dimension.label();
+            }
+
+            @Override
+            public TopTalkers.Dimension fromString(String text) {
+                return null;
+            }
+        });
+        talkerDimension.setValue(TopTalkers.Dimension.SOURCE);
+        talkerMetric.setItems(FXCollections.observableArrayList(TopTalkers.Metric.values()));
+        talkerMetric.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(TopTalkers.Metric metric) {
+                return metric == TopTalkers.Metric.BYTES ? "Bytes" : "Packets";
+            }
+
+            @Override
+            public TopTalkers.Metric fromString(String text) {
+                return null;
+            }
+        });
+        talkerMetric.setValue(TopTalkers.Metric.BYTES);
+        talkerWindow.setItems(FXCollections.observableArrayList(10, TopTalkers.MAX_WINDOW_SECONDS));
+        talkerWindow.setConverter(new StringConverter<>() {
+            @Override
+            public String toString(Integer seconds) {
+                return seconds == null ? "" : seconds + " s";
+            }
+
+            @Override
+            public Integer fromString(String text) {
+                return null;
+            }
+        });
+        talkerWindow.setValue(TopTalkers.MAX_WINDOW_SECONDS);
+
+        talkerKeyColumn.setCellValueFactory(cell -> new SimpleStringProperty(cell.getValue().key()));
+        talkerValueColumn.setCellValueFactory(cell -> new SimpleStringProperty(formatTalkerValue(cell.getValue())));
+        talkerDimension.setOnAction(e -> updateTopTalkers());
+        talkerMetric.setOnAction(e -> updateTopTalkers());
+        talkerWindow.setOnAction(e -> updateTopTalkers());
+    }
+
+    // Heaviest keys of the selected dimension over the selected window; the sketches are read
+    // once a second with the other capture counters, never per packet
+    private void updateTopTalkers() {
+        if (topTalkersTable == null) {
+            return;
+        }
+        talkerValueColumn.setText(talkerMetric.getValue() == TopTalkers.Metric.BYTES ? "Bytes" : "Packets");
+        topTalkersTable.getItems().setAll(captureService.getTopTalkers().top(
+            talkerDimension.getValue(), talkerMetric.getValue(), talkerWindow.getValue(), TOP_TALKERS));
+    }
+
+    // Estimates that may be overcounted are marked with "~"
+    private String formatTalkerValue(TopTalkers.Talker talker) {
+        String value = talkerMetric.getValue() == TopTalkers.Metric.BYTES
+            ? formatBytes(talker.value())
+            : String.format("%,d", talker.value());
+        return talker.maxError() > 0 ? "~" + value : value;
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes >= 1L << 30) return String.format("%.2f GB", bytes / (double) (1L << 30));
+        if (bytes >= 1L << 20) return String.format("%.1f MB", bytes / (double) (1L << 20));
+        if (bytes >= 1L << 10) return String.format("%.1f KB", bytes / (double) (1L << 10));
+        return bytes + " B";
+    }
+    
+    // TCP/UDP labels include the application protocols carried over them; counts by protocol code
+    private void updateTransportLabels(long[] counts) {
+        long tcpCount = 0;
+        long udpCount = 0;
+        long otherCount = 0;
+        for (Protocol protocol : Protocol.values()) {
+            switch (protocol.transport()) {
+                case TCP -> tcpCount += counts[protocol.code()];
+                case UDP -> udpCount += counts[protocol.code()];
+                default -> otherCount += counts[protocol.code()];
+            }
         }
         if (tcpPacketsLabel != null) {
-            int tcpCount = protocolCounts.get("TCP") + protocolCounts.get("HTTP") + protocolCounts.get("HTTPS");
             tcpPacketsLabel.setText(String.valueOf(tcpCount));
         }
         if (udpPacketsLabel != null) {
-            udpPacketsLabel.setText(String.valueOf(protocolCounts.get("UDP")));
+            udpPacketsLabel.setText(String.valueOf(udpCount));
         }
         if (otherPacketsLabel != null) {
-            int otherCount = protocolCounts.get("ICMP") + protocolCounts.get("OTHER");
             otherPacketsLabel.setText(String.valueOf(otherCount));
         }
-        
-        // Calculate and display capture rate
-        if (captureRateLabel != null) {
-            long elapsedTime = System.currentTimeMillis() - captureStartTime;
-            double ratePerSecond = 0;
-            if (elapsedTime > 0) {
-                ratePerSecond = (totalPacketCount * 1000.0) / elapsedTime;
-            }
-            captureRateLabel.setText(String.format("%.1f pkt/s", ratePerSecond));
-        }
     }
     
     // Method to reset statistics
     private void resetStatistics() {
-        protocolCounts.replaceAll((k, v) -> 0);
-        totalPacketCount = 0;
-        captureStartTime = System.currentTimeMillis();
+        captureService.getStatistics().reset();
+        captureService.getTopTalkers().reset();
+        if (filteredCounts != null) {
+            Arrays.fill(filteredCounts, 0);
+            filteredTotal = 0;
+        }
         
         Platform.runLater(() -> {
-            updateChart();
-            updateStatisticsLabels();
+            if (filteredCounts != null) {
+                showFilteredCounts();
+            } else {
+                showTotals();
+            }
+            updateTopTalkers();
         });
     }
 
     @FXML
     private void toggleCapture() {
+        if (stoppingCapture) {
+            return;
+        }
         if (!isCapturing) {
-            // Reset statistics when starting new capture
-            resetStatistics();
-            packets.clear(); // Clear existing packets from table
-            
-            captureService.startCapture();
-            captureButton.setText("⏹ Stop Capture");
-            captureButton.setStyle("-fx-background-color: linear-gradient(to bottom, #f44336, #d32f2f); -fx-background-radius: 20; -fx-text-fill: white; -fx-padding: 12 24; -fx-font-size: 14; -fx-font-weight: bold; -fx-effect: dropshadow(gaussian, rgba(244, 67, 54, 0.6), 10, 0, 3, 3); -fx-cursor: hand;");
-            
-            // Start pulsing animation
-            startCaptureButtonPulse();
-            
+            prepareNewCapture();
+            liveTimestamps = true;
+            if (loadHarness != null) {
+                try {
+                    captureService.startCapture(loadHarness.newSources());
+                } catch (IOException e) {
+                    log.error("load start failed harness={} cause=\"{}\"", loadHarness, e.getMessage());
+                }
+            } else {
+                captureService.startCapture();
+            }
+            showCaptureRunning();
+            isCapturing = true;
         } else {
-            captureService.stopCapture();
-            captureButton.setText("▶ Start Capture");
-            captureButton.setStyle("-fx-background-color: linear-gradient(to bottom, #4caf50, #388e3c); -fx-background-radius: 20; -fx-text-fill: white; -fx-padding: 12 24; -fx-font-size: 14; -fx-font-weight: bold; -fx-effect: dropshadow(gaussian, rgba(76, 175, 80, 0.6), 10, 0, 3, 3); -fx-cursor: hand;");
-            
-            // Stop pulsing animation
-            stopCaptureButtonPulse();
+            // Last kernel counters, while the handles are still open
+            updateCaptureStats();
+            // No more polling while the handles close underneath
+            captureStatsTimer.stop();
+            stoppingCapture = true;
+            captureButton.setDisable(true);
+            captureButton.setText("Stopping...");
+            // Stopping joins the capture and pipeline threads and waits for the database writers
+            // to drain, seconds with a slow database; the view keeps refreshing meanwhile
+            captureControl.execute(() -> {
+                captureService.stopCapture();
+                if (loadHarness != null) {
+                    log.info("load report\n{}", loadHarness.report(captureService, uiDroppedCount.sum(), true));
+                }
+                Platform.runLater(() -> {
+                    // Capture threads are done; show what they queued during the last frame
+                    uiRefresher.stop();
+                    uiRefresher.flushQueued();
+                    stoppingCapture = false;
+                    isCapturing = false;
+                    captureButton.setDisable(false);
+                    showCaptureStopped();
+                });
+            });
+        }
+    }
+
+    // Reads a pcap/pcapng file through the same pipeline as a live capture; the capture button
+    // stops it early
+    @FXML
+    private void openCaptureFile() {
+        if (isCapturing) {
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Open capture file");
+        chooser.getExtensionFilters().addAll(
+            new FileChooser.ExtensionFilter("Capture files", "*.pcap", "*.pcapng", "*.cap"),
+            new FileChooser.ExtensionFilter("All files", "*.*"));
+        File file = chooser.showOpenDialog(captureButton.getScene().getWindow());
+        if (file == null) {
+            return;
+        }
+
+        prepareNewCapture();
+        liveTimestamps = false;
+        captureService.startFileIngest(file.toPath(), stats -> Platform.runLater(() -> {
+            if (isCapturing) {
+                toggleCapture();
+            }
+            if (stats != null && captureRateLabel != null) {
+                captureRateLabel.setText(String.format("%.1f MB/s, %,.0f pkt/s", stats.megabytesPerSecond(), stats.packetsPerSecond()));
+            }
+        }));
+        showCaptureRunning();
+        isCapturing = true;
+    }
+
+    private void prepareNewCapture() {
+        // Reset statistics when starting new capture
+        resetStatistics();
+        packets.clear(); // Clear existing packets from table
+        followLive = true;
+        historyExhausted = false;
+        historyKey = null;
+        packetStore.clear();
+        uiQueue.drain(packet -> { }, Integer.MAX_VALUE); // Leftovers from the previous capture
+        uiDroppedCount.reset();
+    }
+
+    private void showCaptureRunning() {
+        uiRefresher.start();
+        if (captureStatsTimer == null) {
+            captureStatsTimer = new Timeline(new KeyFrame(Duration.seconds(1), e -> {
+                updateCaptureStats();
+                updateRateLabel();
+                updateTopTalkers();
+                updateSummary();
+            }));
+            captureStatsTimer.setCycleCount(Timeline.INDEFINITE);
+        }
+        captureStatsTimer.play();
+        if (openFileButton != null) {
+            openFileButton.setDisable(true);
         }
-        isCapturing = !isCapturing;
+        captureButton.setText("⏹ Stop Capture");
+        captureButton.setStyle("-fx-background-color: linear-gradient(to bottom, #f44336, #d32f2f); -fx-background-radius: 20; -fx-text-fill: white; -fx-padding: 12 24; -fx-font-size: 14; -fx-font-weight: bold; -fx-effect: dropshadow(gaussian, rgba(244, 67, 54, 0.6), 10, 0, 3, 3); -fx-cursor: hand;");
+        
+        // Start pulsing animation
+        startCaptureButtonPulse();
+    }
+
+    private void showCaptureStopped() {
+        if (captureStatsTimer != null) {
+            captureStatsTimer.stop();
+        }
+        if (openFileButton != null) {
+            openFileButton.setDisable(false);
+        }
+        captureButton.setText("▶ Start Capture");
+        captureButton.setStyle("-fx-background-color: linear-gradient(to bottom, #4caf50, #388e3c); -fx-background-radius: 20; -fx-text-fill: white; -fx-padding: 12 24; -fx-font-size: 14; -fx-font-weight: bold; -fx-effect: dropshadow(gaussian, rgba(76, 175, 80, 0.6), 10, 0, 3, 3); -fx-cursor: hand;");
+        
+        // Stop pulsing animation
+        stopCaptureButtonPulse();
     }
     
     // Dynamic button hover effects
@@ -361,66 +795,270 @@ public class MainController {
         }
     }
 
-    private void applyFilters() {
-        String protocol = protocolFilter.getValue();
-        String ip = ipFilter.getText().trim();
-        
-        // Get filtered packets from database
-        ObservableList<PacketData> filteredPackets = FXCollections.observableArrayList(databaseService.getFilteredPackets(protocol, ip));
-        
-        // Update table
-        packets.clear();
-        packets.addAll(filteredPackets);
-        
-        // Update chart based on filtered data
-        updateChartFromFilteredData(filteredPackets);
+    // Debounced: a newer call cancels the pending one and any database query still running,
+    // and results of superseded queries are dropped
+    private void applyFilters(long delayMillis) {
+        PacketFilter filter = PacketFilter.parse(protocolFilter.getValue(), ipFilter.getText());
+        boolean kernelFilter = captureFilterToggle != null && captureFilterToggle.isSelected();
+        int port = capturePort();
+        int generation = ++filterGeneration;
+        if (pendingFilter != null) {
+            pendingFilter.cancel(false);
+        }
+        PacketCursor query = runningQuery;
+        if (query != null) {
+            query.cancel();
+        }
+        pendingFilter = queryExecutor.schedule(() -> {
+            updateCaptureFilter(filter, kernelFilter, port);
+            runFilter(filter, generation);
+        }, delayMillis, TimeUnit.MILLISECONDS);
     }
-    
-    // New method to update chart based on filtered data
-    private void updateChartFromFilteredData(ObservableList<PacketData> filteredPackets) {
-        if (protocolChart == null) return;
-        
-        // Count protocols in filtered data
-        Map<String, Integer> filteredCounts = new HashMap<>();
-        filteredCounts.put("TCP", 0);
-        filteredCounts.put("UDP", 0);
-        filteredCounts.put("HTTP", 0);
-        filteredCounts.put("HTTPS", 0);
-        filteredCounts.put("ICMP", 0);
-        filteredCounts.put("OTHER", 0);
-        
-        for (PacketData packet : filteredPackets) {
-            String protocol = packet.getProtocol().toUpperCase();
-            if (filteredCounts.containsKey(protocol)) {
-                filteredCounts.put(protocol, filteredCounts.get(protocol) + 1);
+
+    // 0 for "any port"; anything unparsable is passed on as out of range so it gets reported
+    private int capturePort() {
+        String text = capturePortField != null ? capturePortField.getText().trim() : "";
+        if (text.isEmpty()) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    // Runs on queryExecutor. A rejected expression leaves the previous kernel filter in place.
+    private void updateCaptureFilter(PacketFilter filter, boolean kernelFilter, int port) {
+        String error = null;
+        if (kernelFilter) {
+            error = captureService.setCaptureFilter(filter, port);
+        } else if (!captureService.getCaptureFilter().isEmpty()) {
+            error = captureService.setCaptureFilter("");
+        }
+        String rejected = error;
+        String active = captureService.getCaptureFilter();
+        Platform.runLater(() -> {
+            if (captureFilterToggle == null) {
+                return;
+            }
+            if (rejected != null) {
+                captureFilterToggle.setTooltip(new Tooltip("Rejected: " + rejected + "\nStill active: " + (active.isEmpty() ? "none" : active)));
+                captureFilterToggle.setStyle("-fx-text-fill: #f44336; -fx-font-size: 13; -fx-cursor: hand;");
             } else {
-                filteredCounts.put("OTHER", filteredCounts.get("OTHER") + 1);
+                captureFilterToggle.setTooltip(new Tooltip(active.isEmpty() ? "Capturing everything" : active));
+                captureFilterToggle.setStyle("-fx-text-fill: #d0d0d0; -fx-font-size: 13; -fx-cursor: hand;");
+            }
+        });
+    }
+
+    // Runs on queryExecutor. Memory answers first; the database only fills in rows and counts
+    // older than the oldest packet still held in memory.
+    private void runFilter(PacketFilter filter, int generation) {
+        queryEngine.catchUp();
+        List<PacketData> rows = queryEngine.newest(filter, Long.MAX_VALUE, packets.capacity());
+        long[] counts = queryEngine.countByProtocol(filter);
+        long oldestInMemory = queryEngine.oldestTimestampNanos();
+        PageKey olderKey = null;
+        if (rows.size() < packets.capacity()) {
+            // Only the rows that no longer fit in memory come from the database
+            DatabasePage older = readDatabasePage(filter, PageKey.before(oldestInMemory), packets.capacity() - rows.size(), generation);
+            if (older == null) {
+                return;
             }
+            older.rows().addAll(rows);
+            rows = older.rows();
+            olderKey = older.lastKey();
         }
-        
-        // Update chart with filtered data
-        chartData.clear();
-        for (Map.Entry<String, Integer> entry : filteredCounts.entrySet()) {
-            if (entry.getValue() > 0) {
-                PieChart.Data data = new PieChart.Data(entry.getKey(), entry.getValue());
-                chartData.add(data);
+        if (generation != filterGeneration) {
+            return;
+        }
+        if (!filter.isEmpty()) {
+            long[] olderCounts = packetStorage.countByProtocol(filter, oldestInMemory);
+            for (int code = 0; code < counts.length; code++) {
+                counts[code] += olderCounts[code];
             }
         }
-        
-        // Update statistics labels for filtered view
-        if (totalPacketsLabel != null) {
-            totalPacketsLabel.setText(String.valueOf(filteredPackets.size()));
+
+        List<PacketData> result = rows;
+        PageKey resultKey = olderKey;
+        Platform.runLater(() -> {
+            if (generation != filterGeneration) {
+                return;
+            }
+            // Update table; only the newest rows fit, older ones are paged in on scroll
+            activeFilter = filter;
+            followLive = true;
+            historyExhausted = false;
+            historyKey = resultKey;
+            packets.setAll(result);
+
+            if (filter.isEmpty()) {
+                filteredCounts = null;
+                showTotals();
+                return;
+            }
+            filteredCounts = counts.clone();
+            filteredTotal = 0;
+            for (long count : counts) {
+                filteredTotal += count;
+            }
+            showFilteredCounts();
+        });
+    }
+    
+    private void onTableScrolled() {
+        VirtualFlow<?> flow = (VirtualFlow<?>) packetTable.lookup(".virtual-flow");
+        if (flow == null || packets.isEmpty()) {
+            return;
         }
-        if (tcpPacketsLabel != null) {
-            int tcpCount = filteredCounts.get("TCP") + filteredCounts.get("HTTP") + filteredCounts.get("HTTPS");
-            tcpPacketsLabel.setText(String.valueOf(tcpCount));
+        IndexedCell<?> first = flow.getFirstVisibleCell();
+        IndexedCell<?> last = flow.getLastVisibleCell();
+        if (first == null || last == null) {
+            return;
         }
-        if (udpPacketsLabel != null) {
-            udpPacketsLabel.setText(String.valueOf(filteredCounts.get("UDP")));
+        if (last.getIndex() >= packets.size() - 1) {
+            if (!followLive) {
+                resumeLive();
+            }
+        } else {
+            followLive = false;
         }
-        if (otherPacketsLabel != null) {
-            int otherCount = filteredCounts.get("ICMP") + filteredCounts.get("OTHER");
-            otherPacketsLabel.setText(String.valueOf(otherCount));
+        if (first.getIndex() <= 0) {
+            loadOlderPage();
+        }
+    }
+
+    // Back at the bottom: refill the table with the newest packets held in memory
+    private void resumeLive() {
+        followLive = true;
+        if (activeFilter.isEmpty()) {
+            List<PacketData> all = packetStore.asList();
+            int from = Math.max(0, all.size() - packets.capacity());
+            packets.setAll(new ArrayList<>(all.subList(from, all.size())));
+            historyExhausted = false;
+            historyKey = null;
+        } else {
+            applyFilters(0);
+        }
+    }
+
+    private void loadOlderPage() {
+        if (historyLoading || historyExhausted) {
+            return;
+        }
+        historyLoading = true;
+        long before = packets.get(0).getTimestampNanos();
+        PageKey key = historyKey;
+        PacketFilter filter = activeFilter;
+        int generation = filterGeneration;
+        queryExecutor.execute(() -> {
+            List<PacketData> page = new ArrayList<>();
+            PageKey pageKey = key;
+            // Memory first, unless we are already past it and reading the database
+            if (key == null) {
+                queryEngine.catchUp();
+                page = queryEngine.newest(filter, before, HISTORY_PAGE_SIZE);
+            }
+            if (page.size() < HISTORY_PAGE_SIZE) {
+                PageKey from = key != null ? key : PageKey.before(Math.min(before, queryEngine.oldestTimestampNanos()));
+                DatabasePage older = readDatabasePage(filter, from, HISTORY_PAGE_SIZE - page.size(), generation);
+                if (older != null) {
+                    older.rows().addAll(page);
+                    page = older.rows();
+                    if (older.lastKey() != null) {
+                        pageKey = older.lastKey();
+                    }
+                }
+            }
+            List<PacketData> loaded = page;
+            PageKey loadedKey = pageKey;
+            Platform.runLater(() -> {
+                historyLoading = false;
+                if (generation != filterGeneration) {
+                    return;
+                }
+                if (loaded.isEmpty()) {
+                    historyExhausted = true;
+                    return;
+                }
+                followLive = false;
+                historyKey = loadedKey;
+                int inserted = packets.prependAll(loaded);
+                // Keep the row the user was looking at in place
+                packetTable.scrollTo(inserted);
+            });
+        });
+    }
+
+    // Rows of one database page, oldest first, and the keyset position to continue from
+    private record DatabasePage(List<PacketData> rows, PageKey lastKey) { }
+
+    // Reads up to limit rows before `from` through a cursor that a filter change can cancel.
+    // Returns null when the query was cancelled or the filter changed in the meantime.
+    private DatabasePage readDatabasePage(PacketFilter filter, PageKey from, int limit, int generation) {
+        if (generation != filterGeneration) {
+            return null;
+        }
+        try (PacketCursor cursor = packetStorage.openCursor(filter, from, limit)) {
+            runningQuery = cursor;
+            // A filter change between the check above and publishing the cursor
+            if (generation != filterGeneration) {
+                return null;
+            }
+            List<PacketData> rows = cursor.nextPage(limit);
+            if (cursor.isCancelled()) {
+                return null;
+            }
+            Collections.reverse(rows);
+            return new DatabasePage(rows, cursor.getLastKey());
+        } finally {
+            runningQuery = null;
+        }
+    }
+    
+    // Kernel receive/drop counters summed over all interfaces, per interface in the tooltip
+    private void updateCaptureStats() {
+        List<CaptureStats> stats = captureService.getCaptureStats();
+        if (captureStatsLabel == null || stats.isEmpty()) {
+            return;
+        }
+        long received = 0;
+        long dropped = 0;
+        long errors = 0;
+        StringBuilder details = new StringBuilder("Profile ").append(captureService.getProfile()).append('\n');
+        for (CaptureStats stat : stats) {
+            received += stat.received();
+            dropped += stat.dropped() + stat.droppedByInterface();
+            errors += stat.errors();
+            details.append(String.format("%s: %,d received, %,d dropped, %,d dropped by interface (%.2f%%)%n",
+                stat.interfaceName(), stat.received(), stat.dropped(), stat.droppedByInterface(), stat.dropRate() * 100));
+            details.append(String.format("    %,d delivered, %,d not IP, %,d errors, %.1f packets per dispatch%n",
+                stat.delivered(), stat.skipped(), stat.errors(), stat.packetsPerDispatch()));
+            if (stat.lastError() != null) {
+                details.append("    last error: ").append(stat.lastError()).append('\n');
+            }
+        }
+        for (StageStats stage : captureService.getPipelineStats()) {
+            details.append(stage).append('\n');
+        }
+        if (loadHarness != null) {
+            details.append(loadHarness.report(captureService, uiDroppedCount.sum(), false)).append('\n');
+        }
+        long total = received + dropped;
+        captureStatsLabel.setText(String.format("%,d / %,d (%.2f%%)%s", dropped, total, total > 0 ? dropped * 100.0 / total : 0,
+            errors > 0 ? String.format(", %,d errors", errors) : ""));
+        captureStatsLabel.setTooltip(new Tooltip(details.toString().trim()));
+    }
+
+    // Chart and labels for the active filter
+    private void showFilteredCounts() {
+        renderChart(filteredCounts);
+        
+        // Update statistics labels for filtered view
+        if (totalPacketsLabel != null) {
+            totalPacketsLabel.setText(String.valueOf(filteredTotal));
         }
+        updateTransportLabels(filteredCounts);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,174 @@
+package com.networkanalyzer.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import javafx.collections.ObservableListBase;
+
+// Fixed-capacity ObservableList backed by a circular array.
+// Appending past capacity evicts the oldest rows; prepending (paging older rows back in)
+// evicts the newest. Every bulk operation fires a single change event, so a TableView
+// re-lays out once per batch instead of once per row. Memory use is bounded by the
+// capacity regardless of how long the capture runs. FX thread only, like any other
+// list bound to a control.
+class RingBufferObservableList<E> extends ObservableListBase<E> {
+    private final Object[] elements;
+    private int head;
+    private int size;
+
+    RingBufferObservableList(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.elements = new Object[capacity];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return (E) elements[physical(index)];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+
+    public boolean isFull() {
+        return size == elements.length;
+    }
+
+    @Override
+    public boolean add(E element) {
+        return addAll(Collections.singletonList(element));
+    }
+
+    // Appends at the tail, evicting from the head when full
+    @Override
+    public boolean addAll(Collection<? extends E> added) {
+        if (added.isEmpty()) {
+            return false;
+        }
+        List<? extends E> incoming = tail(added, elements.length);
+        int evict = Math.max(0, size + incoming.size() - elements.length);
+
+        beginChange();
+        try {
+            if (evict > 0) {
+                List<E> removed = new ArrayList<>(evict);
+                for (int i = 0; i < evict; i++) {
+                    removed.add(get(i));
+                    elements[physical(i)] = null;
+                }
+                head = (head + evict) % elements.length;
+                size -= evict;
+                nextRemove(0, removed);
+            }
+            int from = size;
+            for (E element : incoming) {
+                elements[physical(size)] = element;
+                size++;
+            }
+            nextAdd(from, size);
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    // Inserts older rows in front, evicting from the tail when full.
+    // Returns how many rows were actually inserted.
+    public int prependAll(List<? extends E> older) {
+        if (older.isEmpty()) {
+            return 0;
+        }
+        List<? extends E> incoming = tail(older, elements.length);
+        int evict = Math.max(0, size + incoming.size() - elements.length);
+
+        beginChange();
+        try {
+            if (evict > 0) {
+                List<E> removed = new ArrayList<>(evict);
+                for (int i = size - evict; i < size; i++) {
+                    removed.add(get(i));
+                    elements[physical(i)] = null;
+                }
+                size -= evict;
+                nextRemove(size, removed);
+            }
+            for (int i = incoming.size() - 1; i >= 0; i--) {
+                head = (head - 1 + elements.length) % elements.length;
+                elements[head] = incoming.get(i);
+                size++;
+            }
+            nextAdd(0, incoming.size());
+        } finally {
+            endChange();
+        }
+        return incoming.size();
+    }
+
+    @Override
+    public boolean setAll(Collection<? extends E> replacement) {
+        List<? extends E> incoming = tail(replacement, elements.length);
+        beginChange();
+        try {
+            if (size > 0) {
+                nextRemove(0, drainAll());
+            }
+            for (E element : incoming) {
+                elements[physical(size)] = element;
+                size++;
+            }
+            if (size > 0) {
+                nextAdd(0, size);
+            }
+        } finally {
+            endChange();
+        }
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        beginChange();
+        try {
+            nextRemove(0, drainAll());
+        } finally {
+            endChange();
+        }
+    }
+
+    private List<E> drainAll() {
+        List<E> removed = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            removed.add(get(i));
+            elements[physical(i)] = null;
+        }
+        head = 0;
+        size = 0;
+        return removed;
+    }
+
+    private int physical(int index) {
+        return (head + index) % elements.length;
+    }
+
+    // Only the newest capacity elements of an oversized batch can ever be visible
+    private static <T> List<? extends T> tail(Collection<? extends T> source, int max) {
+        List<? extends T> list = source instanceof List ? (List<? extends T>) source : new ArrayList<>(source);
+        return list.size() <= max ? list : list.subList(list.size() - max, list.size());
+    }
+}
@@ -0,0 +1,74 @@
+package com.networkanalyzer.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import com.networkanalyzer.util.MpscRingBuffer;
+
+import javafx.animation.AnimationTimer;
+
+// Pulls whatever the capture threads queued since the last frame and applies it to the
+// view in one batch. Runs on the FX pulse, throttled to maxFps, so the FX event queue never
+// sees more than one update per frame no matter how fast packets arrive.
+class UiRefresher<T> extends AnimationTimer {
+    private final MpscRingBuffer<T> queue;
+    private final Consumer<List<T>> batchHandler;
+    private final int maxBatch;
+    private final List<T> batch;
+    private long minFrameIntervalNanos;
+    private long lastFrame;
+
+    UiRefresher(MpscRingBuffer<T> queue, int maxFps, int maxBatch, Consumer<List<T>> batchHandler) {
+        this.queue = queue;
+        this.batchHandler = batchHandler;
+        this.maxBatch = maxBatch;
+        this.batch = new ArrayList<>(Math.min(maxBatch, 4096));
+        setMaxFps(maxFps);
+    }
+
+    final void setMaxFps(int maxFps) {
+        this.minFrameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxFps);
+    }
+
+    @Override
+    public void handle(long now) {
+        if (now - lastFrame < minFrameIntervalNanos) {
+            return;
+        }
+        lastFrame = now;
+        flush();
+    }
+
+    // Applies up to one batch of what is queued
+    void flush() {
+        flush(maxBatch);
+    }
+
+    // After stop(): applies what was queued at the time of the call, in batches. Bounded, so a
+    // producer still offering can't keep the FX thread here; later packets stay in the queue.
+    void flushQueued() {
+        for (int remaining = queue.size(); remaining > 0; ) {
+            int applied = flush(Math.min(remaining, maxBatch));
+            if (applied == 0) {
+                return;
+            }
+            remaining -= applied;
+        }
+    }
+
+    private int flush(int limit) {
+        queue.drain(batch::add, limit);
+        int applied = batch.size();
+        if (applied == 0) {
+            return 0;
+        }
+        try {
+            batchHandler.accept(batch);
+        } finally {
+            batch.clear();
+        }
+        return applied;
+    }
+}
@@ -0,0 +1,331 @@
+package com.networkanalyzer.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+// Allocation-free header decoder for raw link-layer frames.
+// Reads Ethernet (with stacked VLAN tags), Linux cooked, BSD loopback and raw IP framing,
+// then IPv4/IPv6 and TCP/UDP/ICMP headers straight out of the buffer at fixed offsets.
+// One instance is meant to be owned by a single capture thread and reused for every
+// frame: decode() overwrites the fields below and the getters just read them back.
+public final class FrameDecoder {
+    // Link types (pcap LINKTYPE_* values)
+    public static final int LINKTYPE_NULL = 0;
+    public static final int LINKTYPE_ETHERNET = 1;
+    public static final int LINKTYPE_RAW = 101;
+    public static final int LINKTYPE_LINUX_SLL = 113;
+    public static final int LINKTYPE_IPV4 = 228;
+    public static final int LINKTYPE_IPV6 = 229;
+    // DLT_RAW is 12 on most platforms and 14 on OpenBSD; pcap4j reports the DLT value
+    private static final int DLT_RAW = 12;
+    private static final int DLT_RAW_OPENBSD = 14;
+
+    // EtherTypes
+    private static final int ETHERTYPE_IPV4 = 0x0800;
+    private static final int ETHERTYPE_IPV6 = 0x86DD;
+    private static final int ETHERTYPE_VLAN = 0x8100;
+    private static final int ETHERTYPE_QINQ = 0x88A8;
+    private static final int ETHERTYPE_QINQ_OLD = 0x9100;
+
+    // IP protocol numbers
+    public static final int IPPROTO_ICMP = 1;
+    public static final int IPPROTO_TCP = 6;
+    public static final int IPPROTO_UDP = 17;
+    public static final int IPPROTO_ICMPV6 = 58;
+    private static final int IPPROTO_HOPOPTS = 0;
+    private static final int IPPROTO_ROUTING = 43;
+    private static final int IPPROTO_FRAGMENT = 44;
+    private static final int IPPROTO_AH = 51;
+    private static final int IPPROTO_NONE = 59;
+    private static final int IPPROTO_DSTOPTS = 60;
+
+    private static final int MAX_VLAN_TAGS = 4;
+    private static final int MAX_IPV6_EXTENSIONS = 8;
+
+    // Decoded fields of the last frame
+    private int ipVersion;
+    private int srcV4;
+    private int dstV4;
+    private long srcV6Hi;
+    private long srcV6Lo;
+    private long dstV6Hi;
+    private long dstV6Lo;
+    private int ipProtocol;
+    private boolean fragment;
+    private int srcPort;
+    private int dstPort;
+    private int tcpFlags;
+    private int icmpType;
+    private int icmpCode;
+    private int payloadOffset;
+    private int payloadLength;
+    private int frameLength;
+
+    // Decodes the frame at [offset, offset + length) using absolute reads, so the buffer's
+    // position, limit and byte order are left untouched. Returns false for anything that
+    // isn't IPv4/IPv6 or is too short to carry the headers it claims to have.
+    public boolean decode(ByteBuffer frame, int offset, int length, int linkType) {
+        reset(length);
+        int end = offset + length;
+
+        int ipOffset;
+        int etherType;
+        switch (linkType) {
+            case LINKTYPE_ETHERNET -> {
+                if (length < 14) return false;
+                etherType = u16(frame, offset + 12);
+                ipOffset = offset + 14;
+            }
+            case LINKTYPE_LINUX_SLL -> {
+                if (length < 16) return false;
+                etherType = u16(frame, offset + 14);
+                ipOffset = offset + 16;
+            }
+            case LINKTYPE_NULL -> {
+                // 4-byte address family in host byte order of the capturing machine
+                if (length < 5) return false;
+                etherType = etherTypeFromVersion(frame, offset + 4);
+                ipOffset = offset + 4;
+            }
+            case LINKTYPE_RAW, DLT_RAW, DLT_RAW_OPENBSD, LINKTYPE_IPV4, LINKTYPE_IPV6 -> {
+                if (length < 1) return false;
+                etherType = etherTypeFromVersion(frame, offset);
+                ipOffset = offset;
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        // Skip 802.1Q / 802.1ad tags
+        for (int tags = 0; isVlan(etherType) && tags < MAX_VLAN_TAGS; tags++) {
+            if (ipOffset + 4 > end) return false;
+            etherType = u16(frame, ipOffset + 2);
+            ipOffset += 4;
+        }
+
+        if (etherType == ETHERTYPE_IPV4) {
+            return decodeIpV4(frame, ipOffset, end);
+        }
+        if (etherType == ETHERTYPE_IPV6) {
+            return decodeIpV6(frame, ipOffset, end);
+        }
+        return false;
+    }
+
+    public boolean decode(ByteBuffer frame, int linkType) {
+        return decode(frame, frame.position(), frame.remaining(), linkType);
+    }
+
+    private boolean decodeIpV4(ByteBuffer frame, int off, int end) {
+        if (off + 20 > end) return false;
+        int versionIhl = u8(frame, off);
+        if ((versionIhl >>> 4) != 4) return false;
+        int headerLength = (versionIhl & 0x0F) * 4;
+        if (headerLength < 20 || off + headerLength > end) return false;
+
+        // Trust the IP total length over the captured length, except for truncated captures
+        int totalLength = u16(frame, off + 2);
+        int ipEnd = totalLength >= headerLength ? Math.min(end, off + totalLength) : end;
+
+        ipVersion = 4;
+        int flagsFragment = u16(frame, off + 6);
+        fragment = (flagsFragment & 0x1FFF) != 0;
+        ipProtocol = u8(frame, off + 9);
+        srcV4 = u32(frame, off + 12);
+        dstV4 = u32(frame, off + 16);
+
+        // Only the first fragment carries the transport header
+        if (!fragment) {
+            decodeTransport(frame, off + headerLength, ipEnd);
+        }
+        return true;
+    }
+
+    private boolean decodeIpV6(ByteBuffer frame, int off, int end) {
+        if (off + 40 > end) return false;
+        if ((u8(frame, off) >>> 4) != 6) return false;
+
+        ipVersion = 6;
+        int payloadLen = u16(frame, off + 4);
+        int ipEnd = payloadLen > 0 ? Math.min(end, off + 40 + payloadLen) : end;
+        srcV6Hi = u64(frame, off + 8);
+        srcV6Lo = u64(frame, off + 16);
+        dstV6Hi = u64(frame, off + 24);
+        dstV6Lo = u64(frame, off + 32);
+
+        int next = u8(frame, off + 6);
+        int pos = off + 40;
+        for (int i = 0; i < MAX_IPV6_EXTENSIONS; i++) {
+            if (next == IPPROTO_HOPOPTS || next == IPPROTO_ROUTING || next == IPPROTO_DSTOPTS) {
+                if (pos + 8 > ipEnd) break;
+                next = u8(frame, pos);
+                pos += (u8(frame, pos + 1) + 1) * 8;
+            } else if (next == IPPROTO_FRAGMENT) {
+                if (pos + 8 > ipEnd) break;
+                fragment = (u16(frame, pos + 2) & 0xFFF8) != 0;
+                next = u8(frame, pos);
+                pos += 8;
+            } else if (next == IPPROTO_AH) {
+                if (pos + 8 > ipEnd) break;
+                next = u8(frame, pos);
+                pos += (u8(frame, pos + 1) + 2) * 4;
+            } else {
+                break;
+            }
+        }
+        ipProtocol = next;
+
+        if (!fragment && next != IPPROTO_NONE) {
+            decodeTransport(frame, pos, ipEnd);
+        }
+        return true;
+    }
+
+    private void decodeTransport(ByteBuffer frame, int off, int end) {
+        switch (ipProtocol) {
+            case IPPROTO_TCP -> {
+                if (off + 20 > end) return;
+                srcPort = u16(frame, off);
+                dstPort = u16(frame, off + 2);
+                int dataOffset = (u8(frame, off + 12) >>> 4) * 4;
+                tcpFlags = u8(frame, off + 13);
+                setPayload(off + Math.max(dataOffset, 20), end);
+            }
+            case IPPROTO_UDP -> {
+                if (off + 8 > end) return;
+                srcPort = u16(frame, off);
+                dstPort = u16(frame, off + 2);
+                setPayload(off + 8, end);
+            }
+            case IPPROTO_ICMP, IPPROTO_ICMPV6 -> {
+                if (off + 4 > end) return;
+                icmpType = u8(frame, off);
+                icmpCode = u8(frame, off + 1);
+                setPayload(off + 4, end);
+            }
+            default -> setPayload(off, end);
+        }
+    }
+
+    private void setPayload(int off, int end) {
+        payloadOffset = off;
+        payloadLength = Math.max(0, end - off);
+    }
+
+    private void reset(int length) {
+        ipVersion = 0;
+        srcV4 = dstV4 = 0;
+        srcV6Hi = srcV6Lo = dstV6Hi = dstV6Lo = 0;
+        ipProtocol = -1;
+        fragment = false;
+        srcPort = dstPort = 0;
+        tcpFlags = 0;
+        icmpType = icmpCode = -1;
+        payloadOffset = payloadLength = 0;
+        frameLength = length;
+    }
+
+    private static boolean isVlan(int etherType) {
+        return etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ || etherType == ETHERTYPE_QINQ_OLD;
+    }
+
+    // Raw IP and loopback framing carry no EtherType; the IP version nibble tells us
+    private static int etherTypeFromVersion(ByteBuffer frame, int off) {
+        return switch (u8(frame, off) >>> 4) {
+            case 4 -> ETHERTYPE_IPV4;
+            case 6 -> ETHERTYPE_IPV6;
+            default -> -1;
+        };
+    }
+
+    // Byte-wise reads so the result is network order regardless of the buffer's order
+    private static int u8(ByteBuffer b, int i) {
+        return b.get(i) & 0xFF;
+    }
+
+    private static int u16(ByteBuffer b, int i) {
+        return (b.get(i) & 0xFF) << 8 | (b.get(i + 1) & 0xFF);
+    }
+
+    private static int u32(ByteBuffer b, int i) {
+        int v = b.getInt(i);
+        return b.order() == ByteOrder.BIG_ENDIAN ? v : Integer.reverseBytes(v);
+    }
+
+    private static long u64(ByteBuffer b, int i) {
+        long v = b.getLong(i);
+        return b.order() == ByteOrder.BIG_ENDIAN ? v : Long.reverseBytes(v);
+    }
+
+    // Getters for the last decoded frame
+    public int getIpVersion() { return ipVersion; }
+    public boolean isIpV4() { return ipVersion == 4; }
+    public boolean isIpV6() { return ipVersion == 6; }
+    public int getSrcV4() { return srcV4; }
+    public int getDstV4() { return dstV4; }
+    public long getSrcV6Hi() { return srcV6Hi; }
+    public long getSrcV6Lo() { return srcV6Lo; }
+    public long getDstV6Hi() { return dstV6Hi; }
+    public long getDstV6Lo() { return dstV6Lo; }
+    public int getIpProtocol() { return ipProtocol; }
+    public boolean isFragment() { return fragment; }
+    public int getSrcPort() { return srcPort; }
+    public int getDstPort() { return dstPort; }
+    public int getTcpFlags() { return tcpFlags; }
+    public int getIcmpType() { return icmpType; }
+    public int getIcmpCode() { return icmpCode; }
+    public int getPayloadOffset() { return payloadOffset; }
+    public int getPayloadLength() { return payloadLength; }
+    public int getFrameLength() { return frameLength; }
+
+    // Hash of the 5-tuple of the last frame that is the same for both directions, so a flow and
+    // its replies always land on the same shard. Non-first fragments carry no ports and may
+    // hash elsewhere than the first one.
+    public int flowHash() {
+        return ipVersion == 6
+            ? flowHash(srcV6Hi, srcV6Lo, srcPort, dstV6Hi, dstV6Lo, dstPort, ipProtocol)
+            : flowHash(0, srcV4 & 0xFFFFFFFFL, srcPort, 0, dstV4 & 0xFFFFFFFFL, dstPort, ipProtocol);
+    }
+
+    // Same hash from stored endpoints; IPv4 addresses go in the low word with hi = 0
+    public static int flowHash(long srcHi, long srcLo, int srcPort, long dstHi, long dstLo, int dstPort, int ipProtocol) {
+        long source = endpointHash(srcHi, srcLo, srcPort);
+        long destination = endpointHash(dstHi, dstLo, dstPort);
+        long h = Math.min(source, destination) * 0x9E3779B97F4A7C15L + Math.max(source, destination) + ipProtocol;
+        return (int) (mix(h) >>> 32);
+    }
+
+    private static long endpointHash(long hi, long lo, int port) {
+        return mix(hi ^ Long.rotateLeft(lo, 21) ^ ((long) port << 48));
+    }
+
+    // MurmurHash3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    public String formatSourceIp() {
+        return ipVersion == 4 ? IpAddresses.formatV4(srcV4) : IpAddresses.formatV6(srcV6Hi, srcV6Lo);
+    }
+
+    public String formatDestinationIp() {
+        return ipVersion == 4 ? IpAddresses.formatV4(dstV4) : IpAddresses.formatV6(dstV6Hi, dstV6Lo);
+    }
+
+    // Snapshot of the decoded addresses; size is the wire length, which may exceed a truncated capture
+    public PacketData toPacketData(long timestampNanos, Protocol protocol, int size) {
+        return ipVersion == 4
+            ? PacketData.ofV4(timestampNanos, srcV4, dstV4, protocol, size)
+            : PacketData.ofV6(timestampNanos, srcV6Hi, srcV6Lo, dstV6Hi, dstV6Lo, protocol, size);
+    }
+}
@@ -0,0 +1,189 @@
+package com.networkanalyzer.decoder;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import com.networkanalyzer.model.Protocol;
+
+// Header-driven protocol classifier.
+// Classification goes IP protocol number -> well-known port table -> payload heuristics,
+// all from values the FrameDecoder already extracted. The port tables are flat arrays
+// indexed by port number and the heuristics only peek at a few payload bytes, so
+// classify() allocates nothing. Add ports or heuristics with the register methods
+// before handing the classifier to capture threads; after that it is read-only.
+public final class ProtocolClassifier {
+
+    // Looks at the first bytes of a transport payload and names the application protocol,
+    // or returns null when it doesn't recognise it
+    @FunctionalInterface
+    public interface PayloadHeuristic {
+        Protocol match(ByteBuffer frame, int offset, int length);
+    }
+
+    private static final byte UNKNOWN = -1;
+
+    private final byte[] tcpPorts = new byte[65536];
+    private final byte[] udpPorts = new byte[65536];
+    private PayloadHeuristic[] tcpHeuristics = new PayloadHeuristic[0];
+    private PayloadHeuristic[] udpHeuristics = new PayloadHeuristic[0];
+
+    public ProtocolClassifier() {
+        Arrays.fill(tcpPorts, UNKNOWN);
+        Arrays.fill(udpPorts, UNKNOWN);
+    }
+
+    public static ProtocolClassifier withDefaults() {
+        ProtocolClassifier classifier = new ProtocolClassifier();
+        classifier.registerTcpPort(80, Protocol.HTTP);
+        classifier.registerTcpPort(8080, Protocol.HTTP);
+        classifier.registerTcpPort(8000, Protocol.HTTP);
+        classifier.registerTcpPort(443, Protocol.HTTPS);
+        classifier.registerTcpPort(8443, Protocol.HTTPS);
+        classifier.registerTcpPort(53, Protocol.DNS);
+        classifier.registerUdpPort(53, Protocol.DNS);
+        classifier.registerUdpPort(5353, Protocol.DNS);
+        classifier.registerUdpPort(443, Protocol.QUIC);
+
+        // Payload checks catch the same protocols on non-standard ports
+        classifier.registerTcpHeuristic(ProtocolClassifier::matchTlsRecord);
+        classifier.registerTcpHeuristic(ProtocolClassifier::matchHttp);
+        classifier.registerUdpHeuristic(ProtocolClassifier::matchQuicLongHeader);
+        return classifier;
+    }
+
+    public void registerTcpPort(int port, Protocol protocol) {
+        tcpPorts[port] = protocol.code();
+    }
+
+    public void registerUdpPort(int port, Protocol protocol) {
+        udpPorts[port] = protocol.code();
+    }
+
+    // Ports registered for a protocol, ascending; what a port-based capture filter can select
+    public int[] tcpPortsFor(Protocol protocol) {
+        return portsFor(tcpPorts, protocol);
+    }
+
+    public int[] udpPortsFor(Protocol protocol) {
+        return portsFor(udpPorts, protocol);
+    }
+
+    private static int[] portsFor(byte[] table, Protocol protocol) {
+        int count = 0;
+        int[] ports = new int[8];
+        for (int port = 0; port < table.length; port++) {
+            if (table[port] == protocol.code()) {
+                if (count == ports.length) {
+                    ports = Arrays.copyOf(ports, count * 2);
+                }
+                ports[count++] = port;
+            }
+        }
+        return Arrays.copyOf(ports, count);
+    }
+
+    public void registerTcpHeuristic(PayloadHeuristic heuristic) {
+        tcpHeuristics = append(tcpHeuristics, heuristic);
+    }
+
+    public void registerUdpHeuristic(PayloadHeuristic heuristic) {
+        udpHeuristics = append(udpHeuristics, heuristic);
+    }
+
+    public Protocol classify(FrameDecoder decoder, ByteBuffer frame) {
+        return classify(decoder.getIpProtocol(), decoder.getSrcPort(), decoder.getDstPort(),
+            frame, decoder.getPayloadOffset(), decoder.getPayloadLength());
+    }
+
+    public Protocol classify(int ipProtocol, int srcPort, int dstPort, ByteBuffer frame, int payloadOffset, int payloadLength) {
+        switch (ipProtocol) {
+            case FrameDecoder.IPPROTO_TCP:
+                return classifyTransport(Protocol.TCP, tcpPorts, tcpHeuristics, srcPort, dstPort, frame, payloadOffset, payloadLength);
+            case FrameDecoder.IPPROTO_UDP:
+                return classifyTransport(Protocol.UDP, udpPorts, udpHeuristics, srcPort, dstPort, frame, payloadOffset, payloadLength);
+            case FrameDecoder.IPPROTO_ICMP:
+            case FrameDecoder.IPPROTO_ICMPV6:
+                return Protocol.ICMP;
+            default:
+                return Protocol.OTHER;
+        }
+    }
+
+    private static Protocol classifyTransport(Protocol transport, byte[] ports, PayloadHeuristic[] heuristics,
+                                              int srcPort, int dstPort, ByteBuffer frame, int offset, int length) {
+        // The lower port is usually the server side, so it gets the first say
+        int first = Math.min(srcPort, dstPort);
+        int second = Math.max(srcPort, dstPort);
+        byte code = ports[first];
+        if (code == UNKNOWN) {
+            code = ports[second];
+        }
+        if (code != UNKNOWN) {
+            return Protocol.fromCode(code);
+        }
+
+        if (frame != null && length > 0) {
+            for (PayloadHeuristic heuristic : heuristics) {
+                Protocol match = heuristic.match(frame, offset, length);
+                if (match != null) {
+                    return match;
+                }
+            }
+        }
+        return transport;
+    }
+
+    // TLS record: content type handshake(22)/application data(23), version 3.x
+    static Protocol matchTlsRecord(ByteBuffer frame, int offset, int length) {
+        if (length < 5) return null;
+        int contentType = frame.get(offset) & 0xFF;
+        int major = frame.get(offset + 1) & 0xFF;
+        int minor = frame.get(offset + 2) & 0xFF;
+        if ((contentType == 22 || contentType == 23) && major == 3 && minor <= 4) {
+            return Protocol.HTTPS;
+        }
+        return null;
+    }
+
+    // HTTP/1.x request line or status line
+    static Protocol matchHttp(ByteBuffer frame, int offset, int length) {
+        if (length < 4) return null;
+        int word = (frame.get(offset) & 0xFF) << 24 | (frame.get(offset + 1) & 0xFF) << 16
+                 | (frame.get(offset + 2) & 0xFF) << 8 | (frame.get(offset + 3) & 0xFF);
+        switch (word) {
+            case 0x47455420: // "GET "
+            case 0x504F5354: // "POST"
+            case 0x48454144: // "HEAD"
+            case 0x50555420: // "PUT "
+            case 0x44454C45: // "DELE"
+            case 0x4F505449: // "OPTI"
+            case 0x50415443: // "PATC"
+            case 0x48545450: // "HTTP"
+                return Protocol.HTTP;
+            default:
+                return null;
+        }
+    }
+
+    // QUIC long header: form and fixed bits set, followed by a known version
+    static Protocol matchQuicLongHeader(ByteBuffer frame, int offset, int length) {
+        if (length < 5) return null;
+        if ((frame.get(offset) & 0xC0) != 0xC0) return null;
+        int version = frame.getInt(offset + 1);
+        if (frame.order() != ByteOrder.BIG_ENDIAN) {
+            version = Integer.reverseBytes(version);
+        }
+        // v1, v2, and the 0xff0000xx IETF drafts
+        if (version == 0x00000001 || version == 0x6B3343CF || (version & 0xFFFFFF00) == 0xFF000000) {
+            return Protocol.QUIC;
+        }
+        return null;
+    }
+
+    private static PayloadHeuristic[] append(PayloadHeuristic[] heuristics, PayloadHeuristic heuristic) {
+        PayloadHeuristic[] copy = Arrays.copyOf(heuristics, heuristics.length + 1);
+        copy[heuristics.length] = heuristic;
+        return copy;
+    }
+}
@@ -0,0 +1,49 @@
+package com.networkanalyzer.flow;
+
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.Protocol;
+
+// One exported conversation (or, for long-lived ones, one active-timeout slice of it).
+// The client is the side that started the flow, as far as we could tell: the sender of a
+// bare SYN, otherwise the sender of the first packet seen. "Out" counts client -> server.
+public record FlowRecord(long firstSeenNanos, long lastSeenNanos, int ipVersion,
+                         long clientHi, long clientLo, int clientPort,
+                         long serverHi, long serverLo, int serverPort,
+                         int ipProtocol, Protocol protocol,
+                         long packetsOut, long bytesOut, long packetsIn, long bytesIn,
+                         int tcpFlagsOut, int tcpFlagsIn, EndReason endReason) {
+
+    public enum EndReason {
+        IDLE(1), ACTIVE_TIMEOUT(2), TCP_CLOSED(3), EVICTED(4), SHUTDOWN(5);
+
+        private final int code;
+
+        EndReason(int code) {
+            this.code = code;
+        }
+
+        public int code() { return code; }
+    }
+
+    public long packets() {
+        return packetsOut + packetsIn;
+    }
+
+    public long bytes() {
+        return bytesOut + bytesIn;
+    }
+
+    public String formatClient() {
+        return ipVersion == 4 ? IpAddresses.formatV4((int) clientLo) : IpAddresses.formatV6(clientHi, clientLo);
+    }
+
+    public String formatServer() {
+        return ipVersion == 4 ? IpAddresses.formatV4((int) serverLo) : IpAddresses.formatV6(serverHi, serverLo);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s:%d -> %s:%d %,d/%,d pkts %,d/%,d bytes (%s)", protocol.label(), formatClient(), clientPort,
+            formatServer(), serverPort, packetsOut, packetsIn, bytesOut, bytesIn, endReason);
+    }
+}
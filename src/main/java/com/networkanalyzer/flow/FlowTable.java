@@ -0,0 +1,357 @@
+package com.networkanalyzer.flow;
+
+import java.util.function.Consumer;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.model.Protocol;
+
+// Bidirectional 5-tuple flow table: packets, bytes, first/last seen and TCP flags per
+// conversation, exported as FlowRecords when a flow ends.
+//
+// Open addressing with linear probing over parallel primitive arrays, so an update is a hash,
+// a short probe and a few array writes with no allocation (HashMap<String, ...> would build
+// a key string and a boxed entry per packet). Both directions share one entry: endpoints are
+// stored in canonical order (A = the smaller of (address, port)) and counters are kept per
+// direction. Removal uses backward-shift deletion, so there are no tombstones to clean up.
+//
+// A flow ends when it has been idle for idleTimeout, when a TCP connection was closed (FIN
+// both ways, or RST) and stayed quiet for a short grace period, or when the table is full and
+// it is the stalest entry near a new flow. Flows that stay busy are exported every
+// activeTimeout and keep going with fresh counters.
+//
+// Not thread-safe; every pipeline shard owns one, and the shard hash guarantees a flow is
+// only ever seen by one shard.
+public final class FlowTable {
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int EVICTION_PROBES = 16;
+    private static final long CLOSE_GRACE_NANOS = 2_000_000_000L;
+
+    private static final int TCP_FIN = 0x01;
+    private static final int TCP_SYN = 0x02;
+    private static final int TCP_RST = 0x04;
+    private static final int TCP_ACK = 0x10;
+
+    // meta bits
+    private static final int USED = 1 << 30;
+    private static final int CLIENT_IS_A = 1 << 24;
+    private static final int FIN_A = 1 << 25;
+    private static final int FIN_B = 1 << 26;
+    private static final int RESET = 1 << 27;
+
+    private final int maxFlows;
+    private final long idleTimeoutNanos;
+    private final long activeTimeoutNanos;
+
+    private int capacity;
+    private int mask;
+    private int shift;
+    private int size;
+    private long evicted;
+
+    // Key: version (bits 0-3) | ip protocol (8-15), plus the flag bits above
+    private int[] meta;
+    private int[] hashes;
+    private long[] aHi;
+    private long[] aLo;
+    private long[] bHi;
+    private long[] bLo;
+    // A port << 16 | B port
+    private int[] ports;
+    // Values; A->B and B->A counters, flags A in bits 0-7 and B in 8-15
+    private byte[] protocols;
+    private long[] first;
+    private long[] last;
+    private long[] packetsA;
+    private long[] bytesA;
+    private long[] packetsB;
+    private long[] bytesB;
+    private int[] tcpFlags;
+
+    public FlowTable(int maxFlows, long idleTimeoutNanos, long activeTimeoutNanos) {
+        if (maxFlows <= 0) {
+            throw new IllegalArgumentException("Flow table size must be positive: " + maxFlows);
+        }
+        this.maxFlows = maxFlows;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.activeTimeoutNanos = activeTimeoutNanos;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        shift = Integer.numberOfLeadingZeros(newCapacity) + 1;
+        meta = new int[newCapacity];
+        hashes = new int[newCapacity];
+        aHi = new long[newCapacity];
+        aLo = new long[newCapacity];
+        bHi = new long[newCapacity];
+        bLo = new long[newCapacity];
+        ports = new int[newCapacity];
+        protocols = new byte[newCapacity];
+        first = new long[newCapacity];
+        last = new long[newCapacity];
+        packetsA = new long[newCapacity];
+        bytesA = new long[newCapacity];
+        packetsB = new long[newCapacity];
+        bytesB = new long[newCapacity];
+        tcpFlags = new int[newCapacity];
+    }
+
+    // Accounts the frame the decoder just decoded. A flow pushed out to make room goes to export.
+    public void update(FrameDecoder decoder, Protocol protocol, long timestampNanos, int bytes, Consumer<FlowRecord> export) {
+        int version = decoder.getIpVersion();
+        long srcHi = version == 6 ? decoder.getSrcV6Hi() : 0;
+        long srcLo = version == 6 ? decoder.getSrcV6Lo() : decoder.getSrcV4() & 0xFFFFFFFFL;
+        long dstHi = version == 6 ? decoder.getDstV6Hi() : 0;
+        long dstLo = version == 6 ? decoder.getDstV6Lo() : decoder.getDstV4() & 0xFFFFFFFFL;
+        int srcPort = decoder.getSrcPort();
+        int dstPort = decoder.getDstPort();
+        int key = version | decoder.getIpProtocol() << 8;
+        int hash = decoder.flowHash();
+
+        boolean fromA = compare(srcHi, srcLo, srcPort, dstHi, dstLo, dstPort) <= 0;
+        long keyAHi = fromA ? srcHi : dstHi;
+        long keyALo = fromA ? srcLo : dstLo;
+        long keyBHi = fromA ? dstHi : srcHi;
+        long keyBLo = fromA ? dstLo : srcLo;
+        int keyPorts = fromA ? srcPort << 16 | dstPort : dstPort << 16 | srcPort;
+
+        int slot = find(hash, key, keyAHi, keyALo, keyBHi, keyBLo, keyPorts);
+        int flags = decoder.getIpProtocol() == FrameDecoder.IPPROTO_TCP ? decoder.getTcpFlags() : 0;
+        if (slot < 0) {
+            if (size >= maxFlows) {
+                evictNear(hash, export);
+            } else if (size + 1 > capacity - (capacity >>> 2) && capacity < Integer.highestOneBit(Integer.MAX_VALUE)) {
+                grow();
+            }
+            slot = ~find(hash, key, keyAHi, keyALo, keyBHi, keyBLo, keyPorts);
+            // A SYN-ACK as the first packet means we missed the SYN; its receiver is the client
+            boolean synAck = (flags & (TCP_SYN | TCP_ACK)) == (TCP_SYN | TCP_ACK);
+            meta[slot] = USED | key | (fromA != synAck ? CLIENT_IS_A : 0);
+            hashes[slot] = hash;
+            aHi[slot] = keyAHi;
+            aLo[slot] = keyALo;
+            bHi[slot] = keyBHi;
+            bLo[slot] = keyBLo;
+            ports[slot] = keyPorts;
+            protocols[slot] = protocol.code();
+            first[slot] = timestampNanos;
+            last[slot] = timestampNanos;
+            // The slot may still hold the counters of a flow removed from it
+            packetsA[slot] = bytesA[slot] = packetsB[slot] = bytesB[slot] = 0;
+            tcpFlags[slot] = 0;
+            size++;
+        } else if (packetsA[slot] + packetsB[slot] == 0) {
+            // First packet after an active-timeout export starts the next slice
+            first[slot] = timestampNanos;
+        }
+
+        last[slot] = Math.max(last[slot], timestampNanos);
+        if (fromA) {
+            packetsA[slot]++;
+            bytesA[slot] += bytes;
+            tcpFlags[slot] |= flags;
+        } else {
+            packetsB[slot]++;
+            bytesB[slot] += bytes;
+            tcpFlags[slot] |= flags << 8;
+        }
+        // Keep the most specific classification any packet of the flow got
+        if (protocol.transport() != protocol) {
+            protocols[slot] = protocol.code();
+        }
+        if ((flags & TCP_FIN) != 0) {
+            meta[slot] |= fromA ? FIN_A : FIN_B;
+        }
+        if ((flags & TCP_RST) != 0) {
+            meta[slot] |= RESET;
+        }
+    }
+
+    // Exports and removes every flow that ended by nowNanos; slices long-running ones
+    public void expire(long nowNanos, Consumer<FlowRecord> export) {
+        for (int slot = 0; slot < capacity; ) {
+            int m = meta[slot];
+            if ((m & USED) == 0) {
+                slot++;
+                continue;
+            }
+            long idle = nowNanos - last[slot];
+            boolean closed = (m & RESET) != 0 || (m & (FIN_A | FIN_B)) == (FIN_A | FIN_B);
+            if (closed && idle >= CLOSE_GRACE_NANOS) {
+                exportAndRemove(slot, FlowRecord.EndReason.TCP_CLOSED, export);
+            } else if (idle >= idleTimeoutNanos) {
+                exportAndRemove(slot, FlowRecord.EndReason.IDLE, export);
+            } else {
+                if (nowNanos - first[slot] >= activeTimeoutNanos && packetsA[slot] + packetsB[slot] > 0) {
+                    export.accept(toRecord(slot, FlowRecord.EndReason.ACTIVE_TIMEOUT));
+                    packetsA[slot] = bytesA[slot] = packetsB[slot] = bytesB[slot] = 0;
+                    tcpFlags[slot] = 0;
+                }
+                slot++;
+            }
+            // After a removal the slot holds whatever was shifted back into it; look again
+        }
+    }
+
+    // Exports everything, e.g. when capture stops
+    public void expireAll(Consumer<FlowRecord> export) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if ((meta[slot] & USED) != 0 && packetsA[slot] + packetsB[slot] > 0) {
+                export.accept(toRecord(slot, FlowRecord.EndReason.SHUTDOWN));
+            }
+        }
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getEvicted() {
+        return evicted;
+    }
+
+    // Slot of the flow, or ~(empty slot where it would go)
+    private int find(int hash, int key, long keyAHi, long keyALo, long keyBHi, long keyBLo, int keyPorts) {
+        for (int slot = home(hash); ; slot = (slot + 1) & mask) {
+            int m = meta[slot];
+            if ((m & USED) == 0) {
+                return ~slot;
+            }
+            if (hashes[slot] == hash && (m & 0xFFFF) == key && ports[slot] == keyPorts
+                    && aLo[slot] == keyALo && bLo[slot] == keyBLo && aHi[slot] == keyAHi && bHi[slot] == keyBHi) {
+                return slot;
+            }
+        }
+    }
+
+    // Fibonacci hashing: the shard already consumed the low bits of the hash
+    private int home(int hash) {
+        return (hash * 0x9E3779B9) >>> shift;
+    }
+
+    // Drops the least recently seen of the flows probing from the new flow's home slot (or the
+    // first flow after it, if that stretch happens to be empty)
+    private void evictNear(int hash, Consumer<FlowRecord> export) {
+        int victim = -1;
+        int slot = home(hash);
+        for (int probes = 0; probes < EVICTION_PROBES || victim < 0; probes++, slot = (slot + 1) & mask) {
+            if ((meta[slot] & USED) != 0 && (victim < 0 || last[slot] < last[victim])) {
+                victim = slot;
+            }
+        }
+        evicted++;
+        exportAndRemove(victim, FlowRecord.EndReason.EVICTED, export);
+    }
+
+    private void exportAndRemove(int slot, FlowRecord.EndReason reason, Consumer<FlowRecord> export) {
+        if (packetsA[slot] + packetsB[slot] > 0) {
+            export.accept(toRecord(slot, reason));
+        }
+        remove(slot);
+    }
+
+    // Backward-shift deletion: pull later entries of the probe run into the gap unless that
+    // would move them in front of their home slot
+    private void remove(int slot) {
+        int gap = slot;
+        for (int next = (gap + 1) & mask; (meta[next] & USED) != 0; next = (next + 1) & mask) {
+            int home = home(hashes[next]);
+            boolean homeInGap = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+            if (!homeInGap) {
+                move(next, gap);
+                gap = next;
+            }
+        }
+        meta[gap] = 0;
+        size--;
+    }
+
+    private void move(int from, int to) {
+        meta[to] = meta[from];
+        hashes[to] = hashes[from];
+        aHi[to] = aHi[from];
+        aLo[to] = aLo[from];
+        bHi[to] = bHi[from];
+        bLo[to] = bLo[from];
+        ports[to] = ports[from];
+        protocols[to] = protocols[from];
+        first[to] = first[from];
+        last[to] = last[from];
+        packetsA[to] = packetsA[from];
+        bytesA[to] = bytesA[from];
+        packetsB[to] = packetsB[from];
+        bytesB[to] = bytesB[from];
+        tcpFlags[to] = tcpFlags[from];
+    }
+
+    private void grow() {
+        int oldCapacity = capacity;
+        int[] oldMeta = meta;
+        int[] oldHashes = hashes;
+        long[] oldAHi = aHi, oldALo = aLo, oldBHi = bHi, oldBLo = bLo;
+        int[] oldPorts = ports;
+        byte[] oldProtocols = protocols;
+        long[] oldFirst = first, oldLast = last;
+        long[] oldPacketsA = packetsA, oldBytesA = bytesA, oldPacketsB = packetsB, oldBytesB = bytesB;
+        int[] oldTcpFlags = tcpFlags;
+
+        allocate(oldCapacity << 1);
+        for (int i = 0; i < oldCapacity; i++) {
+            if ((oldMeta[i] & USED) == 0) {
+                continue;
+            }
+            int slot = home(oldHashes[i]);
+            while ((meta[slot] & USED) != 0) {
+                slot = (slot + 1) & mask;
+            }
+            meta[slot] = oldMeta[i];
+            hashes[slot] = oldHashes[i];
+            aHi[slot] = oldAHi[i];
+            aLo[slot] = oldALo[i];
+            bHi[slot] = oldBHi[i];
+            bLo[slot] = oldBLo[i];
+            ports[slot] = oldPorts[i];
+            protocols[slot] = oldProtocols[i];
+            first[slot] = oldFirst[i];
+            last[slot] = oldLast[i];
+            packetsA[slot] = oldPacketsA[i];
+            bytesA[slot] = oldBytesA[i];
+            packetsB[slot] = oldPacketsB[i];
+            bytesB[slot] = oldBytesB[i];
+            tcpFlags[slot] = oldTcpFlags[i];
+        }
+    }
+
+    private FlowRecord toRecord(int slot, FlowRecord.EndReason reason) {
+        int m = meta[slot];
+        boolean clientIsA = (m & CLIENT_IS_A) != 0;
+        int portA = ports[slot] >>> 16;
+        int portB = ports[slot] & 0xFFFF;
+        int flagsA = tcpFlags[slot] & 0xFF;
+        int flagsB = tcpFlags[slot] >>> 8 & 0xFF;
+        return clientIsA
+            ? new FlowRecord(first[slot], last[slot], m & 0x0F, aHi[slot], aLo[slot], portA, bHi[slot], bLo[slot], portB,
+                m >>> 8 & 0xFF, Protocol.fromCode(protocols[slot]), packetsA[slot], bytesA[slot], packetsB[slot], bytesB[slot],
+                flagsA, flagsB, reason)
+            : new FlowRecord(first[slot], last[slot], m & 0x0F, bHi[slot], bLo[slot], portB, aHi[slot], aLo[slot], portA,
+                m >>> 8 & 0xFF, Protocol.fromCode(protocols[slot]), packetsB[slot], bytesB[slot], packetsA[slot], bytesA[slot],
+                flagsB, flagsA, reason);
+    }
+
+    // Unsigned (hi, lo, port) order
+    private static int compare(long hi1, long lo1, int port1, long hi2, long lo2, int port2) {
+        int c = Long.compareUnsigned(hi1, hi2);
+        if (c == 0) {
+            c = Long.compareUnsigned(lo1, lo2);
+        }
+        return c != 0 ? c : Integer.compare(port1, port2);
+    }
+}
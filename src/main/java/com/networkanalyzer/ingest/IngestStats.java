@@ -0,0 +1,25 @@
+package com.networkanalyzer.ingest;
+
+// Outcome of one file ingestion run. Throughput covers the whole run, decoding and delivery
+// to the consumers, so a slow consumer shows up here too.
+public record IngestStats(long bytes, long records, long packets, int chunks, long elapsedNanos, boolean cancelled) {
+    public double megabytesPerSecond() {
+        return elapsedNanos > 0 ? bytes / 1e6 / (elapsedNanos / 1e9) : 0;
+    }
+
+    public double packetsPerSecond() {
+        return elapsedNanos > 0 ? records / (elapsedNanos / 1e9) : 0;
+    }
+
+    // Records that weren't IP packets, or were too short to decode
+    public long skipped() {
+        return records - packets;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s%,d records (%,d IP packets, %.1f MB) in %d chunks, %.2f s: %.1f MB/s, %,.0f pps",
+            cancelled ? "CANCELLED after " : "", records, packets, bytes / 1e6, chunks, elapsedNanos / 1e9,
+            megabytesPerSecond(), packetsPerSecond());
+    }
+}
@@ -0,0 +1,557 @@
+package com.networkanalyzer.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+// Reads classic pcap and pcapng capture files through memory-mapped I/O.
+//
+// Opening the file runs one sequential pass over the record headers only (no frame bytes are
+// touched) and cuts the file into record-aligned chunks of about chunkBytes, noting the
+// earliest timestamp in each. ingest() then decodes the chunks in parallel on a fork-join
+// pool, each task with its own FrameDecoder, and hands the packets to the sink on the calling
+// thread in timestamp order.
+//
+// Files larger than 2 GB are mapped as several segments, each starting on a record boundary,
+// so no record or chunk ever straddles two mappings.
+public class PcapFileReader implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PcapFileReader.class);
+    public static final int DEFAULT_CHUNK_BYTES = Integer.getInteger("netlyzer.ingest.chunkBytes", 8 << 20);
+
+    private static final int PCAP_MAGIC_MICROS = 0xA1B2C3D4;
+    private static final int PCAP_MAGIC_NANOS = 0xA1B23C4D;
+    private static final int PCAP_HEADER_BYTES = 24;
+    private static final int PCAP_RECORD_HEADER_BYTES = 16;
+
+    private static final int PCAPNG_SECTION_HEADER = 0x0A0D0D0A;
+    private static final int PCAPNG_BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    private static final int PCAPNG_INTERFACE_DESCRIPTION = 1;
+    private static final int PCAPNG_OBSOLETE_PACKET = 2;
+    private static final int PCAPNG_SIMPLE_PACKET = 3;
+    private static final int PCAPNG_ENHANCED_PACKET = 6;
+    private static final int OPTION_IF_TSRESOL = 9;
+    private static final int OPTION_IF_TSOFFSET = 14;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Anything larger is treated as corruption rather than a frame
+    private static final int MAX_RECORD_BYTES = 16 << 20;
+    // Mappings are limited to the int range; stay well below it
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    // A pcap file is one section with one interface; pcapng sections carry their own byte
+    // order and interface table
+    private static final class Section {
+        final ByteOrder order;
+        final List<Interface> interfaces = new ArrayList<>();
+
+        Section(ByteOrder order) {
+            this.order = order;
+        }
+    }
+
+    private record Interface(int linkType, long unitsPerSecond, long offsetSeconds) { }
+
+    // inheritedTimestamp is the last record's before the chunk, for simple packet blocks
+    private record Chunk(int segment, int start, int end, Section section, int records,
+                         long minTimestamp, long inheritedTimestamp) { }
+
+    private record ChunkResult(PacketData[] packets, int count, long bytes, int records) { }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final int chunkBytes;
+    private final boolean pcapng;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<Chunk> chunks = new ArrayList<>();
+    // earliestFrom[i] is the earliest timestamp of chunk i or any chunk after it
+    private final long[] earliestFrom;
+    private volatile boolean cancelled;
+
+    // Index pass state
+    private long segmentBase;
+    private long chunkStart;
+    private int chunkRecords;
+    private long chunkMinTimestamp = Long.MAX_VALUE;
+    private long chunkInheritedTimestamp;
+    private long lastTimestamp;
+
+    public PcapFileReader(Path file) throws IOException {
+        this(file, DEFAULT_CHUNK_BYTES);
+    }
+
+    public PcapFileReader(Path file, int chunkBytes) throws IOException {
+        this.file = file;
+        this.chunkBytes = Math.max(64 * 1024, chunkBytes);
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.fileSize = channel.size();
+            if (fileSize < 12) {
+                throw new IOException("Not a capture file: " + file);
+            }
+            ByteBuffer first = mapSegment(0);
+            int magic = first.order(ByteOrder.BIG_ENDIAN).getInt(0);
+            this.pcapng = magic == PCAPNG_SECTION_HEADER;
+            if (pcapng) {
+                indexPcapng();
+            } else {
+                indexPcap(magic);
+            }
+            this.earliestFrom = new long[chunks.size() + 1];
+            earliestFrom[chunks.size()] = Long.MAX_VALUE;
+            for (int i = chunks.size() - 1; i >= 0; i--) {
+                earliestFrom[i] = Math.min(chunks.get(i).minTimestamp(), earliestFrom[i + 1]);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void indexPcap(int magic) throws IOException {
+        ByteOrder order;
+        if (magic == PCAP_MAGIC_MICROS || magic == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.BIG_ENDIAN;
+        } else if (Integer.reverseBytes(magic) == PCAP_MAGIC_MICROS || Integer.reverseBytes(magic) == PCAP_MAGIC_NANOS) {
+            order = ByteOrder.LITTLE_ENDIAN;
+            magic = Integer.reverseBytes(magic);
+        } else {
+            throw new IOException("Not a pcap or pcapng file: " + file);
+        }
+        if (fileSize < PCAP_HEADER_BYTES) {
+            throw new IOException("Truncated pcap header: " + file);
+        }
+        ByteBuffer header = segment().duplicate().order(order);
+        // The upper bits of the link type field carry FCS information
+        int linkType = header.getInt(20) & 0xFFFF;
+        Section section = new Section(order);
+        Interface iface = new Interface(linkType, magic == PCAP_MAGIC_NANOS ? NANOS_PER_SECOND : 1_000_000L, 0);
+        section.interfaces.add(iface);
+
+        long position = PCAP_HEADER_BYTES;
+        chunkStart = position;
+        while (position + PCAP_RECORD_HEADER_BYTES <= fileSize) {
+            ByteBuffer buffer = segmentFor(position, PCAP_RECORD_HEADER_BYTES, section);
+            int capturedLength = buffer.order(order).getInt((int) (position - segmentBase) + 8);
+            if (capturedLength < 0 || capturedLength > MAX_RECORD_BYTES) {
+                log.warn("corrupt pcap record, stopping there file={} offset={}", file, position);
+                break;
+            }
+            long recordEnd = position + PCAP_RECORD_HEADER_BYTES + capturedLength;
+            if (recordEnd > fileSize) {
+                // Truncated last record, e.g. a capture that is still being written
+                break;
+            }
+            buffer = segmentFor(position, (int) (recordEnd - position), section).order(order);
+            noteTimestamp(pcapTimestamp(buffer, (int) (position - segmentBase), iface));
+            position = recordEnd;
+            chunkRecords++;
+            if (position - chunkStart >= chunkBytes) {
+                closeChunk(position, section);
+            }
+        }
+        closeChunk(position, section);
+    }
+
+    private void indexPcapng() throws IOException {
+        Section section = null;
+        long position = 0;
+        chunkStart = position;
+        while (position + 12 <= fileSize) {
+            ByteBuffer buffer = segmentFor(position, 12, section);
+            int offset = (int) (position - segmentBase);
+            // The section header's type reads the same in either byte order
+            int type = buffer.order(ByteOrder.BIG_ENDIAN).getInt(offset);
+            if (type == PCAPNG_SECTION_HEADER) {
+                int byteOrderMagic = buffer.getInt(offset + 8);
+                ByteOrder order;
+                if (byteOrderMagic == PCAPNG_BYTE_ORDER_MAGIC) {
+                    order = ByteOrder.BIG_ENDIAN;
+                } else if (Integer.reverseBytes(byteOrderMagic) == PCAPNG_BYTE_ORDER_MAGIC) {
+                    order = ByteOrder.LITTLE_ENDIAN;
+                } else {
+                    log.warn("bad pcapng section header file={} offset={}", file, position);
+                    break;
+                }
+                // Chunks never span sections: interfaces and byte order change here
+                if (section != null) {
+                    closeChunk(position, section);
+                }
+                section = new Section(order);
+            } else if (section == null) {
+                throw new IOException("pcapng file does not start with a section header: " + file);
+            }
+
+            int totalLength = buffer.order(section.order).getInt(offset + 4);
+            if (totalLength < 12 || (totalLength & 3) != 0 || totalLength > MAX_RECORD_BYTES) {
+                log.warn("corrupt pcapng block, stopping there file={} offset={}", file, position);
+                break;
+            }
+            if (position + totalLength > fileSize) {
+                break;
+            }
+            buffer = segmentFor(position, totalLength, section).order(section.order);
+            offset = (int) (position - segmentBase);
+            // Re-read the type in the section's order
+            type = buffer.getInt(offset);
+
+            switch (type) {
+                case PCAPNG_INTERFACE_DESCRIPTION -> section.interfaces.add(readInterface(buffer, offset, totalLength));
+                case PCAPNG_ENHANCED_PACKET, PCAPNG_OBSOLETE_PACKET -> {
+                    Interface iface = packetInterface(buffer, offset, type, section);
+                    if (iface != null) {
+                        noteTimestamp(pcapngTimestamp(buffer, offset, iface));
+                    }
+                    chunkRecords++;
+                }
+                case PCAPNG_SIMPLE_PACKET -> {
+                    noteTimestamp(lastTimestamp);
+                    chunkRecords++;
+                }
+                default -> {
+                    // Statistics, name resolution and custom blocks carry no packets
+                }
+            }
+            position += totalLength;
+            if (position - chunkStart >= chunkBytes) {
+                closeChunk(position, section);
+            }
+        }
+        if (section != null) {
+            closeChunk(position, section);
+        }
+    }
+
+    private static Interface readInterface(ByteBuffer buffer, int offset, int totalLength) {
+        int linkType = buffer.getShort(offset + 8) & 0xFFFF;
+        long unitsPerSecond = 1_000_000L;
+        long offsetSeconds = 0;
+        int option = offset + 16;
+        int end = offset + totalLength - 4;
+        while (option + 4 <= end) {
+            int code = buffer.getShort(option) & 0xFFFF;
+            int length = buffer.getShort(option + 2) & 0xFFFF;
+            if (code == 0 || option + 4 + length > end) {
+                break;
+            }
+            if (code == OPTION_IF_TSRESOL && length >= 1) {
+                int resolution = buffer.get(option + 4) & 0xFF;
+                int exponent = resolution & 0x7F;
+                if ((resolution & 0x80) != 0) {
+                    unitsPerSecond = exponent < 63 ? 1L << exponent : Long.MAX_VALUE;
+                } else {
+                    unitsPerSecond = exponent <= 18 ? (long) Math.pow(10, exponent) : Long.MAX_VALUE;
+                }
+            } else if (code == OPTION_IF_TSOFFSET && length >= 8) {
+                offsetSeconds = buffer.getLong(option + 4);
+            }
+            option += 4 + ((length + 3) & ~3);
+        }
+        return new Interface(linkType, unitsPerSecond, offsetSeconds);
+    }
+
+    // The segment holding [position, position + length), mapping a new one at position if the
+    // current segment ends too early. A new segment always ends the current chunk.
+    private ByteBuffer segmentFor(long position, int length, Section section) throws IOException {
+        ByteBuffer current = segment();
+        if (position + length <= segmentBase + current.capacity()) {
+            return current;
+        }
+        if (section != null) {
+            closeChunk(position, section);
+        }
+        return mapSegment(position);
+    }
+
+    private ByteBuffer segment() {
+        return segments.get(segments.size() - 1);
+    }
+
+    private ByteBuffer mapSegment(long position) throws IOException {
+        long length = Math.min(SEGMENT_BYTES, fileSize - position);
+        segments.add(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+        segmentBase = position;
+        chunkStart = position;
+        return segment();
+    }
+
+    private void noteTimestamp(long timestamp) {
+        lastTimestamp = timestamp;
+        chunkMinTimestamp = Math.min(chunkMinTimestamp, timestamp);
+    }
+
+    private void closeChunk(long position, Section section) {
+        if (position > chunkStart && chunkRecords > 0) {
+            chunks.add(new Chunk(segments.size() - 1, (int) (chunkStart - segmentBase), (int) (position - segmentBase),
+                section, chunkRecords, chunkMinTimestamp, chunkInheritedTimestamp));
+        }
+        chunkStart = position;
+        chunkRecords = 0;
+        chunkMinTimestamp = Long.MAX_VALUE;
+        chunkInheritedTimestamp = lastTimestamp;
+    }
+
+    // Decodes every chunk on the pool and delivers the packets to the sink on this thread.
+    // At most two chunks per worker are decoded ahead of the sink.
+    //
+    // Packets come out in timestamp order, packets with equal timestamps in file order: each
+    // chunk is sorted and merged into the packets held back, and a held packet is released
+    // once the index pass shows no later chunk starts before it. An in-order file holds back
+    // little more than a chunk; memory grows with how far the file is out of order, up to the
+    // whole file when its last packet is its earliest.
+    public IngestStats ingest(ForkJoinPool pool, ProtocolClassifier classifier, Consumer<PacketData> sink) {
+        long started = System.nanoTime();
+        int window = Math.max(2, pool.getParallelism() * 2);
+        ArrayDeque<ForkJoinTask<ChunkResult>> inFlight = new ArrayDeque<>();
+        List<PacketData> carry = new ArrayList<>();
+        // carry before this index has gone to the sink
+        int emitted = 0;
+        long bytes = 0;
+        long records = 0;
+        long packets = 0;
+        int done = 0;
+        int next = 0;
+
+        while ((next < chunks.size() || !inFlight.isEmpty()) && !cancelled) {
+            while (next < chunks.size() && inFlight.size() < window) {
+                int index = next++;
+                inFlight.add(pool.submit(() -> decode(index, classifier)));
+            }
+            ChunkResult result = inFlight.poll().join();
+            bytes += result.bytes();
+            records += result.records();
+            packets += result.count();
+            done++;
+            if (result.count() > 0) {
+                carry = merge(carry.subList(emitted, carry.size()), result.packets(), result.count());
+                emitted = 0;
+            }
+
+            // Every chunk still to come starts after this, and ties come later in the file
+            long watermark = earliestFrom[done];
+            while (emitted < carry.size() && carry.get(emitted).getTimestampNanos() <= watermark && !cancelled) {
+                sink.accept(carry.get(emitted++));
+            }
+        }
+        while (emitted < carry.size() && !cancelled) {
+            sink.accept(carry.get(emitted++));
+        }
+        for (ForkJoinTask<ChunkResult> task : inFlight) {
+            task.cancel(true);
+        }
+        if (!cancelled) {
+            // The file header isn't part of any chunk
+            bytes = fileSize;
+        }
+        return new IngestStats(bytes, records, packets, done, System.nanoTime() - started, cancelled);
+    }
+
+    private static List<PacketData> merge(List<PacketData> carried, PacketData[] sorted, int count) {
+        List<PacketData> merged = new ArrayList<>(carried.size() + count);
+        int i = 0;
+        int j = 0;
+        while (i < carried.size() && j < count) {
+            merged.add(carried.get(i).getTimestampNanos() <= sorted[j].getTimestampNanos() ? carried.get(i++) : sorted[j++]);
+        }
+        while (i < carried.size()) {
+            merged.add(carried.get(i++));
+        }
+        while (j < count) {
+            merged.add(sorted[j++]);
+        }
+        return merged;
+    }
+
+    private ChunkResult decode(int index, ProtocolClassifier classifier) {
+        Chunk chunk = chunks.get(index);
+        RecordCursor records = new RecordCursor(index, index + 1);
+        FrameDecoder decoder = new FrameDecoder();
+        PacketData[] packets = new PacketData[chunk.records()];
+        int count = 0;
+        boolean sorted = true;
+        long previous = Long.MIN_VALUE;
+
+        while (records.next()) {
+            if (decoder.decode(records.buffer(), records.offset(), records.length(), records.linkType())) {
+                long timestamp = records.timestampNanos();
+                Protocol protocol = classifier.classify(decoder, records.buffer());
+                packets[count++] = decoder.toPacketData(timestamp, protocol, Math.max(records.wireLength(), records.length()));
+                sorted &= timestamp >= previous;
+                previous = Math.max(previous, timestamp);
+            }
+        }
+
+        if (!sorted) {
+            // Stable, so packets with equal timestamps keep their file order
+            Arrays.sort(packets, 0, count, Comparator.comparingLong(PacketData::getTimestampNanos));
+        }
+        return new ChunkResult(packets, count, chunk.end() - chunk.start(), chunk.records());
+    }
+
+    // Every record of the file in file order (not timestamp order), for replaying it frame by frame
+    public RecordCursor records() {
+        return new RecordCursor(0, chunks.size());
+    }
+
+    // Walks the packet records of a range of chunks. After next() returns true the frame is
+    // buffer()[offset(), offset() + length()); the buffer is only valid until the reader closes.
+    public final class RecordCursor {
+        private final int lastChunk;
+        private int nextChunk;
+        private Chunk chunk;
+        private ByteBuffer buffer;
+        private int position;
+        private int end;
+        private int offset;
+        private int length;
+        private int wireLength;
+        private int linkType;
+        private long timestamp;
+
+        private RecordCursor(int firstChunk, int lastChunk) {
+            this.nextChunk = firstChunk;
+            this.lastChunk = lastChunk;
+        }
+
+        public boolean next() {
+            while (!cancelled) {
+                if (chunk == null || position >= end) {
+                    if (nextChunk >= lastChunk) {
+                        return false;
+                    }
+                    chunk = chunks.get(nextChunk++);
+                    // Own view per cursor: position and order are per buffer object, the mapping is shared
+                    buffer = segments.get(chunk.segment()).duplicate().order(chunk.section().order);
+                    position = chunk.start();
+                    end = chunk.end();
+                    timestamp = chunk.inheritedTimestamp();
+                    continue;
+                }
+                if (read()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // The record at position, moving past it; false for blocks that carry no frame
+        private boolean read() {
+            List<Interface> interfaces = chunk.section().interfaces;
+            if (!pcapng) {
+                Interface iface = interfaces.get(0);
+                length = buffer.getInt(position + 8);
+                wireLength = buffer.getInt(position + 12);
+                timestamp = pcapTimestamp(buffer, position, iface);
+                linkType = iface.linkType();
+                offset = position + PCAP_RECORD_HEADER_BYTES;
+                position = offset + length;
+                return true;
+            }
+
+            int type = buffer.getInt(position);
+            int totalLength = buffer.getInt(position + 4);
+            int next = position + totalLength;
+            Interface iface;
+            if (type == PCAPNG_ENHANCED_PACKET || type == PCAPNG_OBSOLETE_PACKET) {
+                iface = packetInterface(buffer, position, type, chunk.section());
+                if (iface == null) {
+                    position = next;
+                    return false;
+                }
+                timestamp = pcapngTimestamp(buffer, position, iface);
+                length = buffer.getInt(position + 20);
+                wireLength = buffer.getInt(position + 24);
+                offset = position + 28;
+            } else if (type == PCAPNG_SIMPLE_PACKET && !interfaces.isEmpty()) {
+                // No timestamp in simple packet blocks; they inherit the previous packet's
+                iface = interfaces.get(0);
+                wireLength = buffer.getInt(position + 8);
+                offset = position + 12;
+                length = Math.min(wireLength, totalLength - 16);
+            } else {
+                position = next;
+                return false;
+            }
+            length = Math.max(0, Math.min(length, next - 4 - offset));
+            linkType = iface.linkType();
+            position = next;
+            return true;
+        }
+
+        public ByteBuffer buffer() { return buffer; }
+        public int offset() { return offset; }
+        public int length() { return length; }
+        public int wireLength() { return wireLength; }
+        public int linkType() { return linkType; }
+        public long timestampNanos() { return timestamp; }
+    }
+
+    private static long pcapTimestamp(ByteBuffer buffer, int position, Interface iface) {
+        long seconds = buffer.getInt(position) & 0xFFFFFFFFL;
+        long fraction = buffer.getInt(position + 4) & 0xFFFFFFFFL;
+        return seconds * NANOS_PER_SECOND + toNanos(fraction, iface.unitsPerSecond());
+    }
+
+    // The interface of an enhanced or obsolete packet block, null if the section has no such interface
+    private static Interface packetInterface(ByteBuffer buffer, int position, int type, Section section) {
+        int interfaceId = type == PCAPNG_ENHANCED_PACKET
+            ? buffer.getInt(position + 8)
+            : buffer.getShort(position + 8) & 0xFFFF;
+        return interfaceId >= 0 && interfaceId < section.interfaces.size() ? section.interfaces.get(interfaceId) : null;
+    }
+
+    private static long pcapngTimestamp(ByteBuffer buffer, int position, Interface iface) {
+        long units = ((buffer.getInt(position + 12) & 0xFFFFFFFFL) << 32) | (buffer.getInt(position + 16) & 0xFFFFFFFFL);
+        long perSecond = iface.unitsPerSecond();
+        long seconds = Long.divideUnsigned(units, perSecond) + iface.offsetSeconds();
+        return seconds * NANOS_PER_SECOND + toNanos(Long.remainderUnsigned(units, perSecond), perSecond);
+    }
+
+    // Sub-second units to nanoseconds
+    private static long toNanos(long fraction, long unitsPerSecond) {
+        if (unitsPerSecond == NANOS_PER_SECOND) {
+            return fraction;
+        }
+        if (unitsPerSecond < NANOS_PER_SECOND && NANOS_PER_SECOND % unitsPerSecond == 0) {
+            return fraction * (NANOS_PER_SECOND / unitsPerSecond);
+        }
+        return (long) ((double) fraction * NANOS_PER_SECOND / unitsPerSecond);
+    }
+
+    // Stops a running ingest(); the sink sees no packets after it returns
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public Path getFile() { return file; }
+    public long getFileSize() { return fileSize; }
+    public boolean isPcapng() { return pcapng; }
+    public int getChunkCount() { return chunks.size(); }
+
+    @Override
+    public void close() throws IOException {
+        cancelled = true;
+        // Mappings are released by the GC once no task references them
+        channel.close();
+    }
+}
@@ -0,0 +1,66 @@
+package com.networkanalyzer.loadgen;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.stats.LogHistogram;
+
+// Latency from a packet's timestamp to the moment it reached one stage (shown in the table,
+// stored), in microseconds. Load sources stamp packets when they make them, so this is end
+// to end; for live capture it would include the kernel's share. Thread-safe, one lock per batch.
+public final class LatencyProbe {
+    private static final long MAX_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final String stage;
+    private LogHistogram interval = new LogHistogram(MAX_MICROS);
+    private LogHistogram overall = new LogHistogram(MAX_MICROS);
+
+    public LatencyProbe(String stage) {
+        this.stage = stage;
+    }
+
+    public void record(PacketData packet) {
+        long now = Timestamps.nowNanos();
+        synchronized (this) {
+            interval.record((now - packet.getTimestampNanos()) / 1000);
+        }
+    }
+
+    public void record(List<PacketData> batch) {
+        long now = Timestamps.nowNanos();
+        synchronized (this) {
+            for (PacketData packet : batch) {
+                interval.record((now - packet.getTimestampNanos()) / 1000);
+            }
+        }
+    }
+
+    public synchronized long count() {
+        return overall.count() + interval.count();
+    }
+
+    // Quantiles since the previous call, or over the whole run; either way the interval
+    // starts over
+    public synchronized String report(boolean whole) {
+        overall.merge(interval);
+        LogHistogram shown = whole ? overall : interval;
+        interval = new LogHistogram(MAX_MICROS);
+        if (shown.count() == 0) {
+            return stage + " latency: no packets";
+        }
+        return String.format("%s latency: p50 %s, p99 %s, p99.9 %s, max %s over %,d packets", stage,
+            millis(shown.quantile(0.5)), millis(shown.quantile(0.99)), millis(shown.quantile(0.999)),
+            millis(shown.max()), shown.count());
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f ms", micros / 1000.0);
+    }
+
+    public synchronized void reset() {
+        interval = new LogHistogram(MAX_MICROS);
+        overall = new LogHistogram(MAX_MICROS);
+    }
+}
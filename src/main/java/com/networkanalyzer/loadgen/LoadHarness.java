@@ -0,0 +1,246 @@
+package com.networkanalyzer.loadgen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.networkanalyzer.metrics.MetricsRegistry;
+import com.networkanalyzer.metrics.PrometheusServer;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.pipeline.StageStats;
+import com.networkanalyzer.service.CaptureStats;
+import com.networkanalyzer.service.DatabaseService;
+import com.networkanalyzer.service.FrameSource;
+import com.networkanalyzer.service.PacketCaptureService;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PacketWriter;
+import com.networkanalyzer.storage.SegmentStore;
+import com.networkanalyzer.util.MpscRingBuffer;
+
+// Drives the capture path from generated or replayed traffic instead of the interfaces, to
+// find the packet rate it sustains without a NIC or root. The sources run on capture threads
+// like handles do, so everything behind them is the real thing: pipeline shards, statistics,
+// the database writer, the UI queue. The report says how many packets each stage passed on,
+// how many it lost, and how long packets took from creation to the view and to storage.
+//
+//   -Dnetlyzer.loadgen=synthetic|replay   the capture button starts this instead of the interfaces
+//   -Dnetlyzer.loadgen.sources            synthetic sources, one capture thread each (default 1)
+//   -Dnetlyzer.loadgen.file               the pcap/pcapng file to replay
+//   -Dnetlyzer.loadgen.speed              replay speed: 1 for real time, 10 for ten times faster,
+//                                         max for back to back (default 1)
+//   -Dnetlyzer.loadgen.loops              times the file is played (default 1)
+// plus the traffic shape in TrafficProfile.
+//
+// Runs headless too, for a fixed time with a report every second:
+//   java -cp network-analyzer.jar com.networkanalyzer.loadgen.LoadHarness [seconds]
+// storing packets where -Dnetlyzer.storage says (mysql, segments, or none, the default there),
+// with a queue drained like the UI's standing in for the table.
+public final class LoadHarness {
+    private final boolean replay;
+    private final TrafficProfile profile;
+    private final int sourceCount;
+    private final Path file;
+    private final double speed;
+    private final int loops;
+    private final LatencyProbe view;
+    private final LatencyProbe stored = new LatencyProbe("db");
+    private volatile MeasuredStorage storage;
+    private long startNanos;
+    private long lastReportNanos;
+    private long lastGenerated;
+
+    private LoadHarness(boolean replay, TrafficProfile profile, int sourceCount, Path file, double speed, int loops,
+                        String viewStage) {
+        this.replay = replay;
+        this.profile = profile;
+        this.sourceCount = Math.max(1, sourceCount);
+        this.file = file;
+        this.speed = speed;
+        this.loops = loops;
+        this.view = new LatencyProbe(viewStage);
+    }
+
+    // Null unless -Dnetlyzer.loadgen is set; viewStage names where the consumer's packets end up
+    public static LoadHarness fromProperties(String viewStage) {
+        String mode = System.getProperty("netlyzer.loadgen", "").trim().toLowerCase();
+        if (mode.isEmpty()) {
+            return null;
+        }
+        if (!mode.equals("synthetic") && !mode.equals("replay")) {
+            throw new IllegalArgumentException("netlyzer.loadgen must be synthetic or replay, not " + mode);
+        }
+        String file = System.getProperty("netlyzer.loadgen.file");
+        if (mode.equals("replay") && file == null) {
+            throw new IllegalArgumentException("Replay needs -Dnetlyzer.loadgen.file");
+        }
+        String speed = System.getProperty("netlyzer.loadgen.speed", "1").trim();
+        return new LoadHarness(mode.equals("replay"), TrafficProfile.fromSystemProperties(),
+            Integer.getInteger("netlyzer.loadgen.sources", 1), file != null ? Paths.get(file) : null,
+            speed.equalsIgnoreCase("max") ? 0 : Double.parseDouble(speed), Integer.getInteger("netlyzer.loadgen.loops", 1),
+            viewStage);
+    }
+
+    // Fresh sources for one run; the measurements start over with them
+    public List<FrameSource> newSources() throws IOException {
+        List<FrameSource> sources = new ArrayList<>();
+        if (replay) {
+            sources.add(new ReplaySource("replay", file, speed, loops));
+        } else {
+            for (int i = 0; i < sourceCount; i++) {
+                sources.add(new SyntheticSource("loadgen-" + i, i, profile.share(i, sourceCount)));
+            }
+        }
+        view.reset();
+        stored.reset();
+        MeasuredStorage current = storage;
+        if (current != null) {
+            current.reset();
+        }
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        lastGenerated = 0;
+        return sources;
+    }
+
+    // The storage the PacketWriter should write to, so stored packets are timed
+    public PacketStorage measure(PacketStorage packetStorage) {
+        MeasuredStorage measured = new MeasuredStorage(packetStorage, stored);
+        storage = measured;
+        return measured;
+    }
+
+    // Where the consumer records packets as they reach the view
+    public LatencyProbe view() {
+        return view;
+    }
+
+    // What each stage passed on and lost since the run started, and latencies since the
+    // previous report (or over the whole run). viewDropped is what the view's queue dropped.
+    public synchronized String report(PacketCaptureService service, long viewDropped, boolean whole) {
+        long now = System.nanoTime();
+        long generated = 0;
+        long delivered = 0;
+        long skipped = 0;
+        long errors = 0;
+        List<CaptureStats> captures = service.getCaptureStats();
+        // Once stopped, the counters the run ended with
+        boolean stopped = captures.isEmpty();
+        if (stopped) {
+            captures = service.getFinalCaptureStats();
+        }
+        for (CaptureStats stats : captures) {
+            generated += stats.received();
+            delivered += stats.delivered();
+            skipped += stats.skipped();
+            errors += stats.errors();
+        }
+        long shardDropped = 0;
+        long shardProcessed = 0;
+        StageStats writer = null;
+        for (StageStats stage : stopped ? service.getFinalPipelineStats() : service.getPipelineStats()) {
+            if (stage.stage().startsWith("shard ")) {
+                shardDropped += stage.dropped();
+                shardProcessed += stage.processed();
+            } else if (stage.stage().equals("db writer")) {
+                writer = stage;
+            }
+        }
+        double seconds = Math.max(1, now - startNanos) / 1e9;
+        double sinceLast = Math.max(1, now - lastReportNanos) / 1e9;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Load: %,d packets from %d source(s), %,.0f pps", generated, captures.size(),
+            whole ? generated / seconds : (generated - lastGenerated) / sinceLast));
+        report.append(String.format(" (%,.0f pps over %.1f s)%n", generated / seconds, seconds));
+        report.append(String.format("  capture threads: %,d delivered, %,d not IP, %,d errors%n", delivered, skipped, errors));
+        if (shardProcessed + shardDropped > 0) {
+            report.append(String.format("  pipeline shards: %,d processed, %,d dropped on full queues%n", shardProcessed, shardDropped));
+        }
+        MeasuredStorage current = storage;
+        if (writer != null && current != null) {
+            report.append(String.format("  db writer: %,d queued, %,d dropped on a full queue, %,d rejected by storage, %,d stored%n",
+                writer.depth(), writer.dropped(), current.rejected(), current.stored()));
+            report.append("  ").append(stored.report(whole)).append('\n');
+        }
+        report.append(String.format("  %,d dropped on the way to the view%n", viewDropped));
+        report.append("  ").append(view.report(whole));
+        lastReportNanos = now;
+        lastGenerated = generated;
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return replay
+            ? "replay of " + file + (speed == 0 ? " at full speed" : " at " + speed + "x")
+            : sourceCount + " synthetic source(s): " + profile;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        if (System.getProperty("netlyzer.loadgen") == null) {
+            System.setProperty("netlyzer.loadgen", "synthetic");
+        }
+        LoadHarness harness = fromProperties("consumer");
+        PacketStorage packetStorage = switch (System.getProperty("netlyzer.storage", "none")) {
+            case "mysql" -> new DatabaseService();
+            case "segments" -> new SegmentStore();
+            case "none" -> null;
+            default -> throw new IllegalArgumentException("netlyzer.storage must be mysql, segments or none");
+        };
+        PacketWriter writer = packetStorage != null ? new PacketWriter(harness.measure(packetStorage)) : null;
+
+        // The UI's queue and refresh rate, without the UI
+        MpscRingBuffer<PacketData> queue = new MpscRingBuffer<>(Integer.getInteger("netlyzer.ui.queueSize", 65536));
+        LongAdder queueDropped = new LongAdder();
+        PacketCaptureService service = new PacketCaptureService(packet -> {
+            if (!queue.offer(packet)) {
+                queueDropped.increment();
+            }
+        }, writer);
+        MetricsRegistry.global().gauge("netlyzer_ui_queue_depth", "Packets waiting for the FX thread", queue::size);
+        MetricsRegistry.global().counter("netlyzer_ui_dropped_total", "Packets the view skipped on a full queue",
+            queueDropped::sum);
+        PrometheusServer.startFromProperties(MetricsRegistry.global());
+        long frameMillis = 1000 / Math.max(1, Integer.getInteger("netlyzer.ui.maxFps", 30));
+        int maxBatch = Integer.getInteger("netlyzer.ui.maxBatch", 20000);
+        Thread consumer = new Thread(() -> {
+            List<PacketData> batch = new ArrayList<>();
+            while (!Thread.currentThread().isInterrupted()) {
+                queue.drain(batch::add, maxBatch);
+                harness.view().record(batch);
+                batch.clear();
+                try {
+                    Thread.sleep(frameMillis);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+        }, "loadgen-consumer");
+        consumer.setDaemon(true);
+
+        System.out.println("Load test for " + seconds + " s: " + harness);
+        service.startCapture(harness.newSources());
+        consumer.start();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        while (System.nanoTime() < end) {
+            Thread.sleep(Math.min(1000, Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - System.nanoTime()))));
+            System.out.println(harness.report(service, queueDropped.sum(), false));
+        }
+        // Last counters while the sources are still open, then let every stage drain
+        service.stopCapture();
+        consumer.interrupt();
+        consumer.join();
+        List<PacketData> rest = new ArrayList<>();
+        queue.drain(rest::add, Integer.MAX_VALUE);
+        harness.view().record(rest);
+        System.out.println("Total " + harness.report(service, queueDropped.sum(), true));
+        if (packetStorage != null) {
+            packetStorage.close();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.networkanalyzer.loadgen;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PageKey;
+
+// The storage the PacketWriter writes to, timing each batch's packets once it is stored and
+// counting the rows it rejected. Reads go straight through.
+final class MeasuredStorage implements PacketStorage {
+    private final PacketStorage storage;
+    private final LatencyProbe probe;
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    MeasuredStorage(PacketStorage storage, LatencyProbe probe) {
+        this.storage = storage;
+        this.probe = probe;
+    }
+
+    @Override
+    public boolean savePackets(List<PacketData> batch) {
+        boolean saved = storage.savePackets(batch);
+        if (saved) {
+            probe.record(batch);
+            stored.addAndGet(batch.size());
+        } else {
+            rejected.addAndGet(batch.size());
+        }
+        return saved;
+    }
+
+    @Override
+    public PacketCursor openCursor(PacketFilter filter, PageKey before, int limit) {
+        return storage.openCursor(filter, before, limit);
+    }
+
+    @Override
+    public long[] countByProtocol(PacketFilter filter, long beforeNanos) {
+        return storage.countByProtocol(filter, beforeNanos);
+    }
+
+    @Override
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) {
+        return storage.scan(fromNanos, toNanos, filter, sink);
+    }
+
+    @Override
+    public long count(long fromNanos, long toNanos) {
+        return storage.count(fromNanos, toNanos);
+    }
+
+    @Override
+    public long oldestTimestampNanos() {
+        return storage.oldestTimestampNanos();
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    long stored() {
+        return stored.get();
+    }
+
+    long rejected() {
+        return rejected.get();
+    }
+
+    void reset() {
+        stored.set(0);
+        rejected.set(0);
+    }
+}
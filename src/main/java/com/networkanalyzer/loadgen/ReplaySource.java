@@ -0,0 +1,150 @@
+package com.networkanalyzer.loadgen;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.ingest.PcapFileReader;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.service.FrameSource;
+
+// Frames of a pcap/pcapng file, released with the file's spacing divided by speed (1 for real
+// time, 10 for ten times faster) or back to back with speed 0, the file played loops times
+// over. Unlike file ingestion this goes through a capture thread like live traffic, and each
+// frame is stamped with the time it is released rather than the time it was recorded, so
+// latency is measured from the moment it entered the system.
+public final class ReplaySource implements FrameSource {
+    private static final Logger log = LoggerFactory.getLogger(ReplaySource.class);
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final PcapFileReader reader;
+    private final double speed;
+    private final int loops;
+    private PcapFileReader.RecordCursor records;
+    private int loop;
+    private boolean pending;
+    private long start;
+    private long firstTimestamp = Long.MIN_VALUE;
+    private long lastTimestamp;
+    // File time added for each completed loop, so the next one follows on
+    private long loopOffset;
+    private long sent;
+    private volatile long released;
+    private volatile boolean open = true;
+    private volatile Thread waiter;
+
+    public ReplaySource(String name, Path file, double speed, int loops) throws IOException {
+        this.name = name;
+        this.reader = new PcapFileReader(file);
+        this.speed = Math.max(0, speed);
+        this.loops = Math.max(1, loops);
+        this.records = reader.records();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int dispatch(int max, FrameHandler handler) {
+        if (!open) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        if (start == 0) {
+            start = now;
+        }
+        int count = 0;
+        while (count < max) {
+            if (!pending && !advance()) {
+                released = sent;
+                return count > 0 ? count : -1;
+            }
+            pending = true;
+            long due = dueAt(records.timestampNanos());
+            if (due > now) {
+                if (count == 0) {
+                    waiter = Thread.currentThread();
+                    if (open) {
+                        LockSupport.parkNanos(Math.min(due - now, MAX_WAIT_NANOS));
+                    }
+                    waiter = null;
+                }
+                break;
+            }
+            byte[] frame = new byte[records.length()];
+            records.buffer().get(records.offset(), frame);
+            handler.onFrame(frame, records.linkType(), Timestamps.nowNanos(), Math.max(records.wireLength(), frame.length));
+            pending = false;
+            sent++;
+            count++;
+        }
+        released = sent;
+        return count;
+    }
+
+    // Moves to the next record, starting the file over while loops remain
+    private boolean advance() {
+        while (!records.next()) {
+            if (++loop >= loops || sent == 0) {
+                return false;
+            }
+            // The next loop starts one average gap after this one ended
+            loopOffset += lastTimestamp - firstTimestamp + (lastTimestamp - firstTimestamp) / Math.max(1, sent / loop);
+            records = reader.records();
+        }
+        if (firstTimestamp == Long.MIN_VALUE) {
+            firstTimestamp = records.timestampNanos();
+        }
+        lastTimestamp = Math.max(lastTimestamp, records.timestampNanos());
+        return true;
+    }
+
+    private long dueAt(long fileTimestamp) {
+        if (speed == 0) {
+            return start;
+        }
+        return start + (long) ((fileTimestamp - firstTimestamp + loopOffset) / speed);
+    }
+
+    @Override
+    public void breakLoop() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public Counters counters() {
+        return new Counters(released, 0, 0);
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        breakLoop();
+        try {
+            reader.close();
+        } catch (IOException e) {
+            log.warn("replay file close failed file={} cause=\"{}\"", reader.getFile(), e.getMessage());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (replay of " + reader.getFile() + (speed == 0 ? " at full speed" : " at " + speed + "x")
+            + (loops > 1 ? ", " + loops + " times" : "") + ")";
+    }
+}
@@ -0,0 +1,252 @@
+package com.networkanalyzer.loadgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.service.FrameSource;
+
+// Ethernet frames made up on the capture thread, paced to the profile's rate and bursts. Each
+// frame is a copy of its flow's prebuilt headers padded to the chosen size, with the length
+// fields patched, and is stamped with the time it was made: latency measured against that
+// timestamp is end to end through everything behind the capture thread.
+//
+// Pacing is against a schedule, not per packet: if the consumer falls behind, the frames
+// that are due go out in full batches until it catches up, so the achieved rate shows the
+// ceiling. Addresses are 10.<source>.0.0/16 to 198.18.0.0/15 (the benchmarking range) and
+// fd00::/64 to 2001:db8::/64.
+public final class SyntheticSource implements FrameSource {
+    private static final int LINK_TYPE = FrameDecoder.LINKTYPE_ETHERNET;
+    private static final int ETHERNET_BYTES = 14;
+    // Longest an idle dispatch waits, like a capture handle's read timeout
+    private static final long MAX_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int SIZE_TABLE = 1024;
+    private static final int[] TCP_PORTS = { 443, 443, 443, 80, 22, 8080 };
+    private static final int[] UDP_PORTS = { 443, 443, 53, 53, 123, 5353 };
+
+    // Headers up to the end of the transport header; the payload is zeros
+    private record Flow(byte[] headers, int ipHeaderBytes, boolean v6, boolean udp) { }
+
+    private final String name;
+    private final TrafficProfile profile;
+    private final Flow[] flows;
+    private final int[] sizes = new int[SIZE_TABLE];
+    private final SplittableRandom random;
+    private final double intervalNanos;
+    private final long perBurst;
+    private final long periodNanos;
+
+    private long start;
+    private long sent;
+    private volatile long generated;
+    private volatile boolean open = true;
+    private volatile Thread waiter;
+
+    public SyntheticSource(String name, int index, TrafficProfile profile) {
+        this.name = name;
+        this.profile = profile;
+        this.random = new SplittableRandom(profile.seed());
+        this.flows = buildFlows(index);
+        fillSizes();
+        long rate = profile.packetsPerSecond();
+        this.intervalNanos = rate > 0 ? 1e9 / rate : 0;
+        this.perBurst = rate > 0 && profile.burstMillis() > 0 ? Math.max(1, rate * profile.burstMillis() / 1000) : 0;
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(profile.burstMillis() + profile.idleMillis());
+    }
+
+    private Flow[] buildFlows(int index) {
+        int total = profile.tcpWeight() + profile.udpWeight() + profile.icmpWeight();
+        if (total <= 0) {
+            throw new IllegalArgumentException("The protocol mix has no weight");
+        }
+        Flow[] built = new Flow[Math.max(1, profile.flows())];
+        for (int i = 0; i < built.length; i++) {
+            int pick = random.nextInt(total);
+            int ipProtocol = pick < profile.tcpWeight() ? 6 : pick < profile.tcpWeight() + profile.udpWeight() ? 17 : 1;
+            boolean v6 = random.nextDouble() < profile.ipv6Share();
+            built[i] = flow(index, i, v6, ipProtocol);
+        }
+        return built;
+    }
+
+    private Flow flow(int index, int i, boolean v6, int ipProtocol) {
+        int ipHeaderBytes = v6 ? 40 : 20;
+        int transportBytes = ipProtocol == 6 ? 20 : 8;
+        byte[] headers = new byte[ETHERNET_BYTES + ipHeaderBytes + transportBytes];
+        // Locally administered MACs
+        byte[] macs = { 0x02, 0, 0, 0, 0, 1, 0x02, 0, 0, 0, 0, 2 };
+        System.arraycopy(macs, 0, headers, 0, macs.length);
+        int ip = ETHERNET_BYTES;
+        int server = random.nextInt(1 << 17);
+        if (v6) {
+            putShort(headers, 12, 0x86DD);
+            putInt(headers, ip, 0x60000000);
+            // ICMPv6 for ICMP flows
+            headers[ip + 6] = (byte) (ipProtocol == 1 ? 58 : ipProtocol);
+            headers[ip + 7] = 64;
+            putLong(headers, ip + 8, 0xFD00_0000_0000_0000L);
+            putLong(headers, ip + 16, ((long) index << 32) | i);
+            putLong(headers, ip + 24, 0x2001_0DB8_0000_0000L);
+            putLong(headers, ip + 32, server);
+        } else {
+            putShort(headers, 12, 0x0800);
+            headers[ip] = 0x45;
+            headers[ip + 8] = 64;
+            headers[ip + 9] = (byte) ipProtocol;
+            putInt(headers, ip + 12, 0x0A000000 | (index & 0xFF) << 16 | (i & 0xFFFF));
+            putInt(headers, ip + 16, 0xC6120000 | server);
+        }
+        int transport = ip + ipHeaderBytes;
+        int clientPort = 1024 + random.nextInt(64000);
+        switch (ipProtocol) {
+            case 6 -> {
+                putShort(headers, transport, clientPort);
+                putShort(headers, transport + 2, TCP_PORTS[random.nextInt(TCP_PORTS.length)]);
+                putInt(headers, transport + 4, random.nextInt());
+                // Data offset 5, PSH and ACK
+                headers[transport + 12] = 0x50;
+                headers[transport + 13] = 0x18;
+                putShort(headers, transport + 14, 65535);
+            }
+            case 17 -> {
+                putShort(headers, transport, clientPort);
+                putShort(headers, transport + 2, UDP_PORTS[random.nextInt(UDP_PORTS.length)]);
+            }
+            default -> {
+                // Echo request (ICMPv6 128 over IPv6)
+                headers[transport] = (byte) (v6 ? 128 : 8);
+                putShort(headers, transport + 4, i);
+            }
+        }
+        return new Flow(headers, ipHeaderBytes, v6, ipProtocol == 17);
+    }
+
+    // Sizes by weight, so picking one is a single table lookup
+    private void fillSizes() {
+        List<TrafficProfile.Size> weighted = new ArrayList<>(profile.sizes());
+        long total = 0;
+        for (TrafficProfile.Size size : weighted) {
+            total += Math.max(0, size.weight());
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The size list has no weight");
+        }
+        int filled = 0;
+        long cumulative = 0;
+        for (TrafficProfile.Size size : weighted) {
+            cumulative += Math.max(0, size.weight());
+            int until = (int) (cumulative * SIZE_TABLE / total);
+            Arrays.fill(sizes, filled, until, size.bytes());
+            filled = until;
+        }
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public int dispatch(int max, FrameHandler handler) {
+        long limit = profile.packets();
+        if (!open || (limit > 0 && sent >= limit)) {
+            return -1;
+        }
+        long now = System.nanoTime();
+        if (start == 0) {
+            start = now;
+        }
+        int count = 0;
+        while (count < max && (limit == 0 || sent < limit) && dueAt(sent) <= now) {
+            Flow flow = flows[random.nextInt(flows.length)];
+            byte[] frame = frame(flow, sizes[random.nextInt(SIZE_TABLE)]);
+            handler.onFrame(frame, LINK_TYPE, Timestamps.nowNanos(), frame.length);
+            sent++;
+            count++;
+        }
+        generated = sent;
+        if (count == 0 && (limit == 0 || sent < limit)) {
+            waiter = Thread.currentThread();
+            if (open) {
+                LockSupport.parkNanos(Math.min(dueAt(sent) - now, MAX_WAIT_NANOS));
+            }
+            waiter = null;
+        }
+        return count;
+    }
+
+    // When packet n is scheduled, relative to the first dispatch
+    private long dueAt(long n) {
+        if (intervalNanos == 0) {
+            return start;
+        }
+        if (perBurst > 0) {
+            return start + (n / perBurst) * periodNanos + (long) ((n % perBurst) * intervalNanos);
+        }
+        return start + (long) (n * intervalNanos);
+    }
+
+    private static byte[] frame(Flow flow, int size) {
+        byte[] frame = Arrays.copyOf(flow.headers(), Math.max(size, flow.headers().length));
+        int ipBytes = frame.length - ETHERNET_BYTES;
+        if (flow.v6()) {
+            putShort(frame, ETHERNET_BYTES + 4, ipBytes - 40);
+        } else {
+            putShort(frame, ETHERNET_BYTES + 2, ipBytes);
+        }
+        if (flow.udp()) {
+            putShort(frame, ETHERNET_BYTES + flow.ipHeaderBytes() + 4, ipBytes - flow.ipHeaderBytes());
+        }
+        return frame;
+    }
+
+    @Override
+    public void breakLoop() {
+        Thread thread = waiter;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    // Generated frames; nothing is lost before the capture thread
+    @Override
+    public Counters counters() {
+        return new Counters(generated, 0, 0);
+    }
+
+    @Override
+    public void close() {
+        open = false;
+        breakLoop();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (synthetic: " + profile + ")";
+    }
+
+    private static void putShort(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] bytes, int offset, int value) {
+        putShort(bytes, offset, value >>> 16);
+        putShort(bytes, offset + 2, value);
+    }
+
+    private static void putLong(byte[] bytes, int offset, long value) {
+        putInt(bytes, offset, (int) (value >>> 32));
+        putInt(bytes, offset + 4, (int) value);
+    }
+}
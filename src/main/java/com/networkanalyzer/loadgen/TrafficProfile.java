@@ -0,0 +1,76 @@
+package com.networkanalyzer.loadgen;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// What SyntheticSource generates, from -Dnetlyzer.loadgen.*:
+//   ipv6       share of flows over IPv6, 0..1 (default 0.125)
+//   mix        weights of TCP, UDP and ICMP flows, "tcp:70,udp:25,icmp:5"
+//   flows      distinct flows (address and port pairs) per source
+//   sizes      frame sizes and their weights, "64:7,576:4,1500:1" (simple IMIX) by default
+//   rate       packets per second over all sources, 0 for as fast as they can go
+//   burst      on and off periods in milliseconds, "100:900" sends at the rate for 100 ms
+//              of every second and nothing in between; unset sends continuously
+//   packets    packets over all sources before they stop, 0 to run until stopped
+//   seed       for the flow set and the per-packet choices
+public record TrafficProfile(double ipv6Share, int tcpWeight, int udpWeight, int icmpWeight, int flows,
+                             List<Size> sizes, long packetsPerSecond, long burstMillis, long idleMillis,
+                             long packets, long seed) {
+
+    public record Size(int bytes, int weight) { }
+
+    public static TrafficProfile fromSystemProperties() {
+        int[] mix = { 70, 25, 5 };
+        for (String part : System.getProperty("netlyzer.loadgen.mix", "tcp:70,udp:25,icmp:5").split(",")) {
+            String[] pair = part.trim().split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            switch (pair[0].trim().toLowerCase()) {
+                case "tcp" -> mix[0] = weight;
+                case "udp" -> mix[1] = weight;
+                case "icmp" -> mix[2] = weight;
+                default -> throw new IllegalArgumentException("Unknown protocol in netlyzer.loadgen.mix: " + pair[0]);
+            }
+        }
+        List<Size> sizes = new ArrayList<>();
+        for (String part : System.getProperty("netlyzer.loadgen.sizes", "64:7,576:4,1500:1").split(",")) {
+            String[] pair = part.trim().split(":");
+            sizes.add(new Size(Integer.parseInt(pair[0].trim()), pair.length > 1 ? Integer.parseInt(pair[1].trim()) : 1));
+        }
+        long burstMillis = 0;
+        long idleMillis = 0;
+        String burst = System.getProperty("netlyzer.loadgen.burst", "");
+        if (!burst.isBlank()) {
+            String[] pair = burst.trim().split(":");
+            burstMillis = Long.parseLong(pair[0].trim());
+            idleMillis = Long.parseLong(pair[1].trim());
+        }
+        return new TrafficProfile(
+            Double.parseDouble(System.getProperty("netlyzer.loadgen.ipv6", "0.125")),
+            mix[0], mix[1], mix[2],
+            Integer.getInteger("netlyzer.loadgen.flows", 1024),
+            sizes,
+            Long.getLong("netlyzer.loadgen.rate", 100_000),
+            burstMillis, idleMillis,
+            Long.getLong("netlyzer.loadgen.packets", 0),
+            Long.getLong("netlyzer.loadgen.seed", 42));
+    }
+
+    // One of n sources' share: its rate, packet budget and seed
+    public TrafficProfile share(int index, int n) {
+        return new TrafficProfile(ipv6Share, tcpWeight, udpWeight, icmpWeight, flows, sizes,
+            packetsPerSecond > 0 ? Math.max(1, packetsPerSecond / n) : 0, burstMillis, idleMillis,
+            packets > 0 ? packets / n + (index < packets % n ? 1 : 0) : 0, seed + index);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sizeList = new StringBuilder();
+        for (Size size : sizes) {
+            sizeList.append(sizeList.length() > 0 ? "," : "").append(size.bytes()).append(':').append(size.weight());
+        }
+        return String.format("%,d flows (%.0f%% IPv6, tcp:%d udp:%d icmp:%d), sizes %s, %s%s%s", flows, ipv6Share * 100,
+            tcpWeight, udpWeight, icmpWeight, sizeList, packetsPerSecond > 0 ? String.format("%,d pps", packetsPerSecond) : "max rate",
+            burstMillis > 0 ? String.format(" in %d ms bursts every %d ms", burstMillis, burstMillis + idleMillis) : "",
+            packets > 0 ? String.format(", %,d packets", packets) : "");
+    }
+}
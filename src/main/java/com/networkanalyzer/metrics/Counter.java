@@ -0,0 +1,23 @@
+package com.networkanalyzer.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// A registry-owned count, for places that had nothing to count with. Striped, so any number
+// of threads can add without contending.
+public final class Counter implements LongSupplier {
+    private final LongAdder count = new LongAdder();
+
+    public void increment() {
+        count.increment();
+    }
+
+    public void add(long amount) {
+        count.add(amount);
+    }
+
+    @Override
+    public long getAsLong() {
+        return count.sum();
+    }
+}
@@ -0,0 +1,30 @@
+package com.networkanalyzer.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.networkanalyzer.stats.LogHistogram;
+
+// Durations, kept in microseconds in a LogHistogram (about 3% resolution up to an hour) and
+// exported in seconds as a summary: count, sum and a few quantiles since the start.
+// Recording takes a lock, so it belongs on per-batch paths, not per-packet ones.
+public final class Histogram {
+    private static final long MAX_MICROS = TimeUnit.HOURS.toMicros(1);
+
+    public record Snapshot(long count, double sumSeconds, double p50, double p90, double p99, double max) {
+        public double meanSeconds() {
+            return count > 0 ? sumSeconds / count : 0;
+        }
+    }
+
+    private final LogHistogram histogram = new LogHistogram(MAX_MICROS);
+
+    public synchronized void recordNanos(long nanos) {
+        histogram.record(nanos / 1000);
+    }
+
+    public synchronized Snapshot snapshot() {
+        return new Snapshot(histogram.count(), histogram.mean() * histogram.count() / 1e6,
+            histogram.quantile(0.5) / 1e6, histogram.quantile(0.9) / 1e6, histogram.quantile(0.99) / 1e6,
+            histogram.max() / 1e6);
+    }
+}
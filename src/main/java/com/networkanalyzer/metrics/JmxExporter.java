@@ -0,0 +1,165 @@
+package com.networkanalyzer.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// One read-only MBean per series on the platform MBean server, named
+// com.networkanalyzer:name=<metric>[,<label>=<value>...], so jconsole/VisualVM show them as a
+// tree by metric. Counters have a Count attribute, gauges a Value, summaries Count, Mean,
+// P50, P90, P99 and Max in seconds.
+final class JmxExporter implements MetricsRegistry.Listener {
+    private static final Logger log = LoggerFactory.getLogger(JmxExporter.class);
+    private static final String DOMAIN = "com.networkanalyzer";
+
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    @Override
+    public void added(MetricsRegistry.Series series) {
+        try {
+            ObjectName name = objectName(series);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new SeriesMBean(series), name);
+        } catch (JMException e) {
+            log.warn("jmx register failed metric={} cause={}", series.name(), e.toString());
+        }
+    }
+
+    @Override
+    public void removed(MetricsRegistry.Series series) {
+        try {
+            server.unregisterMBean(objectName(series));
+        } catch (InstanceNotFoundException e) {
+            // Replaced already
+        } catch (JMException e) {
+            log.warn("jmx unregister failed metric={} cause={}", series.name(), e.toString());
+        }
+    }
+
+    private static ObjectName objectName(MetricsRegistry.Series series) throws JMException {
+        Hashtable<String, String> properties = new Hashtable<>();
+        properties.put("name", series.name());
+        for (Map.Entry<String, String> label : series.labels().entrySet()) {
+            properties.put(label.getKey(), quoteIfNeeded(label.getValue()));
+        }
+        return new ObjectName(DOMAIN, properties);
+    }
+
+    // Interface names like \Device\NPF_{...} carry characters ObjectName won't take bare
+    private static String quoteIfNeeded(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (":\",=*?\\\n".indexOf(value.charAt(i)) >= 0) {
+                return ObjectName.quote(value);
+            }
+        }
+        return value;
+    }
+
+    private static final class SeriesMBean implements DynamicMBean {
+        private final MetricsRegistry.Series series;
+        private final MBeanInfo info;
+
+        SeriesMBean(MetricsRegistry.Series series) {
+            this.series = series;
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            switch (series.type()) {
+                case COUNTER -> attributes.add(attribute("Count", "long", series.help()));
+                case GAUGE -> attributes.add(attribute("Value", "double", series.help()));
+                case SUMMARY -> {
+                    attributes.add(attribute("Count", "long", "Observations"));
+                    for (String name : new String[] { "Mean", "P50", "P90", "P99", "Max" }) {
+                        attributes.add(attribute(name, "double", series.help() + ", seconds"));
+                    }
+                }
+            }
+            this.info = new MBeanInfo(SeriesMBean.class.getName(), series.help(),
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+
+        private static MBeanAttributeInfo attribute(String name, String type, String description) {
+            return new MBeanAttributeInfo(name, type, description, true, false, false);
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            switch (series.type()) {
+                case COUNTER -> {
+                    if (attribute.equals("Count")) {
+                        return ((LongSupplier) series.value()).getAsLong();
+                    }
+                }
+                case GAUGE -> {
+                    if (attribute.equals("Value")) {
+                        return ((DoubleSupplier) series.value()).getAsDouble();
+                    }
+                }
+                case SUMMARY -> {
+                    Histogram.Snapshot snapshot = ((Histogram) series.value()).snapshot();
+                    switch (attribute) {
+                        case "Count": return snapshot.count();
+                        case "Mean": return snapshot.meanSeconds();
+                        case "P50": return snapshot.p50();
+                        case "P90": return snapshot.p90();
+                        case "P99": return snapshot.p99();
+                        case "Max": return snapshot.max();
+                        default: break;
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Left out, as the contract asks
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("No operations on metrics");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            return info;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.networkanalyzer.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+// Named, labelled metrics of the running capture, read by the JMX and Prometheus exporters.
+//
+// The packet path already keeps its own counts (LongAdders, per-batch totals published by
+// the capture threads), so most entries are functions that read those: registering them
+// adds nothing per packet, and a reading is only taken when someone scrapes. Counters and
+// histograms owned by the registry are for places that had nothing to count with.
+//
+// Names follow Prometheus conventions (netlyzer_<what>_<unit>, _total for counters, durations
+// in seconds). Registering a name and label set again replaces the entry, so a new capture
+// rebinds its interfaces' series; remove() drops the series of something that went away.
+public final class MetricsRegistry {
+    public enum Type { COUNTER, GAUGE, SUMMARY }
+
+    // One time series. value is a LongSupplier for counters, a DoubleSupplier for gauges and a
+    // Histogram for summaries.
+    public record Series(String name, String help, Type type, Map<String, String> labels, Object value) {
+        String key() {
+            return key(name, labels);
+        }
+
+        static String key(String name, Map<String, String> labels) {
+            return labels.isEmpty() ? name : name + labels;
+        }
+    }
+
+    // Told about series as they come and go; the JMX exporter is one
+    public interface Listener {
+        void added(Series series);
+
+        void removed(Series series);
+    }
+
+    private static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+    static {
+        // On by default: registering MBeans costs nothing until someone connects
+        if (Boolean.parseBoolean(System.getProperty("netlyzer.metrics.jmx", "true"))) {
+            GLOBAL.addListener(new JmxExporter());
+        }
+    }
+
+    // Sorted by key, so each metric's series come out together
+    private final Map<String, Series> series = new ConcurrentSkipListMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // The process-wide registry everything reports to
+    public static MetricsRegistry global() {
+        return GLOBAL;
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        Counter counter = new Counter();
+        register(new Series(name, help, Type.COUNTER, labels(labels), counter));
+        return counter;
+    }
+
+    // A count kept elsewhere; it should only ever go up
+    public void counter(String name, String help, LongSupplier value, String... labels) {
+        register(new Series(name, help, Type.COUNTER, labels(labels), value));
+    }
+
+    public void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(new Series(name, help, Type.GAUGE, labels(labels), value));
+    }
+
+    // Per-second rate of a count kept elsewhere, for readers that can't take a rate themselves
+    // (JMX consoles); Prometheus should use rate() on the counter instead
+    public void rate(String name, String help, LongSupplier total, String... labels) {
+        gauge(name, help, new Rate(total), labels);
+    }
+
+    public Histogram histogram(String name, String help, String... labels) {
+        Histogram histogram = new Histogram();
+        register(new Series(name, help, Type.SUMMARY, labels(labels), histogram));
+        return histogram;
+    }
+
+    // Drops every series labelled label=value, e.g. those of an interface that was closed
+    public void remove(String label, String value) {
+        for (Series entry : series.values()) {
+            if (value.equals(entry.labels().get(label)) && series.remove(entry.key(), entry)) {
+                for (Listener listener : listeners) {
+                    listener.removed(entry);
+                }
+            }
+        }
+    }
+
+    public Collection<Series> series() {
+        return Collections.unmodifiableCollection(series.values());
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        for (Series entry : series.values()) {
+            listener.added(entry);
+        }
+    }
+
+    private void register(Series entry) {
+        Series replaced = series.put(entry.key(), entry);
+        for (Listener listener : listeners) {
+            if (replaced != null) {
+                listener.removed(replaced);
+            }
+            listener.added(entry);
+        }
+    }
+
+    // Label names and values, alternating
+    private static Map<String, String> labels(String... pairs) {
+        if (pairs.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels come in name/value pairs");
+        }
+        Map<String, String> labels = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            labels.put(pairs[i], pairs[i + 1]);
+        }
+        return Collections.unmodifiableMap(labels);
+    }
+
+    // Rate over the time since the previous reading that was at least a second ago, so any
+    // number of readers at any frequency see a stable value
+    private static final class Rate implements DoubleSupplier {
+        private static final long MIN_INTERVAL_NANOS = 1_000_000_000L;
+
+        private final LongSupplier total;
+        private long lastNanos = System.nanoTime();
+        private long lastTotal;
+        private double rate;
+
+        Rate(LongSupplier total) {
+            this.total = total;
+            this.lastTotal = total.getAsLong();
+        }
+
+        @Override
+        public synchronized double getAsDouble() {
+            long now = System.nanoTime();
+            if (now - lastNanos >= MIN_INTERVAL_NANOS) {
+                long current = total.getAsLong();
+                rate = Math.max(0, current - lastTotal) * 1e9 / (now - lastNanos);
+                lastTotal = current;
+                lastNanos = now;
+            }
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.networkanalyzer.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Serves the registry in the Prometheus text format (0.0.4) at /metrics, from the JDK's
+// built-in HTTP server on one daemon thread. Off unless -Dnetlyzer.metrics.port is set; binds
+// to 127.0.0.1 unless -Dnetlyzer.metrics.host says otherwise, as the numbers describe the
+// local network.
+public final class PrometheusServer implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(PrometheusServer.class);
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+
+    public PrometheusServer(MetricsRegistry registry, String host, int port) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-http");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+    }
+
+    // Null when no port is configured or the port can't be bound
+    public static PrometheusServer startFromProperties(MetricsRegistry registry) {
+        int port = Integer.getInteger("netlyzer.metrics.port", 0);
+        if (port <= 0) {
+            return null;
+        }
+        String host = System.getProperty("netlyzer.metrics.host", "127.0.0.1");
+        try {
+            PrometheusServer server = new PrometheusServer(registry, host, port);
+            log.info("metrics endpoint url=http://{}:{}/metrics", host, port);
+            return server;
+        } catch (IOException e) {
+            log.warn("metrics endpoint not started host={} port={} cause={}", host, port, e.toString());
+            return null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = format(registry).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    // The exposition text: HELP and TYPE once per metric, then its series
+    public static String format(MetricsRegistry registry) {
+        StringBuilder text = new StringBuilder();
+        String family = null;
+        for (MetricsRegistry.Series series : registry.series()) {
+            if (!series.name().equals(family)) {
+                family = series.name();
+                text.append("# HELP ").append(family).append(' ').append(escapeHelp(series.help())).append('\n');
+                text.append("# TYPE ").append(family).append(' ').append(series.type().name().toLowerCase(Locale.ROOT)).append('\n');
+            }
+            Map<String, String> labels = series.labels();
+            switch (series.type()) {
+                case COUNTER -> sample(text, family, labels, null, ((LongSupplier) series.value()).getAsLong());
+                case GAUGE -> sample(text, family, labels, null, ((DoubleSupplier) series.value()).getAsDouble());
+                case SUMMARY -> {
+                    Histogram.Snapshot snapshot = ((Histogram) series.value()).snapshot();
+                    sample(text, family, labels, "0.5", snapshot.p50());
+                    sample(text, family, labels, "0.9", snapshot.p90());
+                    sample(text, family, labels, "0.99", snapshot.p99());
+                    sample(text, family + "_sum", labels, null, snapshot.sumSeconds());
+                    sample(text, family + "_count", labels, null, snapshot.count());
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    private static void sample(StringBuilder text, String name, Map<String, String> labels, String quantile, double value) {
+        text.append(name);
+        if (!labels.isEmpty() || quantile != null) {
+            text.append('{');
+            boolean first = true;
+            for (Map.Entry<String, String> label : labels.entrySet()) {
+                text.append(first ? "" : ",").append(label.getKey()).append("=\"").append(escapeLabel(label.getValue())).append('"');
+                first = false;
+            }
+            if (quantile != null) {
+                text.append(first ? "" : ",").append("quantile=\"").append(quantile).append('"');
+            }
+            text.append('}');
+        }
+        text.append(' ');
+        if (value == (long) value) {
+            text.append((long) value);
+        } else if (Double.isNaN(value)) {
+            text.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            text.append(value > 0 ? "+Inf" : "-Inf");
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
@@ -0,0 +1,200 @@
+package com.networkanalyzer.model;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Formatting and parsing of IP addresses held as primitives, without going through InetAddress.
+// IPv4 addresses are ints in network order, IPv6 addresses are (hi, lo) long pairs.
+public final class IpAddresses {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private IpAddresses() {
+    }
+
+    public static String formatV4(int address) {
+        StringBuilder sb = new StringBuilder(15);
+        sb.append(address >>> 24).append('.')
+          .append((address >>> 16) & 0xFF).append('.')
+          .append((address >>> 8) & 0xFF).append('.')
+          .append(address & 0xFF);
+        return sb.toString();
+    }
+
+    // RFC 5952 text form: lowercase, no leading zeros, longest run of zero groups as "::"
+    public static String formatV6(long hi, long lo) {
+        int[] groups = new int[8];
+        for (int i = 0; i < 4; i++) {
+            groups[i] = (int) (hi >>> (48 - 16 * i)) & 0xFFFF;
+            groups[i + 4] = (int) (lo >>> (48 - 16 * i)) & 0xFFFF;
+        }
+
+        int bestStart = -1;
+        int bestLength = 1;
+        for (int i = 0; i < 8; ) {
+            if (groups[i] != 0) {
+                i++;
+                continue;
+            }
+            int start = i;
+            while (i < 8 && groups[i] == 0) {
+                i++;
+            }
+            if (i - start > bestLength) {
+                bestStart = start;
+                bestLength = i - start;
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                sb.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ':') {
+                sb.append(':');
+            }
+            appendHex(sb, groups[i]);
+        }
+        return sb.toString();
+    }
+
+    private static void appendHex(StringBuilder sb, int group) {
+        boolean started = false;
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            int nibble = (group >>> shift) & 0xF;
+            if (nibble != 0 || started || shift == 0) {
+                sb.append(HEX[nibble]);
+                started = true;
+            }
+        }
+    }
+
+    // Parses a dotted-quad IPv4 address; throws IllegalArgumentException if it isn't one
+    public static int parseV4(String text) {
+        int address = 0;
+        int octets = 0;
+        int value = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) break;
+            } else if (c == '.' && value >= 0 && octets < 4) {
+                address = (address << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                break;
+            }
+            if (i == text.length()) {
+                if (octets == 4) {
+                    return address;
+                }
+                break;
+            }
+        }
+        throw new IllegalArgumentException("Not an IPv4 address: " + text);
+    }
+
+    public static boolean isV4(String text) {
+        try {
+            parseV4(text);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    // Parses an IPv6 literal into {hi, lo}: hex groups, at most one "::" and optionally a dotted
+    // IPv4 tail. Parsed by hand, as InetAddress.getByName would resolve anything that isn't a
+    // literal through DNS, and this runs on filter text as it's typed.
+    public static long[] parseV6(String text) {
+        if (text == null || text.indexOf(':') < 0) {
+            throw notV6(text);
+        }
+        int[] groups = new int[8];
+        int count = 0;
+        // Where the "::" run of zero groups goes, -1 if there is none
+        int gap = -1;
+        int n = text.length();
+        int i = 0;
+        if (text.startsWith("::")) {
+            gap = 0;
+            i = 2;
+        }
+        while (i < n) {
+            int start = i;
+            int value = 0;
+            int digit;
+            while (i < n && i - start < 4 && (digit = hexDigit(text.charAt(i))) >= 0) {
+                value = (value << 4) | digit;
+                i++;
+            }
+            if (i < n && text.charAt(i) == '.') {
+                // The IPv4 tail fills the last two groups
+                if (count > 6) {
+                    throw notV6(text);
+                }
+                int v4 = parseV4(text.substring(start));
+                groups[count++] = v4 >>> 16;
+                groups[count++] = v4 & 0xFFFF;
+                break;
+            }
+            if (i == start || count == 8) {
+                throw notV6(text);
+            }
+            groups[count++] = value;
+            if (i == n) {
+                break;
+            }
+            if (text.charAt(i++) != ':' || i == n) {
+                throw notV6(text);
+            }
+            if (text.charAt(i) == ':') {
+                if (gap >= 0) {
+                    throw notV6(text);
+                }
+                gap = count;
+                i++;
+            }
+        }
+        if (gap < 0 ? count != 8 : count == 8) {
+            throw notV6(text);
+        }
+        if (gap >= 0) {
+            int tail = count - gap;
+            System.arraycopy(groups, gap, groups, 8 - tail, tail);
+            Arrays.fill(groups, gap, 8 - tail, 0);
+        }
+        long hi = 0;
+        long lo = 0;
+        for (int g = 0; g < 4; g++) {
+            hi = (hi << 16) | groups[g];
+            lo = (lo << 16) | groups[g + 4];
+        }
+        return new long[] { hi, lo };
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static IllegalArgumentException notV6(String text) {
+        return new IllegalArgumentException("Not an IPv6 address: " + text);
+    }
+
+    // Network-order bytes as stored in VARBINARY(16) columns and produced by INET6_ATON:
+    // 4 bytes for IPv4, 16 for IPv6, null when there is no address
+    public static byte[] toBytes(int version, long hi, long lo) {
+        return switch (version) {
+            case 4 -> ByteBuffer.allocate(4).putInt((int) lo).array();
+            case 6 -> ByteBuffer.allocate(16).putLong(hi).putLong(lo).array();
+            default -> null;
+        };
+    }
+}
@@ -2,34 +2,120 @@ package com.networkanalyzer.model;
 
 import java.time.LocalDateTime;
 
+// Packets are held as primitives: epoch nanos, IPs as long pairs (an IPv4 address lives in
+// the low word), a protocol code and the size. The String/LocalDateTime getters the table
+// binds to are computed on demand, so only rows that are actually displayed pay for them.
 public class PacketData {
-    private LocalDateTime timestamp;
-    private String sourceIp;
-    private String destinationIp;
-    private String protocol;
+    private long timestampNanos;
+    private byte ipVersion;
+    private long srcHi;
+    private long srcLo;
+    private long dstHi;
+    private long dstLo;
+    private byte protocol;
     private int size;
 
     public PacketData(LocalDateTime timestamp, String sourceIp, String destinationIp, String protocol, int size) {
-        this.timestamp = timestamp;
-        this.sourceIp = sourceIp;
-        this.destinationIp = destinationIp;
-        this.protocol = protocol;
+        setTimestamp(timestamp);
+        setSourceIp(sourceIp);
+        setDestinationIp(destinationIp);
+        setProtocol(protocol);
         this.size = size;
     }
 
+    private PacketData(long timestampNanos, int ipVersion, long srcHi, long srcLo, long dstHi, long dstLo, Protocol protocol, int size) {
+        this.timestampNanos = timestampNanos;
+        this.ipVersion = (byte) ipVersion;
+        this.srcHi = srcHi;
+        this.srcLo = srcLo;
+        this.dstHi = dstHi;
+        this.dstLo = dstLo;
+        this.protocol = protocol.code();
+        this.size = size;
+    }
+
+    public static PacketData ofV4(long timestampNanos, int sourceIp, int destinationIp, Protocol protocol, int size) {
+        return new PacketData(timestampNanos, 4, 0, sourceIp & 0xFFFFFFFFL, 0, destinationIp & 0xFFFFFFFFL, protocol, size);
+    }
+
+    public static PacketData ofV6(long timestampNanos, long srcHi, long srcLo, long dstHi, long dstLo, Protocol protocol, int size) {
+        return new PacketData(timestampNanos, 6, srcHi, srcLo, dstHi, dstLo, protocol, size);
+    }
+
+    // Any address family, including 0 for packets without addresses; as read back from a store
+    public static PacketData of(long timestampNanos, int ipVersion, long srcHi, long srcLo, long dstHi, long dstLo, Protocol protocol, int size) {
+        return new PacketData(timestampNanos, ipVersion, srcHi, srcLo, dstHi, dstLo, protocol, size);
+    }
+
     // Getters and setters
-    public LocalDateTime getTimestamp() { return timestamp; }
-    public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
-    
-    public String getSourceIp() { return sourceIp; }
-    public void setSourceIp(String sourceIp) { this.sourceIp = sourceIp; }
-    
-    public String getDestinationIp() { return destinationIp; }
-    public void setDestinationIp(String destinationIp) { this.destinationIp = destinationIp; }
-    
-    public String getProtocol() { return protocol; }
-    public void setProtocol(String protocol) { this.protocol = protocol; }
-    
+    public LocalDateTime getTimestamp() { return Timestamps.toLocalDateTime(timestampNanos); }
+    public void setTimestamp(LocalDateTime timestamp) {
+        this.timestampNanos = timestamp != null ? Timestamps.fromLocalDateTime(timestamp) : 0;
+    }
+
+    public long getTimestampNanos() { return timestampNanos; }
+
+    public String getSourceIp() { return formatIp(srcHi, srcLo); }
+    public void setSourceIp(String sourceIp) {
+        long[] address = parseIp(sourceIp);
+        this.srcHi = address[0];
+        this.srcLo = address[1];
+    }
+
+    public String getDestinationIp() { return formatIp(dstHi, dstLo); }
+    public void setDestinationIp(String destinationIp) {
+        long[] address = parseIp(destinationIp);
+        this.dstHi = address[0];
+        this.dstLo = address[1];
+    }
+
+    public String getProtocol() { return Protocol.fromCode(protocol).label(); }
+    public void setProtocol(String protocol) { this.protocol = Protocol.fromLabel(protocol).code(); }
+
+    public Protocol getProtocolType() { return Protocol.fromCode(protocol); }
+
     public int getSize() { return size; }
     public void setSize(int size) { this.size = size; }
-}
\ No newline at end of file
+
+    // Primitive accessors for stores and indexes
+    public int getIpVersion() { return ipVersion; }
+    public int getSrcV4() { return (int) srcLo; }
+    public int getDstV4() { return (int) dstLo; }
+    public long getSrcHi() { return srcHi; }
+    public long getSrcLo() { return srcLo; }
+    public long getDstHi() { return dstHi; }
+    public long getDstLo() { return dstLo; }
+
+    private String formatIp(long hi, long lo) {
+        return switch (ipVersion) {
+            case 4 -> IpAddresses.formatV4((int) lo);
+            case 6 -> IpAddresses.formatV6(hi, lo);
+            default -> null;
+        };
+    }
+
+    // Sets ipVersion as a side effect; a packet never mixes address families
+    private long[] parseIp(String text) {
+        if (text != null && !text.isEmpty()) {
+            if (text.indexOf(':') >= 0) {
+                try {
+                    long[] address = IpAddresses.parseV6(text);
+                    ipVersion = 6;
+                    return address;
+                } catch (IllegalArgumentException e) {
+                    // Fall through to "no address"
+                }
+            } else if (IpAddresses.isV4(text)) {
+                ipVersion = 4;
+                return new long[] { 0, IpAddresses.parseV4(text) & 0xFFFFFFFFL };
+            }
+        }
+        return new long[] { 0, 0 };
+    }
+
+    @Override
+    public String toString() {
+        return "PacketData[" + getTimestamp() + ", " + getSourceIp() + " -> " + getDestinationIp()
+            + ", " + getProtocol() + ", " + size + " bytes]";
+    }
+}
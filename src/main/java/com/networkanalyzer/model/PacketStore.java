@@ -0,0 +1,228 @@
+package com.networkanalyzer.model;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+// Columnar, chunked in-memory packet store.
+// Rows are appended into fixed-size chunks; each chunk keeps its columns as contiguous
+// regions of one ByteBuffer (heap or direct), so a row costs 21 bytes for IPv4 traffic
+// instead of a few hundred for a PacketData object graph. IPv6 addresses go to a side
+// buffer that is only allocated for chunks that actually contain IPv6 rows.
+//
+// Rows are addressed by a global, ever increasing row number. When the store is full the
+// oldest chunk is dropped, which advances getFirstRow(). Appends are serialized; reads are
+// lock-free and only ever see rows below getRowCount().
+public class PacketStore {
+    public static final int CHUNK_SHIFT = 16;
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // Column layout inside a chunk buffer
+    private static final int TIMESTAMP_OFFSET = 0;
+    private static final int SRC_V4_OFFSET = TIMESTAMP_OFFSET + 8 * CHUNK_SIZE;
+    private static final int DST_V4_OFFSET = SRC_V4_OFFSET + 4 * CHUNK_SIZE;
+    private static final int SIZE_OFFSET = DST_V4_OFFSET + 4 * CHUNK_SIZE;
+    private static final int FLAGS_OFFSET = SIZE_OFFSET + 4 * CHUNK_SIZE;
+    private static final int CHUNK_BYTES = FLAGS_OFFSET + CHUNK_SIZE;
+    private static final int V6_CHUNK_BYTES = 32 * CHUNK_SIZE;
+
+    // Flags byte: low nibble protocol code, bit 4 set for IPv6
+    private static final int PROTOCOL_MASK = 0x0F;
+    private static final int FLAG_V6 = 0x10;
+
+    private static final class Chunk {
+        final long baseRow;
+        final ByteBuffer columns;
+        volatile ByteBuffer v6Columns;
+
+        Chunk(long baseRow, ByteBuffer columns) {
+            this.baseRow = baseRow;
+            this.columns = columns;
+        }
+    }
+
+    private final boolean offHeap;
+    private final int maxChunks;
+    // Slot i holds the chunk whose index modulo the slot count is i
+    private final Chunk[] slots;
+
+    private volatile long firstRow;
+    private volatile long rowCount;
+
+    public PacketStore(long maxRows, boolean offHeap) {
+        this.offHeap = offHeap;
+        this.maxChunks = (int) Math.max(2, (maxRows + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+        this.slots = new Chunk[maxChunks];
+    }
+
+    public synchronized long append(PacketData packet) {
+        return append(packet.getTimestampNanos(), packet.getIpVersion(), packet.getSrcHi(), packet.getSrcLo(),
+            packet.getDstHi(), packet.getDstLo(), packet.getProtocolType(), packet.getSize());
+    }
+
+    // Returns the row number assigned to the packet
+    public synchronized long append(long timestampNanos, int ipVersion, long srcHi, long srcLo,
+                                    long dstHi, long dstLo, Protocol protocol, int size) {
+        long row = rowCount;
+        int index = (int) (row & CHUNK_MASK);
+        Chunk chunk = slotFor(row);
+        if (chunk == null || chunk.baseRow != row - index) {
+            chunk = startChunk(row - index);
+        }
+
+        ByteBuffer columns = chunk.columns;
+        columns.putLong(TIMESTAMP_OFFSET + 8 * index, timestampNanos);
+        columns.putInt(SIZE_OFFSET + 4 * index, size);
+        int flags = protocol.code() & PROTOCOL_MASK;
+        if (ipVersion == 6) {
+            ByteBuffer v6 = chunk.v6Columns;
+            if (v6 == null) {
+                v6 = allocate(V6_CHUNK_BYTES);
+                chunk.v6Columns = v6;
+            }
+            int base = 32 * index;
+            v6.putLong(base, srcHi);
+            v6.putLong(base + 8, srcLo);
+            v6.putLong(base + 16, dstHi);
+            v6.putLong(base + 24, dstLo);
+            flags |= FLAG_V6;
+        } else {
+            columns.putInt(SRC_V4_OFFSET + 4 * index, (int) srcLo);
+            columns.putInt(DST_V4_OFFSET + 4 * index, (int) dstLo);
+        }
+        columns.put(FLAGS_OFFSET + index, (byte) flags);
+
+        // Publishing the new count makes the row visible to readers
+        rowCount = row + 1;
+        return row;
+    }
+
+    private Chunk startChunk(long baseRow) {
+        int slot = (int) ((baseRow >>> CHUNK_SHIFT) % maxChunks);
+        Chunk evicted = slots[slot];
+        if (evicted != null) {
+            // Readers still holding the old chunk keep a consistent copy until they let go of it
+            firstRow = Math.max(firstRow, evicted.baseRow + CHUNK_SIZE);
+        }
+        Chunk chunk = new Chunk(baseRow, allocate(CHUNK_BYTES));
+        slots[slot] = chunk;
+        return chunk;
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        return offHeap ? ByteBuffer.allocateDirect(bytes) : ByteBuffer.allocate(bytes);
+    }
+
+    private Chunk slotFor(long row) {
+        return slots[(int) ((row >>> CHUNK_SHIFT) % maxChunks)];
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(slots, null);
+        firstRow = rowCount;
+    }
+
+    // Oldest row still held in memory; everything below it has been evicted
+    public long getFirstRow() { return firstRow; }
+
+    // Total rows ever appended; the next row number
+    public long getRowCount() { return rowCount; }
+
+    public long size() { return rowCount - firstRow; }
+
+    public long getCapacity() { return (long) maxChunks * CHUNK_SIZE; }
+
+    public boolean isOffHeap() { return offHeap; }
+
+    public View view() {
+        return new View();
+    }
+
+    // Read-only List view for UI controls. Index 0 is the oldest row in memory and
+    // elements are materialized on get(), so a TableView only creates objects for visible rows.
+    public List<PacketData> asList() {
+        return new AbstractList<>() {
+            private final View view = new View();
+
+            @Override
+            public PacketData get(int index) {
+                if (index < 0 || !view.moveTo(firstRow + index)) {
+                    throw new IndexOutOfBoundsException("Row " + index + " is not in the store");
+                }
+                return view.toPacketData();
+            }
+
+            @Override
+            public int size() {
+                return (int) Math.min(Integer.MAX_VALUE, PacketStore.this.size());
+            }
+        };
+    }
+
+    // Reusable flyweight cursor over the store; not thread-safe, one per reader.
+    // It keeps a reference to the chunk it points at, so its values stay valid even if
+    // the chunk gets evicted while it is being read.
+    public final class View {
+        private Chunk chunk;
+        private int index;
+        private long row = -1;
+
+        public boolean moveTo(long row) {
+            if (row < firstRow || row >= rowCount) {
+                return false;
+            }
+            Chunk candidate = slotFor(row);
+            // The slot may already hold a newer chunk if we raced with an eviction
+            if (candidate == null || candidate.baseRow != (row & ~(long) CHUNK_MASK)) {
+                return false;
+            }
+            this.chunk = candidate;
+            this.index = (int) (row & CHUNK_MASK);
+            this.row = row;
+            return true;
+        }
+
+        public long getRow() { return row; }
+
+        public long getTimestampNanos() { return chunk.columns.getLong(TIMESTAMP_OFFSET + 8 * index); }
+
+        public int getSize() { return chunk.columns.getInt(SIZE_OFFSET + 4 * index); }
+
+        public int getProtocolCode() { return chunk.columns.get(FLAGS_OFFSET + index) & PROTOCOL_MASK; }
+
+        public Protocol getProtocol() { return Protocol.fromCode(getProtocolCode()); }
+
+        public int getIpVersion() { return (chunk.columns.get(FLAGS_OFFSET + index) & FLAG_V6) != 0 ? 6 : 4; }
+
+        public int getSrcV4() { return chunk.columns.getInt(SRC_V4_OFFSET + 4 * index); }
+
+        public int getDstV4() { return chunk.columns.getInt(DST_V4_OFFSET + 4 * index); }
+
+        public long getSrcV6Hi() { return v6Long(0); }
+        public long getSrcV6Lo() { return v6Long(8); }
+        public long getDstV6Hi() { return v6Long(16); }
+        public long getDstV6Lo() { return v6Long(24); }
+
+        private long v6Long(int offset) {
+            ByteBuffer v6 = chunk.v6Columns;
+            return v6 != null ? v6.getLong(32 * index + offset) : 0;
+        }
+
+        public String formatSourceIp() {
+            return getIpVersion() == 6 ? IpAddresses.formatV6(getSrcV6Hi(), getSrcV6Lo()) : IpAddresses.formatV4(getSrcV4());
+        }
+
+        public String formatDestinationIp() {
+            return getIpVersion() == 6 ? IpAddresses.formatV6(getDstV6Hi(), getDstV6Lo()) : IpAddresses.formatV4(getDstV4());
+        }
+
+        public PacketData toPacketData() {
+            if (getIpVersion() == 6) {
+                return PacketData.ofV6(getTimestampNanos(), getSrcV6Hi(), getSrcV6Lo(), getDstV6Hi(), getDstV6Lo(), getProtocol(), getSize());
+            }
+            return PacketData.ofV4(getTimestampNanos(), getSrcV4(), getDstV4(), getProtocol(), getSize());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.networkanalyzer.model;
+
+// Protocols the analyzer tells apart. The code is what gets stored in compact
+// representations; the label is what the UI and the database show.
+public enum Protocol {
+    OTHER(0, "OTHER", null),
+    TCP(1, "TCP", null),
+    UDP(2, "UDP", null),
+    ICMP(3, "ICMP", null),
+    HTTP(4, "HTTP", TCP),
+    HTTPS(5, "HTTPS", TCP),
+    DNS(6, "DNS", UDP),
+    QUIC(7, "QUIC", UDP);
+
+    // values() clones the array on every call, so lookups go through this copy instead
+    private static final Protocol[] BY_CODE = new Protocol[values().length];
+
+    static {
+        for (Protocol protocol : values()) {
+            BY_CODE[protocol.code] = protocol;
+        }
+    }
+
+    private final byte code;
+    private final String label;
+    private final Protocol transport;
+
+    Protocol(int code, String label, Protocol transport) {
+        this.code = (byte) code;
+        this.label = label;
+        this.transport = transport;
+    }
+
+    public byte code() { return code; }
+    public String label() { return label; }
+
+    // The transport an application protocol runs over, or the protocol itself
+    public Protocol transport() { return transport != null ? transport : this; }
+
+    public static Protocol fromCode(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : OTHER;
+    }
+
+    public static Protocol fromLabel(String label) {
+        if (label != null) {
+            for (Protocol protocol : BY_CODE) {
+                if (protocol.label.equalsIgnoreCase(label)) {
+                    return protocol;
+                }
+            }
+        }
+        return OTHER;
+    }
+
+    public static int count() {
+        return BY_CODE.length;
+    }
+}
@@ -0,0 +1,51 @@
+package com.networkanalyzer.model;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+// Epoch-nanosecond timestamps, the representation packets are kept in.
+public final class Timestamps {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    // The wall clock is read once a second and advanced with nanoTime in between, so reading it
+    // per packet doesn't allocate. Re-reading it keeps up with NTP steps and with the drift
+    // between nanoTime and the clock pcap stamps packets with, which the flow timeouts and
+    // summary buckets compare against.
+    private static final long REANCHOR_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private record Anchor(long epochNanos, long nanoTime) {
+    }
+
+    private static volatile Anchor anchor = newAnchor();
+
+    private Timestamps() {
+    }
+
+    public static long nowNanos() {
+        Anchor current = anchor;
+        long elapsed = System.nanoTime() - current.nanoTime;
+        if (elapsed >= REANCHOR_NANOS) {
+            current = newAnchor();
+            anchor = current;
+            elapsed = 0;
+        }
+        return current.epochNanos + elapsed;
+    }
+
+    private static Anchor newAnchor() {
+        Instant now = Instant.now();
+        return new Anchor(now.getEpochSecond() * NANOS_PER_SECOND + now.getNano(), System.nanoTime());
+    }
+
+    public static LocalDateTime toLocalDateTime(long epochNanos) {
+        Instant instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+        return LocalDateTime.ofInstant(instant, ZoneId.systemDefault());
+    }
+
+    public static long fromLocalDateTime(LocalDateTime dateTime) {
+        Instant instant = dateTime.atZone(ZoneId.systemDefault()).toInstant();
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+}
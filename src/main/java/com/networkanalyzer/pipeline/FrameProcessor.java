@@ -0,0 +1,18 @@
+package com.networkanalyzer.pipeline;
+
+import java.nio.ByteBuffer;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.flow.FlowTable;
+
+// Decode/classify/aggregate/sink step run by a shard worker. The decoder and the flow table
+// (null when flows aren't tracked) belong to the calling worker.
+public interface FrameProcessor {
+    // Returns false for frames that aren't IP packets
+    boolean process(ByteBuffer frame, int linkType, FrameDecoder decoder, FlowTable flows, long timestampNanos, int wireLength);
+
+    // Housekeeping on the worker thread: about once a second, and once more with stopping set
+    // after the worker's queue is drained for good
+    default void tick(FlowTable flows, long nowNanos, boolean stopping) {
+    }
+}
@@ -0,0 +1,239 @@
+package com.networkanalyzer.pipeline;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.flow.FlowTable;
+import com.networkanalyzer.metrics.Counter;
+import com.networkanalyzer.metrics.MetricsRegistry;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.util.MpscRingBuffer;
+import com.networkanalyzer.util.RateLimitedLog;
+
+// capture -> decode -> classify/aggregate -> sink, spread over cores.
+//
+// Capture threads only parse headers far enough to hash the 5-tuple and put the raw frame on
+// the queue of shard (hash % shards). Each shard has one worker thread ("pipeline-<n>") that
+// decodes, classifies, updates its own flow table and hands the packet to the sink, so the
+// expensive part runs on N cores while every flow still sees its packets in capture order,
+// and no flow table is ever shared between threads. Queues are bounded lock-free
+// MPSC rings (one per shard, fed by every capture thread); when one is full the frame is
+// dropped and counted rather than stalling the capture thread and the kernel buffer behind it.
+//
+// Idle workers back off from spinning to parking for up to MAX_PARK_NANOS, which bounds the
+// latency a packet can pick up on an otherwise idle shard.
+//
+// Queue depth, throughput, drops and failures of each shard are in the metrics registry,
+// labelled shard=<n>, while the pipeline runs.
+public final class ShardedPipeline {
+    private static final Logger log = LoggerFactory.getLogger(ShardedPipeline.class);
+
+    private static final int DRAIN_BATCH = 256;
+    private static final int SPIN_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // A raw frame on its way to a shard worker
+    private record Frame(byte[] bytes, int linkType, long timestampNanos, int wireLength, long enqueuedNanos) { }
+
+    private final Shard[] shards;
+    private final FrameProcessor processor;
+    private volatile boolean running;
+    // Frames that came in after stop(), or were still queued when the workers exited
+    private final LongAdder stranded = new LongAdder();
+    // Shared by the workers, so a packet that breaks every shard logs a few lines, not thousands
+    private final RateLimitedLog errorLog = new RateLimitedLog(log);
+
+    // flowTables is asked once per shard and may return null when flows aren't tracked
+    public ShardedPipeline(int shardCount, int queueCapacity, FrameProcessor processor, Supplier<FlowTable> flowTables) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.processor = processor;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i, queueCapacity, flowTables.get());
+        }
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Shard shard : shards) {
+            shard.registerMetrics(MetricsRegistry.global());
+            shard.thread = new Thread(shard::run, "pipeline-" + shard.index);
+            shard.thread.setDaemon(true);
+            shard.thread.start();
+        }
+    }
+
+    // Called by capture threads with their own decoder, which is only used to find the shard.
+    // Returns false if the frame isn't an IP packet; a full shard queue counts as a drop there.
+    public boolean submit(byte[] frame, int linkType, long timestampNanos, int wireLength, FrameDecoder decoder) {
+        if (!decoder.decode(ByteBuffer.wrap(frame), linkType)) {
+            return false;
+        }
+        if (!running) {
+            stranded.increment();
+            return true;
+        }
+        Shard shard = shards[Math.floorMod(decoder.flowHash(), shards.length)];
+        if (!shard.queue.offer(new Frame(frame, linkType, timestampNanos, wireLength, System.nanoTime()))) {
+            shard.dropped.increment();
+        }
+        return true;
+    }
+
+    // Lets the workers finish what is queued, then stops them
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        for (Shard shard : shards) {
+            try {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (shard.thread.isAlive()) {
+                log.warn("pipeline worker did not stop shard={}", shard.index);
+            } else {
+                // Offered between the worker's last empty drain and its exit
+                stranded.add(shard.queue.size());
+            }
+            MetricsRegistry.global().remove("shard", String.valueOf(shard.index));
+        }
+    }
+
+    // Frames no worker processed because a capture thread was still submitting past stop()
+    public long getStranded() {
+        return stranded.sum();
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public List<StageStats> getStats() {
+        List<StageStats> stats = new ArrayList<>(shards.length);
+        for (Shard shard : shards) {
+            stats.add(shard.snapshot());
+        }
+        return stats;
+    }
+
+    private final class Shard {
+        final int index;
+        final MpscRingBuffer<Frame> queue;
+        final LongAdder dropped = new LongAdder();
+        Counter errors = new Counter();
+        // Each worker owns its decoder, so decoding needs no synchronization
+        final FrameDecoder decoder = new FrameDecoder();
+        final FlowTable flows;
+        Thread thread;
+
+        // Written by the worker once per drained batch
+        volatile long processed;
+        final AtomicLong queueNanos = new AtomicLong();
+        final AtomicLong maxQueueNanos = new AtomicLong();
+        final AtomicLong serviceNanos = new AtomicLong();
+        final AtomicLong measured = new AtomicLong();
+        // Worker-local totals of the current batch
+        private long batchQueueNanos;
+        private long batchMaxQueueNanos;
+
+        Shard(int index, int queueCapacity, FlowTable flows) {
+            this.index = index;
+            this.queue = new MpscRingBuffer<>(queueCapacity);
+            this.flows = flows;
+        }
+
+        void run() {
+            int idle = 0;
+            long lastTick = System.nanoTime();
+            while (true) {
+                long start = System.nanoTime();
+                if (start - lastTick >= TICK_NANOS) {
+                    lastTick = start;
+                    tick(false);
+                }
+                int drained = queue.drain(this::process, DRAIN_BATCH);
+                if (drained > 0) {
+                    long end = System.nanoTime();
+                    processed += drained;
+                    serviceNanos.addAndGet(end - start);
+                    queueNanos.addAndGet(batchQueueNanos);
+                    maxQueueNanos.accumulateAndGet(batchMaxQueueNanos, Math::max);
+                    measured.addAndGet(drained);
+                    batchQueueNanos = 0;
+                    batchMaxQueueNanos = 0;
+                    idle = 0;
+                } else if (!running) {
+                    tick(true);
+                    return;
+                } else if (++idle > SPIN_TRIES) {
+                    LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1000L << Math.min(10, idle - SPIN_TRIES)));
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        private void tick(boolean stopping) {
+            try {
+                processor.tick(flows, Timestamps.nowNanos(), stopping);
+            } catch (RuntimeException e) {
+                errors.increment();
+                errorLog.error("flow expiry failed shard={}", index, e);
+            }
+        }
+
+        private void process(Frame frame) {
+            long waited = System.nanoTime() - frame.enqueuedNanos();
+            batchQueueNanos += waited;
+            batchMaxQueueNanos = Math.max(batchMaxQueueNanos, waited);
+            try {
+                processor.process(ByteBuffer.wrap(frame.bytes()), frame.linkType(), decoder, flows, frame.timestampNanos(), frame.wireLength());
+            } catch (RuntimeException e) {
+                // One bad packet mustn't take the shard down with it
+                errors.increment();
+                errorLog.warn("packet processing failed shard={} linkType={} length={}", index, frame.linkType(),
+                    frame.bytes().length, e);
+            }
+        }
+
+        void registerMetrics(MetricsRegistry metrics) {
+            String label = String.valueOf(index);
+            metrics.gauge("netlyzer_pipeline_queue_depth", "Frames waiting for the shard worker", queue::size, "shard", label);
+            metrics.gauge("netlyzer_pipeline_queue_capacity", "Size of the shard queue", queue::capacity, "shard", label);
+            metrics.counter("netlyzer_pipeline_processed_total", "Frames the shard worker processed", () -> processed, "shard", label);
+            metrics.counter("netlyzer_pipeline_dropped_total", "Frames dropped on a full shard queue", dropped::sum, "shard", label);
+            errors = metrics.counter("netlyzer_pipeline_errors_total", "Frames the worker failed on", "shard", label);
+        }
+
+        StageStats snapshot() {
+            long count = measured.getAndSet(0);
+            long queued = queueNanos.getAndSet(0);
+            long service = serviceNanos.getAndSet(0);
+            long max = maxQueueNanos.getAndSet(0);
+            return new StageStats("shard " + index, queue.size(), queue.capacity(), processed, dropped.sum(),
+                count > 0 ? queued / 1e3 / count : 0, max / 1e3, count > 0 ? (double) service / count : 0);
+        }
+    }
+}
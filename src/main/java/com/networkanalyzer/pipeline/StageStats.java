@@ -0,0 +1,17 @@
+package com.networkanalyzer.pipeline;
+
+// Snapshot of one pipeline stage. Latencies cover the interval since the previous snapshot:
+// queue latency is the time from enqueue to the worker picking the packet up, service time the
+// time the worker spent on it. Stages without a meaningful value report 0.
+public record StageStats(String stage, int depth, int capacity, long processed, long dropped,
+                         double avgQueueMicros, double maxQueueMicros, double avgServiceNanos) {
+    public double fillRatio() {
+        return capacity > 0 ? (double) depth / capacity : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: depth %,d/%,d, %,d processed, %,d dropped, queue %.1f us avg / %.1f us max, %.0f ns per packet",
+            stage, depth, capacity, processed, dropped, avgQueueMicros, maxQueueMicros, avgServiceNanos);
+    }
+}
@@ -0,0 +1,173 @@
+package com.networkanalyzer.query;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.networkanalyzer.util.IntList;
+
+// Inverted index from IP address to the (sorted) rows it appears in.
+// Distinct addresses live in dense entry arrays behind an open-addressing hash table,
+// so lookups never box or build String keys. IPv4 addresses are additionally threaded
+// into a binary trie, which answers CIDR/prefix queries by walking the prefix bits and
+// collecting the addresses below that node instead of touching every row.
+final class AddressIndex {
+    private static final int NO_NODE = 0;
+
+    // Entries
+    private int[] entryVersion = new int[64];
+    private long[] entryHi = new long[64];
+    private long[] entryLo = new long[64];
+    private IntList[] entryRows = new IntList[64];
+    private int entryCount;
+
+    // Hash table of entry id + 1; 0 marks an empty slot
+    private int[] table = new int[128];
+
+    // IPv4 trie: node 0 is unused so 0 can mean "no child"; node 1 is the root.
+    // Nodes at depth 32 store the entry id in leafEntry.
+    private int[] zero = new int[1024];
+    private int[] one = new int[1024];
+    private int[] leafEntry = new int[1024];
+    private int nodeCount = 2;
+
+    void add(int version, long hi, long lo, int row) {
+        rowsFor(version, hi, lo).add(row);
+    }
+
+    private IntList rowsFor(int version, long hi, long lo) {
+        int mask = table.length - 1;
+        int slot = hash(version, hi, lo) & mask;
+        while (true) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return entryRows[insert(version, hi, lo, slot)];
+            }
+            if (entryVersion[id] == version && entryHi[id] == hi && entryLo[id] == lo) {
+                return entryRows[id];
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private int insert(int version, long hi, long lo, int slot) {
+        if (entryCount == entryRows.length) {
+            int capacity = entryCount * 2;
+            entryVersion = Arrays.copyOf(entryVersion, capacity);
+            entryHi = Arrays.copyOf(entryHi, capacity);
+            entryLo = Arrays.copyOf(entryLo, capacity);
+            entryRows = Arrays.copyOf(entryRows, capacity);
+        }
+        int id = entryCount++;
+        entryVersion[id] = version;
+        entryHi[id] = hi;
+        entryLo[id] = lo;
+        entryRows[id] = new IntList(8);
+        table[slot] = id + 1;
+        if (version == 4) {
+            insertIntoTrie((int) lo, id);
+        }
+        // Keep the table at most half full
+        if (entryCount * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        table = new int[table.length * 2];
+        int mask = table.length - 1;
+        for (int id = 0; id < entryCount; id++) {
+            int slot = hash(entryVersion[id], entryHi[id], entryLo[id]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    private void insertIntoTrie(int address, int id) {
+        int node = 1;
+        for (int bit = 31; bit >= 0; bit--) {
+            int[] children = ((address >>> bit) & 1) == 0 ? zero : one;
+            int child = children[node];
+            if (child == NO_NODE) {
+                child = newNode();
+                // newNode may have grown the arrays
+                children = ((address >>> bit) & 1) == 0 ? zero : one;
+                children[node] = child;
+            }
+            node = child;
+        }
+        leafEntry[node] = id;
+    }
+
+    private int newNode() {
+        if (nodeCount == zero.length) {
+            int capacity = zero.length * 2;
+            zero = Arrays.copyOf(zero, capacity);
+            one = Arrays.copyOf(one, capacity);
+            leafEntry = Arrays.copyOf(leafEntry, capacity);
+        }
+        return nodeCount++;
+    }
+
+    // Hands the row list of every indexed address inside the range to the sink
+    void forEachRows(PacketFilter.AddressRange range, Consumer<IntList> sink) {
+        if (range.version() == 4) {
+            int address = (int) range.lo();
+            int node = 1;
+            for (int bit = 31; bit >= 32 - range.prefixLength() && node != NO_NODE; bit--) {
+                node = ((address >>> bit) & 1) == 0 ? zero[node] : one[node];
+            }
+            if (node != NO_NODE) {
+                collectLeaves(node, 32 - range.prefixLength(), sink);
+            }
+            return;
+        }
+        for (int id = 0; id < entryCount; id++) {
+            if (range.contains(entryVersion[id], entryHi[id], entryLo[id])) {
+                sink.accept(entryRows[id]);
+            }
+        }
+    }
+
+    // Substring filters can't use the trie; they still only test each distinct address once
+    void forEachRows(PacketFilter filter, Consumer<IntList> sink) {
+        for (int id = 0; id < entryCount; id++) {
+            if (filter.matchesAddress(entryVersion[id], entryHi[id], entryLo[id])) {
+                sink.accept(entryRows[id]);
+            }
+        }
+    }
+
+    private void collectLeaves(int node, int remainingBits, Consumer<IntList> sink) {
+        if (remainingBits == 0) {
+            sink.accept(entryRows[leafEntry[node]]);
+            return;
+        }
+        if (zero[node] != NO_NODE) {
+            collectLeaves(zero[node], remainingBits - 1, sink);
+        }
+        if (one[node] != NO_NODE) {
+            collectLeaves(one[node], remainingBits - 1, sink);
+        }
+    }
+
+    void removeBelow(int row) {
+        for (int id = 0; id < entryCount; id++) {
+            entryRows[id].removeBelow(row);
+        }
+    }
+
+    int distinctAddresses() {
+        return entryCount;
+    }
+
+    private static int hash(int version, long hi, long lo) {
+        long h = hi * 0x9E3779B97F4A7C15L + lo + version;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+}
@@ -0,0 +1,202 @@
+package com.networkanalyzer.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+// Parsed form of the UI's protocol and IP filter boxes.
+//
+// The IP text is turned into address ranges wherever possible so it can be answered from
+// an index instead of a substring scan:
+//   "10.0.0.1", "fe80::1"     exact address
+//   "10.0.0.0/8", "fe80::/10" CIDR block
+//   "192.168.1"               every address whose text starts with it, i.e. 192.168.1.0/24,
+//                             192.168.10.0/24 ... 192.168.199.0/24 as a list of CIDR blocks
+// Anything else falls back to the old "address contains text" match.
+public final class PacketFilter {
+    public static final PacketFilter ALL = new PacketFilter(null, "", Collections.emptyList(), null);
+
+    // One CIDR block; IPv4 blocks use 32-bit prefixes with the address in the low word of lo
+    public record AddressRange(int version, long hi, long lo, int prefixLength) {
+        public boolean contains(int version, long hi, long lo) {
+            if (version != this.version) {
+                return false;
+            }
+            if (version == 4) {
+                return prefixLength == 0 || ((lo ^ this.lo) & 0xFFFFFFFFL) >>> (32 - prefixLength) == 0;
+            }
+            if (prefixLength <= 64) {
+                return prefixLength == 0 || (hi ^ this.hi) >>> (64 - prefixLength) == 0;
+            }
+            return hi == this.hi && (lo ^ this.lo) >>> (128 - prefixLength) == 0;
+        }
+
+        public boolean isExact() {
+            return prefixLength == (version == 4 ? 32 : 128);
+        }
+    }
+
+    private final Protocol protocol;
+    private final String ipText;
+    private final List<AddressRange> ranges;
+    private final String substring;
+
+    private PacketFilter(Protocol protocol, String ipText, List<AddressRange> ranges, String substring) {
+        this.protocol = protocol;
+        this.ipText = ipText;
+        this.ranges = ranges;
+        this.substring = substring;
+    }
+
+    // protocolLabel is the combo box value ("All" or a protocol label), ip the raw text field
+    public static PacketFilter parse(String protocolLabel, String ip) {
+        Protocol protocol = protocolLabel == null || protocolLabel.equals("All") ? null : Protocol.fromLabel(protocolLabel);
+        String text = ip == null ? "" : ip.trim();
+        if (text.isEmpty()) {
+            return new PacketFilter(protocol, "", Collections.emptyList(), null);
+        }
+        List<AddressRange> ranges = parseRanges(text);
+        return ranges != null
+            ? new PacketFilter(protocol, text, ranges, null)
+            : new PacketFilter(protocol, text, Collections.emptyList(), text);
+    }
+
+    private static List<AddressRange> parseRanges(String text) {
+        int slash = text.indexOf('/');
+        if (slash > 0) {
+            return parseCidr(text.substring(0, slash), text.substring(slash + 1));
+        }
+        if (text.indexOf(':') >= 0) {
+            try {
+                long[] address = IpAddresses.parseV6(text);
+                return List.of(new AddressRange(6, address[0], address[1], 128));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return parseDottedPrefix(text);
+    }
+
+    private static List<AddressRange> parseCidr(String address, String bits) {
+        int prefixLength;
+        try {
+            prefixLength = Integer.parseInt(bits);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        try {
+            if (address.indexOf(':') >= 0) {
+                if (prefixLength < 0 || prefixLength > 128) return null;
+                long[] parsed = IpAddresses.parseV6(address);
+                return List.of(new AddressRange(6, parsed[0], parsed[1], prefixLength));
+            }
+            if (prefixLength < 0 || prefixLength > 32) return null;
+            return List.of(new AddressRange(4, 0, IpAddresses.parseV4(address) & 0xFFFFFFFFL, prefixLength));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Text prefix of a dotted quad -> the CIDR blocks of all addresses starting with that text
+    private static List<AddressRange> parseDottedPrefix(String text) {
+        String[] parts = text.split("\\.", -1);
+        if (parts.length > 4) return null;
+        long base = 0;
+        for (int i = 0; i < parts.length - 1; i++) {
+            int octet = parseOctet(parts[i]);
+            if (octet < 0) return null;
+            base = (base << 8) | octet;
+        }
+        String partial = parts[parts.length - 1];
+        int completeOctets = parts.length - 1;
+        if (!partial.isEmpty() && parseOctet(partial) < 0) return null;
+
+        List<AddressRange> ranges = new ArrayList<>();
+        if (completeOctets == 3) {
+            // A full address means that address, not everything that starts like it
+            ranges.add(new AddressRange(4, 0, (base << 8) | parseOctet(partial), 32));
+            return ranges;
+        }
+        if (partial.isEmpty()) {
+            // "10.1." - everything inside the completed octets
+            ranges.add(new AddressRange(4, 0, base << (8 * (4 - completeOctets)), 8 * completeOctets));
+            return ranges;
+        }
+        int prefixLength = 8 * (completeOctets + 1);
+        int shift = 8 * (4 - completeOctets - 1);
+        for (int octet = 0; octet <= 255; octet++) {
+            if (Integer.toString(octet).startsWith(partial)) {
+                long address = ((base << 8) | octet) << shift;
+                ranges.add(new AddressRange(4, 0, address, prefixLength));
+            }
+        }
+        return ranges;
+    }
+
+    private static int parseOctet(String text) {
+        if (text.isEmpty() || text.length() > 3) return -1;
+        int value = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            value = value * 10 + (c - '0');
+        }
+        return value <= 255 ? value : -1;
+    }
+
+    public Protocol getProtocol() { return protocol; }
+    public String getIpText() { return ipText; }
+    public List<AddressRange> getRanges() { return ranges; }
+    public String getSubstring() { return substring; }
+
+    public boolean hasProtocol() { return protocol != null; }
+    public boolean hasAddress() { return !ranges.isEmpty() || substring != null; }
+    public boolean isEmpty() { return !hasProtocol() && !hasAddress(); }
+
+    public boolean matchesProtocol(Protocol candidate) {
+        return protocol == null || protocol == candidate;
+    }
+
+    public boolean matchesAddress(int version, long hi, long lo) {
+        if (substring != null) {
+            String text = version == 6 ? IpAddresses.formatV6(hi, lo) : IpAddresses.formatV4((int) lo);
+            return text.contains(substring);
+        }
+        if (ranges.isEmpty()) {
+            return true;
+        }
+        for (AddressRange range : ranges) {
+            if (range.contains(version, hi, lo)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matches(PacketData packet) {
+        if (!matchesProtocol(packet.getProtocolType())) {
+            return false;
+        }
+        if (!hasAddress()) {
+            return true;
+        }
+        int version = packet.getIpVersion();
+        return matchesAddress(version, packet.getSrcHi(), packet.getSrcLo())
+            || matchesAddress(version, packet.getDstHi(), packet.getDstLo());
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PacketFilter filter
+            && protocol == filter.protocol && ipText.equals(filter.ipText);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (protocol == null ? 0 : protocol.hashCode()) + ipText.hashCode();
+    }
+}
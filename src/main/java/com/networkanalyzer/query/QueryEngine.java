@@ -0,0 +1,372 @@
+package com.networkanalyzer.query;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.PacketStore;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.util.IntList;
+
+// Answers UI filters from the in-memory PacketStore instead of the database.
+//
+// Rows are indexed incrementally: catchUp() only looks at rows appended since the last call,
+// and rows the store evicted are pruned from the front of every posting list. Postings hold
+// int offsets from baseRow, so a long capture never needs long[] postings.
+//   byProtocol   protocol code -> rows
+//   sources      source address -> rows (hash for exact, trie for IPv4 CIDR/prefix)
+//   destinations same for destination addresses
+//   time buckets one entry per second the newest timestamp reached -> first row, the newest
+//                timestamp in it and how far behind that any row in it lagged
+// Sharded workers append slightly out of timestamp order, so rows aren't sorted by time. A row
+// is never newer than the running maximum and never older than it by more than its bucket's
+// lag, which bounds how far back newest() has to look.
+// Not thread-safe; the controller drives it from a single background thread.
+public class QueryEngine {
+    // Rebase before row offsets get near the int range
+    private static final long REBASE_THRESHOLD = Integer.MAX_VALUE / 2;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Bucket lag is kept in whole microseconds; a lag this large means unbounded
+    private static final int UNBOUNDED_LAG = Integer.MAX_VALUE;
+
+    private final PacketStore store;
+    private final PacketStore.View view;
+
+    private long baseRow;
+    private long indexedRow;
+    private long baseSecond;
+    private long maxNanos;
+
+    private IntList[] byProtocol;
+    private AddressIndex sources;
+    private AddressIndex destinations;
+    private IntList bucketSeconds;
+    private IntList bucketRows;
+    private IntList bucketMaxNanos;
+    private IntList bucketLagMicros;
+
+    public QueryEngine(PacketStore store) {
+        this.store = store;
+        this.view = store.view();
+        reset(store.getFirstRow());
+    }
+
+    private void reset(long fromRow) {
+        baseRow = fromRow;
+        indexedRow = fromRow;
+        baseSecond = Long.MIN_VALUE;
+        maxNanos = Long.MIN_VALUE;
+        byProtocol = new IntList[Protocol.count()];
+        for (int i = 0; i < byProtocol.length; i++) {
+            byProtocol[i] = new IntList();
+        }
+        sources = new AddressIndex();
+        destinations = new AddressIndex();
+        bucketSeconds = new IntList();
+        bucketRows = new IntList();
+        bucketMaxNanos = new IntList();
+        bucketLagMicros = new IntList();
+    }
+
+    // Indexes rows appended since the last call and forgets evicted ones.
+    // Returns the number of newly indexed rows.
+    public long catchUp() {
+        long firstRow = store.getFirstRow();
+        long rowCount = store.getRowCount();
+        if (firstRow >= indexedRow || rowCount - baseRow > REBASE_THRESHOLD) {
+            // Everything we indexed is gone (or the offsets are getting large): start over.
+            // This also drops address entries that no longer have any rows.
+            reset(firstRow);
+        } else if (firstRow > baseRow) {
+            prune((int) (firstRow - baseRow));
+        }
+
+        long indexed = 0;
+        for (long row = Math.max(indexedRow, firstRow); row < rowCount; row++) {
+            if (view.moveTo(row)) {
+                index(row);
+                indexed++;
+            }
+        }
+        indexedRow = rowCount;
+        return indexed;
+    }
+
+    private void index(long row) {
+        int offset = (int) (row - baseRow);
+        byProtocol[view.getProtocolCode()].add(offset);
+        if (view.getIpVersion() == 6) {
+            sources.add(6, view.getSrcV6Hi(), view.getSrcV6Lo(), offset);
+            destinations.add(6, view.getDstV6Hi(), view.getDstV6Lo(), offset);
+        } else {
+            sources.add(4, 0, view.getSrcV4() & 0xFFFFFFFFL, offset);
+            destinations.add(4, 0, view.getDstV4() & 0xFFFFFFFFL, offset);
+        }
+
+        long timestamp = view.getTimestampNanos();
+        if (timestamp <= maxNanos) {
+            // A late packet joins the current bucket and widens its lag
+            long lagMicros = (maxNanos - timestamp + 999) / 1000;
+            if (lagMicros > bucketLagMicros.last()) {
+                bucketLagMicros.setLast((int) Math.min(UNBOUNDED_LAG, lagMicros));
+            }
+            return;
+        }
+        maxNanos = timestamp;
+        long second = Math.floorDiv(timestamp, NANOS_PER_SECOND);
+        if (baseSecond == Long.MIN_VALUE) {
+            baseSecond = second;
+        }
+        int relativeSecond = (int) Math.min(Integer.MAX_VALUE, second - baseSecond);
+        if (bucketSeconds.isEmpty() || relativeSecond > bucketSeconds.last()) {
+            bucketSeconds.add(relativeSecond);
+            bucketRows.add(offset);
+            bucketMaxNanos.add(0);
+            bucketLagMicros.add(0);
+        }
+        bucketMaxNanos.setLast((int) Math.floorMod(timestamp, NANOS_PER_SECOND));
+    }
+
+    private void prune(int offset) {
+        for (IntList rows : byProtocol) {
+            rows.removeBelow(offset);
+        }
+        sources.removeBelow(offset);
+        destinations.removeBelow(offset);
+        // Keep the bucket that contains the new first row
+        int keep = Math.max(0, bucketRows.lowerBound(offset + 1) - 1);
+        if (keep > 0) {
+            bucketSeconds.removeFirst(keep);
+            bucketRows.removeFirst(keep);
+            bucketMaxNanos.removeFirst(keep);
+            bucketLagMicros.removeFirst(keep);
+        }
+    }
+
+    // Newest `limit` matching rows with a timestamp before beforeNanos, oldest first by timestamp.
+    // Pass Long.MAX_VALUE to get the newest rows overall.
+    //
+    // Walks the buckets newest first and each bucket's rows backwards, keeping the newest rows
+    // seen so far. It stops once no earlier row can be newer than all of them: everything before
+    // row r is at most r's timestamp plus its bucket's lag, and everything before a bucket is at
+    // most the previous bucket's newest timestamp.
+    public List<PacketData> newest(PacketFilter filter, long beforeNanos, int limit) {
+        IntList candidates = candidates(filter);
+        int first = (int) Math.max(0, store.getFirstRow() - baseRow);
+        Newest newest = new Newest(limit);
+        for (int bucket = bucketRows.size() - 1; bucket >= 0 && limit > 0; bucket--) {
+            long lag = lagNanos(bucket);
+            if (lag != Long.MAX_VALUE && secondStart(bucket) - lag >= beforeNanos) {
+                continue;
+            }
+            int from = Math.max(first, bucketRows.get(bucket));
+            int to = bucket + 1 < bucketRows.size() ? bucketRows.get(bucket + 1) : (int) (indexedRow - baseRow);
+            if (candidates == null) {
+                for (int offset = to - 1; offset >= from; offset--) {
+                    if (!offer(newest, offset, beforeNanos, lag)) {
+                        return newest.toPacketData();
+                    }
+                }
+            } else {
+                for (int i = candidates.lowerBound(to) - 1; i >= 0 && candidates.get(i) >= from; i--) {
+                    if (!offer(newest, candidates.get(i), beforeNanos, lag)) {
+                        return newest.toPacketData();
+                    }
+                }
+            }
+            if (bucket > 0 && newest.isFull() && newest.oldest() >= newestIn(bucket - 1)) {
+                break;
+            }
+        }
+        return newest.toPacketData();
+    }
+
+    // Offers one row; false once neither it nor any earlier row can make the cut
+    private boolean offer(Newest newest, int offset, long beforeNanos, long lag) {
+        if (!view.moveTo(baseRow + offset)) {
+            return true;
+        }
+        long timestamp = view.getTimestampNanos();
+        if (newest.isFull() && lag != Long.MAX_VALUE && newest.oldest() >= timestamp + lag) {
+            return false;
+        }
+        if (timestamp < beforeNanos) {
+            newest.add(timestamp, offset);
+        }
+        return true;
+    }
+
+    private long secondStart(int bucket) {
+        return (baseSecond + bucketSeconds.get(bucket)) * NANOS_PER_SECOND;
+    }
+
+    private long newestIn(int bucket) {
+        return secondStart(bucket) + bucketMaxNanos.get(bucket);
+    }
+
+    private long lagNanos(int bucket) {
+        int micros = bucketLagMicros.get(bucket);
+        return micros == UNBOUNDED_LAG ? Long.MAX_VALUE : micros * 1000L;
+    }
+
+    // Matching packet count per protocol code over everything in memory
+    public long[] countByProtocol(PacketFilter filter) {
+        long[] counts = new long[Protocol.count()];
+        if (!filter.hasAddress()) {
+            for (int code = 0; code < counts.length; code++) {
+                if (filter.matchesProtocol(Protocol.fromCode(code))) {
+                    counts[code] = byProtocol[code].size();
+                }
+            }
+            return counts;
+        }
+        IntList candidates = candidates(filter);
+        for (int i = 0; i < candidates.size(); i++) {
+            if (view.moveTo(baseRow + candidates.get(i))) {
+                counts[view.getProtocolCode()]++;
+            }
+        }
+        return counts;
+    }
+
+    // Timestamp of the oldest row still in memory, or Long.MAX_VALUE when there is none
+    public long oldestTimestampNanos() {
+        return view.moveTo(store.getFirstRow()) ? view.getTimestampNanos() : Long.MAX_VALUE;
+    }
+
+    public long getIndexedRow() {
+        return indexedRow;
+    }
+
+    public int getDistinctAddresses() {
+        return sources.distinctAddresses() + destinations.distinctAddresses();
+    }
+
+    // Sorted row offsets matching the filter, or null when every row matches
+    private IntList candidates(PacketFilter filter) {
+        IntList protocolRows = filter.hasProtocol() ? byProtocol[filter.getProtocol().code()] : null;
+        if (!filter.hasAddress()) {
+            return protocolRows;
+        }
+
+        IntList addressRows = new IntList();
+        if (filter.getSubstring() != null) {
+            sources.forEachRows(filter, rows -> appendAll(addressRows, rows));
+            destinations.forEachRows(filter, rows -> appendAll(addressRows, rows));
+        } else {
+            for (PacketFilter.AddressRange range : filter.getRanges()) {
+                sources.forEachRows(range, rows -> appendAll(addressRows, rows));
+                destinations.forEachRows(range, rows -> appendAll(addressRows, rows));
+            }
+        }
+        addressRows.sort();
+        addressRows.dedupe();
+        return protocolRows == null ? addressRows : intersect(addressRows, protocolRows);
+    }
+
+    private static void appendAll(IntList target, IntList rows) {
+        for (int i = 0; i < rows.size(); i++) {
+            target.add(rows.get(i));
+        }
+    }
+
+    private static IntList intersect(IntList a, IntList b) {
+        IntList result = new IntList(Math.min(a.size(), b.size()));
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()) {
+            int x = a.get(i);
+            int y = b.get(j);
+            if (x == y) {
+                result.add(x);
+                i++;
+                j++;
+            } else if (x < y) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    // The newest rows offered so far: a min-heap on (timestamp, offset) that keeps at most limit
+    private final class Newest {
+        private final long[] timestamps;
+        private final int[] offsets;
+        private int size;
+
+        Newest(int limit) {
+            timestamps = new long[Math.max(0, limit)];
+            offsets = new int[Math.max(0, limit)];
+        }
+
+        boolean isFull() {
+            return size == timestamps.length;
+        }
+
+        long oldest() {
+            return timestamps[0];
+        }
+
+        void add(long timestamp, int offset) {
+            if (!isFull()) {
+                int i = size++;
+                while (i > 0 && olderThan(timestamp, offset, (i - 1) / 2)) {
+                    move((i - 1) / 2, i);
+                    i = (i - 1) / 2;
+                }
+                timestamps[i] = timestamp;
+                offsets[i] = offset;
+            } else if (size > 0 && !olderThan(timestamp, offset, 0)) {
+                replaceRoot(timestamp, offset);
+            }
+        }
+
+        // Pops the heap into packets, oldest first
+        List<PacketData> toPacketData() {
+            List<PacketData> result = new ArrayList<>(size);
+            while (size > 0) {
+                int offset = offsets[0];
+                size--;
+                if (size > 0) {
+                    replaceRoot(timestamps[size], offsets[size]);
+                }
+                if (view.moveTo(baseRow + offset)) {
+                    result.add(view.toPacketData());
+                }
+            }
+            return result;
+        }
+
+        private void replaceRoot(long timestamp, int offset) {
+            int i = 0;
+            int child;
+            while ((child = 2 * i + 1) < size) {
+                if (child + 1 < size && olderThan(timestamps[child + 1], offsets[child + 1], child)) {
+                    child++;
+                }
+                if (!older(timestamps[child], offsets[child], timestamp, offset)) {
+                    break;
+                }
+                move(child, i);
+                i = child;
+            }
+            timestamps[i] = timestamp;
+            offsets[i] = offset;
+        }
+
+        private boolean olderThan(long timestamp, int offset, int index) {
+            return older(timestamp, offset, timestamps[index], offsets[index]);
+        }
+
+        private void move(int from, int to) {
+            timestamps[to] = timestamps[from];
+            offsets[to] = offsets[from];
+        }
+    }
+
+    private static boolean older(long timestamp, int offset, long otherTimestamp, int otherOffset) {
+        return timestamp < otherTimestamp || (timestamp == otherTimestamp && offset < otherOffset);
+    }
+}
@@ -0,0 +1,193 @@
+package com.networkanalyzer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.metrics.Histogram;
+import com.networkanalyzer.metrics.MetricsRegistry;
+
+// Write-behind stage between producer threads and the database.
+// Producers only ever offer() into a bounded queue; a single writer thread drains it and
+// hands the items to the sink in batches (one JDBC batch each). The sink returns false when
+// a batch was rejected. Its counters, queue depth and batch latency are in the metrics
+// registry, labelled writer=<thread name>.
+public class BatchWriter<T> {
+    private static final Logger log = LoggerFactory.getLogger(BatchWriter.class);
+    // How long stop() waits for the writer to drain its queue (-Dnetlyzer.db.stopTimeoutMillis);
+    // past that the writer finishes in the background, so a slow database can't hang the caller
+    private static final long STOP_TIMEOUT_MILLIS = Long.getLong("netlyzer.db.stopTimeoutMillis", 2000);
+
+    private final String threadName;
+    // Queued by stop() to wake the writer without interrupting it mid-JDBC call
+    private final T wakeUp;
+    private final Predicate<List<T>> sink;
+    private final BlockingQueue<T> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    // How long the sink takes per batch, i.e. the database round trip
+    private final Histogram batchLatency;
+
+    private volatile boolean running;
+    // Kept after stop(): a writer that outlived it is still flushing, and the next start()
+    // waits for it so the sink never has two callers
+    private volatile Thread writerThread;
+
+    public BatchWriter(String threadName, T wakeUp, Predicate<List<T>> sink, int queueCapacity, int batchSize,
+                       long flushIntervalMillis) {
+        if (queueCapacity <= 0 || batchSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Queue capacity, batch size and flush interval must be positive");
+        }
+        this.threadName = threadName;
+        this.wakeUp = wakeUp;
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+
+        MetricsRegistry metrics = MetricsRegistry.global();
+        metrics.gauge("netlyzer_writer_queue_depth", "Items waiting for the writer thread", queue::size, "writer", threadName);
+        metrics.gauge("netlyzer_writer_queue_capacity", "Size of the writer queue", this::getQueueCapacity, "writer", threadName);
+        metrics.counter("netlyzer_writer_written_total", "Items the sink accepted", writtenCount::get, "writer", threadName);
+        metrics.counter("netlyzer_writer_dropped_total", "Items dropped on a full queue or while stopped", droppedCount::get, "writer", threadName);
+        metrics.counter("netlyzer_writer_failed_total", "Items in batches the sink rejected", failedCount::get, "writer", threadName);
+        batchLatency = metrics.histogram("netlyzer_writer_batch_seconds", "Time the sink took per batch", "writer", threadName);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        Thread previous = writerThread;
+        if (previous != null && previous.isAlive()) {
+            log.info("waiting for the previous writer writer={} queued={}", threadName, queue.size());
+            try {
+                previous.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("writer not started, interrupted while the previous one was flushing writer={}", threadName);
+                return;
+            }
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, threadName);
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Never blocks the caller: when the database can't keep up the packet is dropped and counted.
+    // So is anything offered while the writer is stopped, as nothing would ever drain it.
+    public boolean offer(T item) {
+        if (running && queue.offer(item) && stillQueued(item)) {
+            return true;
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    // Waits for room instead of dropping, for sources that can be slowed down, like file
+    // ingestion. Still gives up (and counts a drop) once the writer is stopped.
+    public boolean put(T item) throws InterruptedException {
+        while (running) {
+            if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+                if (stillQueued(item)) {
+                    return true;
+                }
+                break;
+            }
+        }
+        droppedCount.incrementAndGet();
+        return false;
+    }
+
+    // An item that saw running just before stop() may land after the writer's last drain.
+    // Taking it back out makes it a counted drop; if it's already gone, the writer has it.
+    private boolean stillQueued(T item) {
+        return running || !queue.remove(item);
+    }
+
+    // Stops accepting items and lets the writer thread flush everything that was queued before
+    // the call. Waits for it up to the stop timeout; a longer backlog is written in the background.
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // If the queue is full the writer is busy anyway and will see the flag on its next pass
+        queue.offer(wakeUp);
+        try {
+            writerThread.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            log.warn("writer still flushing writer={} queued={}", threadName, queue.size());
+        }
+    }
+
+    private void writeLoop() {
+        List<T> batch = new ArrayList<>(batchSize);
+        long flushDeadline = System.nanoTime() + flushIntervalNanos;
+
+        while (running) {
+            try {
+                long waitNanos = flushDeadline - System.nanoTime();
+                if (waitNanos > 0) {
+                    T item = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (item != null) {
+                        batch.add(item);
+                        queue.drainTo(batch, batchSize - batch.size());
+                    }
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            // Flush when the batch is full (size trigger) or the interval elapsed (time trigger)
+            if (batch.size() >= batchSize || System.nanoTime() - flushDeadline >= 0) {
+                writeBatch(batch);
+                flushDeadline = System.nanoTime() + flushIntervalNanos;
+            }
+        }
+        // Whatever was queued before stop(), so nothing is lost on shutdown
+        do {
+            writeBatch(batch);
+        } while (queue.drainTo(batch, batchSize) > 0);
+    }
+
+    private void writeBatch(List<T> batch) {
+        batch.removeIf(item -> item == wakeUp);
+        if (batch.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        boolean written = sink.test(batch);
+        batchLatency.recordNanos(System.nanoTime() - started);
+        if (written) {
+            writtenCount.addAndGet(batch.size());
+            batchCount.incrementAndGet();
+        } else {
+            failedCount.addAndGet(batch.size());
+        }
+        batch.clear();
+    }
+
+    public int getQueueDepth() { return queue.size(); }
+    public int getQueueCapacity() { return queue.size() + queue.remainingCapacity(); }
+    public long getWrittenCount() { return writtenCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getFailedCount() { return failedCount.get(); }
+    public long getBatchCount() { return batchCount.get(); }
+}
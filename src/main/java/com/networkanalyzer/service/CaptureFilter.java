@@ -0,0 +1,90 @@
+package com.networkanalyzer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.query.PacketFilter;
+
+// Turns the UI's protocol/IP selection, plus an optional port, into a BPF expression for
+// PcapHandle.setFilter, so unwanted packets are dropped in the kernel before they are copied
+// to user space, decoded and stored.
+//
+// Application protocols map to the ports the classifier knows them by. The kernel can't run
+// the payload heuristics, so e.g. HTTP on an unregistered port isn't captured while such a
+// filter is active. IP text that only works as a substring match has no BPF equivalent.
+public final class CaptureFilter {
+    private CaptureFilter() {
+    }
+
+    // Empty string means "capture everything"; throws IllegalArgumentException when the
+    // selection can't be expressed in BPF
+    public static String toBpf(PacketFilter filter, int port, ProtocolClassifier classifier) {
+        List<String> clauses = new ArrayList<>();
+        if (filter.hasProtocol()) {
+            clauses.add(protocolClause(filter.getProtocol(), classifier));
+        }
+        if (filter.getSubstring() != null) {
+            throw new IllegalArgumentException("\"" + filter.getIpText() + "\" is not an address, prefix or CIDR block");
+        }
+        if (!filter.getRanges().isEmpty()) {
+            List<String> hosts = new ArrayList<>();
+            for (PacketFilter.AddressRange range : filter.getRanges()) {
+                hosts.add(addressClause(range));
+            }
+            clauses.add(group(hosts));
+        }
+        if (port > 0) {
+            if (port > 65535) {
+                throw new IllegalArgumentException("Port out of range: " + port);
+            }
+            clauses.add("port " + port);
+        }
+        return String.join(" and ", clauses);
+    }
+
+    private static String protocolClause(Protocol protocol, ProtocolClassifier classifier) {
+        switch (protocol) {
+            case TCP:
+                return "tcp";
+            case UDP:
+                return "udp";
+            case ICMP:
+                return "(icmp or icmp6)";
+            case OTHER:
+                return "((ip and not (tcp or udp or icmp)) or (ip6 and not (tcp or udp or icmp6)))";
+            default:
+                List<String> ports = new ArrayList<>();
+                for (int port : classifier.tcpPortsFor(protocol)) {
+                    ports.add("tcp port " + port);
+                }
+                for (int port : classifier.udpPortsFor(protocol)) {
+                    ports.add("udp port " + port);
+                }
+                if (ports.isEmpty()) {
+                    throw new IllegalArgumentException(protocol.label() + " has no registered ports to filter on");
+                }
+                return group(ports);
+        }
+    }
+
+    // libpcap rejects "net" blocks with host bits set, so the address is masked first
+    private static String addressClause(PacketFilter.AddressRange range) {
+        int prefixLength = range.prefixLength();
+        if (range.version() == 4) {
+            int mask = prefixLength == 0 ? 0 : -1 << (32 - prefixLength);
+            String network = IpAddresses.formatV4((int) range.lo() & mask);
+            return range.isExact() ? "host " + network : "net " + network + "/" + prefixLength;
+        }
+        long hiMask = prefixLength >= 64 ? -1L : prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+        long loMask = prefixLength <= 64 ? 0 : prefixLength == 128 ? -1L : -1L << (128 - prefixLength);
+        String network = IpAddresses.formatV6(range.hi() & hiMask, range.lo() & loMask);
+        return range.isExact() ? "host " + network : "net " + network + "/" + prefixLength;
+    }
+
+    private static String group(List<String> alternatives) {
+        return alternatives.size() == 1 ? alternatives.get(0) : "(" + String.join(" or ", alternatives) + ")";
+    }
+}
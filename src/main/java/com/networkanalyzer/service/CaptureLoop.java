@@ -0,0 +1,280 @@
+package com.networkanalyzer.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.function.ToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.factory.PacketFactories;
+import org.pcap4j.packet.factory.PacketFactory;
+import org.pcap4j.packet.namednumber.DataLinkType;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.flow.FlowTable;
+import com.networkanalyzer.metrics.MetricsRegistry;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.pipeline.ShardedPipeline;
+import com.networkanalyzer.stats.CaptureSummaries;
+import com.networkanalyzer.stats.TrafficStatistics;
+import com.networkanalyzer.util.RateLimitedLog;
+
+// Capture engine for one interface, run on its own thread ("capture-<interface>", so it can be
+// found and pinned with taskset/top -H). Packets come in through pcap_dispatch callbacks of up
+// to batchSize packets: the thread sleeps in the kernel until a batch is ready or the read
+// timeout fires, so an idle link doesn't spin. stop() breaks out of a dispatch that is waiting.
+// The same loop runs generated or replayed traffic, from any other FrameSource.
+//
+// Nothing is swallowed silently: frames the decoder can't use are counted as skipped, and
+// callback or libpcap failures as errors, with the last message kept for the UI and a few a
+// minute logged. All of it, and the source's own counters, is in the metrics registry
+// labelled interface=<name> while the loop is open.
+final class CaptureLoop implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(CaptureLoop.class);
+
+    // Back off after a libpcap error so a broken handle doesn't become a busy loop
+    private static final long ERROR_BACKOFF_MILLIS = 100;
+    private static final long TICK_NANOS = 1_000_000_000L;
+
+    private static final PacketFactory<Packet, DataLinkType> PACKET_FACTORY = PacketFactories.getFactory(Packet.class, DataLinkType.class);
+
+    private final PacketCaptureService service;
+    private final String name;
+    private final FrameSource source;
+    private final int batchSize;
+    // Decoding moves to these shard workers when set; otherwise it happens on this thread
+    private final ShardedPipeline pipeline;
+    // Each capture thread owns its decoder, so decoding needs no synchronization
+    private final FrameDecoder decoder = new FrameDecoder();
+    // Flows of this interface when there is no pipeline (the shards own them otherwise)
+    private final FlowTable flows;
+    private long lastTick = System.nanoTime();
+    // Everything the interface delivered, IP or not
+    private final TrafficStatistics.InterfaceCounter traffic;
+    // Sketches of this interface; fed here because only this thread sees its packets in order
+    private final CaptureSummaries.Recorder summary;
+    private final FrameSource.FrameHandler rawHandler = this::onRawPacket;
+    private final FrameSource.FrameHandler packetHandler = this::onPacket;
+    // The pcap4j parser's link type, looked up again only when it changes
+    private DataLinkType dataLinkType;
+
+    private volatile boolean running = true;
+    private Thread thread;
+    // Guarded by this: close() came while the thread was still running, so it closes on exit
+    private boolean exited;
+    private boolean closeOnExit;
+
+    // Counted per batch on the capture thread, published after each dispatch
+    private long batchDelivered;
+    private long batchSkipped;
+    private long batchErrors;
+    private long batchFrames;
+    private long batchBytes;
+    private volatile long delivered;
+    private volatile long skipped;
+    private volatile long errors;
+    private volatile long dispatches;
+    private volatile String lastError;
+    private final RateLimitedLog errorLog = new RateLimitedLog(log);
+
+    CaptureLoop(PacketCaptureService service, FrameSource source, int batchSize, ShardedPipeline pipeline,
+                TrafficStatistics.InterfaceCounter traffic, CaptureSummaries.Recorder summary) {
+        this.service = service;
+        this.name = source.name();
+        this.source = source;
+        this.batchSize = Math.max(1, batchSize);
+        this.pipeline = pipeline;
+        this.traffic = traffic;
+        this.summary = summary;
+        this.flows = pipeline == null ? service.newFlowTable() : null;
+    }
+
+    void start() {
+        registerMetrics(MetricsRegistry.global());
+        thread = new Thread(this, "capture-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        while (running && source.isOpen()) {
+            try {
+                if (source.dispatch(batchSize, service.isRawDecoding() ? rawHandler : packetHandler) < 0) {
+                    break;
+                }
+            } catch (IOException e) {
+                batchErrors++;
+                fail(e.getMessage());
+                publish();
+                try {
+                    Thread.sleep(ERROR_BACKOFF_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+                continue;
+            }
+            publish();
+            long now = System.nanoTime();
+            if (now - lastTick >= TICK_NANOS) {
+                lastTick = now;
+                service.tickFlows(flows, Timestamps.nowNanos(), false);
+            }
+        }
+        publish();
+        service.tickFlows(flows, Timestamps.nowNanos(), true);
+        synchronized (this) {
+            exited = true;
+            if (closeOnExit) {
+                closeSource();
+            }
+        }
+    }
+
+    private void onRawPacket(byte[] frame, int linkType, long timestamp, int wireLength) {
+        try {
+            batchFrames++;
+            batchBytes += wireLength;
+            boolean ip = pipeline != null
+                ? pipeline.submit(frame, linkType, timestamp, wireLength, decoder)
+                : service.processFrame(ByteBuffer.wrap(frame), linkType, decoder, flows, timestamp, wireLength);
+            if (ip) {
+                recordSummary(timestamp, wireLength);
+                batchDelivered++;
+            } else {
+                batchSkipped++;
+            }
+        } catch (RuntimeException e) {
+            batchErrors++;
+            fail(e.toString());
+        }
+    }
+
+    // Queued or processed here, the decoder still holds this frame's headers
+    private void recordSummary(long timestamp, int wireLength) {
+        boolean v4 = decoder.isIpV4();
+        summary.record(timestamp, Math.max(wireLength, decoder.getFrameLength()), decoder.getIpVersion(),
+            v4 ? 0 : decoder.getSrcV6Hi(), v4 ? decoder.getSrcV4() & 0xFFFFFFFFL : decoder.getSrcV6Lo(),
+            v4 ? 0 : decoder.getDstV6Hi(), v4 ? decoder.getDstV4() & 0xFFFFFFFFL : decoder.getDstV6Lo(),
+            decoder.flowHash());
+    }
+
+    // The parse pcap4j's own dispatch would do for a PacketListener
+    private void onPacket(byte[] frame, int linkType, long timestamp, int wireLength) {
+        try {
+            batchFrames++;
+            batchBytes += wireLength;
+            if (dataLinkType == null || dataLinkType.value() != linkType) {
+                dataLinkType = DataLinkType.getInstance(linkType);
+            }
+            Packet packet = PACKET_FACTORY.newInstance(frame, 0, frame.length, dataLinkType);
+            if (service.processPacket(packet, timestamp, wireLength, summary)) {
+                batchDelivered++;
+            } else {
+                batchSkipped++;
+            }
+        } catch (RuntimeException e) {
+            batchErrors++;
+            fail(e.toString());
+        }
+    }
+
+    private void publish() {
+        delivered += batchDelivered;
+        skipped += batchSkipped;
+        errors += batchErrors;
+        dispatches++;
+        if (batchFrames > 0) {
+            traffic.add(batchFrames, batchBytes);
+        }
+        batchFrames = 0;
+        batchBytes = 0;
+        batchDelivered = 0;
+        batchSkipped = 0;
+        batchErrors = 0;
+    }
+
+    // Rate limited, so a flood of failures can't flood the log
+    private void fail(String message) {
+        errorLog.warn("capture error interface={} errors={} cause={}", name, errors + batchErrors, message);
+        lastError = message;
+    }
+
+    // Wakes the thread out of dispatch and waits for it to finish its batch. False if it is
+    // still running after timeoutMillis.
+    boolean stop(long timeoutMillis) {
+        running = false;
+        source.breakLoop();
+        if (thread == null) {
+            return true;
+        }
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("capture thread did not stop interface={} waitedMillis={}", name, timeoutMillis);
+            return false;
+        }
+        return true;
+    }
+
+    // Closing a handle under a thread that is still in pcap_dispatch would free it mid-read, so a
+    // thread that didn't stop closes its own source once it gets out
+    synchronized void close() {
+        if (thread != null && !exited) {
+            closeOnExit = true;
+            log.warn("capture source left open until its thread exits interface={}", name);
+            return;
+        }
+        closeSource();
+    }
+
+    private void closeSource() {
+        source.close();
+        MetricsRegistry.global().remove("interface", name);
+    }
+
+    // Per-second rates are for JMX readers; Prometheus takes rate() of the totals
+    private void registerMetrics(MetricsRegistry metrics) {
+        metrics.counter("netlyzer_interface_packets_total", "Frames the interface delivered, IP or not", traffic::packets, "interface", name);
+        metrics.counter("netlyzer_interface_bytes_total", "Bytes on the wire of those frames", traffic::bytes, "interface", name);
+        metrics.rate("netlyzer_interface_packets_per_second", "Frames per second", traffic::packets, "interface", name);
+        metrics.rate("netlyzer_interface_bits_per_second", "Bits per second on the wire", () -> traffic.bytes() * 8, "interface", name);
+        metrics.counter("netlyzer_capture_received_total", "Packets the source received (pcap_stats ps_recv)",
+            () -> counter(FrameSource.Counters::received), "interface", name);
+        metrics.counter("netlyzer_capture_kernel_dropped_total", "Packets dropped for lack of buffer space (ps_drop)",
+            () -> counter(FrameSource.Counters::dropped), "interface", name);
+        metrics.counter("netlyzer_capture_interface_dropped_total", "Packets the interface or driver dropped (ps_ifdrop)",
+            () -> counter(FrameSource.Counters::droppedByInterface), "interface", name);
+        metrics.counter("netlyzer_capture_delivered_total", "IP packets handed on by the capture thread", () -> delivered, "interface", name);
+        metrics.counter("netlyzer_capture_skipped_total", "Frames that weren't IP or were too short", () -> skipped, "interface", name);
+        metrics.counter("netlyzer_capture_errors_total", "Decode, callback and libpcap failures", () -> errors, "interface", name);
+    }
+
+    private long counter(ToLongFunction<FrameSource.Counters> field) {
+        FrameSource.Counters counters = source.counters();
+        return counters != null ? field.applyAsLong(counters) : 0;
+    }
+
+    FrameSource source() {
+        return source;
+    }
+
+    String name() {
+        return name;
+    }
+
+    // The source's counters (the kernel's, for a handle) plus ours; null if it is already closed
+    CaptureStats stats() {
+        FrameSource.Counters counters = source.counters();
+        if (counters == null) {
+            return null;
+        }
+        return new CaptureStats(name, counters.received(), counters.dropped(), counters.droppedByInterface(),
+            delivered, skipped, errors, dispatches, lastError);
+    }
+}
@@ -0,0 +1,97 @@
+package com.networkanalyzer.service;
+
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.PcapNetworkInterface;
+import org.pcap4j.core.PcapHandle.PcapDirection;
+import org.pcap4j.core.PcapHandle.TimestampPrecision;
+import org.pcap4j.core.PcapNetworkInterface.PromiscuousMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// How live capture handles are opened. The decoder only reads link, IP and transport headers
+// (plus a few payload bytes for classification), so the header-only profile keeps 128 bytes
+// per frame instead of copying up to 64K through the kernel buffer for every packet.
+//
+// Chosen with -Dnetlyzer.capture.profile=headers|interactive|full (default headers); every
+// field can be overridden on its own:
+//   -Dnetlyzer.capture.snaplen          bytes kept per frame
+//   -Dnetlyzer.capture.bufferBytes      kernel ring size; bigger absorbs longer bursts
+//   -Dnetlyzer.capture.immediate        deliver each packet as it arrives instead of batching
+//   -Dnetlyzer.capture.timeoutMillis    read timeout when not in immediate mode
+//   -Dnetlyzer.capture.nanos            nanosecond timestamps (falls back to micro if unsupported)
+//   -Dnetlyzer.capture.direction        inout, in or out
+//   -Dnetlyzer.capture.promiscuous
+public record CaptureProfile(String name, int snaplen, int bufferBytes, boolean immediate, int timeoutMillis,
+                             TimestampPrecision precision, PcapDirection direction, boolean promiscuous) {
+    private static final Logger log = LoggerFactory.getLogger(CaptureProfile.class);
+
+    // Enough for Ethernet + VLAN tags + IPv6 + TCP with options and the classifier's payload peek.
+    // Not immediate: the kernel hands over whatever arrived within the 10 ms timeout in one
+    // wakeup, which is what lets pcap_dispatch batch and the big buffer absorb bursts. 10 ms is
+    // still well inside one UI frame.
+    public static final CaptureProfile HEADERS = new CaptureProfile("headers", 128, 16 << 20, false, 10,
+        TimestampPrecision.NANO, PcapDirection.INOUT, true);
+    // Headers, delivered the moment they arrive: lowest latency to the live view on a quiet
+    // link, at the cost of a wakeup per packet under load
+    public static final CaptureProfile INTERACTIVE = new CaptureProfile("interactive", 128, 16 << 20, true, 10,
+        TimestampPrecision.NANO, PcapDirection.INOUT, true);
+    // What startCapture used to hardcode
+    public static final CaptureProfile FULL = new CaptureProfile("full", 65536, 2 << 20, false, 1000,
+        TimestampPrecision.MICRO, PcapDirection.INOUT, true);
+
+    public static CaptureProfile fromSystemProperties() {
+        CaptureProfile base = switch (System.getProperty("netlyzer.capture.profile", "headers").toLowerCase()) {
+            case "full" -> FULL;
+            case "interactive" -> INTERACTIVE;
+            default -> HEADERS;
+        };
+        return new CaptureProfile(base.name(),
+            Integer.getInteger("netlyzer.capture.snaplen", base.snaplen()),
+            Integer.getInteger("netlyzer.capture.bufferBytes", base.bufferBytes()),
+            Boolean.parseBoolean(System.getProperty("netlyzer.capture.immediate", String.valueOf(base.immediate()))),
+            Integer.getInteger("netlyzer.capture.timeoutMillis", base.timeoutMillis()),
+            Boolean.parseBoolean(System.getProperty("netlyzer.capture.nanos",
+                String.valueOf(base.precision() == TimestampPrecision.NANO))) ? TimestampPrecision.NANO : TimestampPrecision.MICRO,
+            PcapDirection.valueOf(System.getProperty("netlyzer.capture.direction", base.direction().name()).toUpperCase()),
+            Boolean.parseBoolean(System.getProperty("netlyzer.capture.promiscuous", String.valueOf(base.promiscuous()))));
+    }
+
+    // Opens and activates a handle for the interface. Nanosecond timestamps and the direction
+    // filter aren't available everywhere (WinPcap/Npcap, older kernels), so if the full request
+    // fails the handle is opened again without them rather than not at all.
+    public PcapHandle open(PcapNetworkInterface nif) throws PcapNativeException {
+        try {
+            return builder(nif, precision, direction).build();
+        } catch (PcapNativeException e) {
+            if (precision == TimestampPrecision.MICRO && direction == PcapDirection.INOUT) {
+                throw e;
+            }
+            log.warn("capture options rejected interface={} precision={} direction={} cause=\"{}\"; "
+                + "using micro timestamps in both directions", nif.getName(), precision, direction, e.getMessage());
+            return builder(nif, TimestampPrecision.MICRO, PcapDirection.INOUT).build();
+        }
+    }
+
+    private PcapHandle.Builder builder(PcapNetworkInterface nif, TimestampPrecision precision, PcapDirection direction) {
+        PcapHandle.Builder builder = new PcapHandle.Builder(nif.getName())
+            .snaplen(snaplen)
+            .promiscuousMode(promiscuous ? PromiscuousMode.PROMISCUOUS : PromiscuousMode.NONPROMISCUOUS)
+            .timeoutMillis(timeoutMillis)
+            .bufferSize(bufferBytes)
+            .immediateMode(immediate)
+            .timestampPrecision(precision);
+        // INOUT is libpcap's default; only ask for a direction when it's a real restriction
+        if (direction != PcapDirection.INOUT) {
+            builder.direction(direction);
+        }
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: snaplen %d, buffer %d KB, %s, %s timestamps, %s%s", name, snaplen, bufferBytes >> 10,
+            immediate ? "immediate" : "timeout " + timeoutMillis + " ms", precision.name().toLowerCase(),
+            direction.name().toLowerCase(), promiscuous ? ", promiscuous" : "");
+    }
+}
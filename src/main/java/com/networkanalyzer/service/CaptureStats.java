@@ -0,0 +1,19 @@
+package com.networkanalyzer.service;
+
+// Counters of one capture handle. The first three come from the kernel (pcap_stats): packets
+// the filter accepted, packets dropped because the capture buffer was full, and packets the
+// interface/driver dropped. What each includes varies by platform; see pcap_stats(3PCAP).
+// The rest are the capture thread's: packets handed on (to a pipeline shard, if one is running), frames that weren't IP (or were too
+// short), failures in the callback or in libpcap, and pcap_dispatch calls made.
+public record CaptureStats(String interfaceName, long received, long dropped, long droppedByInterface,
+                           long delivered, long skipped, long errors, long dispatches, String lastError) {
+    public double dropRate() {
+        long total = received + dropped;
+        return total > 0 ? (double) dropped / total : 0;
+    }
+
+    // Average packets per pcap_dispatch call; near the batch size means the thread is saturated
+    public double packetsPerDispatch() {
+        return dispatches > 0 ? (double) (delivered + skipped) / dispatches : 0;
+    }
+}
@@ -1,97 +1,632 @@
 package com.networkanalyzer.service;
 
+import com.networkanalyzer.flow.FlowRecord;
+import com.networkanalyzer.model.IpAddresses;
 import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.stats.HyperLogLog;
+import com.networkanalyzer.stats.LogHistogram;
+import com.networkanalyzer.stats.SummaryBucket;
+import com.networkanalyzer.util.RateLimitedLog;
+import java.nio.ByteBuffer;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class DatabaseService {
-    private static final String URL = "jdbc:mysql://localhost:3306/netlyzer";
-    private static final String USER = "root";
-    private static final String PASSWORD = "asdf";
+public class DatabaseService implements PacketStorage {
+    private static final Logger log = LoggerFactory.getLogger(DatabaseService.class);
+    // Batch failures repeat for as long as the database is unreachable
+    private static final RateLimitedLog saveErrors = new RateLimitedLog(log);
+
+    // rewriteBatchedStatements lets Connector/J turn a JDBC batch into multi-row INSERTs.
+    // useServerPrepStmts/cachePrepStmts keep server-side prepared statements alive per pooled
+    // connection, so prepareStatement() on a reused connection is a cache hit, not a round trip.
+    static final String URL = "jdbc:mysql://localhost:3306/netlyzer"
+        + "?rewriteBatchedStatements=true"
+        + "&useServerPrepStmts=true&cachePrepStmts=true"
+        + "&prepStmtCacheSize=64&prepStmtCacheSqlLimit=2048";
+    static final String USER = "root";
+    static final String PASSWORD = "asdf";
+
+    // Pool size can be overridden with -Dnetlyzer.db.poolSize=N
+    private static final int DEFAULT_POOL_SIZE = Integer.getInteger("netlyzer.db.poolSize", 4);
+    private static final long BORROW_TIMEOUT_MILLIS = 5000;
+
+    private static final long PARTITION_MAINTENANCE_HOURS = 1;
+    private static final long MINUTE_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long HOUR_NANOS = TimeUnit.HOURS.toNanos(1);
+
+    private final DataSource dataSource;
+    private final SchemaMigrator schemaMigrator;
+    // Completed once the schema has been created or migrated (true), or that failed (false).
+    // The migration of a large legacy table can take minutes, so it runs on the maintenance
+    // thread: writes wait for it, interactive reads come back empty until it's done.
+    private final CompletableFuture<Boolean> schemaReady = new CompletableFuture<>();
+    // Migrates the schema, then keeps daily partitions ahead of the clock and applies retention
+    // while the app runs
+    private final ScheduledExecutorService maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "partition-maintenance");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public DatabaseService() {
-        initializeDatabase();
+        this(new ConnectionPool(URL, USER, PASSWORD, DEFAULT_POOL_SIZE, BORROW_TIMEOUT_MILLIS));
+    }
+
+    // Any DataSource works here, e.g. an external pool managed by the caller
+    public DatabaseService(DataSource dataSource) {
+        this(dataSource, true);
+    }
+
+    // Without manageSchema the tables are left to the caller: no migration and no partition
+    // maintenance, e.g. for a database that isn't MySQL standing in for it in benchmarks
+    public DatabaseService(DataSource dataSource, boolean manageSchema) {
+        this.dataSource = dataSource;
+        this.schemaMigrator = new SchemaMigrator(dataSource);
+        if (manageSchema) {
+            maintenance.execute(this::initializeDatabase);
+            maintenance.scheduleWithFixedDelay(this::maintainPartitions,
+                PARTITION_MAINTENANCE_HOURS, PARTITION_MAINTENANCE_HOURS, TimeUnit.HOURS);
+        } else {
+            schemaReady.complete(true);
+        }
     }
 
     private void initializeDatabase() {
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
-            String createTable = """
-                CREATE TABLE IF NOT EXISTS traffic_data (
-                    id BIGINT AUTO_INCREMENT PRIMARY KEY,
-                    timestamp DATETIME,
-                    source_ip VARCHAR(45),
-                    destination_ip VARCHAR(45),
-                    protocol VARCHAR(10),
-                    size INT
-                )
-            """;
-            try (Statement stmt = conn.createStatement()) {
-                stmt.execute(createTable);
-            }
-            System.out.println("Database connection successful!");
+        boolean migrated = false;
+        try {
+            // Creates the table, or upgrades an old VARCHAR-based one in place
+            schemaMigrator.migrate();
+            migrated = true;
+            log.info("database ready");
+        } catch (SQLException | RuntimeException e) {
+            log.error("database initialization failed", e);
+        } finally {
+            schemaReady.complete(migrated);
+        }
+    }
+
+    public boolean isSchemaReady() {
+        return schemaReady.isDone();
+    }
+
+    // Completes when the schema migration has finished, with whether it succeeded
+    public CompletableFuture<Boolean> whenSchemaReady() {
+        return schemaReady.copy();
+    }
+
+    // Every statement goes through here, so none of them runs against a half-migrated schema
+    private Connection connection() throws SQLException {
+        try {
+            schemaReady.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the schema migration", e);
+        } catch (ExecutionException e) {
+            throw new SQLException(e.getCause());
+        }
+        return dataSource.getConnection();
+    }
+
+    private void maintainPartitions() {
+        try {
+            schemaMigrator.maintainPartitions();
         } catch (SQLException e) {
-            e.printStackTrace();
+            log.warn("partition maintenance failed", e);
         }
     }
 
     public void savePacket(PacketData packet) {
+        savePackets(List.of(packet));
+    }
+
+    // Inserts the whole batch in a single transaction; returns false if the batch was rejected
+    @Override
+    public boolean savePackets(List<PacketData> batch) {
         String sql = "INSERT INTO traffic_data (timestamp, source_ip, destination_ip, protocol, size) VALUES (?, ?, ?, ?, ?)";
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            
-            pstmt.setTimestamp(1, Timestamp.valueOf(packet.getTimestamp()));
-            pstmt.setString(2, packet.getSourceIp());
-            pstmt.setString(3, packet.getDestinationIp());
-            pstmt.setString(4, packet.getProtocol());
-            pstmt.setInt(5, packet.getSize());
-            
-            pstmt.executeUpdate();
-            // Debugging output
-        System.out.println("Packet saved: " + packet);
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (PacketData packet : batch) {
+                    int version = packet.getIpVersion();
+                    pstmt.setTimestamp(1, toSqlTimestamp(packet.getTimestampNanos()));
+                    pstmt.setBytes(2, IpAddresses.toBytes(version, packet.getSrcHi(), packet.getSrcLo()));
+                    pstmt.setBytes(3, IpAddresses.toBytes(version, packet.getDstHi(), packet.getDstLo()));
+                    pstmt.setInt(4, packet.getProtocolType().code());
+                    pstmt.setInt(5, packet.getSize());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                // Rollups commit with the rows, so they never disagree with traffic_data
+                saveRollups(conn, SchemaMigrator.ROLLUP_MINUTE_TABLE, MINUTE_NANOS, batch);
+                saveRollups(conn, SchemaMigrator.ROLLUP_HOUR_TABLE, HOUR_NANOS, batch);
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            saveErrors.error("packet batch rejected rows={}", batch.size(), e);
+            return false;
+        }
+    }
+
+    // One row per exported flow, same batching as savePackets
+    public boolean saveFlows(List<FlowRecord> batch) {
+        String sql = "INSERT INTO " + SchemaMigrator.FLOW_TABLE + " (first_seen, last_seen, client_ip, client_port, server_ip,"
+            + " server_port, ip_protocol, protocol, packets_out, bytes_out, packets_in, bytes_in, tcp_flags_out, tcp_flags_in,"
+            + " end_reason) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (FlowRecord flow : batch) {
+                    int version = flow.ipVersion();
+                    pstmt.setTimestamp(1, toSqlTimestamp(flow.firstSeenNanos()));
+                    pstmt.setTimestamp(2, toSqlTimestamp(flow.lastSeenNanos()));
+                    pstmt.setBytes(3, IpAddresses.toBytes(version, flow.clientHi(), flow.clientLo()));
+                    pstmt.setInt(4, flow.clientPort());
+                    pstmt.setBytes(5, IpAddresses.toBytes(version, flow.serverHi(), flow.serverLo()));
+                    pstmt.setInt(6, flow.serverPort());
+                    pstmt.setInt(7, flow.ipProtocol());
+                    pstmt.setInt(8, flow.protocol().code());
+                    pstmt.setLong(9, flow.packetsOut());
+                    pstmt.setLong(10, flow.bytesOut());
+                    pstmt.setLong(11, flow.packetsIn());
+                    pstmt.setLong(12, flow.bytesIn());
+                    pstmt.setInt(13, flow.tcpFlagsOut());
+                    pstmt.setInt(14, flow.tcpFlagsIn());
+                    pstmt.setInt(15, flow.endReason().code());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            saveErrors.error("flow batch rejected rows={}", batch.size(), e);
+            return false;
+        }
+    }
+
+    public boolean saveSummaries(List<SummaryBucket> batch) {
+        String sql = "INSERT INTO " + SchemaMigrator.SUMMARY_TABLE + " (source, bucket_start, bucket_end, packets, bytes,"
+            + " sources_hll, destinations_hll, flows_hll, size_histogram, gap_histogram) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try (Connection conn = connection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (SummaryBucket bucket : batch) {
+                    pstmt.setString(1, bucket.source());
+                    pstmt.setTimestamp(2, toSqlTimestamp(bucket.startNanos()));
+                    pstmt.setTimestamp(3, toSqlTimestamp(bucket.endNanos()));
+                    pstmt.setLong(4, bucket.packets());
+                    pstmt.setLong(5, bucket.bytes());
+                    pstmt.setBytes(6, bucket.sources().toBytes());
+                    pstmt.setBytes(7, bucket.destinations().toBytes());
+                    pstmt.setBytes(8, bucket.flows().toBytes());
+                    pstmt.setBytes(9, bucket.sizes().toBytes());
+                    pstmt.setBytes(10, bucket.gaps().toBytes());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
         } catch (SQLException e) {
-            e.printStackTrace();
+            saveErrors.error("summary batch rejected rows={}", batch.size(), e);
+            return false;
         }
     }
 
+    // Summary buckets that overlap [fromNanos, toNanos), oldest first. A source can have several
+    // rows for the same bucket (a capture stopped and restarted within it); they merge like any
+    // other buckets.
+    public List<SummaryBucket> loadSummaries(long fromNanos, long toNanos) {
+        String sql = "SELECT source, bucket_start, bucket_end, packets, bytes, sources_hll, destinations_hll, flows_hll,"
+            + " size_histogram, gap_histogram FROM " + SchemaMigrator.SUMMARY_TABLE
+            + " WHERE bucket_start < ? AND bucket_end > ? ORDER BY bucket_start";
+        List<SummaryBucket> buckets = new ArrayList<>();
+        try (Connection conn = connection();
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setTimestamp(1, toSqlTimestamp(toNanos));
+            pstmt.setTimestamp(2, toSqlTimestamp(fromNanos));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    buckets.add(new SummaryBucket(rs.getString(1), toEpochNanos(rs.getTimestamp(2)),
+                        toEpochNanos(rs.getTimestamp(3)), rs.getLong(4), rs.getLong(5),
+                        HyperLogLog.fromBytes(rs.getBytes(6)), HyperLogLog.fromBytes(rs.getBytes(7)),
+                        HyperLogLog.fromBytes(rs.getBytes(8)), LogHistogram.fromBytes(rs.getBytes(9)),
+                        LogHistogram.fromBytes(rs.getBytes(10))));
+                }
+            }
+        } catch (SQLException | IllegalArgumentException e) {
+            log.error("summary load failed", e);
+        }
+        return buckets;
+    }
+
+    // Same wall-clock value as Timestamp.valueOf(LocalDateTime) without the LocalDateTime detour
+    private static Timestamp toSqlTimestamp(long epochNanos) {
+        Timestamp timestamp = new Timestamp(Math.floorDiv(epochNanos, 1_000_000L));
+        timestamp.setNanos((int) Math.floorMod(epochNanos, 1_000_000_000L));
+        return timestamp;
+    }
+
+    private static long toEpochNanos(Timestamp timestamp) {
+        return Math.floorDiv(timestamp.getTime(), 1000L) * 1_000_000_000L + timestamp.getNanos();
+    }
+
+    // Rebuilds the packet straight from the binary columns, no address parsing
+    static PacketData readPacket(ResultSet rs) throws SQLException {
+        long timestampNanos = toEpochNanos(rs.getTimestamp("timestamp"));
+        byte[] source = rs.getBytes("source_ip");
+        byte[] destination = rs.getBytes("destination_ip");
+        Protocol protocol = Protocol.fromCode(rs.getInt("protocol"));
+        int size = rs.getInt("size");
+        if (isV6(source) || isV6(destination)) {
+            ByteBuffer src = ByteBuffer.wrap(isV6(source) ? source : new byte[16]);
+            ByteBuffer dst = ByteBuffer.wrap(isV6(destination) ? destination : new byte[16]);
+            return PacketData.ofV6(timestampNanos, src.getLong(0), src.getLong(8), dst.getLong(0), dst.getLong(8), protocol, size);
+        }
+        return PacketData.ofV4(timestampNanos, toV4(source), toV4(destination), protocol, size);
+    }
+
+    private static boolean isV6(byte[] address) {
+        return address != null && address.length == 16;
+    }
+
+    private static int toV4(byte[] address) {
+        return address != null && address.length == 4 ? ByteBuffer.wrap(address).getInt() : 0;
+    }
+
+    // Materializes every match; only for small results. The UI pages through cursors instead.
     public List<PacketData> getFilteredPackets(String protocol, String ip) {
-        List<PacketData> packets = new ArrayList<>();
-        StringBuilder sql = new StringBuilder("SELECT * FROM traffic_data WHERE 1=1");
-        
-        if (protocol != null && !protocol.equals("All")) {
-            sql.append(" AND protocol = ?");
+        try (Stream<PacketData> packets = streamFilteredPackets(PacketFilter.parse(protocol, ip))) {
+            return packets.collect(Collectors.toList());
         }
-        if (ip != null && !ip.isEmpty()) {
-            sql.append(" AND (source_ip LIKE ? OR destination_ip LIKE ?)");
+    }
+
+    // All matching rows, newest first, read lazily; close the stream when done
+    public Stream<PacketData> streamFilteredPackets(PacketFilter filter) {
+        return openCursor(filter, null, 0).stream();
+    }
+
+    // The newest `limit` matching rows strictly older than beforeNanos, oldest first
+    public List<PacketData> getFilteredPacketsBefore(PacketFilter filter, long beforeNanos, int limit) {
+        try (PacketCursor cursor = openCursor(filter, PageKey.before(beforeNanos), limit)) {
+            List<PacketData> page = cursor.nextPage(limit);
+            Collections.reverse(page);
+            return page;
         }
-        
-        try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
-            
-            int paramIndex = 1;
-            if (protocol != null && !protocol.equals("All")) {
-                pstmt.setString(paramIndex++, protocol);
+    }
+
+    // Streams matching rows newest first, starting strictly after `before` (null for the newest
+    // row); limit 0 means no limit. Used to page history back into the live table when the
+    // user scrolls up, and for whatever part of a filter result has been evicted from memory.
+    // The query runs on the first read. Never returns null: if the query can't be prepared, the
+    // cursor is simply empty.
+    @Override
+    public PacketCursor openCursor(PacketFilter filter, PageKey before, int limit) {
+        if (!isSchemaReady()) {
+            return JdbcPacketCursor.empty();
+        }
+        StringBuilder sql = new StringBuilder("SELECT id, timestamp, source_ip, destination_ip, protocol, size FROM traffic_data WHERE 1=1");
+        List<Object> params = new ArrayList<>();
+        appendFilter(sql, params, filter);
+        if (before != null) {
+            sql.append(" AND (timestamp < ? OR (timestamp = ? AND id < ?))");
+            Timestamp timestamp = toSqlTimestamp(before.timestampNanos());
+            params.add(timestamp);
+            params.add(timestamp);
+            params.add(before.id());
+        }
+        // Matches the (…, timestamp) indexes, whose entries also carry the primary key
+        sql.append(" ORDER BY timestamp DESC, id DESC");
+        if (limit > 0) {
+            sql.append(" LIMIT ?");
+            params.add(limit);
+        }
+        return openQuery(sql.toString(), params);
+    }
+
+    // The cursor owns the connection from here on
+    private PacketCursor openQuery(String sql, List<Object> params) {
+        try {
+            return prepareQuery(sql, params);
+        } catch (SQLException e) {
+            log.error("query failed", e);
+            return JdbcPacketCursor.empty();
+        }
+    }
+
+    private JdbcPacketCursor prepareQuery(String sql, List<Object> params) throws SQLException {
+        Connection conn = connection();
+        try {
+            PreparedStatement pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            bind(pstmt, params);
+            return new JdbcPacketCursor(conn, pstmt);
+        } catch (SQLException | RuntimeException e) {
+            closeQuietly(conn);
+            throw e;
+        }
+    }
+
+    // Streams the rows oldest first; the connection is held until the last row is handed over.
+    // Unlike the interactive reads, a failed query throws: the archive must not mistake a
+    // dropped connection for the end of the day.
+    @Override
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) {
+        StringBuilder sql = new StringBuilder("SELECT id, timestamp, source_ip, destination_ip, protocol, size FROM traffic_data"
+            + " WHERE timestamp >= ? AND timestamp < ?");
+        List<Object> params = new ArrayList<>();
+        params.add(toSqlTimestamp(fromNanos));
+        params.add(toSqlTimestamp(toNanos));
+        appendFilter(sql, params, filter);
+        sql.append(" ORDER BY timestamp, id");
+
+        long count = 0;
+        try (JdbcPacketCursor cursor = prepareQuery(sql.toString(), params)) {
+            while (cursor.hasNext()) {
+                sink.accept(cursor.next());
+                count++;
             }
-            if (ip != null && !ip.isEmpty()) {
-                String ipPattern = "%" + ip + "%";
-                pstmt.setString(paramIndex++, ipPattern);
-                pstmt.setString(paramIndex, ipPattern);
+            if (cursor.getFailure() != null) {
+                throw new StorageException("scan failed after " + count + " rows", cursor.getFailure());
             }
-            
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                packets.add(new PacketData(
-                    rs.getTimestamp("timestamp").toLocalDateTime(),
-                    rs.getString("source_ip"),
-                    rs.getString("destination_ip"),
-                    rs.getString("protocol"),
-                    rs.getInt("size")
-                ));
+        } catch (SQLException e) {
+            throw new StorageException("scan failed", e);
+        }
+        return count;
+    }
+
+    @Override
+    public long count(long fromNanos, long toNanos) {
+        try (Connection conn = connection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT COUNT(*) FROM traffic_data WHERE timestamp >= ? AND timestamp < ?")) {
+            pstmt.setTimestamp(1, toSqlTimestamp(fromNanos));
+            pstmt.setTimestamp(2, toSqlTimestamp(toNanos));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                return rs.getLong(1);
             }
-            
         } catch (SQLException e) {
-            e.printStackTrace();
+            throw new StorageException("count failed", e);
+        }
+    }
+
+    // An index lookup on idx_time per partition
+    @Override
+    public long oldestTimestampNanos() {
+        if (!isSchemaReady()) {
+            throw new StorageException("schema migration still running");
+        }
+        try (Connection conn = connection();
+             PreparedStatement pstmt = conn.prepareStatement("SELECT MIN(timestamp) FROM traffic_data");
+             ResultSet rs = pstmt.executeQuery()) {
+            rs.next();
+            Timestamp oldest = rs.getTimestamp(1);
+            return oldest != null ? toEpochNanos(oldest) : Long.MAX_VALUE;
+        } catch (SQLException e) {
+            throw new StorageException("oldest timestamp query failed", e);
+        }
+    }
+
+    private static void closeQuietly(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                log.warn("connection close failed", e);
+            }
+        }
+    }
+
+    // Matching row count per protocol code for rows older than beforeNanos
+    @Override
+    public long[] countByProtocol(PacketFilter filter, long beforeNanos) {
+        return countByProtocol(filter, 0, beforeNanos);
+    }
+
+    // Packets per protocol code in [fromNanos, toNanos). Whole hours come from the hour rollup,
+    // whole minutes next to them from the minute rollup, and only the partial minutes at the
+    // edges are counted from traffic_data rows, so a day costs a few thousand rollup rows at
+    // most instead of every packet.
+    public long[] countByProtocol(PacketFilter filter, long fromNanos, long toNanos) {
+        long[] counts = new long[Protocol.count()];
+        if (!isSchemaReady()) {
+            return counts;
+        }
+        long firstMinute = ceil(fromNanos, MINUTE_NANOS);
+        long lastMinute = floor(toNanos, MINUTE_NANOS);
+        if (firstMinute >= lastMinute) {
+            countRows(filter, fromNanos, toNanos, counts);
+            return counts;
+        }
+        countRows(filter, fromNanos, firstMinute, counts);
+        long firstHour = ceil(firstMinute, HOUR_NANOS);
+        long lastHour = floor(lastMinute, HOUR_NANOS);
+        if (firstHour >= lastHour) {
+            countRollup(SchemaMigrator.ROLLUP_MINUTE_TABLE, filter, firstMinute, lastMinute, counts);
+        } else {
+            countRollup(SchemaMigrator.ROLLUP_MINUTE_TABLE, filter, firstMinute, firstHour, counts);
+            countRollup(SchemaMigrator.ROLLUP_HOUR_TABLE, filter, firstHour, lastHour, counts);
+            countRollup(SchemaMigrator.ROLLUP_MINUTE_TABLE, filter, lastHour, lastMinute, counts);
+        }
+        countRows(filter, lastMinute, toNanos, counts);
+        return counts;
+    }
+
+    private void countRows(PacketFilter filter, long fromNanos, long toNanos, long[] counts) {
+        if (fromNanos < toNanos) {
+            count("SELECT protocol, COUNT(*) FROM traffic_data WHERE timestamp >= ? AND timestamp < ?",
+                filter, fromNanos, toNanos, counts);
+        }
+    }
+
+    private void countRollup(String table, PacketFilter filter, long fromNanos, long toNanos, long[] counts) {
+        if (fromNanos < toNanos) {
+            count("SELECT protocol, SUM(packets) FROM " + table + " WHERE bucket >= ? AND bucket < ?",
+                filter, fromNanos, toNanos, counts);
+        }
+    }
+
+    // The rollups name their columns like traffic_data, so the same filter clauses apply
+    private void count(String select, PacketFilter filter, long fromNanos, long toNanos, long[] counts) {
+        StringBuilder sql = new StringBuilder(select);
+        List<Object> params = new ArrayList<>();
+        params.add(toSqlTimestamp(fromNanos));
+        params.add(toSqlTimestamp(toNanos));
+        appendFilter(sql, params, filter);
+        sql.append(" GROUP BY protocol");
+
+        try (Connection conn = connection();
+             PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+            bind(pstmt, params);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts[Protocol.fromCode(rs.getInt(1)).code()] += rs.getLong(2);
+                }
+            }
+        } catch (SQLException e) {
+            log.error("protocol count failed", e);
+        }
+    }
+
+    // Adds the batch to a rollup table: aggregated here first, so each (bucket, protocol,
+    // source, destination) is one upsert however many packets it had
+    private static void saveRollups(Connection conn, String table, long bucketNanos, List<PacketData> batch) throws SQLException {
+        Map<RollupKey, long[]> totals = new HashMap<>();
+        for (PacketData packet : batch) {
+            RollupKey key = new RollupKey(floor(packet.getTimestampNanos(), bucketNanos), packet.getProtocolType().code(),
+                packet.getIpVersion(), packet.getSrcHi(), packet.getSrcLo(), packet.getDstHi(), packet.getDstLo());
+            long[] total = totals.computeIfAbsent(key, k -> new long[2]);
+            total[0]++;
+            total[1] += packet.getSize();
+        }
+        String sql = "INSERT INTO " + table + " (bucket, protocol, source_ip, destination_ip, packets, bytes)"
+            + " VALUES (?, ?, ?, ?, ?, ?)"
+            + " ON DUPLICATE KEY UPDATE packets = packets + VALUES(packets), bytes = bytes + VALUES(bytes)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<RollupKey, long[]> entry : totals.entrySet()) {
+                RollupKey key = entry.getKey();
+                pstmt.setTimestamp(1, toSqlTimestamp(key.bucketNanos()));
+                pstmt.setInt(2, key.protocol());
+                pstmt.setBytes(3, rollupAddress(key.version(), key.srcHi(), key.srcLo()));
+                pstmt.setBytes(4, rollupAddress(key.version(), key.dstHi(), key.dstLo()));
+                pstmt.setLong(5, entry.getValue()[0]);
+                pstmt.setLong(6, entry.getValue()[1]);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+    }
+
+    private record RollupKey(long bucketNanos, int protocol, int version, long srcHi, long srcLo, long dstHi, long dstLo) {
+    }
+
+    private static byte[] rollupAddress(int version, long hi, long lo) {
+        byte[] address = IpAddresses.toBytes(version, hi, lo);
+        return address != null ? address : new byte[0];
+    }
+
+    private static long floor(long nanos, long unit) {
+        return Math.floorDiv(nanos, unit) * unit;
+    }
+
+    private static long ceil(long nanos, long unit) {
+        return -Math.floorDiv(-nanos, unit) * unit;
+    }
+
+    // Every address condition is a range on the binary column, so it can use the
+    // (source_ip, timestamp) and (destination_ip, timestamp) indexes. The length check keeps
+    // IPv4 (4 byte) and IPv6 (16 byte) values from matching each other's byte ranges.
+    // Only text that isn't an address or prefix falls back to a LIKE over INET6_NTOA.
+    private static void appendFilter(StringBuilder sql, List<Object> params, PacketFilter filter) {
+        if (filter.hasProtocol()) {
+            sql.append(" AND protocol = ?");
+            params.add(filter.getProtocol().code());
+        }
+        if (filter.getSubstring() != null) {
+            sql.append(" AND (INET6_NTOA(source_ip) LIKE ? OR INET6_NTOA(destination_ip) LIKE ?)");
+            String ipPattern = "%" + filter.getSubstring() + "%";
+            params.add(ipPattern);
+            params.add(ipPattern);
+        } else if (!filter.getRanges().isEmpty()) {
+            sql.append(" AND (");
+            String separator = "";
+            for (PacketFilter.AddressRange range : filter.getRanges()) {
+                for (String column : new String[] {"source_ip", "destination_ip"}) {
+                    sql.append(separator);
+                    appendRange(sql, params, column, range);
+                    separator = " OR ";
+                }
+            }
+            sql.append(")");
+        }
+    }
+
+    private static void appendRange(StringBuilder sql, List<Object> params, String column, PacketFilter.AddressRange range) {
+        if (range.isExact()) {
+            sql.append(column).append(" = ?");
+            params.add(IpAddresses.toBytes(range.version(), range.hi(), range.lo()));
+        } else if (range.version() == 4) {
+            long mask = range.prefixLength() == 0 ? 0 : (0xFFFFFFFFL << (32 - range.prefixLength())) & 0xFFFFFFFFL;
+            long first = range.lo() & mask;
+            sql.append("(").append(column).append(" BETWEEN ? AND ? AND LENGTH(").append(column).append(") = 4)");
+            params.add(IpAddresses.toBytes(4, 0, first));
+            params.add(IpAddresses.toBytes(4, 0, first | (~mask & 0xFFFFFFFFL)));
+        } else {
+            int prefixLength = range.prefixLength();
+            long hiMask = prefixLength >= 64 ? -1L : prefixLength == 0 ? 0 : -1L << (64 - prefixLength);
+            long loMask = prefixLength <= 64 ? 0 : -1L << (128 - prefixLength);
+            sql.append("(").append(column).append(" BETWEEN ? AND ? AND LENGTH(").append(column).append(") = 16)");
+            params.add(IpAddresses.toBytes(6, range.hi() & hiMask, range.lo() & loMask));
+            params.add(IpAddresses.toBytes(6, range.hi() | ~hiMask, range.lo() | ~loMask));
+        }
+    }
+
+    private static void bind(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            pstmt.setObject(i + 1, params.get(i));
+        }
+    }
+
+    // Pool metrics for the built-in pool, or null when an external DataSource is used
+    public ConnectionPool getConnectionPool() {
+        return dataSource instanceof ConnectionPool ? (ConnectionPool) dataSource : null;
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdownNow();
+        if (dataSource instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) dataSource).close();
+            } catch (Exception e) {
+                log.warn("data source close failed", e);
+            }
         }
-        return packets;
     }
 }
\ No newline at end of file
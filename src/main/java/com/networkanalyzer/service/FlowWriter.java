@@ -0,0 +1,18 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.flow.FlowRecord;
+
+// Write-behind stage between the flow tables and flow_records. Flows arrive in bursts when a
+// sweep expires many at once, so the queue is sized for a sweep rather than a packet rate.
+public class FlowWriter extends BatchWriter<FlowRecord> {
+    public static final int DEFAULT_QUEUE_CAPACITY = 262144;
+    public static final int DEFAULT_BATCH_SIZE = 2000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final FlowRecord WAKE_UP = new FlowRecord(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, null, 0, 0, 0, 0, 0, 0, null);
+
+    public FlowWriter(DatabaseService databaseService) {
+        super("flow-writer", WAKE_UP, databaseService::saveFlows, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE,
+            DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+}
@@ -0,0 +1,36 @@
+package com.networkanalyzer.service;
+
+import java.io.IOException;
+
+// Where a capture loop gets its frames: a live pcap handle (PcapSource), or a generated or
+// replayed stream (loadgen) that exercises everything behind the capture threads without a
+// NIC or root. One thread calls dispatch in a loop; breakLoop, counters and close may be
+// called from any thread.
+public interface FrameSource {
+    // Called on the capture thread for each frame; the array is the callee's to keep
+    @FunctionalInterface
+    interface FrameHandler {
+        void onFrame(byte[] frame, int linkType, long timestampNanos, int wireLength);
+    }
+
+    // What the source itself counted: frames it produced and frames lost before they reached
+    // the capture thread (the kernel's buffer and the interface, for a pcap handle)
+    record Counters(long received, long dropped, long droppedByInterface) { }
+
+    // Name of the capture thread and of the source in stats and summaries
+    String name();
+
+    // Hands up to max frames to the handler, waiting a short while (a read timeout, say) if
+    // none is ready. Returns how many were delivered, or -1 once the source is exhausted.
+    int dispatch(int max, FrameHandler handler) throws IOException;
+
+    // Makes a waiting dispatch return early
+    void breakLoop();
+
+    boolean isOpen();
+
+    // Null when they can't be read anymore, as from a closed handle
+    Counters counters();
+
+    void close();
+}
@@ -0,0 +1,144 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.model.PacketData;
+import java.sql.*;
+import java.util.NoSuchElementException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// PacketCursor over traffic_data: lazily reads matching rows, newest first, from a streaming
+// result set.
+//
+// The statement runs with fetch size Integer.MIN_VALUE, which makes Connector/J hand rows over
+// one at a time as they arrive instead of buffering the whole result in the client, so a
+// filter that matches millions of rows costs only the rows actually read. The cursor holds
+// its pooled connection until closed.
+//
+// The query only starts on the first hasNext(), so the cursor can be handed to whoever may
+// need to cancel it before the (possibly slow) execution begins. cancel() may be called from
+// any thread and aborts the query on the server; a streaming result set can't be closed early
+// without either reading the rest or cancelling, so close() cancels too when the cursor wasn't
+// read to the end.
+final class JdbcPacketCursor implements PacketCursor {
+    private static final Logger log = LoggerFactory.getLogger(JdbcPacketCursor.class);
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private ResultSet resultSet;
+    private PacketData next;
+    private PageKey nextKey;
+    private PageKey lastKey;
+    private boolean exhausted;
+    // Why the query ended early, if it failed rather than ran out of rows
+    private SQLException failure;
+    private volatile boolean cancelled;
+    private boolean closed;
+
+    JdbcPacketCursor(Connection connection, PreparedStatement statement) {
+        this.connection = connection;
+        this.statement = statement;
+    }
+
+    // A cursor without rows, for queries that couldn't be prepared
+    static JdbcPacketCursor empty() {
+        JdbcPacketCursor cursor = new JdbcPacketCursor(null, null);
+        cursor.exhausted = true;
+        return cursor;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (exhausted || cancelled) {
+            return false;
+        }
+        try {
+            if (resultSet == null) {
+                statement.setFetchSize(Integer.MIN_VALUE);
+                resultSet = statement.executeQuery();
+            }
+            if (!cancelled && resultSet.next()) {
+                next = DatabaseService.readPacket(resultSet);
+                nextKey = new PageKey(next.getTimestampNanos(), resultSet.getLong("id"));
+                return true;
+            }
+            exhausted = true;
+        } catch (SQLException e) {
+            // A cancelled query ends with an exception; that's the expected way out
+            if (!cancelled) {
+                log.error("packet query failed", e);
+                failure = e;
+            }
+            exhausted = true;
+        }
+        return false;
+    }
+
+    @Override
+    public PacketData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        PacketData packet = next;
+        lastKey = nextKey;
+        next = null;
+        return packet;
+    }
+
+    // Null unless the query failed; hasNext() alone can't tell that from the end of the rows
+    SQLException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public PageKey getLastKey() {
+        return lastKey;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void cancel() {
+        if (cancelled || exhausted) {
+            return;
+        }
+        cancelled = true;
+        try {
+            statement.cancel();
+        } catch (SQLException e) {
+            log.warn("packet query cancel failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!exhausted) {
+            cancel();
+        }
+        // Released in reverse order of acquisition; each one even if the one before failed
+        closeQuietly(resultSet);
+        closeQuietly(statement);
+        closeQuietly(connection);
+    }
+
+    private void closeQuietly(AutoCloseable resource) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            if (!cancelled) {
+                log.warn("packet cursor close failed", e);
+            }
+        }
+    }
+}
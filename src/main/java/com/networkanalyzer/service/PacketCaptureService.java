@@ -1,12 +1,19 @@
 package com.networkanalyzer.service;
 
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
+import org.pcap4j.core.BpfProgram;
 import org.pcap4j.core.NotOpenException;
 import org.pcap4j.core.PcapHandle;
 import org.pcap4j.core.PcapNativeException;
@@ -14,17 +21,250 @@ import org.pcap4j.core.PcapNetworkInterface;
 import org.pcap4j.core.Pcaps;
 import org.pcap4j.packet.IpV4Packet;
 import org.pcap4j.packet.Packet;
+import org.pcap4j.packet.TcpPacket;
+import org.pcap4j.packet.UdpPacket;
+import org.pcap4j.packet.namednumber.DataLinkType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.flow.FlowRecord;
+import com.networkanalyzer.flow.FlowTable;
+import com.networkanalyzer.ingest.IngestStats;
+import com.networkanalyzer.ingest.PcapFileReader;
 import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.pipeline.FrameProcessor;
+import com.networkanalyzer.pipeline.ShardedPipeline;
+import com.networkanalyzer.pipeline.StageStats;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.stats.CaptureSummaries;
+import com.networkanalyzer.stats.TopTalkers;
+import com.networkanalyzer.stats.TrafficStatistics;
 
 public class PacketCaptureService {
-    private final List<PcapHandle> handles = new ArrayList<>();
+    private static final Logger log = LoggerFactory.getLogger(PacketCaptureService.class);
+
+    // One per open interface; read by the UI for stats and filter swaps while capture threads run
+    private final List<CaptureLoop> handles = new CopyOnWriteArrayList<>();
+    // Packets per pcap_dispatch call (-Dnetlyzer.capture.dispatchBatch)
+    private final int dispatchBatch = Integer.getInteger("netlyzer.capture.dispatchBatch", 256);
+    // Decode/classify workers behind the capture threads (-Dnetlyzer.pipeline.shards, 0 decodes on
+    // the capture threads) and the queue in front of each (-Dnetlyzer.pipeline.queueSize)
+    private final int pipelineShards = Integer.getInteger("netlyzer.pipeline.shards", Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    private final int pipelineQueueSize = Integer.getInteger("netlyzer.pipeline.queueSize", 16384);
+    private volatile ShardedPipeline pipeline;
     private ExecutorService executor;
     private volatile boolean running;
+    // Raw mode decodes frame bytes directly instead of building pcap4j Packet objects.
+    // -Dnetlyzer.capture.raw=false switches back to the pcap4j parser.
+    private volatile boolean rawDecoding = Boolean.parseBoolean(System.getProperty("netlyzer.capture.raw", "true"));
     private final Consumer<PacketData> packetConsumer;
+    private final PacketWriter packetWriter;
+    private final FlowWriter flowWriter;
+    private final SummaryWriter summaryWriter;
+    // What live capture writes to the database (-Dnetlyzer.db.store): both (the default), packets
+    // (traffic_data rows, which database-backed history paging reads) or flows (flow_records
+    // only; history then stops at what is still in memory)
+    private final boolean storeFlows;
+    private final boolean storePackets;
+    // Flow table sizing and expiry, per table (-Dnetlyzer.flow.*)
+    private final int maxFlows = Integer.getInteger("netlyzer.flow.maxFlows", 131072);
+    private final long flowIdleNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("netlyzer.flow.idleTimeoutSeconds", 30));
+    private final long flowActiveNanos = TimeUnit.SECONDS.toNanos(Integer.getInteger("netlyzer.flow.activeTimeoutSeconds", 120));
+    private final Consumer<FlowRecord> flowExporter = this::exportFlow;
+    private final FrameProcessor frameProcessor = new FrameProcessor() {
+        @Override
+        public boolean process(ByteBuffer frame, int linkType, FrameDecoder decoder, FlowTable flows, long timestampNanos, int wireLength) {
+            return processFrame(frame, linkType, decoder, flows, timestampNanos, wireLength);
+        }
+
+        @Override
+        public void tick(FlowTable flows, long nowNanos, boolean stopping) {
+            tickFlows(flows, nowNanos, stopping);
+        }
+    };
+    // Read-only once built, so all capture threads share it
+    private final ProtocolClassifier classifier = ProtocolClassifier.withDefaults();
+    // Counted where packets are classified, before any queue that could drop them
+    private final TrafficStatistics statistics = new TrafficStatistics();
+    // Heavy hitters, fed at the same point; fixed memory whatever the address count
+    private final TopTalkers topTalkers = new TopTalkers();
+    // Per-source sketches (distinct addresses and flows, size and gap quantiles) by time bucket,
+    // saved as each bucket closes
+    private final CaptureSummaries summaries = new CaptureSummaries();
+    // Summaries of the file being ingested, fed from the reader's in-order sink
+    private volatile CaptureSummaries.Recorder fileSummary;
+    // File ingestion: decoder threads (-Dnetlyzer.ingest.threads) and whether ingested packets
+    // go to the database too (-Dnetlyzer.ingest.persist=false measures decoding alone)
+    private final int ingestThreads = Integer.getInteger("netlyzer.ingest.threads", Runtime.getRuntime().availableProcessors());
+    private final boolean persistIngest = Boolean.parseBoolean(System.getProperty("netlyzer.ingest.persist", "true"));
+    private volatile PcapFileReader fileReader;
+    // How handles are opened; read when a capture starts
+    private volatile CaptureProfile profile = CaptureProfile.fromSystemProperties();
+    // BPF expression applied to every handle, "" for none
+    private String captureFilter = "";
+    private volatile List<CaptureStats> finalCaptureStats = List.of();
+    private volatile List<StageStats> finalPipelineStats = List.of();
 
     public PacketCaptureService(Consumer<PacketData> packetConsumer) {
+        this(packetConsumer, null);
+    }
+
+    public PacketCaptureService(Consumer<PacketData> packetConsumer, PacketWriter packetWriter) {
+        this(packetConsumer, packetWriter, null);
+    }
+
+    public PacketCaptureService(Consumer<PacketData> packetConsumer, PacketWriter packetWriter, FlowWriter flowWriter) {
+        this(packetConsumer, packetWriter, flowWriter, null);
+    }
+
+    public PacketCaptureService(Consumer<PacketData> packetConsumer, PacketWriter packetWriter, FlowWriter flowWriter,
+                                SummaryWriter summaryWriter) {
         this.packetConsumer = packetConsumer;
+        this.packetWriter = packetWriter;
+        this.flowWriter = flowWriter;
+        this.summaryWriter = summaryWriter;
+        if (summaryWriter != null) {
+            summaries.setSink(summaryWriter::offer);
+        }
+        String store = System.getProperty("netlyzer.db.store", "both").toLowerCase();
+        this.storeFlows = flowWriter != null && !store.equals("packets");
+        // Without a flow writer there is nothing else to store
+        this.storePackets = !storeFlows || store.equals("both");
+    }
+
+    // Validates the expression against every open handle, then swaps it in on all of them
+    // while capture keeps running; handles opened later get it too. Blank removes the filter.
+    // Returns null on success, otherwise the compiler's message, in which case nothing changed.
+    public synchronized String setCaptureFilter(String expression) {
+        String bpf = expression == null ? "" : expression.trim();
+        // Generated and replayed sources have no kernel filter to swap
+        List<PcapHandle> targets = new ArrayList<>();
+        for (CaptureLoop loop : handles) {
+            if (loop.source() instanceof PcapSource pcap) {
+                targets.add(pcap.handle());
+            }
+        }
+        List<BpfProgram> programs = new ArrayList<>();
+        try {
+            for (PcapHandle open : targets) {
+                programs.add(open.compileFilter(bpf, BpfProgram.BpfCompileMode.OPTIMIZE, PcapHandle.PCAP_NETMASK_UNKNOWN));
+            }
+            if (targets.isEmpty() && !bpf.isEmpty()) {
+                // Nothing open to compile against; check the syntax for Ethernet
+                programs.add(Pcaps.compileFilter(65536, DataLinkType.EN10MB, bpf, BpfProgram.BpfCompileMode.OPTIMIZE,
+                    PcapHandle.PCAP_NETMASK_UNKNOWN));
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                targets.get(i).setFilter(programs.get(i));
+            }
+            captureFilter = bpf;
+            if (bpf.isEmpty()) {
+                log.info("capture filter removed");
+            } else {
+                log.info("capture filter set bpf=\"{}\"", bpf);
+            }
+            return null;
+        } catch (PcapNativeException | NotOpenException e) {
+            return e.getMessage();
+        } finally {
+            for (BpfProgram program : programs) {
+                program.free();
+            }
+        }
+    }
+
+    // Pushes the UI's protocol/IP selection and an optional port (0 for any) down to the kernel
+    public String setCaptureFilter(PacketFilter filter, int port) {
+        try {
+            return setCaptureFilter(CaptureFilter.toBpf(filter, port, classifier));
+        } catch (IllegalArgumentException e) {
+            return e.getMessage();
+        }
+    }
+
+    public synchronized String getCaptureFilter() {
+        return captureFilter;
+    }
+
+    private synchronized void applyCaptureFilter(String name, PcapHandle handle) {
+        if (captureFilter.isEmpty()) {
+            return;
+        }
+        try {
+            handle.setFilter(captureFilter, BpfProgram.BpfCompileMode.OPTIMIZE, PcapHandle.PCAP_NETMASK_UNKNOWN);
+        } catch (PcapNativeException | NotOpenException e) {
+            log.warn("capture filter not applied interface={} cause=\"{}\"", name, e.getMessage());
+        }
+    }
+
+    // What the last stopCapture() ended with: every source's counters once its thread was done,
+    // every stage's once it had drained. Empty before the first stop.
+    public List<CaptureStats> getFinalCaptureStats() {
+        return finalCaptureStats;
+    }
+
+    public List<StageStats> getFinalPipelineStats() {
+        return finalPipelineStats;
+    }
+
+    // Kernel counters for every open handle (or the source's own, for generated traffic)
+    public List<CaptureStats> getCaptureStats() {
+        List<CaptureStats> stats = new ArrayList<>();
+        for (CaptureLoop loop : handles) {
+            CaptureStats stat = loop.stats();
+            // null when it was closed while we were looking
+            if (stat != null) {
+                stats.add(stat);
+            }
+        }
+        return stats;
+    }
+
+    public TrafficStatistics getStatistics() {
+        return statistics;
+    }
+
+    public TopTalkers getTopTalkers() {
+        return topTalkers;
+    }
+
+    public CaptureSummaries getSummaries() {
+        return summaries;
+    }
+
+    public CaptureProfile getProfile() {
+        return profile;
+    }
+
+    // Takes effect on the next startCapture
+    public void setProfile(CaptureProfile profile) {
+        this.profile = profile;
+    }
+
+    // Queue depth and latency of every stage behind the capture threads: one entry per shard,
+    // then the database writer
+    public List<StageStats> getPipelineStats() {
+        return pipelineStats(pipeline);
+    }
+
+    private List<StageStats> pipelineStats(ShardedPipeline current) {
+        List<StageStats> stats = new ArrayList<>();
+        if (current != null) {
+            stats.addAll(current.getStats());
+        }
+        if (storeFlows) {
+            stats.add(new StageStats("flow writer", flowWriter.getQueueDepth(), flowWriter.getQueueCapacity(),
+                flowWriter.getWrittenCount(), flowWriter.getDroppedCount(), 0, 0, 0));
+        }
+        if (packetWriter != null) {
+            stats.add(new StageStats("db writer", packetWriter.getQueueDepth(), packetWriter.getQueueCapacity(),
+                packetWriter.getWrittenCount(), packetWriter.getDroppedCount(), 0, 0, 0));
+        }
+        return stats;
     }
 
     public void startCapture() {
@@ -32,33 +272,127 @@ public class PacketCaptureService {
             List<PcapNetworkInterface> validInterfaces = findPhysicalInterfaces();
             
             if (validInterfaces.isEmpty()) {
-                System.out.println("ERROR: No physical Wi-Fi or Ethernet adapters found!");
+                log.error("no physical Wi-Fi or Ethernet adapters found");
                 return;
             }
 
-            running = true;
-            // Create a thread pool large enough to handle all valid adapters simultaneously
-            executor = Executors.newFixedThreadPool(validInterfaces.size());
-
+            startStages();
+            CaptureProfile captureProfile = profile;
+            log.info("capture profile {}", captureProfile);
             for (PcapNetworkInterface nif : validInterfaces) {
-                System.out.println("Binding to adapter: " + nif.getDescription());
-                PcapHandle handle = nif.openLive(65536, PcapNetworkInterface.PromiscuousMode.PROMISCUOUS, 1000);
-                handles.add(handle);
-                
-                // Launch a dedicated capture loop for this specific adapter
-                executor.execute(() -> capturePackets(handle));
+                log.info("binding adapter interface={} description=\"{}\"", nif.getName(), nif.getDescription());
+                PcapHandle handle = captureProfile.open(nif);
+                applyCaptureFilter(nif.getName(), handle);
+                // Launch a dedicated capture thread for this specific adapter
+                startLoop(new PcapSource(nif.getName(), handle));
             }
             
         } catch (PcapNativeException e) {
-            e.printStackTrace();
+            log.error("capture start failed", e);
         }
     }
 
+    // Captures from the given sources instead of the interfaces, each on its own capture
+    // thread, through the same pipeline, writers and consumer. stopCapture() stops and closes them.
+    public void startCapture(List<FrameSource> sources) {
+        startStages();
+        for (FrameSource source : sources) {
+            log.info("capturing source={}", source);
+            startLoop(source);
+        }
+    }
+
+    // Everything behind the capture threads
+    private void startStages() {
+        running = true;
+        if (packetWriter != null) {
+            packetWriter.start();
+        }
+        if (storeFlows) {
+            flowWriter.start();
+        }
+        if (summaryWriter != null) {
+            summaryWriter.start();
+        }
+        // Sharding needs the raw frame bytes; the pcap4j parser path stays on the capture threads
+        if (rawDecoding && pipelineShards > 0) {
+            pipeline = new ShardedPipeline(pipelineShards, pipelineQueueSize, frameProcessor, this::newFlowTable);
+            pipeline.start();
+            log.info("pipeline started shards={} queueSize={}", pipelineShards, pipelineQueueSize);
+        }
+    }
+
+    private void startLoop(FrameSource source) {
+        CaptureLoop loop = new CaptureLoop(this, source, dispatchBatch, pipeline,
+            statistics.forInterface(source.name()), summaries.forSource(source.name()));
+        handles.add(loop);
+        loop.start();
+    }
+
+    // Replays a pcap/pcapng file through the same writer and consumer as a live capture, in
+    // timestamp order and with the file's timestamps. Runs in the background; onFinished gets
+    // the throughput report, or null if the file couldn't be read. stopCapture() cancels it.
+    public void startFileIngest(Path file, Consumer<IngestStats> onFinished) {
+        running = true;
+        if (packetWriter != null && persistIngest) {
+            packetWriter.start();
+        }
+        if (summaryWriter != null) {
+            summaryWriter.start();
+        }
+        fileSummary = summaries.forSource(file.getFileName().toString());
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "file-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.execute(() -> {
+            IngestStats stats = null;
+            ForkJoinPool pool = new ForkJoinPool(Math.max(1, ingestThreads));
+            try (PcapFileReader reader = new PcapFileReader(file)) {
+                fileReader = reader;
+                if (!running) {
+                    reader.cancel();
+                }
+                log.info("ingest started file={} format={} chunks={} threads={}", file,
+                    reader.isPcapng() ? "pcapng" : "pcap", reader.getChunkCount(), pool.getParallelism());
+                stats = reader.ingest(pool, classifier, this::deliverIngested);
+                log.info("ingest finished file={} {}", file, stats);
+            } catch (IOException e) {
+                log.error("ingest failed file={}", file, e);
+            } finally {
+                fileReader = null;
+                pool.shutdownNow();
+            }
+            if (onFinished != null) {
+                onFinished.accept(stats);
+            }
+        });
+    }
+
+    private void deliverIngested(PacketData data) {
+        statistics.record(data.getProtocolType(), data.getSize());
+        recordTalkers(data);
+        recordSummary(fileSummary, data);
+        if (packetWriter != null && persistIngest) {
+            try {
+                // A file can wait for the database, so nothing is dropped here
+                packetWriter.put(data);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                PcapFileReader reader = fileReader;
+                if (reader != null) {
+                    reader.cancel();
+                }
+            }
+        }
+        packetConsumer.accept(data);
+    }
+
     private List<PcapNetworkInterface> findPhysicalInterfaces() {
         List<PcapNetworkInterface> physicalNifs = new ArrayList<>();
         try {
             List<PcapNetworkInterface> allDevs = Pcaps.findAllDevs();
-            System.out.println("--- SCANNING FOR PHYSICAL ADAPTERS ---");
             
             for (PcapNetworkInterface nif : allDevs) {
                 String desc = nif.getDescription() != null ? nif.getDescription().toLowerCase() : "";
@@ -73,7 +407,7 @@ public class PacketCaptureService {
                     desc.contains("ethernet") || desc.contains("gigabit") || desc.contains("pcie")) {
                     
                     physicalNifs.add(nif);
-                    System.out.println("FOUND: " + nif.getDescription());
+                    log.info("adapter found interface={} description=\"{}\"", nif.getName(), nif.getDescription());
                 }
             }
             
@@ -81,74 +415,227 @@ public class PacketCaptureService {
             if (physicalNifs.isEmpty() && !allDevs.isEmpty()) {
                 for (PcapNetworkInterface nif : allDevs) {
                     if (!nif.isLoopBack()) {
-                        System.out.println("WARNING: Using fallback adapter: " + nif.getDescription());
+                        log.warn("using fallback adapter interface={} description=\"{}\"", nif.getName(),
+                            nif.getDescription());
                         physicalNifs.add(nif);
                         break;
                     }
                 }
             }
-            System.out.println("--------------------------------------");
             
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("adapter scan failed", e);
         }
         return physicalNifs;
     }
 
-    private void capturePackets(PcapHandle handle) {
-        while (running && handle != null && handle.isOpen()) {
-            try {
-                Packet packet = handle.getNextPacket();
-                if (packet != null) {
-                    processPacket(packet);
-                }
-            } catch (NotOpenException e) {
-                // Handle was closed, exit the loop cleanly
-                break;
-            } catch (Exception e) {
-                // Catch timeouts or other minor packet issues without killing the thread
-            }
+    public void setRawDecoding(boolean rawDecoding) {
+        this.rawDecoding = rawDecoding;
+    }
+
+    public boolean isRawDecoding() {
+        return rawDecoding;
+    }
+
+    // Kernel timestamp of the last packet read from the handle, at the handle's precision
+    static long captureTimestamp(PcapHandle handle) {
+        Timestamp timestamp = handle.getTimestamp();
+        if (timestamp == null) {
+            return Timestamps.nowNanos();
         }
+        return Math.floorDiv(timestamp.getTime(), 1000) * 1_000_000_000L + timestamp.getNanos();
+    }
+
+    // With a short snaplen only the headers are captured; the size we record is the size on the wire
+    static int wireLength(PcapHandle handle, int capturedLength) {
+        Integer original = handle.getOriginalLength();
+        return original != null ? Math.max(original, capturedLength) : capturedLength;
     }
 
-    private void processPacket(Packet packet) {
+    // A flow table for one capture thread or pipeline shard, or null when flows aren't stored
+    FlowTable newFlowTable() {
+        return storeFlows ? new FlowTable(maxFlows, flowIdleNanos, flowActiveNanos) : null;
+    }
+
+    // Expires finished flows of the caller's table, or all of them when it is stopping
+    void tickFlows(FlowTable flows, long nowNanos, boolean stopping) {
+        if (flows == null) {
+            return;
+        }
+        if (stopping) {
+            flows.expireAll(flowExporter);
+        } else {
+            flows.expire(nowNanos, flowExporter);
+        }
+    }
+
+    // Packet rows carry no ports, so these only count towards the address dimensions
+    private void recordTalkers(PacketData data) {
+        topTalkers.record(data.getIpVersion(), data.getSrcHi(), data.getSrcLo(), data.getDstHi(), data.getDstLo(),
+            0, 0, 0, data.getSize());
+    }
+
+    // Without ports the flow sketch counts address pairs
+    private static void recordSummary(CaptureSummaries.Recorder summary, PacketData data) {
+        if (summary != null) {
+            summary.record(data.getTimestampNanos(), data.getSize(), data.getIpVersion(), data.getSrcHi(), data.getSrcLo(),
+                data.getDstHi(), data.getDstLo(), FrameDecoder.flowHash(data.getSrcHi(), data.getSrcLo(), 0,
+                    data.getDstHi(), data.getDstLo(), 0, 0));
+        }
+    }
+
+    private void exportFlow(FlowRecord flow) {
+        flowWriter.offer(flow);
+    }
+
+    // Returns false for frames that aren't IP packets
+    boolean processFrame(ByteBuffer frame, int linkType, FrameDecoder decoder, FlowTable flows, long timestampNanos, int wireLength) {
+        if (!decoder.decode(frame, linkType)) {
+            return false;
+        }
+        Protocol protocol = classifier.classify(decoder, frame);
+        int size = Math.max(wireLength, decoder.getFrameLength());
+        PacketData data = decoder.toPacketData(timestampNanos, protocol, size);
+        statistics.record(protocol, size);
+        topTalkers.record(data.getIpVersion(), data.getSrcHi(), data.getSrcLo(), data.getDstHi(), data.getDstLo(),
+            decoder.getIpProtocol(), decoder.getSrcPort(), decoder.getDstPort(), size);
+
+        if (flows != null) {
+            flows.update(decoder, protocol, timestampNanos, size, flowExporter);
+        }
+        if (packetWriter != null && storePackets) {
+            packetWriter.offer(data);
+        }
+        packetConsumer.accept(data);
+        return true;
+    }
+
+    // pcap4j path, IPv4 only; returns false for anything else
+    boolean processPacket(Packet packet, PcapHandle handle, CaptureSummaries.Recorder summary) {
+        return processPacket(packet, captureTimestamp(handle), wireLength(handle, packet.length()), summary);
+    }
+
+    // Same, with the handle's timestamp and wire length already read
+    boolean processPacket(Packet packet, long timestampNanos, int wireLength, CaptureSummaries.Recorder summary) {
         IpV4Packet ipV4Packet = packet.get(IpV4Packet.class);
-        if (ipV4Packet != null) {
-            PacketData data = new PacketData(
-                LocalDateTime.now(),
-                ipV4Packet.getHeader().getSrcAddr().getHostAddress(),
-                ipV4Packet.getHeader().getDstAddr().getHostAddress(),
-                determineProtocol(packet),
-                packet.length()
-            );
-            
-            // Hand the packet back to the MainController
-            packetConsumer.accept(data);
+        if (ipV4Packet == null) {
+            return false;
+        }
+        PacketData data = new PacketData(
+            Timestamps.toLocalDateTime(timestampNanos),
+            ipV4Packet.getHeader().getSrcAddr().getHostAddress(),
+            ipV4Packet.getHeader().getDstAddr().getHostAddress(),
+            determineProtocol(ipV4Packet),
+            wireLength
+        );
+        statistics.record(data.getProtocolType(), data.getSize());
+        recordTalkers(data);
+        recordSummary(summary, data);
+        
+        // Queue for the database first; the writer never blocks this thread. This path has no
+        // flow tracking, so it writes packet rows whatever -Dnetlyzer.db.store says.
+        if (packetWriter != null) {
+            packetWriter.offer(data);
+        }
+
+        // Hand the packet back to the MainController
+        packetConsumer.accept(data);
+        return true;
+    }
+
+    // pcap4j path: same classifier, fed from the already parsed headers
+    private String determineProtocol(IpV4Packet ipV4Packet) {
+        int ipProtocol = ipV4Packet.getHeader().getProtocol().value() & 0xFF;
+        TcpPacket tcp = ipV4Packet.get(TcpPacket.class);
+        if (tcp != null) {
+            return classifyTransport(ipProtocol, tcp.getHeader().getSrcPort().valueAsInt(),
+                tcp.getHeader().getDstPort().valueAsInt(), tcp.getPayload());
+        }
+        UdpPacket udp = ipV4Packet.get(UdpPacket.class);
+        if (udp != null) {
+            return classifyTransport(ipProtocol, udp.getHeader().getSrcPort().valueAsInt(),
+                udp.getHeader().getDstPort().valueAsInt(), udp.getPayload());
         }
+        return classifier.classify(ipProtocol, 0, 0, null, 0, 0).label();
     }
 
-    private String determineProtocol(Packet packet) {
-        String packetString = packet.toString();
-        if (packetString.contains("TCP")) return "TCP";
-        if (packetString.contains("UDP")) return "UDP";
-        if (packetString.contains("HTTP")) return "HTTP";
-        if (packetString.contains("HTTPS")) return "HTTPS";
-        return "OTHER";
+    private String classifyTransport(int ipProtocol, int srcPort, int dstPort, Packet payload) {
+        ByteBuffer payloadBytes = payload != null ? ByteBuffer.wrap(payload.getRawData()) : null;
+        int length = payloadBytes != null ? payloadBytes.remaining() : 0;
+        return classifier.classify(ipProtocol, srcPort, dstPort, payloadBytes, 0, length).label();
     }
 
     public void stopCapture() {
         running = false;
+        PcapFileReader reader = fileReader;
+        if (reader != null) {
+            reader.cancel();
+        }
+
+        // Break every loop first so the threads finish their last batch before handles close
+        List<String> stuck = new ArrayList<>();
+        for (CaptureLoop loop : handles) {
+            if (!loop.stop(2000)) {
+                stuck.add(loop.name());
+            }
+        }
         
-        // Close every open handle
-        for (PcapHandle handle : handles) {
-            if (handle != null && handle.isOpen()) {
-                handle.close();
+        // Then let the shard workers drain what the capture threads queued. A thread that didn't
+        // stop may still submit; whatever it sends from here on is counted, not processed.
+        ShardedPipeline current = pipeline;
+        if (current != null) {
+            for (StageStats stats : current.getStats()) {
+                log.info("pipeline stopping {}", stats);
+            }
+            current.stop();
+            pipeline = null;
+            if (current.getStranded() > 0) {
+                log.warn("pipeline stopped with frames unprocessed stranded={}", current.getStranded());
             }
         }
+        if (!stuck.isEmpty()) {
+            log.warn("capture threads still running after stop interfaces={}", stuck);
+        }
+
+        // Final kernel counters, so a profile can be tuned against the loss it actually had
+        finalCaptureStats = getCaptureStats();
+        for (CaptureStats stats : finalCaptureStats) {
+            log.info("capture stopped interface={} received={} dropped={} droppedByInterface={} lostPercent={} "
+                + "delivered={} skipped={} errors={} packetsPerDispatch={}", stats.interfaceName(), stats.received(),
+                stats.dropped(), stats.droppedByInterface(), String.format("%.2f", stats.dropRate() * 100),
+                stats.delivered(), stats.skipped(), stats.errors(), String.format("%.1f", stats.packetsPerDispatch()));
+        }
+
+        // Close every open handle and source; one whose thread is still running closes on its exit
+        for (CaptureLoop loop : handles) {
+            loop.close();
+        }
         handles.clear();
         
         if (executor != null) {
             executor.shutdown();
+            try {
+                // Let file ingestion finish its last packet before flushing the writer
+                if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                    log.warn("file ingestion did not stop in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (packetWriter != null) {
+            packetWriter.stop();
+        }
+        if (flowWriter != null) {
+            flowWriter.stop();
+        }
+        // Every source has stopped recording, so the open buckets are complete
+        summaries.flush();
+        fileSummary = null;
+        if (summaryWriter != null) {
+            summaryWriter.stop();
         }
+        finalPipelineStats = pipelineStats(current);
     }
 }
\ No newline at end of file
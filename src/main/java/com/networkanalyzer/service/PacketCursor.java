@@ -0,0 +1,39 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.model.PacketData;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Lazily read query result of a PacketStorage, newest first. cancel() may be called from any
+// thread to abandon a query that is still running; close() releases whatever the cursor holds.
+public interface PacketCursor extends Iterator<PacketData>, AutoCloseable {
+    // Position of the last row returned, to continue with a fresh cursor later; null before the first row
+    PageKey getLastKey();
+
+    boolean isCancelled();
+
+    void cancel();
+
+    @Override
+    void close();
+
+    // Up to max rows, in the order read (newest first)
+    default List<PacketData> nextPage(int max) {
+        List<PacketData> page = new ArrayList<>(Math.min(max, 1024));
+        while (page.size() < max && hasNext()) {
+            page.add(next());
+        }
+        return page;
+    }
+
+    // Closing the stream closes the cursor; use it in try-with-resources
+    default Stream<PacketData> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+            .onClose(this::close);
+    }
+}
@@ -0,0 +1,35 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.query.PacketFilter;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Where packet rows are persisted and read back from: MySQL (DatabaseService) or the embedded
+// segment files (storage.SegmentStore), chosen with -Dnetlyzer.storage=mysql|segments.
+// savePackets is called by one writer thread at a time; the queries may run concurrently with it.
+public interface PacketStorage extends AutoCloseable {
+    // One batch from the PacketWriter; false if it was rejected
+    boolean savePackets(List<PacketData> batch);
+
+    // Matching packets newest first, strictly before `before` (null for the newest); limit 0 for all
+    PacketCursor openCursor(PacketFilter filter, PageKey before, int limit);
+
+    // Packets per protocol code with a timestamp before beforeNanos
+    long[] countByProtocol(PacketFilter filter, long beforeNanos);
+
+    // Hands every matching packet with fromNanos <= timestamp < toNanos to the sink, oldest
+    // first; returns how many there were. Throws StorageException if the read fails part way,
+    // so a partial result is never taken for the whole range.
+    long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink);
+
+    // Packets with fromNanos <= timestamp < toNanos; throws StorageException if they can't be counted
+    long count(long fromNanos, long toNanos);
+
+    // Timestamp of the oldest stored packet, Long.MAX_VALUE when there is none; throws
+    // StorageException if it can't be read
+    long oldestTimestampNanos();
+
+    @Override
+    void close();
+}
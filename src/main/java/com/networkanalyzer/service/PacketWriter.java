@@ -0,0 +1,22 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.model.PacketData;
+
+// Write-behind stage between the capture threads and the packet storage.
+// Capture threads only ever offer() into a bounded queue; a single writer thread
+// drains it and hands the packets to the storage in batches (JDBC batches for MySQL).
+public class PacketWriter extends BatchWriter<PacketData> {
+    public static final int DEFAULT_QUEUE_CAPACITY = 65536;
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 500;
+
+    private static final PacketData WAKE_UP = new PacketData(null, null, null, null, 0);
+
+    public PacketWriter(PacketStorage storage) {
+        this(storage, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    public PacketWriter(PacketStorage storage, int queueCapacity, int batchSize, long flushIntervalMillis) {
+        super("packet-writer", WAKE_UP, storage::savePackets, queueCapacity, batchSize, flushIntervalMillis);
+    }
+}
@@ -0,0 +1,12 @@
+package com.networkanalyzer.service;
+
+// Keyset position in a PacketStorage, newest first: a page continues with the rows strictly
+// before (timestamp, id). The id is the traffic_data row id, or the record number in a
+// segment store. Unlike OFFSET paging this costs the same on page 1000 as on page 1,
+// and unlike paging on the timestamp alone it never skips rows that share a timestamp.
+public record PageKey(long timestampNanos, long id) {
+    // Everything strictly older than the given time
+    public static PageKey before(long timestampNanos) {
+        return new PageKey(timestampNanos, Long.MIN_VALUE);
+    }
+}
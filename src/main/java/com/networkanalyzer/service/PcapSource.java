@@ -0,0 +1,88 @@
+package com.networkanalyzer.service;
+
+import java.io.IOException;
+
+import org.pcap4j.core.NotOpenException;
+import org.pcap4j.core.PcapHandle;
+import org.pcap4j.core.PcapNativeException;
+import org.pcap4j.core.PcapStat;
+import org.pcap4j.core.RawPacketListener;
+
+// A live interface: frames come from pcap_dispatch with the kernel's timestamp and the
+// original length, counters from pcap_stats
+final class PcapSource implements FrameSource {
+    private final String name;
+    private final PcapHandle handle;
+    private final int linkType;
+    private final RawPacketListener listener = this::onRawPacket;
+    // Only set while the capture thread is inside dispatch
+    private FrameHandler handler;
+
+    PcapSource(String name, PcapHandle handle) {
+        this.name = name;
+        this.handle = handle;
+        this.linkType = handle.getDlt().value();
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    PcapHandle handle() {
+        return handle;
+    }
+
+    @Override
+    public int dispatch(int max, FrameHandler handler) throws IOException {
+        this.handler = handler;
+        try {
+            return handle.dispatch(max, listener);
+        } catch (InterruptedException e) {
+            // breakLoop(); the caller's flag says whether it was meant for it
+            return 0;
+        } catch (NotOpenException e) {
+            return -1;
+        } catch (PcapNativeException e) {
+            throw new IOException(e.getMessage(), e);
+        } finally {
+            this.handler = null;
+        }
+    }
+
+    private void onRawPacket(byte[] frame) {
+        handler.onFrame(frame, linkType, PacketCaptureService.captureTimestamp(handle),
+            PacketCaptureService.wireLength(handle, frame.length));
+    }
+
+    @Override
+    public void breakLoop() {
+        try {
+            handle.breakLoop();
+        } catch (NotOpenException e) {
+            // Already closed, the thread is on its way out
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return handle.isOpen();
+    }
+
+    @Override
+    public Counters counters() {
+        try {
+            PcapStat stat = handle.getStats();
+            return new Counters(stat.getNumPacketsReceived(), stat.getNumPacketsDropped(), stat.getNumPacketsDroppedByIf());
+        } catch (PcapNativeException | NotOpenException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (handle.isOpen()) {
+            handle.close();
+        }
+    }
+}
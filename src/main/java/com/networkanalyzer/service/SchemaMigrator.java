@@ -0,0 +1,383 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.model.Protocol;
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Creates the traffic_data table, upgrades old tables to the current layout and keeps its
+// daily partitions rolling.
+//
+// v1 (original): VARCHAR(45) IPs, protocol labels, second-precision DATETIME and only an
+//     auto-increment key, so every filter was a full scan.
+// v2: IPs as VARBINARY(16) in INET6_ATON form (4 bytes for IPv4, 16 for IPv6), protocol as
+//     its TINYINT code, DATETIME(6), and composite indexes for the filter shapes
+//     "protocol + time", "source ip + time" and "destination ip + time". Rows are
+//     RANGE-partitioned by day, so time-bounded queries prune partitions and retention is a
+//     DROP PARTITION instead of a huge DELETE.
+//
+// flow_records holds one row per exported conversation (see FlowTable), partitioned the same
+// way by last_seen and kept for the same retention.
+//
+// traffic_rollup_minute and traffic_rollup_hour hold packets and bytes of traffic_data per
+// (bucket, protocol, source ip, destination ip), kept up to date by DatabaseService.savePackets
+// in the same transaction as the rows. Protocol counts over long ranges read these instead of
+// scanning traffic_data. When they are first created they are filled from the rows already
+// there, one day at a time. Same daily partitioning by bucket.
+//
+// capture_summaries holds the per-minute sketches of each capture source (see
+// CaptureSummaries): counters plus serialized HyperLogLog and histogram blobs, one row per
+// source and bucket, merged when read. Same daily partitioning by bucket_start.
+//
+// Can also be run on its own as a one-shot migration:
+//   java -cp network-analyzer.jar com.networkanalyzer.service.SchemaMigrator
+public class SchemaMigrator {
+    private static final Logger log = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    static final String TABLE = "traffic_data";
+    static final String FLOW_TABLE = "flow_records";
+    static final String SUMMARY_TABLE = "capture_summaries";
+    static final String ROLLUP_MINUTE_TABLE = "traffic_rollup_minute";
+    static final String ROLLUP_HOUR_TABLE = "traffic_rollup_hour";
+    // v1 table keeps its data after the migration until someone drops it
+    static final String LEGACY_TABLE = "traffic_data_v1";
+    private static final String STAGING_TABLE = "traffic_data_v2";
+    private static final String FUTURE_PARTITION = "p_future";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMMdd");
+    private static final int COPY_CHUNK_ROWS = 50_000;
+
+    private final DataSource dataSource;
+    // Partitions older than this many days are dropped; 0 keeps everything (-Dnetlyzer.db.retentionDays)
+    private final int retentionDays;
+    // Empty partitions created ahead of time (-Dnetlyzer.db.partitionDaysAhead)
+    private final int daysAhead;
+
+    public SchemaMigrator(DataSource dataSource) {
+        this(dataSource, Integer.getInteger("netlyzer.db.retentionDays", 30),
+            Integer.getInteger("netlyzer.db.partitionDaysAhead", 3));
+    }
+
+    public SchemaMigrator(DataSource dataSource, int retentionDays, int daysAhead) {
+        this.dataSource = dataSource;
+        this.retentionDays = Math.max(0, retentionDays);
+        this.daysAhead = Math.max(1, daysAhead);
+    }
+
+    // Brings traffic_data to v2 (creating or migrating it), then rolls the partitions
+    public void migrate() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            String ipType = columnType(conn, TABLE, "source_ip");
+            if (ipType == null) {
+                createTable(conn, TABLE, LocalDate.now());
+            } else if (!ipType.equalsIgnoreCase("varbinary")) {
+                migrateLegacy(conn);
+            }
+            createFlowTable(conn, LocalDate.now());
+            createSummaryTable(conn, LocalDate.now());
+            createRollupTable(conn, ROLLUP_MINUTE_TABLE, 60);
+            createRollupTable(conn, ROLLUP_HOUR_TABLE, 3600);
+        }
+        maintainPartitions();
+    }
+
+    // Copies a v1 table into a staging v2 table chunk by chunk, then swaps both names in one
+    // atomic RENAME. If the copy is interrupted, traffic_data is still the untouched v1 table
+    // and the next run simply starts over.
+    private void migrateLegacy(Connection conn) throws SQLException {
+        log.info("schema migration started table={} target=v2", TABLE);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + STAGING_TABLE);
+        }
+
+        LocalDate cutoff = retentionDays > 0 ? LocalDate.now().minusDays(retentionDays) : null;
+        long minId = 0;
+        long maxId = 0;
+        LocalDate firstDay = LocalDate.now();
+        String range = "SELECT MIN(id), MAX(id), MIN(timestamp) FROM " + TABLE
+            + " WHERE timestamp IS NOT NULL" + (cutoff != null ? " AND timestamp >= ?" : "");
+        try (PreparedStatement pstmt = conn.prepareStatement(range)) {
+            if (cutoff != null) {
+                pstmt.setTimestamp(1, Timestamp.valueOf(cutoff.atStartOfDay()));
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next() && rs.getTimestamp(3) != null) {
+                    minId = rs.getLong(1);
+                    maxId = rs.getLong(2);
+                    firstDay = rs.getTimestamp(3).toLocalDateTime().toLocalDate();
+                }
+            }
+        }
+        createTable(conn, STAGING_TABLE, firstDay);
+
+        // Rows older than the retention window would only be dropped again, so they aren't copied
+        String copy = "INSERT INTO " + STAGING_TABLE + " (timestamp, source_ip, destination_ip, protocol, size)"
+            + " SELECT timestamp, INET6_ATON(source_ip), INET6_ATON(destination_ip), " + protocolCodeCase("protocol")
+            + ", COALESCE(size, 0) FROM " + TABLE
+            + " WHERE id >= ? AND id < ? AND timestamp IS NOT NULL" + (cutoff != null ? " AND timestamp >= ?" : "");
+        long copied = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(copy)) {
+            for (long from = minId; from <= maxId && maxId > 0; from += COPY_CHUNK_ROWS) {
+                pstmt.setLong(1, from);
+                pstmt.setLong(2, from + COPY_CHUNK_ROWS);
+                if (cutoff != null) {
+                    pstmt.setTimestamp(3, Timestamp.valueOf(cutoff.atStartOfDay()));
+                }
+                copied += pstmt.executeUpdate();
+                log.info("schema migration progress rows={} id={} maxId={}", copied, Math.min(from + COPY_CHUNK_ROWS, maxId), maxId);
+            }
+        }
+
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS " + LEGACY_TABLE);
+            stmt.execute("RENAME TABLE " + TABLE + " TO " + LEGACY_TABLE + ", " + STAGING_TABLE + " TO " + TABLE);
+        }
+        log.info("schema migration finished rows={} legacyTable={}", copied, LEGACY_TABLE);
+    }
+
+    private void createTable(Connection conn, String table, LocalDate firstDay) throws SQLException {
+        LocalDate lastDay = LocalDate.now().plusDays(daysAhead);
+        List<LocalDate> days = new ArrayList<>();
+        for (LocalDate day = firstDay.isAfter(lastDay) ? lastDay : firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+            days.add(day);
+        }
+        // Unique keys of a partitioned table have to contain the partitioning column
+        String createTable = """
+            CREATE TABLE IF NOT EXISTS %s (
+                id BIGINT NOT NULL AUTO_INCREMENT,
+                timestamp DATETIME(6) NOT NULL,
+                source_ip VARBINARY(16),
+                destination_ip VARBINARY(16),
+                protocol TINYINT UNSIGNED NOT NULL,
+                size INT NOT NULL,
+                PRIMARY KEY (id, timestamp),
+                KEY idx_time (timestamp),
+                KEY idx_protocol_time (protocol, timestamp),
+                KEY idx_source_time (source_ip, timestamp),
+                KEY idx_destination_time (destination_ip, timestamp)
+            ) ENGINE=InnoDB
+            PARTITION BY RANGE (TO_DAYS(timestamp)) (%s)
+        """.formatted(table, partitionDefinitions(days));
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createTable);
+        }
+    }
+
+    private void createFlowTable(Connection conn, LocalDate firstDay) throws SQLException {
+        String createTable = """
+            CREATE TABLE IF NOT EXISTS %s (
+                id BIGINT NOT NULL AUTO_INCREMENT,
+                first_seen DATETIME(6) NOT NULL,
+                last_seen DATETIME(6) NOT NULL,
+                client_ip VARBINARY(16) NOT NULL,
+                client_port SMALLINT UNSIGNED NOT NULL,
+                server_ip VARBINARY(16) NOT NULL,
+                server_port SMALLINT UNSIGNED NOT NULL,
+                ip_protocol TINYINT UNSIGNED NOT NULL,
+                protocol TINYINT UNSIGNED NOT NULL,
+                packets_out BIGINT NOT NULL,
+                bytes_out BIGINT NOT NULL,
+                packets_in BIGINT NOT NULL,
+                bytes_in BIGINT NOT NULL,
+                tcp_flags_out TINYINT UNSIGNED NOT NULL,
+                tcp_flags_in TINYINT UNSIGNED NOT NULL,
+                end_reason TINYINT UNSIGNED NOT NULL,
+                PRIMARY KEY (id, last_seen),
+                KEY idx_last_seen (last_seen),
+                KEY idx_protocol_time (protocol, last_seen),
+                KEY idx_client_time (client_ip, last_seen),
+                KEY idx_server_time (server_ip, last_seen)
+            ) ENGINE=InnoDB
+            PARTITION BY RANGE (TO_DAYS(last_seen)) (%s)
+        """.formatted(FLOW_TABLE, partitionDefinitions(List.of(firstDay)));
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createTable);
+        }
+    }
+
+    private void createSummaryTable(Connection conn, LocalDate firstDay) throws SQLException {
+        String createTable = """
+            CREATE TABLE IF NOT EXISTS %s (
+                id BIGINT NOT NULL AUTO_INCREMENT,
+                source VARCHAR(255) NOT NULL,
+                bucket_start DATETIME(6) NOT NULL,
+                bucket_end DATETIME(6) NOT NULL,
+                packets BIGINT NOT NULL,
+                bytes BIGINT NOT NULL,
+                sources_hll VARBINARY(4096) NOT NULL,
+                destinations_hll VARBINARY(4096) NOT NULL,
+                flows_hll VARBINARY(4096) NOT NULL,
+                size_histogram BLOB NOT NULL,
+                gap_histogram BLOB NOT NULL,
+                PRIMARY KEY (id, bucket_start),
+                KEY idx_bucket (bucket_start, source)
+            ) ENGINE=InnoDB
+            PARTITION BY RANGE (TO_DAYS(bucket_start)) (%s)
+        """.formatted(SUMMARY_TABLE, partitionDefinitions(List.of(firstDay)));
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createTable);
+        }
+    }
+
+    // Buckets are bucketSeconds long and aligned to the epoch, as DatabaseService.savePackets
+    // writes them; countByProtocol splits its range on the same boundaries.
+    private void createRollupTable(Connection conn, String table, int bucketSeconds) throws SQLException {
+        if (columnType(conn, table, "bucket") != null) {
+            return;
+        }
+        List<LocalDate> days = dailyPartitions(conn, TABLE);
+        // Unknown addresses are stored as empty strings, key columns can't be NULL
+        String createTable = """
+            CREATE TABLE IF NOT EXISTS %s (
+                bucket DATETIME NOT NULL,
+                protocol TINYINT UNSIGNED NOT NULL,
+                source_ip VARBINARY(16) NOT NULL,
+                destination_ip VARBINARY(16) NOT NULL,
+                packets BIGINT NOT NULL,
+                bytes BIGINT NOT NULL,
+                PRIMARY KEY (bucket, protocol, source_ip, destination_ip),
+                KEY idx_source_bucket (source_ip, bucket),
+                KEY idx_destination_bucket (destination_ip, bucket)
+            ) ENGINE=InnoDB
+            PARTITION BY RANGE (TO_DAYS(bucket)) (%s)
+        """.formatted(table, partitionDefinitions(days.isEmpty() ? List.of(LocalDate.now()) : days));
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(createTable);
+        }
+
+        // DATE_FORMAT would truncate local wall-clock time, which is off the epoch grid in zones
+        // with a non-whole-hour offset. Instead each day counts whole buckets from an
+        // epoch-aligned anchor, on the same wall-clock values the JDBC driver wrote, so the
+        // session time zone doesn't matter.
+        String backfill = "INSERT INTO " + table + " (bucket, protocol, source_ip, destination_ip, packets, bytes)"
+            + " SELECT TIMESTAMPADD(SECOND, TIMESTAMPDIFF(SECOND, ?, timestamp) DIV " + bucketSeconds
+            + " * " + bucketSeconds + ", ?), protocol, COALESCE(source_ip, ''),"
+            + " COALESCE(destination_ip, ''), COUNT(*), SUM(size) FROM " + TABLE
+            + " WHERE timestamp >= ? AND timestamp < ? GROUP BY 1, 2, 3, 4";
+        long bucketMillis = bucketSeconds * 1000L;
+        long rows = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(backfill)) {
+            for (LocalDate day : days) {
+                Timestamp from = Timestamp.valueOf(day.atStartOfDay());
+                Timestamp anchor = new Timestamp(Math.floorDiv(from.getTime(), bucketMillis) * bucketMillis);
+                pstmt.setTimestamp(1, anchor);
+                pstmt.setTimestamp(2, anchor);
+                pstmt.setTimestamp(3, from);
+                pstmt.setTimestamp(4, Timestamp.valueOf(day.plusDays(1).atStartOfDay()));
+                rows += pstmt.executeUpdate();
+            }
+        }
+        if (rows > 0) {
+            log.info("rollup backfilled table={} rows={} from={}", table, rows, TABLE);
+        }
+    }
+
+    // Adds daily partitions up to daysAhead and drops the ones past the retention window.
+    // Safe to call repeatedly; DatabaseService runs it periodically.
+    public void maintainPartitions() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            maintainPartitions(conn, TABLE);
+            maintainPartitions(conn, FLOW_TABLE);
+            maintainPartitions(conn, SUMMARY_TABLE);
+            maintainPartitions(conn, ROLLUP_MINUTE_TABLE);
+            maintainPartitions(conn, ROLLUP_HOUR_TABLE);
+        }
+    }
+
+    private void maintainPartitions(Connection conn, String table) throws SQLException {
+        List<LocalDate> existing = dailyPartitions(conn, table);
+        if (existing.isEmpty()) {
+            return;
+        }
+
+        LocalDate last = existing.get(existing.size() - 1);
+        List<LocalDate> missing = new ArrayList<>();
+        for (LocalDate day = last.plusDays(1); !day.isAfter(LocalDate.now().plusDays(daysAhead)); day = day.plusDays(1)) {
+            missing.add(day);
+        }
+        if (!missing.isEmpty()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE " + table + " REORGANIZE PARTITION " + FUTURE_PARTITION
+                    + " INTO (" + partitionDefinitions(missing) + ")");
+            }
+        }
+
+        if (retentionDays > 0) {
+            LocalDate cutoff = LocalDate.now().minusDays(retentionDays);
+            List<String> expired = new ArrayList<>();
+            for (LocalDate day : existing) {
+                if (day.isBefore(cutoff)) {
+                    expired.add(PARTITION_NAME.format(day));
+                }
+            }
+            if (!expired.isEmpty()) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("ALTER TABLE " + table + " DROP PARTITION " + String.join(", ", expired));
+                }
+                log.info("expired partitions dropped table={} partitions={}", table, expired.size());
+            }
+        }
+    }
+
+    // Days of the pYYYYMMDD partitions, oldest first
+    private static List<LocalDate> dailyPartitions(Connection conn, String table) throws SQLException {
+        List<LocalDate> days = new ArrayList<>();
+        String sql = "SELECT PARTITION_NAME FROM INFORMATION_SCHEMA.PARTITIONS"
+            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL"
+            + " ORDER BY PARTITION_ORDINAL_POSITION";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    try {
+                        days.add(LocalDate.parse(rs.getString(1), PARTITION_NAME));
+                    } catch (DateTimeParseException e) {
+                        // p_future or a partition someone added by hand
+                    }
+                }
+            }
+        }
+        return days;
+    }
+
+    // Partition pYYYYMMDD holds the rows of that day; p_future catches anything later
+    private static String partitionDefinitions(List<LocalDate> days) {
+        StringBuilder sb = new StringBuilder();
+        for (LocalDate day : days) {
+            sb.append("PARTITION ").append(PARTITION_NAME.format(day))
+              .append(" VALUES LESS THAN (TO_DAYS('").append(day.plusDays(1)).append("')), ");
+        }
+        return sb.append("PARTITION ").append(FUTURE_PARTITION).append(" VALUES LESS THAN MAXVALUE").toString();
+    }
+
+    private static String protocolCodeCase(String column) {
+        StringBuilder sb = new StringBuilder("CASE ").append(column);
+        for (Protocol protocol : Protocol.values()) {
+            sb.append(" WHEN '").append(protocol.label()).append("' THEN ").append(protocol.code());
+        }
+        return sb.append(" ELSE ").append(Protocol.OTHER.code()).append(" END").toString();
+    }
+
+    private static String columnType(Connection conn, String table, String column) throws SQLException {
+        String sql = "SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS"
+            + " WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, column);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws SQLException {
+        try (ConnectionPool pool = new ConnectionPool(DatabaseService.URL, DatabaseService.USER, DatabaseService.PASSWORD, 1, 5000)) {
+            new SchemaMigrator(pool).migrate();
+        }
+    }
+}
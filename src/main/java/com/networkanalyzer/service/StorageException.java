@@ -0,0 +1,12 @@
+package com.networkanalyzer.service;
+
+// A PacketStorage read that failed part way, as opposed to one that found nothing
+public class StorageException extends RuntimeException {
+    public StorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public StorageException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+package com.networkanalyzer.service;
+
+import com.networkanalyzer.stats.SummaryBucket;
+
+// Write-behind stage between CaptureSummaries and capture_summaries. A bucket closes once a
+// minute per source, so the queue only has to hold what piles up while the database is away.
+public class SummaryWriter extends BatchWriter<SummaryBucket> {
+    public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+
+    private static final SummaryBucket WAKE_UP = new SummaryBucket("", 0, 0);
+
+    public SummaryWriter(DatabaseService databaseService) {
+        super("summary-writer", WAKE_UP, databaseService::saveSummaries, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE,
+            DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+}
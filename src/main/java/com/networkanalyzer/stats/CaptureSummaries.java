@@ -0,0 +1,194 @@
+package com.networkanalyzer.stats;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Time-bucketed SummaryBuckets for every capture source (an interface or a file), so questions
+// like "distinct sources in the last 5 minutes" or "p99 packet size today" are a merge of a
+// handful of sketches instead of a scan of traffic_data or the packet store.
+//
+// Each source is fed by the one thread that sees its packets in order (its capture thread, or
+// the file reader's sink), so inter-arrival gaps are measured on that source's own timeline.
+// Buckets are cut by packet timestamp. The current bucket and the one before it stay open, so
+// packets that arrive a little out of order still land in their bucket; anything older goes
+// into the oldest open one. When a bucket closes it is handed to the sink (the database
+// writer) and kept in memory for queries, up to a fixed number per source.
+//
+// -Dnetlyzer.summary.bucketSeconds  bucket length (default 60)
+// -Dnetlyzer.summary.retainBuckets  closed buckets kept in memory per source (default 120)
+public final class CaptureSummaries {
+    private final long bucketNanos;
+    private final int retainBuckets;
+    private final Map<String, Recorder> recorders = new ConcurrentHashMap<>();
+    // Buckets of earlier runs loaded from the database, guarded by itself
+    private final ArrayDeque<SummaryBucket> history = new ArrayDeque<>();
+    private volatile Consumer<SummaryBucket> sink = bucket -> { };
+
+    public CaptureSummaries() {
+        this(TimeUnit.SECONDS.toNanos(Math.max(1, Integer.getInteger("netlyzer.summary.bucketSeconds", 60))),
+            Integer.getInteger("netlyzer.summary.retainBuckets", 120));
+    }
+
+    public CaptureSummaries(long bucketNanos, int retainBuckets) {
+        this.bucketNanos = bucketNanos;
+        this.retainBuckets = Math.max(1, retainBuckets);
+    }
+
+    // Summaries of one source; record() is meant to be called from a single thread
+    public final class Recorder {
+        private final String source;
+        private final ArrayDeque<SummaryBucket> closed = new ArrayDeque<>();
+        private SummaryBucket previous;
+        private SummaryBucket current;
+        private long lastTimestamp = Long.MIN_VALUE;
+
+        private Recorder(String source) {
+            this.source = source;
+        }
+
+        // One IP packet. Addresses as in PacketData (IPv4 in the low word, hi = 0); flowHash is
+        // the direction-independent FrameDecoder.flowHash of its 5-tuple.
+        public synchronized void record(long timestampNanos, int size, int ipVersion, long srcHi, long srcLo,
+                                        long dstHi, long dstLo, int flowHash) {
+            long start = Math.floorDiv(timestampNanos, bucketNanos) * bucketNanos;
+            SummaryBucket bucket;
+            if (current == null || start > current.startNanos()) {
+                bucket = advance(start);
+            } else if (start < current.startNanos() && previous != null) {
+                bucket = previous;
+            } else {
+                bucket = current;
+            }
+            long gap = -1;
+            if (lastTimestamp != Long.MIN_VALUE && timestampNanos >= lastTimestamp) {
+                gap = timestampNanos - lastTimestamp;
+            }
+            lastTimestamp = Math.max(lastTimestamp, timestampNanos);
+            bucket.record(size, gap, Hashes.address(ipVersion, srcHi, srcLo), Hashes.address(ipVersion, dstHi, dstLo),
+                Hashes.mix(flowHash));
+        }
+
+        private SummaryBucket advance(long start) {
+            if (previous != null) {
+                close(previous);
+            }
+            previous = current;
+            current = new SummaryBucket(source, start, start + bucketNanos);
+            return current;
+        }
+
+        private void close(SummaryBucket bucket) {
+            closed.addLast(bucket);
+            while (closed.size() > retainBuckets) {
+                closed.removeFirst();
+            }
+            sink.accept(bucket);
+        }
+
+        // End of a capture: hands over the open buckets and forgets the last timestamp, so the
+        // pause before the next capture isn't counted as a gap
+        synchronized void flush() {
+            if (previous != null) {
+                close(previous);
+            }
+            if (current != null) {
+                close(current);
+            }
+            previous = null;
+            current = null;
+            lastTimestamp = Long.MIN_VALUE;
+        }
+
+        private synchronized void collect(long fromNanos, long toNanos, SummaryBucket into) {
+            for (SummaryBucket bucket : closed) {
+                mergeIfOverlapping(bucket, fromNanos, toNanos, into);
+            }
+            if (previous != null) {
+                mergeIfOverlapping(previous, fromNanos, toNanos, into);
+            }
+            if (current != null) {
+                mergeIfOverlapping(current, fromNanos, toNanos, into);
+            }
+        }
+
+        private synchronized long newestEnd() {
+            if (current != null) {
+                return current.endNanos();
+            }
+            return closed.isEmpty() ? Long.MIN_VALUE : closed.getLast().endNanos();
+        }
+    }
+
+    // Receives every bucket as it closes, on the thread that closed it
+    public void setSink(Consumer<SummaryBucket> sink) {
+        this.sink = sink == null ? bucket -> { } : sink;
+    }
+
+    public Recorder forSource(String name) {
+        return recorders.computeIfAbsent(name, Recorder::new);
+    }
+
+    // Closes every open bucket; call once the sources have stopped recording
+    public void flush() {
+        for (Recorder recorder : recorders.values()) {
+            recorder.flush();
+        }
+    }
+
+    // Adds buckets of earlier runs (e.g. loaded from the database) to what queries see; they
+    // are not handed to the sink again
+    public void restore(Collection<SummaryBucket> buckets) {
+        synchronized (history) {
+            history.addAll(buckets);
+            int limit = retainBuckets * Math.max(1, recorders.size());
+            while (history.size() > limit) {
+                history.removeFirst();
+            }
+        }
+    }
+
+    // Every source merged over the buckets overlapping [fromNanos, toNanos); null if there are none
+    public SummaryBucket summarize(long fromNanos, long toNanos) {
+        SummaryBucket merged = new SummaryBucket("all", Long.MAX_VALUE, Long.MIN_VALUE);
+        for (Recorder recorder : recorders.values()) {
+            recorder.collect(fromNanos, toNanos, merged);
+        }
+        synchronized (history) {
+            for (SummaryBucket bucket : history) {
+                mergeIfOverlapping(bucket, fromNanos, toNanos, merged);
+            }
+        }
+        return merged.startNanos() == Long.MAX_VALUE ? null : merged;
+    }
+
+    // The last `minutes` of traffic, counted back from the newest bucket rather than from now,
+    // so a file read from disk is summarized over its own final minutes
+    public SummaryBucket lastMinutes(int minutes) {
+        long end = Long.MIN_VALUE;
+        for (Recorder recorder : recorders.values()) {
+            end = Math.max(end, recorder.newestEnd());
+        }
+        synchronized (history) {
+            for (SummaryBucket bucket : history) {
+                end = Math.max(end, bucket.endNanos());
+            }
+        }
+        return end == Long.MIN_VALUE ? null : summarize(end - TimeUnit.MINUTES.toNanos(minutes), end);
+    }
+
+    public List<String> sources() {
+        return new ArrayList<>(recorders.keySet());
+    }
+
+    private static void mergeIfOverlapping(SummaryBucket bucket, long fromNanos, long toNanos, SummaryBucket into) {
+        if (bucket.startNanos() < toNanos && bucket.endNanos() > fromNanos) {
+            into.merge(bucket);
+        }
+    }
+}
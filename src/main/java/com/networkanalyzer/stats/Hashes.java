@@ -0,0 +1,22 @@
+package com.networkanalyzer.stats;
+
+// 64-bit hashes for the sketches in this package
+final class Hashes {
+    private Hashes() {
+    }
+
+    // Addresses as in PacketData: IPv4 in the low word with hi = 0
+    static long address(int ipVersion, long hi, long lo) {
+        return mix(hi ^ Long.rotateLeft(lo, 21) ^ ipVersion);
+    }
+
+    // MurmurHash3 fmix64
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,136 @@
+package com.networkanalyzer.stats;
+
+import java.nio.ByteBuffer;
+
+// Log-linear histogram of non-negative longs, HDR-style: values below 32 get a bucket each,
+// every power of two above that is split into 32 equal buckets, so any recorded value is known
+// to within 1/32 (about 3%) whatever its magnitude. Quantiles are read back as the middle of
+// the bucket they fall in, clamped to the smallest and largest value actually seen.
+//
+// Values above maxValue are counted in the last bucket. Histograms merge by adding counts,
+// and the serialized form only lists non-empty buckets. Not thread-safe.
+public final class LogHistogram {
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long maxValue;
+    private final long[] counts;
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public LogHistogram(long maxValue) {
+        this.maxValue = Math.max(SUB_COUNT, maxValue);
+        this.counts = new long[index(this.maxValue) + 1];
+    }
+
+    public void record(long value) {
+        long v = Math.min(Math.max(0, value), maxValue);
+        counts[index(v)]++;
+        count++;
+        sum += v;
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+    }
+
+    public void merge(LogHistogram other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[Math.min(i, counts.length - 1)] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, Math.min(other.max, maxValue));
+    }
+
+    // Value at quantile q in [0, 1]; 0 when empty
+    public long quantile(double q) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long middle = lowerBound(i) + (width(i) - 1) / 2;
+                return Math.min(max, Math.max(min, middle));
+            }
+        }
+        return max;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count > 0 ? (double) sum / count : 0;
+    }
+
+    public long min() {
+        return count > 0 ? min : 0;
+    }
+
+    public long max() {
+        return count > 0 ? max : 0;
+    }
+
+    public long maxValue() {
+        return maxValue;
+    }
+
+    // maxValue, count, sum, min, max, then (bucket, count) for each non-empty bucket
+    public byte[] toBytes() {
+        int used = 0;
+        for (long c : counts) {
+            if (c != 0) {
+                used++;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(5 * Long.BYTES + Integer.BYTES + used * (Integer.BYTES + Long.BYTES));
+        buffer.putLong(maxValue).putLong(count).putLong(sum).putLong(min).putLong(max).putInt(used);
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                buffer.putInt(i).putLong(counts[i]);
+            }
+        }
+        return buffer.array();
+    }
+
+    public static LogHistogram fromBytes(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        LogHistogram histogram = new LogHistogram(buffer.getLong());
+        histogram.count = buffer.getLong();
+        histogram.sum = buffer.getLong();
+        histogram.min = buffer.getLong();
+        histogram.max = buffer.getLong();
+        int used = buffer.getInt();
+        for (int i = 0; i < used; i++) {
+            int bucket = buffer.getInt();
+            histogram.counts[Math.min(bucket, histogram.counts.length - 1)] += buffer.getLong();
+        }
+        return histogram;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift << SUB_BITS) + (int) (value >>> shift);
+    }
+
+    private static long lowerBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >>> SUB_BITS) - 1;
+        return (long) (SUB_COUNT + (index & (SUB_COUNT - 1))) << shift;
+    }
+
+    private static long width(int index) {
+        return index < SUB_COUNT ? 1 : 1L << ((index >>> SUB_BITS) - 1);
+    }
+}
@@ -0,0 +1,184 @@
+package com.networkanalyzer.stats;
+
+import java.util.Arrays;
+
+// Space-Saving summary over weighted keys: at most `capacity` counters. A key that isn't
+// tracked while all counters are taken replaces the smallest one and inherits its count as
+// error, so every count overestimates by at most its error and any key heavier than
+// total / capacity is guaranteed to be tracked.
+//
+// Keys are four longs plus an int tag, kept in flat arrays with no per-key objects: a min-heap
+// of counters finds the one to replace, and an open-addressing index (linear probing,
+// backward-shift deletion) finds a key's counter. Not thread-safe; TopTalkers guards it.
+final class SpaceSaving {
+    private final int capacity;
+    private final long[] keys;
+    private final int[] tags;
+    private final int[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+    // Counter numbers ordered as a min-heap by count, and each counter's position in it
+    private final int[] heap;
+    private final int[] heapPosition;
+    // Counter number + 1 per slot, 0 = empty; kept under 1/4 full
+    private final int[] index;
+    private final int mask;
+    private int size;
+    private long total;
+
+    SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        keys = new long[capacity * 4];
+        tags = new int[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapPosition = new int[capacity];
+        index = new int[Integer.highestOneBit(capacity * 4 - 1) << 1];
+        mask = index.length - 1;
+    }
+
+    void add(long a, long b, long c, long d, int tag, int hash, long weight) {
+        total += weight;
+        int slot = hash & mask;
+        for (int entry; (entry = index[slot]) != 0; slot = (slot + 1) & mask) {
+            int counter = entry - 1;
+            if (hashes[counter] == hash && tags[counter] == tag && matches(counter, a, b, c, d)) {
+                counts[counter] += weight;
+                siftDown(heapPosition[counter]);
+                return;
+            }
+        }
+
+        int counter;
+        if (size < capacity) {
+            counter = size++;
+            counts[counter] = weight;
+            errors[counter] = 0;
+            heap[counter] = counter;
+            heapPosition[counter] = counter;
+            setKey(counter, a, b, c, d, tag, hash);
+            index[slot] = counter + 1;
+            siftUp(counter);
+        } else {
+            counter = heap[0];
+            unindex(counter);
+            long min = counts[counter];
+            counts[counter] = min + weight;
+            errors[counter] = min;
+            setKey(counter, a, b, c, d, tag, hash);
+            // The removal may have shifted entries, so look for a free slot again
+            slot = hash & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = counter + 1;
+            siftDown(0);
+        }
+    }
+
+    void clear() {
+        size = 0;
+        total = 0;
+        Arrays.fill(index, 0);
+    }
+
+    int size() {
+        return size;
+    }
+
+    long total() {
+        return total;
+    }
+
+    // The most an untracked key can have been seen with
+    long minCount() {
+        return size < capacity ? 0 : counts[heap[0]];
+    }
+
+    long key(int counter, int part) {
+        return keys[counter * 4 + part];
+    }
+
+    int tag(int counter) {
+        return tags[counter];
+    }
+
+    long count(int counter) {
+        return counts[counter];
+    }
+
+    long error(int counter) {
+        return errors[counter];
+    }
+
+    private boolean matches(int counter, long a, long b, long c, long d) {
+        int k = counter * 4;
+        return keys[k] == a && keys[k + 1] == b && keys[k + 2] == c && keys[k + 3] == d;
+    }
+
+    private void setKey(int counter, long a, long b, long c, long d, int tag, int hash) {
+        int k = counter * 4;
+        keys[k] = a;
+        keys[k + 1] = b;
+        keys[k + 2] = c;
+        keys[k + 3] = d;
+        tags[counter] = tag;
+        hashes[counter] = hash;
+    }
+
+    // Backward-shift deletion: later entries of the probe run move up into the hole unless
+    // that would put them before their home slot
+    private void unindex(int counter) {
+        int hole = hashes[counter] & mask;
+        while (index[hole] != counter + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+            int home = hashes[index[next] - 1] & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                index[hole] = index[next];
+                hole = next;
+            }
+        }
+        index[hole] = 0;
+    }
+
+    private void siftUp(int position) {
+        int counter = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) {
+                break;
+            }
+            place(heap[parent], position);
+            position = parent;
+        }
+        place(counter, position);
+    }
+
+    private void siftDown(int position) {
+        int counter = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[counter]) {
+                break;
+            }
+            place(heap[child], position);
+            position = child;
+        }
+        place(counter, position);
+    }
+
+    private void place(int counter, int position) {
+        heap[position] = counter;
+        heapPosition[counter] = position;
+    }
+}
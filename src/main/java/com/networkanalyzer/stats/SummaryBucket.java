@@ -0,0 +1,99 @@
+package com.networkanalyzer.stats;
+
+// Sketches of one source's traffic over one time bucket: packet and byte totals, distinct
+// source addresses, destination addresses and flows (HyperLogLog), and the distributions of
+// packet size and inter-arrival time (LogHistogram). All of it merges, so a window of any
+// length over any set of interfaces is the merge of its buckets, and a bucket is a few tens of
+// KB however much traffic it saw. Timestamps are epoch nanoseconds of the packets themselves,
+// so a file keeps its own timeline.
+//
+// Not thread-safe; CaptureSummaries guards the buckets it is still filling.
+public final class SummaryBucket {
+    // 4096 registers, about 1.6% error on distinct counts
+    public static final int HLL_PRECISION = 12;
+    // Larger than any frame, with room for jumbo and offloaded segments
+    public static final long MAX_SIZE = 1 << 18;
+    // Gaps longer than about 18 minutes all count as 18 minutes
+    public static final long MAX_GAP_NANOS = 1L << 40;
+
+    private final String source;
+    private long startNanos;
+    private long endNanos;
+    private long packets;
+    private long bytes;
+    private final HyperLogLog sources;
+    private final HyperLogLog destinations;
+    private final HyperLogLog flows;
+    private final LogHistogram sizes;
+    private final LogHistogram gaps;
+
+    public SummaryBucket(String source, long startNanos, long endNanos) {
+        this(source, startNanos, endNanos, 0, 0, new HyperLogLog(HLL_PRECISION), new HyperLogLog(HLL_PRECISION),
+            new HyperLogLog(HLL_PRECISION), new LogHistogram(MAX_SIZE), new LogHistogram(MAX_GAP_NANOS));
+    }
+
+    // As loaded from the database
+    public SummaryBucket(String source, long startNanos, long endNanos, long packets, long bytes, HyperLogLog sources,
+                         HyperLogLog destinations, HyperLogLog flows, LogHistogram sizes, LogHistogram gaps) {
+        this.source = source;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.packets = packets;
+        this.bytes = bytes;
+        this.sources = sources;
+        this.destinations = destinations;
+        this.flows = flows;
+        this.sizes = sizes;
+        this.gaps = gaps;
+    }
+
+    // gapNanos < 0 when there is no previous packet to measure from
+    void record(int size, long gapNanos, long sourceHash, long destinationHash, long flowHash) {
+        packets++;
+        bytes += size;
+        sources.add(sourceHash);
+        destinations.add(destinationHash);
+        flows.add(flowHash);
+        sizes.record(size);
+        if (gapNanos >= 0) {
+            gaps.record(gapNanos);
+        }
+    }
+
+    // Adds another bucket in; the time range grows to cover both
+    public void merge(SummaryBucket other) {
+        startNanos = Math.min(startNanos, other.startNanos);
+        endNanos = Math.max(endNanos, other.endNanos);
+        packets += other.packets;
+        bytes += other.bytes;
+        sources.merge(other.sources);
+        destinations.merge(other.destinations);
+        flows.merge(other.flows);
+        sizes.merge(other.sizes);
+        gaps.merge(other.gaps);
+    }
+
+    public String source() { return source; }
+    public long startNanos() { return startNanos; }
+    public long endNanos() { return endNanos; }
+    public long packets() { return packets; }
+    public long bytes() { return bytes; }
+    public HyperLogLog sources() { return sources; }
+    public HyperLogLog destinations() { return destinations; }
+    public HyperLogLog flows() { return flows; }
+    public LogHistogram sizes() { return sizes; }
+    public LogHistogram gaps() { return gaps; }
+
+    public long distinctSources() { return sources.estimate(); }
+    public long distinctDestinations() { return destinations.estimate(); }
+    public long distinctFlows() { return flows.estimate(); }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %,d packets, %,d bytes, ~%,d sources, ~%,d destinations, ~%,d flows, "
+                + "size p50/p95/p99 %d/%d/%d B, gap p50/p95/p99 %d/%d/%d us", source, packets, bytes,
+            distinctSources(), distinctDestinations(), distinctFlows(),
+            sizes.quantile(0.5), sizes.quantile(0.95), sizes.quantile(0.99),
+            gaps.quantile(0.5) / 1000, gaps.quantile(0.95) / 1000, gaps.quantile(0.99) / 1000);
+    }
+}
@@ -0,0 +1,226 @@
+package com.networkanalyzer.stats;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.networkanalyzer.model.IpAddresses;
+
+// Heavy hitters over the last minute: top sources, destinations, source -> destination pairs
+// and service ports, by packets and by bytes, in memory that doesn't depend on how many
+// distinct addresses show up.
+//
+// Each (dimension, metric) is a Space-Saving summary. Time is cut into 5 s slices with one
+// summary set per slice in a ring, so a window is the current slice plus the few before it,
+// merged when read; old slices are cleared and reused as the ring turns. Writers are spread
+// over stripes, one per thread (shard workers each get their own), guarded by the stripe's
+// lock, which is uncontended except while the UI reads once a second. A key seen by several
+// stripes or slices has its counts added up when merged.
+//
+// -Dnetlyzer.topTalkers.capacity  counters per summary (default 256); keys above 1/capacity of
+//                                 a slice's traffic are always caught
+// -Dnetlyzer.topTalkers.stripes   writer stripes (default min(4, cores))
+public final class TopTalkers {
+    private static final long SLICE_NANOS = TimeUnit.SECONDS.toNanos(5);
+    // 60 s of complete slices plus the one being filled
+    private static final int SLICES = 13;
+    // nanoTime can be negative, so epochs can be too
+    private static final long EMPTY = Long.MIN_VALUE;
+    public static final int MAX_WINDOW_SECONDS = (int) ((SLICES - 1) * SLICE_NANOS / 1_000_000_000L);
+
+    public enum Dimension {
+        SOURCE("Sources"), DESTINATION("Destinations"), PAIR("Conversations"), PORT("Ports");
+
+        private final String label;
+
+        Dimension(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    public enum Metric { PACKETS, BYTES }
+
+    // One row of a top-N list: the key as text, its estimated weight in the window and how much
+    // of that may be overcounted (the true value is in [value - maxError, value])
+    public record Talker(String key, long value, long maxError) {
+    }
+
+    private static final int DIMENSIONS = Dimension.values().length;
+    private static final int METRICS = Metric.values().length;
+
+    private final int capacity;
+    private final Stripe[] stripes;
+    private final AtomicInteger nextStripe = new AtomicInteger();
+    private final ThreadLocal<Stripe> threadStripe;
+
+    private final class Stripe {
+        // [slice][dimension * METRICS + metric]
+        final SpaceSaving[][] summaries = new SpaceSaving[SLICES][DIMENSIONS * METRICS];
+        // Which 5 s slice each ring position holds
+        final long[] sliceEpochs = new long[SLICES];
+        long currentEpoch = EMPTY;
+
+        Stripe() {
+            for (SpaceSaving[] slice : summaries) {
+                for (int i = 0; i < slice.length; i++) {
+                    slice[i] = new SpaceSaving(capacity);
+                }
+            }
+            Arrays.fill(sliceEpochs, EMPTY);
+        }
+
+        // Moves to the slice of `epoch`, clearing the ring position it takes over
+        SpaceSaving[] slice(long epoch) {
+            int position = (int) Math.floorMod(epoch, (long) SLICES);
+            if (epoch != currentEpoch) {
+                if (sliceEpochs[position] != epoch) {
+                    for (SpaceSaving summary : summaries[position]) {
+                        summary.clear();
+                    }
+                    sliceEpochs[position] = epoch;
+                }
+                currentEpoch = epoch;
+            }
+            return summaries[position];
+        }
+
+        void clear() {
+            for (SpaceSaving[] slice : summaries) {
+                for (SpaceSaving summary : slice) {
+                    summary.clear();
+                }
+            }
+            Arrays.fill(sliceEpochs, EMPTY);
+            currentEpoch = EMPTY;
+        }
+    }
+
+    public TopTalkers() {
+        this(Integer.getInteger("netlyzer.topTalkers.capacity", 256),
+            Integer.getInteger("netlyzer.topTalkers.stripes", Math.min(4, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public TopTalkers(int capacity, int stripeCount) {
+        this.capacity = Math.max(8, capacity);
+        stripes = new Stripe[Math.max(1, stripeCount)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+        threadStripe = ThreadLocal.withInitial(() -> stripes[Math.floorMod(nextStripe.getAndIncrement(), stripes.length)]);
+    }
+
+    // Any thread, once per IP packet. Addresses as in PacketData (IPv4 in the low word, hi = 0).
+    // The port dimension counts the lower of the two ports, which is the service side for
+    // nearly all traffic; it is skipped when there are no ports (ipProtocol 0 or both ports 0).
+    public void record(int ipVersion, long srcHi, long srcLo, long dstHi, long dstLo,
+                       int ipProtocol, int srcPort, int dstPort, int bytes) {
+        long source = Hashes.address(ipVersion, srcHi, srcLo);
+        long destination = Hashes.address(ipVersion, dstHi, dstLo);
+        int sourceHash = (int) (source >>> 32);
+        int destinationHash = (int) (destination >>> 32);
+        int pairHash = (int) (Hashes.mix(source * 0x9E3779B97F4A7C15L + destination) >>> 32);
+        int port = Math.min(srcPort, dstPort) > 0 ? Math.min(srcPort, dstPort) : Math.max(srcPort, dstPort);
+        boolean hasPort = ipProtocol != 0 && port > 0;
+        int portTag = ipProtocol << 16 | port;
+        int portHash = (int) (Hashes.mix(portTag) >>> 32);
+
+        long epoch = Math.floorDiv(System.nanoTime(), SLICE_NANOS);
+        Stripe stripe = threadStripe.get();
+        synchronized (stripe) {
+            SpaceSaving[] slice = stripe.slice(epoch);
+            for (int metric = 0; metric < METRICS; metric++) {
+                long weight = metric == Metric.PACKETS.ordinal() ? 1 : bytes;
+                slice[Dimension.SOURCE.ordinal() * METRICS + metric].add(srcHi, srcLo, 0, 0, ipVersion, sourceHash, weight);
+                slice[Dimension.DESTINATION.ordinal() * METRICS + metric].add(dstHi, dstLo, 0, 0, ipVersion, destinationHash, weight);
+                slice[Dimension.PAIR.ordinal() * METRICS + metric].add(srcHi, srcLo, dstHi, dstLo, ipVersion, pairHash, weight);
+                if (hasPort) {
+                    slice[Dimension.PORT.ordinal() * METRICS + metric].add(0, 0, 0, 0, portTag, portHash, weight);
+                }
+            }
+        }
+    }
+
+    // Up to n heaviest keys over roughly the last windowSeconds (rounded up to whole 5 s slices,
+    // plus the slice being filled; at most MAX_WINDOW_SECONDS), heaviest first
+    public List<Talker> top(Dimension dimension, Metric metric, int windowSeconds, int n) {
+        long epoch = Math.floorDiv(System.nanoTime(), SLICE_NANOS);
+        long window = Math.min(SLICES - 1, (TimeUnit.SECONDS.toNanos(Math.max(0, windowSeconds)) + SLICE_NANOS - 1) / SLICE_NANOS);
+        int summaryIndex = dimension.ordinal() * METRICS + metric.ordinal();
+
+        // key -> {count, error, sum of the minimums of the summaries it was found in}
+        Map<Key, long[]> merged = new HashMap<>();
+        long minimums = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (int position = 0; position < SLICES; position++) {
+                    long sliceEpoch = stripe.sliceEpochs[position];
+                    if (sliceEpoch == EMPTY || sliceEpoch > epoch || sliceEpoch < epoch - window) {
+                        continue;
+                    }
+                    SpaceSaving summary = stripe.summaries[position][summaryIndex];
+                    long min = summary.minCount();
+                    minimums += min;
+                    for (int counter = 0; counter < summary.size(); counter++) {
+                        Key key = new Key(summary.key(counter, 0), summary.key(counter, 1), summary.key(counter, 2),
+                            summary.key(counter, 3), summary.tag(counter));
+                        long[] totals = merged.computeIfAbsent(key, k -> new long[3]);
+                        totals[0] += summary.count(counter);
+                        totals[1] += summary.error(counter);
+                        totals[2] += min;
+                    }
+                }
+            }
+        }
+
+        // Where a key wasn't tracked it may still have had up to that summary's minimum, so both
+        // the estimate and its error include those
+        List<Talker> top = new ArrayList<>(merged.size());
+        for (Map.Entry<Key, long[]> entry : merged.entrySet()) {
+            long[] totals = entry.getValue();
+            long untracked = minimums - totals[2];
+            top.add(new Talker(format(dimension, entry.getKey()), totals[0] + untracked, totals[1] + untracked));
+        }
+        top.sort((x, y) -> Long.compare(y.value(), x.value()));
+        return new ArrayList<>(top.subList(0, Math.min(n, top.size())));
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    private record Key(long a, long b, long c, long d, int tag) {
+    }
+
+    private static String format(Dimension dimension, Key key) {
+        return switch (dimension) {
+            case SOURCE, DESTINATION -> formatAddress(key.tag(), key.a(), key.b());
+            case PAIR -> formatAddress(key.tag(), key.a(), key.b()) + " -> " + formatAddress(key.tag(), key.c(), key.d());
+            case PORT -> protocolName(key.tag() >>> 16) + "/" + (key.tag() & 0xFFFF);
+        };
+    }
+
+    private static String formatAddress(int ipVersion, long hi, long lo) {
+        return ipVersion == 4 ? IpAddresses.formatV4((int) lo) : IpAddresses.formatV6(hi, lo);
+    }
+
+    private static String protocolName(int ipProtocol) {
+        return switch (ipProtocol) {
+            case 6 -> "TCP";
+            case 17 -> "UDP";
+            case 132 -> "SCTP";
+            default -> "IP" + ipProtocol;
+        };
+    }
+}
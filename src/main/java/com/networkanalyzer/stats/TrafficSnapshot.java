@@ -0,0 +1,30 @@
+package com.networkanalyzer.stats;
+
+import java.util.List;
+
+import com.networkanalyzer.model.Protocol;
+
+// Point-in-time copy of TrafficStatistics. Rates are averages over the last 1, 10 and 60
+// seconds (or since the reset, if that was more recent); bits per second count wire bytes.
+public record TrafficSnapshot(long packets, long bytes, long[] packetsByProtocol, long[] bytesByProtocol,
+                              double pps1, double pps10, double pps60, double bps1, double bps10, double bps60,
+                              List<InterfaceTotals> interfaces) {
+
+    public record InterfaceTotals(String name, long packets, long bytes) { }
+
+    public long packets(Protocol protocol) {
+        return packetsByProtocol[protocol.code()];
+    }
+
+    public long bytes(Protocol protocol) {
+        return bytesByProtocol[protocol.code()];
+    }
+
+    // 1234567 -> "1.2 Mb/s"
+    public static String formatBitsPerSecond(double bps) {
+        if (bps >= 1e9) return String.format("%.2f Gb/s", bps / 1e9);
+        if (bps >= 1e6) return String.format("%.1f Mb/s", bps / 1e6);
+        if (bps >= 1e3) return String.format("%.1f kb/s", bps / 1e3);
+        return String.format("%.0f b/s", bps);
+    }
+}
@@ -0,0 +1,145 @@
+package com.networkanalyzer.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.networkanalyzer.model.Protocol;
+
+// Packet and byte counters for the capture threads, readable at any time without stopping them.
+//
+// Writers only touch LongAdders (striped per thread, so shard workers don't contend on a
+// shared cache line); there is no lock and no boxing on the packet path. Totals come straight
+// from the adders, so they stay exact even when the table or the database falls behind.
+//
+// Rolling rates come from a ring of once-per-second samples of the cumulative totals: the rate
+// over the last N seconds is (total now - total at the sample N seconds ago) / elapsed. Samples
+// are taken by whoever reads a snapshot, at most one per second, so no timer thread is needed;
+// if nobody looked for a while the window just starts at the nearest older sample.
+public final class TrafficStatistics {
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // A little over 60 s of samples, so the 60 s window always has one to start from
+    private static final int RING = 64;
+
+    private final LongAdder[] packetsByProtocol = new LongAdder[Protocol.count()];
+    private final LongAdder[] bytesByProtocol = new LongAdder[Protocol.count()];
+    private final Map<String, InterfaceCounter> interfaces = new ConcurrentHashMap<>();
+
+    // Sample ring, guarded by this
+    private final long[] sampleNanos = new long[RING];
+    private final long[] samplePackets = new long[RING];
+    private final long[] sampleBytes = new long[RING];
+    private int samples;
+    private int newest = -1;
+
+    // Per-interface wire counters; each is fed by that interface's capture thread, once per batch
+    public static final class InterfaceCounter {
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        public void add(long packetCount, long byteCount) {
+            packets.add(packetCount);
+            bytes.add(byteCount);
+        }
+
+        public long packets() {
+            return packets.sum();
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+    }
+
+    public TrafficStatistics() {
+        for (int i = 0; i < packetsByProtocol.length; i++) {
+            packetsByProtocol[i] = new LongAdder();
+            bytesByProtocol[i] = new LongAdder();
+        }
+        reset();
+    }
+
+    // Any thread, once per classified packet
+    public void record(Protocol protocol, int bytes) {
+        packetsByProtocol[protocol.code()].increment();
+        bytesByProtocol[protocol.code()].add(bytes);
+    }
+
+    public InterfaceCounter forInterface(String name) {
+        return interfaces.computeIfAbsent(name, key -> new InterfaceCounter());
+    }
+
+    // Meant for between captures; packets counted while it runs may land on either side
+    public synchronized void reset() {
+        for (int i = 0; i < packetsByProtocol.length; i++) {
+            packetsByProtocol[i].reset();
+            bytesByProtocol[i].reset();
+        }
+        interfaces.clear();
+        samples = 0;
+        newest = -1;
+        addSample(System.nanoTime(), 0, 0);
+    }
+
+    public synchronized TrafficSnapshot snapshot() {
+        long now = System.nanoTime();
+        long[] packets = new long[packetsByProtocol.length];
+        long[] bytes = new long[bytesByProtocol.length];
+        long totalPackets = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = packetsByProtocol[i].sum();
+            bytes[i] = bytesByProtocol[i].sum();
+            totalPackets += packets[i];
+            totalBytes += bytes[i];
+        }
+        if (now - sampleNanos[newest] >= SAMPLE_INTERVAL_NANOS) {
+            addSample(now, totalPackets, totalBytes);
+        }
+
+        List<TrafficSnapshot.InterfaceTotals> interfaceTotals = new ArrayList<>(interfaces.size());
+        interfaces.forEach((name, counter) ->
+            interfaceTotals.add(new TrafficSnapshot.InterfaceTotals(name, counter.packets.sum(), counter.bytes.sum())));
+
+        int s1 = sampleBefore(now, 1);
+        int s10 = sampleBefore(now, 10);
+        int s60 = sampleBefore(now, 60);
+        return new TrafficSnapshot(totalPackets, totalBytes, packets, bytes,
+            rate(now, totalPackets, s1, samplePackets), rate(now, totalPackets, s10, samplePackets),
+            rate(now, totalPackets, s60, samplePackets),
+            8 * rate(now, totalBytes, s1, sampleBytes), 8 * rate(now, totalBytes, s10, sampleBytes),
+            8 * rate(now, totalBytes, s60, sampleBytes), interfaceTotals);
+    }
+
+    private void addSample(long nanos, long packets, long bytes) {
+        newest = (newest + 1) % RING;
+        sampleNanos[newest] = nanos;
+        samplePackets[newest] = packets;
+        sampleBytes[newest] = bytes;
+        samples = Math.min(RING, samples + 1);
+    }
+
+    // Newest sample at least `seconds` old, or the oldest one there is. For the 1 s window that
+    // is usually the previous sample, so the rate is over the last 1-2 seconds.
+    private int sampleBefore(long now, int seconds) {
+        long cutoff = now - seconds * SAMPLE_INTERVAL_NANOS;
+        int index = newest;
+        for (int i = 0; i < samples; i++) {
+            if (sampleNanos[index] <= cutoff) {
+                return index;
+            }
+            if (i + 1 < samples) {
+                index = (index - 1 + RING) % RING;
+            }
+        }
+        return index;
+    }
+
+    private double rate(long now, long total, int sample, long[] totals) {
+        long elapsed = now - sampleNanos[sample];
+        return elapsed > 0 ? (total - totals[sample]) * 1e9 / elapsed : 0;
+    }
+}
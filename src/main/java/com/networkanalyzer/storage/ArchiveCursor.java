@@ -0,0 +1,146 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PageKey;
+
+// PacketCursor over archive files, newest day first and each file from its last row back,
+// which is the order the rows were archived in: timestamp order from MySQL, arrival order from
+// the segment store. One block is decoded at a time, as the cursor gets to it. Only rows older
+// than beforeNanos are returned, and in keyFile only those below keyRow.
+final class ArchiveCursor implements PacketCursor {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveCursor.class);
+
+    private record Row(PacketData packet, long row) { }
+
+    private final List<Path> files;
+    private final PacketFilter filter;
+    private final long beforeNanos;
+    private final Path keyFile;
+    private final long keyRow;
+    private final int limit;
+    private final List<Row> rows = new ArrayList<>();
+    private int fileIndex = -1;
+    private ArchiveReader reader;
+    private int blockIndex;
+    // Row within the current block, counting down
+    private int record = -1;
+    private int returned;
+    private PacketData next;
+    private PageKey nextKey;
+    private PageKey lastKey;
+    private volatile boolean cancelled;
+    private boolean exhausted;
+
+    ArchiveCursor(List<Path> files, PacketFilter filter, long beforeNanos, Path keyFile, long keyRow, int limit) {
+        this.files = files;
+        this.filter = filter;
+        this.beforeNanos = beforeNanos;
+        this.keyFile = keyFile;
+        this.keyRow = keyRow;
+        this.limit = limit;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (exhausted || cancelled || (limit > 0 && returned >= limit)) {
+            return false;
+        }
+        try {
+            if (!cancelled && (record >= 0 || advanceBlock())) {
+                Row row = rows.get(record--);
+                next = row.packet();
+                nextKey = new PageKey(next.getTimestampNanos(), ColumnArchive.pageId(row.row()));
+                return true;
+            }
+        } catch (IOException e) {
+            log.warn("archive cursor stopped cause=\"{}\"", e.toString());
+        }
+        exhausted = true;
+        closeReader();
+        return false;
+    }
+
+    // Moves to the next older block with a matching row and decodes it
+    private boolean advanceBlock() throws IOException {
+        while (!cancelled) {
+            if (reader == null) {
+                if (++fileIndex >= files.size()) {
+                    return false;
+                }
+                reader = ArchiveReader.open(files.get(fileIndex));
+                blockIndex = reader.getBlockCount();
+            }
+            boolean keyed = files.get(fileIndex).equals(keyFile);
+            while (--blockIndex >= 0) {
+                if (keyed && reader.getBlockFirstRow(blockIndex) >= keyRow) {
+                    continue;
+                }
+                rows.clear();
+                reader.scanBlock(blockIndex, Long.MIN_VALUE, beforeNanos, filter, (packet, row) -> {
+                    if (!keyed || row < keyRow) {
+                        rows.add(new Row(packet, row));
+                    }
+                });
+                if (!rows.isEmpty()) {
+                    record = rows.size() - 1;
+                    return true;
+                }
+            }
+            closeReader();
+        }
+        return false;
+    }
+
+    @Override
+    public PacketData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        PacketData packet = next;
+        lastKey = nextKey;
+        next = null;
+        returned++;
+        return packet;
+    }
+
+    @Override
+    public PageKey getLastKey() {
+        return lastKey;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void close() {
+        closeReader();
+    }
+
+    private void closeReader() {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.DataFormatException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.query.PacketFilter;
+
+// Reads an ArchiveWriter file with the filter pushed down to the blocks and columns:
+//   - blocks outside the time range, or without a row of the wanted protocol, are skipped on
+//     the footer alone
+//   - an IP filter is first checked against the block's address dictionary; if no address of
+//     the block matches, nothing else of the block is read
+//   - only the columns the query needs are read and inflated; counting a whole block without
+//     an IP filter reads nothing but the footer
+// getBytesRead() says how much of the file a query actually touched. Not thread-safe.
+public final class ArchiveReader implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveReader.class);
+    private static final int TRAILER_BYTES = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final List<ArchiveWriter.BlockInfo> blocks = new ArrayList<>();
+    // Row number in the file of each block's first row
+    private final List<Long> firstRows = new ArrayList<>();
+    private final long fileBytes;
+    private long rowCount;
+    private long bytesRead;
+
+    private ArchiveReader(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.fileBytes = channel.size();
+        readFooter();
+    }
+
+    public static ArchiveReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new ArchiveReader(path, channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readFooter() throws IOException {
+        if (fileBytes < TRAILER_BYTES) {
+            throw new IOException("Not an archive file: " + path);
+        }
+        ByteBuffer trailer = read(fileBytes - TRAILER_BYTES, TRAILER_BYTES);
+        long footerPosition = trailer.getLong();
+        int blockCount = trailer.getInt();
+        if (trailer.getLong() != ArchiveWriter.MAGIC || footerPosition < 0 || footerPosition > fileBytes - TRAILER_BYTES) {
+            throw new IOException("Not an archive file: " + path);
+        }
+        ByteBuffer footer = read(footerPosition, (int) (fileBytes - TRAILER_BYTES - footerPosition));
+        int protocolCount = footer.getInt();
+        for (int b = 0; b < blockCount; b++) {
+            int rows = footer.getInt();
+            long minTimestamp = footer.getLong();
+            long maxTimestamp = footer.getLong();
+            int minSize = footer.getInt();
+            int sizeBits = footer.getInt();
+            int addressBits = footer.getInt();
+            // Archives written with fewer protocols read fine; unknown codes count as OTHER
+            long[] protocolRows = new long[Protocol.count()];
+            for (int p = 0; p < protocolCount; p++) {
+                protocolRows[Protocol.fromCode(p).code()] += footer.getLong();
+            }
+            long[] offsets = new long[ArchiveWriter.COLUMNS];
+            int[] lengths = new int[ArchiveWriter.COLUMNS];
+            int[] rawLengths = new int[ArchiveWriter.COLUMNS];
+            for (int c = 0; c < ArchiveWriter.COLUMNS; c++) {
+                offsets[c] = footer.getLong();
+                lengths[c] = footer.getInt();
+                rawLengths[c] = footer.getInt();
+            }
+            blocks.add(new ArchiveWriter.BlockInfo(rows, minTimestamp, maxTimestamp, minSize, sizeBits, addressBits,
+                protocolRows, offsets, lengths, rawLengths));
+            firstRows.add(rowCount);
+            rowCount += rows;
+        }
+        // The footer is read once per open, not per query
+        bytesRead = 0;
+    }
+
+    // Hands every matching packet with fromNanos <= timestamp < toNanos to the sink, in file
+    // order; returns how many there were
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) throws IOException {
+        long matched = 0;
+        for (int b = 0; b < blocks.size(); b++) {
+            matched += scanBlock(b, fromNanos, toNanos, filter, (packet, row) -> sink.accept(packet));
+        }
+        return matched;
+    }
+
+    // The same for a single block, with each packet's row number in the file
+    long scanBlock(int b, long fromNanos, long toNanos, PacketFilter filter, ObjLongConsumer<PacketData> sink)
+            throws IOException {
+        ArchiveWriter.BlockInfo block = blocks.get(b);
+        long matched = 0;
+        if (skip(block, fromNanos, toNanos, filter)) {
+            return 0;
+        }
+        Addresses addresses = addresses(block);
+        boolean[] entryMatches = null;
+        if (filter.hasAddress()) {
+            entryMatches = matchingEntries(addresses, filter);
+            if (entryMatches == null) {
+                return 0;
+            }
+        }
+        int[] sources = unpack(block, ArchiveWriter.SOURCE, block.addressBits());
+        int[] destinations = unpack(block, ArchiveWriter.DEST, block.addressBits());
+        long[] timestamps = timestamps(block);
+        int[] protocols = unpack(block, ArchiveWriter.PROTOCOL, ArchiveWriter.PROTOCOL_BITS);
+        int[] sizes = unpack(block, ArchiveWriter.SIZE, block.sizeBits());
+        long firstRow = firstRows.get(b);
+        for (int i = 0; i < block.rows(); i++) {
+            int src = sources[i];
+            int dst = destinations[i];
+            if ((entryMatches != null && !entryMatches[src] && !entryMatches[dst])
+                    || timestamps[i] < fromNanos || timestamps[i] >= toNanos) {
+                continue;
+            }
+            Protocol protocol = Protocol.fromCode(protocols[i]);
+            if (!filter.matchesProtocol(protocol)) {
+                continue;
+            }
+            sink.accept(PacketData.of(timestamps[i], addresses.versions[src], addresses.hi[src], addresses.lo[src],
+                addresses.hi[dst], addresses.lo[dst], protocol, block.minSize() + sizes[i]), firstRow + i);
+            matched++;
+        }
+        return matched;
+    }
+
+    int getBlockCount() {
+        return blocks.size();
+    }
+
+    long getBlockFirstRow(int b) {
+        return firstRows.get(b);
+    }
+
+    // Matching rows per protocol code with fromNanos <= timestamp < toNanos
+    public long[] countByProtocol(PacketFilter filter, long fromNanos, long toNanos) throws IOException {
+        long[] counts = new long[Protocol.count()];
+        for (ArchiveWriter.BlockInfo block : blocks) {
+            if (skip(block, fromNanos, toNanos, filter)) {
+                continue;
+            }
+            boolean inside = block.minTimestamp() >= fromNanos && block.maxTimestamp() < toNanos;
+            if (inside && !filter.hasAddress()) {
+                for (int code = 0; code < counts.length; code++) {
+                    if (filter.matchesProtocol(Protocol.fromCode(code))) {
+                        counts[code] += block.protocolRows()[code];
+                    }
+                }
+                continue;
+            }
+            boolean[] selected = null;
+            if (filter.hasAddress()) {
+                selected = selectByAddress(block, filter);
+                if (selected == null) {
+                    continue;
+                }
+            }
+            long[] timestamps = inside ? null : timestamps(block);
+            int[] protocols = unpack(block, ArchiveWriter.PROTOCOL, ArchiveWriter.PROTOCOL_BITS);
+            for (int i = 0; i < block.rows(); i++) {
+                if ((selected != null && !selected[i])
+                        || (timestamps != null && (timestamps[i] < fromNanos || timestamps[i] >= toNanos))) {
+                    continue;
+                }
+                Protocol protocol = Protocol.fromCode(protocols[i]);
+                if (filter.matchesProtocol(protocol)) {
+                    counts[protocol.code()]++;
+                }
+            }
+        }
+        return counts;
+    }
+
+    private static boolean skip(ArchiveWriter.BlockInfo block, long fromNanos, long toNanos, PacketFilter filter) {
+        if (block.maxTimestamp() < fromNanos || block.minTimestamp() >= toNanos) {
+            return true;
+        }
+        return filter.hasProtocol() && block.protocolRows()[filter.getProtocol().code()] == 0;
+    }
+
+    // Rows whose source or destination matches the IP filter, or null when none of the block can
+    private boolean[] selectByAddress(ArchiveWriter.BlockInfo block, PacketFilter filter) throws IOException {
+        boolean[] entryMatches = matchingEntries(addresses(block), filter);
+        if (entryMatches == null) {
+            return null;
+        }
+        int[] sources = unpack(block, ArchiveWriter.SOURCE, block.addressBits());
+        int[] destinations = unpack(block, ArchiveWriter.DEST, block.addressBits());
+        boolean[] selected = new boolean[block.rows()];
+        boolean any = false;
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = entryMatches[sources[i]] || entryMatches[destinations[i]];
+            any |= selected[i];
+        }
+        return any ? selected : null;
+    }
+
+    // Which dictionary entries match the IP filter, or null when none does
+    private static boolean[] matchingEntries(Addresses addresses, PacketFilter filter) {
+        boolean[] matches = new boolean[addresses.versions.length];
+        boolean any = false;
+        for (int e = 0; e < matches.length; e++) {
+            matches[e] = addresses.versions[e] != 0
+                && filter.matchesAddress(addresses.versions[e], addresses.hi[e], addresses.lo[e]);
+            any |= matches[e];
+        }
+        return any ? matches : null;
+    }
+
+    private record Addresses(int[] versions, long[] hi, long[] lo) { }
+
+    private Addresses addresses(ArchiveWriter.BlockInfo block) throws IOException {
+        byte[] raw = column(block, ArchiveWriter.ADDRESSES);
+        ColumnCodec.Input in = new ColumnCodec.Input(raw);
+        int capacity = 1 << block.addressBits();
+        int[] versions = new int[capacity];
+        long[] hi = new long[capacity];
+        long[] lo = new long[capacity];
+        int consumed = 0;
+        for (int e = 0; e < capacity && consumed < raw.length; e++) {
+            versions[e] = in.readByte();
+            consumed++;
+            if (versions[e] == 4) {
+                long address = 0;
+                for (int i = 0; i < 4; i++) {
+                    address = (address << 8) | (in.readByte() & 0xFF);
+                }
+                lo[e] = address;
+                consumed += 4;
+            } else if (versions[e] == 6) {
+                hi[e] = in.readLong();
+                lo[e] = in.readLong();
+                consumed += 16;
+            }
+        }
+        return new Addresses(versions, hi, lo);
+    }
+
+    private long[] timestamps(ArchiveWriter.BlockInfo block) throws IOException {
+        ColumnCodec.Input in = new ColumnCodec.Input(column(block, ArchiveWriter.TIME));
+        long[] timestamps = new long[block.rows()];
+        timestamps[0] = in.readLong();
+        for (int i = 1; i < timestamps.length; i++) {
+            timestamps[i] = timestamps[i - 1] + in.readZigZag();
+        }
+        return timestamps;
+    }
+
+    private int[] unpack(ArchiveWriter.BlockInfo block, int column, int bits) throws IOException {
+        return ColumnCodec.unpack(column(block, column), block.rows(), bits);
+    }
+
+    private byte[] column(ArchiveWriter.BlockInfo block, int column) throws IOException {
+        ByteBuffer compressed = read(block.offsets()[column], block.lengths()[column]);
+        try {
+            return ColumnCodec.inflate(compressed.array(), block.rawLengths()[column]);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column " + column + " in " + path, e);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position + buffer.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of " + path);
+            }
+        }
+        bytesRead += length;
+        return buffer.flip();
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public long getMinTimestamp() {
+        return blocks.stream().mapToLong(ArchiveWriter.BlockInfo::minTimestamp).min().orElse(Long.MAX_VALUE);
+    }
+
+    public long getMaxTimestamp() {
+        return blocks.stream().mapToLong(ArchiveWriter.BlockInfo::maxTimestamp).max().orElse(Long.MIN_VALUE);
+    }
+
+    // Bytes read by queries since the file was opened
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public long getFileBytes() {
+        return fileBytes;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("archive close failed", e);
+        }
+    }
+}
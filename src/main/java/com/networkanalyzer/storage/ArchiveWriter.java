@@ -0,0 +1,236 @@
+package com.networkanalyzer.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+// Writes packets, oldest first, into a compressed columnar archive file (read by ArchiveReader).
+//
+// Rows are cut into blocks of 65536. Each block stores its columns as separately deflated
+// chunks, so a reader only inflates the columns a query needs:
+//   TIME      first timestamp, then zigzag varint deltas (a few bits per row for live traffic)
+//   ADDRESSES the block's distinct addresses, each once (version byte, then 4 or 16 bytes)
+//   SOURCE    source as an index into ADDRESSES, bit-packed
+//   DEST      destination, the same way
+//   PROTOCOL  protocol code, bit-packed
+//   SIZE      size minus the block's smallest size, bit-packed
+// The footer after the last block holds, per block, the row count, the timestamp and size
+// ranges, the rows per protocol and where each chunk is. The file ends with the footer's
+// position, the block count and the magic number.
+//
+// The file is written under a temporary name and renamed on close(), so an archive that
+// exists is complete.
+public final class ArchiveWriter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ArchiveWriter.class);
+    static final long MAGIC = 0x4E4C5A434F4C3031L; // "NLZCOL01"
+    static final int BLOCK_ROWS = 1 << 16;
+    static final int TIME = 0;
+    static final int ADDRESSES = 1;
+    static final int SOURCE = 2;
+    static final int DEST = 3;
+    static final int PROTOCOL = 4;
+    static final int SIZE = 5;
+    static final int COLUMNS = 6;
+    static final int PROTOCOL_BITS = ColumnCodec.bitsFor(Protocol.count() - 1);
+
+    private record Address(int version, long hi, long lo) { }
+
+    // What the footer says about one block
+    record BlockInfo(int rows, long minTimestamp, long maxTimestamp, int minSize, int sizeBits, int addressBits,
+                     long[] protocolRows, long[] offsets, int[] lengths, int[] rawLengths) { }
+
+    private final Path target;
+    private final Path temporary;
+    private final FileChannel channel;
+    private final List<BlockInfo> blocks = new ArrayList<>();
+    private long position;
+    private long rows;
+    private boolean closed;
+
+    private final long[] timestamps = new long[BLOCK_ROWS];
+    private final byte[] versions = new byte[BLOCK_ROWS];
+    private final long[] srcHi = new long[BLOCK_ROWS];
+    private final long[] srcLo = new long[BLOCK_ROWS];
+    private final long[] dstHi = new long[BLOCK_ROWS];
+    private final long[] dstLo = new long[BLOCK_ROWS];
+    private final int[] protocols = new int[BLOCK_ROWS];
+    private final int[] sizes = new int[BLOCK_ROWS];
+    private int buffered;
+
+    public ArchiveWriter(Path target) throws IOException {
+        this.target = target;
+        this.temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        this.channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    public void append(PacketData packet) throws IOException {
+        int i = buffered;
+        timestamps[i] = packet.getTimestampNanos();
+        versions[i] = (byte) packet.getIpVersion();
+        srcHi[i] = packet.getSrcHi();
+        srcLo[i] = packet.getSrcLo();
+        dstHi[i] = packet.getDstHi();
+        dstLo[i] = packet.getDstLo();
+        protocols[i] = packet.getProtocolType().code();
+        sizes[i] = packet.getSize();
+        if (++buffered == BLOCK_ROWS) {
+            writeBlock();
+        }
+    }
+
+    public long getRowCount() {
+        return rows + buffered;
+    }
+
+    private void writeBlock() throws IOException {
+        int n = buffered;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        int minSize = Integer.MAX_VALUE;
+        int maxSize = Integer.MIN_VALUE;
+        long[] protocolRows = new long[Protocol.count()];
+        for (int i = 0; i < n; i++) {
+            minTimestamp = Math.min(minTimestamp, timestamps[i]);
+            maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+            minSize = Math.min(minSize, sizes[i]);
+            maxSize = Math.max(maxSize, sizes[i]);
+            protocolRows[protocols[i]]++;
+        }
+
+        byte[][] raw = new byte[COLUMNS][];
+        ByteArrayOutputStream time = new ByteArrayOutputStream(n * 2);
+        ColumnCodec.writeLong(time, timestamps[0]);
+        for (int i = 1; i < n; i++) {
+            ColumnCodec.writeZigZag(time, timestamps[i] - timestamps[i - 1]);
+        }
+        raw[TIME] = time.toByteArray();
+
+        Map<Address, Integer> dictionary = new HashMap<>();
+        ByteArrayOutputStream addresses = new ByteArrayOutputStream();
+        int[] sources = new int[n];
+        int[] destinations = new int[n];
+        for (int i = 0; i < n; i++) {
+            sources[i] = addressIndex(dictionary, addresses, versions[i], srcHi[i], srcLo[i]);
+            destinations[i] = addressIndex(dictionary, addresses, versions[i], dstHi[i], dstLo[i]);
+        }
+        int addressBits = ColumnCodec.bitsFor(dictionary.size() - 1);
+        raw[ADDRESSES] = addresses.toByteArray();
+        raw[SOURCE] = ColumnCodec.pack(sources, n, addressBits);
+        raw[DEST] = ColumnCodec.pack(destinations, n, addressBits);
+        raw[PROTOCOL] = ColumnCodec.pack(protocols, n, PROTOCOL_BITS);
+
+        int sizeBits = ColumnCodec.bitsFor((long) maxSize - minSize);
+        int[] sizeOffsets = new int[n];
+        for (int i = 0; i < n; i++) {
+            sizeOffsets[i] = sizes[i] - minSize;
+        }
+        raw[SIZE] = ColumnCodec.pack(sizeOffsets, n, sizeBits);
+
+        long[] offsets = new long[COLUMNS];
+        int[] lengths = new int[COLUMNS];
+        int[] rawLengths = new int[COLUMNS];
+        for (int c = 0; c < COLUMNS; c++) {
+            byte[] compressed = ColumnCodec.deflate(raw[c]);
+            offsets[c] = position;
+            lengths[c] = compressed.length;
+            rawLengths[c] = raw[c].length;
+            write(ByteBuffer.wrap(compressed));
+        }
+        blocks.add(new BlockInfo(n, minTimestamp, maxTimestamp, minSize, sizeBits, addressBits, protocolRows,
+            offsets, lengths, rawLengths));
+        rows += n;
+        buffered = 0;
+    }
+
+    private static int addressIndex(Map<Address, Integer> dictionary, ByteArrayOutputStream out, int version,
+                                    long hi, long lo) {
+        Address address = new Address(version, hi, lo);
+        Integer index = dictionary.get(address);
+        if (index != null) {
+            return index;
+        }
+        out.write(version);
+        if (version == 4) {
+            out.write((int) (lo >>> 24));
+            out.write((int) (lo >>> 16));
+            out.write((int) (lo >>> 8));
+            out.write((int) lo);
+        } else if (version == 6) {
+            ColumnCodec.writeLong(out, hi);
+            ColumnCodec.writeLong(out, lo);
+        }
+        dictionary.put(address, dictionary.size());
+        return dictionary.size() - 1;
+    }
+
+    private void writeFooter() throws IOException {
+        int protocolCount = Protocol.count();
+        int perBlock = Integer.BYTES + 2 * Long.BYTES + 3 * Integer.BYTES + protocolCount * Long.BYTES
+            + COLUMNS * (Long.BYTES + 2 * Integer.BYTES);
+        ByteBuffer footer = ByteBuffer.allocate(Integer.BYTES + blocks.size() * perBlock + Long.BYTES + Integer.BYTES + Long.BYTES);
+        footer.putInt(protocolCount);
+        for (BlockInfo block : blocks) {
+            footer.putInt(block.rows()).putLong(block.minTimestamp()).putLong(block.maxTimestamp())
+                .putInt(block.minSize()).putInt(block.sizeBits()).putInt(block.addressBits());
+            for (long count : block.protocolRows()) {
+                footer.putLong(count);
+            }
+            for (int c = 0; c < COLUMNS; c++) {
+                footer.putLong(block.offsets()[c]).putInt(block.lengths()[c]).putInt(block.rawLengths()[c]);
+            }
+        }
+        footer.putLong(position).putInt(blocks.size()).putLong(MAGIC);
+        footer.flip();
+        write(footer);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer);
+        }
+    }
+
+    // Writes the last block and the footer and moves the file into place
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try (FileChannel out = channel) {
+            if (buffered > 0) {
+                writeBlock();
+            }
+            writeFooter();
+            out.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // Drops the partly written file instead of publishing it
+    public void abort() {
+        closed = true;
+        try {
+            channel.close();
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            log.warn("archive abort cleanup failed file={}", temporary, e);
+        }
+    }
+}
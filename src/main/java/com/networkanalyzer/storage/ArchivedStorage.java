@@ -0,0 +1,208 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PageKey;
+import com.networkanalyzer.service.StorageException;
+import com.networkanalyzer.util.RateLimitedLog;
+
+// A PacketStorage that keeps answering for the days retention has dropped from the live
+// storage, out of the ColumnArchive, so history paging and protocol counts still reach them.
+//
+// The archive only answers for timestamps older than the live storage's oldest packet: a day
+// that is archived but still live is read once, from the live storage. Cursors read the live
+// storage first and carry on into the archive; a key of an archived row (see
+// ColumnArchive.isArchived) goes straight to the archive. Writes go to the live storage, and
+// compaction has to read from it directly, not through this.
+public final class ArchivedStorage implements PacketStorage {
+    private static final Logger log = LoggerFactory.getLogger(ArchivedStorage.class);
+    // The live storage can be unreachable for a while; every read would say so
+    private static final RateLimitedLog readErrors = new RateLimitedLog(log);
+    private final PacketStorage storage;
+    private final ColumnArchive archive;
+
+    public ArchivedStorage(PacketStorage storage, ColumnArchive archive) {
+        this.storage = storage;
+        this.archive = archive;
+    }
+
+    @Override
+    public boolean savePackets(List<PacketData> batch) {
+        return storage.savePackets(batch);
+    }
+
+    @Override
+    public PacketCursor openCursor(PacketFilter filter, PageKey before, int limit) {
+        long liveOldest = liveOldest();
+        if (before != null && ColumnArchive.isArchived(before)) {
+            // Past the live rows already; without their bound the key alone limits the archive
+            return openArchive(filter, before, liveOldest == Long.MIN_VALUE ? Long.MAX_VALUE : liveOldest, limit);
+        }
+        PacketCursor live = storage.openCursor(filter, before, limit);
+        if (liveOldest == Long.MIN_VALUE) {
+            return live;
+        }
+        return new ThenArchive(live, remaining -> openArchive(filter, before, liveOldest, remaining), limit);
+    }
+
+    private PacketCursor openArchive(PacketFilter filter, PageKey before, long beforeNanos, int limit) {
+        try {
+            return archive.openCursor(filter, before, beforeNanos, limit);
+        } catch (IOException e) {
+            readErrors.warn("archive unreadable directory={} cause=\"{}\"", archive.getDirectory(), e.toString());
+            return new ArchiveCursor(List.of(), filter, beforeNanos, null, 0, limit);
+        }
+    }
+
+    @Override
+    public long[] countByProtocol(PacketFilter filter, long beforeNanos) {
+        long[] counts = storage.countByProtocol(filter, beforeNanos);
+        long liveOldest = liveOldest();
+        if (liveOldest == Long.MIN_VALUE) {
+            return counts;
+        }
+        try {
+            long[] archived = archive.countByProtocol(filter, Long.MIN_VALUE, Math.min(beforeNanos, liveOldest));
+            for (int code = 0; code < counts.length; code++) {
+                counts[code] += archived[code];
+            }
+        } catch (IOException e) {
+            readErrors.warn("archive unreadable directory={} cause=\"{}\"", archive.getDirectory(), e.toString());
+        }
+        return counts;
+    }
+
+    // Archived rows first, they are the older ones
+    @Override
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) {
+        long liveOldest = storage.oldestTimestampNanos();
+        long matched = 0;
+        if (fromNanos < liveOldest) {
+            try {
+                matched += archive.scan(fromNanos, Math.min(toNanos, liveOldest), filter, sink);
+            } catch (IOException e) {
+                throw new StorageException("archive scan failed", e);
+            }
+        }
+        return matched + storage.scan(fromNanos, toNanos, filter, sink);
+    }
+
+    @Override
+    public long count(long fromNanos, long toNanos) {
+        long liveOldest = storage.oldestTimestampNanos();
+        long archived = 0;
+        if (fromNanos < liveOldest) {
+            try {
+                long[] counts = archive.countByProtocol(PacketFilter.ALL, fromNanos, Math.min(toNanos, liveOldest));
+                for (long count : counts) {
+                    archived += count;
+                }
+            } catch (IOException e) {
+                throw new StorageException("archive count failed", e);
+            }
+        }
+        return archived + storage.count(fromNanos, toNanos);
+    }
+
+    @Override
+    public long oldestTimestampNanos() {
+        try {
+            return Math.min(archive.oldestTimestampNanos(), storage.oldestTimestampNanos());
+        } catch (IOException e) {
+            throw new StorageException("archive unreadable", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        storage.close();
+    }
+
+    // Where the archive takes over, or Long.MIN_VALUE when the live storage can't say and the
+    // archive is left out rather than risk answering twice for a day
+    private long liveOldest() {
+        try {
+            return storage.oldestTimestampNanos();
+        } catch (StorageException e) {
+            readErrors.warn("archive skipped, oldest live packet unknown cause=\"{}\"", e.getMessage());
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private interface CursorOpener {
+        PacketCursor open(int limit);
+    }
+
+    // The live cursor, then once it runs out an archive cursor for what is left of the limit
+    private static final class ThenArchive implements PacketCursor {
+        private final CursorOpener archive;
+        private final int limit;
+        private volatile PacketCursor current;
+        private boolean inArchive;
+        private int returned;
+        private PageKey lastKey;
+        private volatile boolean cancelled;
+
+        ThenArchive(PacketCursor live, CursorOpener archive, int limit) {
+            this.current = live;
+            this.archive = archive;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (current.hasNext()) {
+                return true;
+            }
+            if (inArchive || cancelled || current.isCancelled() || (limit > 0 && returned >= limit)) {
+                return false;
+            }
+            current.close();
+            current = archive.open(limit > 0 ? limit - returned : 0);
+            inArchive = true;
+            if (cancelled) {
+                current.cancel();
+            }
+            return current.hasNext();
+        }
+
+        @Override
+        public PacketData next() {
+            hasNext();
+            PacketData packet = current.next();
+            lastKey = current.getLastKey();
+            returned++;
+            return packet;
+        }
+
+        @Override
+        public PageKey getLastKey() {
+            return lastKey;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || current.isCancelled();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            current.cancel();
+        }
+
+        @Override
+        public void close() {
+            current.close();
+        }
+    }
+}
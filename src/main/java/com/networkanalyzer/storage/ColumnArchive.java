@@ -0,0 +1,278 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.DatabaseService;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PageKey;
+
+// A directory of columnar archive files, one per day (archive-YYYYMMDD.nlzc), for history
+// that has to outlive the database's partition retention at a fraction of its size.
+//
+// Compaction copies every closed day that isn't archived yet out of a PacketStorage (MySQL or
+// the segment store) through its time-range scan. Days are archived once they are
+// afterDays old, which has to be less than -Dnetlyzer.db.retentionDays so each day is
+// archived before its partition is dropped. A day's file is only kept when the scan finished
+// and its row count matches the storage's count for the day; a failed or short day is
+// retried on the next run. It runs in the app every hour when -Dnetlyzer.archive.dir is set
+// (for MySQL once the schema migration has succeeded), or as a one-off job through main().
+// The app reads archived days through ArchivedStorage once retention has dropped them.
+//
+// -Dnetlyzer.archive.dir        archive directory
+// -Dnetlyzer.archive.afterDays  archive days at least this old (default 1, i.e. up to yesterday)
+// -Dnetlyzer.archive.lookbackDays  how far back compaction looks for unarchived days (default 30)
+public final class ColumnArchive {
+    private static final Logger log = LoggerFactory.getLogger(ColumnArchive.class);
+    private static final DateTimeFormatter FILE_DAY = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final String PREFIX = "archive-";
+    private static final String SUFFIX = ".nlzc";
+    private static final long COMPACTION_HOURS = 1;
+    // Page ids of archived rows: the row number in the day's file, counted up from here. Live
+    // storages use ids >= 0, and Long.MIN_VALUE stands for a key with a time only.
+    private static final long ROW_ID_BASE = Long.MIN_VALUE + 1;
+
+    private final Path directory;
+    private final int afterDays;
+    private final int lookbackDays;
+    private ScheduledExecutorService compaction;
+
+    public ColumnArchive(Path directory) {
+        this(directory, Integer.getInteger("netlyzer.archive.afterDays", 1),
+            Integer.getInteger("netlyzer.archive.lookbackDays", 30));
+    }
+
+    public ColumnArchive(Path directory, int afterDays, int lookbackDays) {
+        this.directory = directory;
+        this.afterDays = Math.max(1, afterDays);
+        this.lookbackDays = Math.max(this.afterDays, lookbackDays);
+    }
+
+    // The archive configured with -Dnetlyzer.archive.dir, or null when there is none
+    public static ColumnArchive fromProperties() {
+        String dir = System.getProperty("netlyzer.archive.dir");
+        return dir == null || dir.isBlank() ? null : new ColumnArchive(Paths.get(dir));
+    }
+
+    // Runs compactClosedDays now and then every hour on a daemon thread
+    public synchronized void startCompaction(PacketStorage source) {
+        if (compaction != null) {
+            return;
+        }
+        compaction = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "archive-compaction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compaction.scheduleWithFixedDelay(() -> {
+            try {
+                compactClosedDays(source);
+            } catch (IOException | RuntimeException e) {
+                log.error("archive compaction failed", e);
+            }
+        }, 0, COMPACTION_HOURS, TimeUnit.HOURS);
+    }
+
+    public synchronized void stopCompaction() {
+        if (compaction != null) {
+            compaction.shutdownNow();
+            compaction = null;
+        }
+    }
+
+    // Archives every day from lookbackDays ago up to afterDays ago that has no archive file
+    // yet; returns how many days were written
+    public int compactClosedDays(PacketStorage source) throws IOException {
+        Files.createDirectories(directory);
+        LocalDate today = LocalDate.now();
+        int written = 0;
+        for (LocalDate day = today.minusDays(lookbackDays); !day.isAfter(today.minusDays(afterDays)); day = day.plusDays(1)) {
+            if (!Files.exists(fileFor(day)) && compactDay(source, day) >= 0) {
+                written++;
+            }
+        }
+        return written;
+    }
+
+    // Writes the archive of one day, replacing an existing one; returns the row count, or -1
+    // if it failed and nothing was written. A day the storage counts no rows for still gets a
+    // (tiny) file, so it isn't scanned for again.
+    public long compactDay(PacketStorage source, LocalDate day) throws IOException {
+        Files.createDirectories(directory);
+        long from = Timestamps.fromLocalDateTime(day.atStartOfDay());
+        long to = Timestamps.fromLocalDateTime(day.plusDays(1).atStartOfDay());
+        long started = System.nanoTime();
+        ArchiveWriter writer = new ArchiveWriter(fileFor(day));
+        try {
+            source.scan(from, to, PacketFilter.ALL, packet -> {
+                try {
+                    writer.append(packet);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            // Late rows for the day, or a scan that ended early without saying so
+            long expected = source.count(from, to);
+            if (writer.getRowCount() != expected) {
+                throw new IOException("archived " + writer.getRowCount() + " rows of " + expected);
+            }
+            writer.close();
+        } catch (IOException | RuntimeException e) {
+            writer.abort();
+            log.error("archive failed day={} cause=\"{}\"", day, e.getMessage());
+            return -1;
+        }
+        long rows = writer.getRowCount();
+        log.info("archived day={} packets={} bytes={} millis={}", day, rows, Files.size(fileFor(day)),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return rows;
+    }
+
+    // Every archived packet with fromNanos <= timestamp < toNanos that matches, oldest day first
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) throws IOException {
+        long matched = 0;
+        for (Path file : filesOverlapping(fromNanos, toNanos)) {
+            try (ArchiveReader reader = ArchiveReader.open(file)) {
+                matched += reader.scan(fromNanos, toNanos, filter, sink);
+            }
+        }
+        return matched;
+    }
+
+    public long[] countByProtocol(PacketFilter filter, long fromNanos, long toNanos) throws IOException {
+        long[] counts = new long[Protocol.count()];
+        for (Path file : filesOverlapping(fromNanos, toNanos)) {
+            try (ArchiveReader reader = ArchiveReader.open(file)) {
+                long[] fileCounts = reader.countByProtocol(filter, fromNanos, toNanos);
+                for (int code = 0; code < counts.length; code++) {
+                    counts[code] += fileCounts[code];
+                }
+            }
+        }
+        return counts;
+    }
+
+    // Archived packets newest first, strictly before `before` (null for the newest) and older
+    // than beforeNanos; limit 0 for all. A key of an archived row continues below that row.
+    public PacketCursor openCursor(PacketFilter filter, PageKey before, long beforeNanos, int limit) throws IOException {
+        long upper = beforeNanos;
+        LocalDate keyDay = null;
+        long keyRow = Long.MAX_VALUE;
+        if (before != null && isArchived(before)) {
+            keyDay = Timestamps.toLocalDateTime(before.timestampNanos()).toLocalDate();
+            keyRow = before.id() - ROW_ID_BASE;
+        } else if (before != null) {
+            upper = Math.min(upper, before.timestampNanos());
+        }
+        List<Path> files = new ArrayList<>();
+        List<LocalDate> days = days();
+        for (int i = days.size() - 1; i >= 0; i--) {
+            LocalDate day = days.get(i);
+            if ((keyDay == null || !day.isAfter(keyDay)) && Timestamps.fromLocalDateTime(day.atStartOfDay()) < upper) {
+                files.add(fileFor(day));
+            }
+        }
+        return new ArchiveCursor(files, filter, upper, keyDay != null ? fileFor(keyDay) : null, keyRow, limit);
+    }
+
+    // Whether the key is the position of a row read from an archive
+    public static boolean isArchived(PageKey key) {
+        return key.id() < 0 && key.id() != Long.MIN_VALUE;
+    }
+
+    static long pageId(long row) {
+        return ROW_ID_BASE + row;
+    }
+
+    // Timestamp of the oldest archived packet, Long.MAX_VALUE when there is none
+    public long oldestTimestampNanos() throws IOException {
+        for (LocalDate day : days()) {
+            try (ArchiveReader reader = ArchiveReader.open(fileFor(day))) {
+                if (reader.getRowCount() > 0) {
+                    return reader.getMinTimestamp();
+                }
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    // Archived days, oldest first
+    public List<LocalDate> days() throws IOException {
+        List<LocalDate> days = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return days;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    days.add(LocalDate.parse(name.substring(PREFIX.length(), name.length() - SUFFIX.length()), FILE_DAY));
+                } catch (DateTimeParseException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        days.sort(null);
+        return days;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private List<Path> filesOverlapping(long fromNanos, long toNanos) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (LocalDate day : days()) {
+            long start = Timestamps.fromLocalDateTime(day.atStartOfDay());
+            long end = Timestamps.fromLocalDateTime(day.plusDays(1).atStartOfDay());
+            if (start < toNanos && end > fromNanos) {
+                files.add(fileFor(day));
+            }
+        }
+        return files;
+    }
+
+    private Path fileFor(LocalDate day) {
+        return directory.resolve(PREFIX + FILE_DAY.format(day) + SUFFIX);
+    }
+
+    // Archives the closed days of traffic_data into the given directory:
+    //   java ... com.networkanalyzer.storage.ColumnArchive <dir> [afterDays]
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: ColumnArchive <archive dir> [afterDays]");
+            return;
+        }
+        int afterDays = args.length > 1 ? Integer.parseInt(args[1]) : Integer.getInteger("netlyzer.archive.afterDays", 1);
+        ColumnArchive archive = new ColumnArchive(Paths.get(args[0]), afterDays,
+            Integer.getInteger("netlyzer.archive.lookbackDays", 30));
+        try (DatabaseService database = new DatabaseService()) {
+            if (!database.whenSchemaReady().join()) {
+                System.out.println("Schema migration failed, nothing archived");
+                return;
+            }
+            System.out.println("Archived " + archive.compactClosedDays(database) + " day(s)");
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.networkanalyzer.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Encodings shared by ArchiveWriter and ArchiveReader: zigzag varints for timestamp deltas,
+// fixed-width bit packing for small integers, and Deflate over each finished column chunk.
+final class ColumnCodec {
+    private ColumnCodec() {
+    }
+
+    // Bits needed to hold every value in [0, max]
+    static int bitsFor(long max) {
+        return max <= 0 ? 0 : 64 - Long.numberOfLeadingZeros(max);
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static void writeZigZag(ByteArrayOutputStream out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static void writeLong(ByteArrayOutputStream out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    // Sequential reader over a decoded chunk
+    static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long readZigZag() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < Long.BYTES; i++) {
+                value = (value << 8) | (bytes[position++] & 0xFF);
+            }
+            return value;
+        }
+
+        int readByte() {
+            return bytes[position++];
+        }
+    }
+
+    // values[0..count) at `bits` bits each, low bits first. The values are ints, so 32 bits is
+    // the widest packing; anything wider would silently drop bits.
+    static byte[] pack(int[] values, int count, int bits) {
+        checkBits(bits);
+        byte[] out = new byte[(int) (((long) count * bits + 7) / 8)];
+        if (bits == 0) {
+            return out;
+        }
+        long bitPosition = 0;
+        for (int i = 0; i < count; i++) {
+            long value = values[i] & ((1L << bits) - 1);
+            for (int written = 0; written < bits; ) {
+                int index = (int) (bitPosition >>> 3);
+                int offset = (int) (bitPosition & 7);
+                int chunk = Math.min(8 - offset, bits - written);
+                out[index] |= (byte) (((value >>> written) & ((1 << chunk) - 1)) << offset);
+                written += chunk;
+                bitPosition += chunk;
+            }
+        }
+        return out;
+    }
+
+    static int[] unpack(byte[] packed, int count, int bits) {
+        checkBits(bits);
+        int[] values = new int[count];
+        if (bits == 0) {
+            return values;
+        }
+        long bitPosition = 0;
+        for (int i = 0; i < count; i++) {
+            int value = 0;
+            for (int read = 0; read < bits; ) {
+                int index = (int) (bitPosition >>> 3);
+                int offset = (int) (bitPosition & 7);
+                int chunk = Math.min(8 - offset, bits - read);
+                value |= ((packed[index] & 0xFF) >>> offset & ((1 << chunk) - 1)) << read;
+                read += chunk;
+                bitPosition += chunk;
+            }
+            values[i] = value;
+        }
+        return values;
+    }
+
+    private static void checkBits(int bits) {
+        if (bits < 0 || bits > Integer.SIZE) {
+            throw new IllegalArgumentException("Can't pack ints at " + bits + " bits");
+        }
+    }
+
+    static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] inflate(byte[] compressed, int rawLength) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int filled = 0;
+            while (filled < rawLength) {
+                int n = inflater.inflate(raw, filled, rawLength - filled);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new DataFormatException("Column chunk is shorter than " + rawLength + " bytes");
+                }
+                filled += n;
+            }
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+}
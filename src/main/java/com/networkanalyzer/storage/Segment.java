@@ -0,0 +1,365 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+
+// One append-only segment file of fixed-width packet records.
+//
+// Layout: a 64-byte header (magic, format, record size, capacity, id of the first record,
+// creation time), then `capacity` records of 48 bytes:
+//   0 timestamp (epoch ns)   8 source hi   16 source lo   24 destination hi   32 destination lo
+//   40 size   44 flags (0x80 | ip version)   45 protocol code   46 check
+// The file is sized for its full capacity up front and written through a memory mapping, so
+// an append is a handful of stores into the page cache. The check is a hash of the record,
+// salted with the segment's first id, and is stored last: a record whose check doesn't match
+// (torn by a crash, or never written) ends the segment.
+//
+// Readers never touch the mapping; they read whole index blocks through the file channel
+// (positional reads are thread-safe and don't keep the file mapped), and only up to the
+// published count. Per block of 4096 records the segment keeps the smallest and largest
+// timestamp, so time-range scans skip blocks they can't match. Once a segment is sealed this
+// sparse index is saved next to it (.idx); the active segment rebuilds it when reopened.
+final class Segment {
+    private static final Logger log = LoggerFactory.getLogger(Segment.class);
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 48;
+    static final int BLOCK_RECORDS = 4096;
+    static final int BLOCK_BYTES = BLOCK_RECORDS * RECORD_BYTES;
+    private static final long MAGIC = 0x4E4C5A5345473031L; // "NLZSEG01"
+    private static final long INDEX_MAGIC = 0x4E4C5A4958303031L; // "NLZIX001"
+    private static final int FORMAT = 1;
+
+    static final int TIMESTAMP = 0;
+    static final int SRC_HI = 8;
+    static final int SRC_LO = 16;
+    static final int DST_HI = 24;
+    static final int DST_LO = 32;
+    static final int SIZE = 40;
+    static final int VERSION = 44;
+    static final int PROTOCOL = 45;
+    static final int CHECK = 46;
+    // Set in the flags byte of every record, so a zeroed record never passes as written
+    static final int WRITTEN = 0x80;
+    static final int VERSION_MASK = 0x7F;
+
+    final Path path;
+    final long firstId;
+    final int capacity;
+    final long createdNanos;
+    private final FileChannel channel;
+    // Only while the segment is being written
+    private MappedByteBuffer map;
+    private final long[] blockMin;
+    private final long[] blockMax;
+    private int count;
+    // Records readers may see; everything below is fully written
+    private volatile int published;
+    private volatile boolean sealed;
+
+    private Segment(Path path, FileChannel channel, long firstId, int capacity, long createdNanos) {
+        this.path = path;
+        this.channel = channel;
+        this.firstId = firstId;
+        this.capacity = capacity;
+        this.createdNanos = createdNanos;
+        int blocks = (capacity + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+        this.blockMin = new long[blocks];
+        this.blockMax = new long[blocks];
+        Arrays.fill(blockMin, Long.MAX_VALUE);
+        Arrays.fill(blockMax, Long.MIN_VALUE);
+    }
+
+    static Segment create(Path directory, long firstId, int capacity, long createdNanos) throws IOException {
+        Path path = directory.resolve(String.format("segment-%020d.seg", firstId));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        Segment segment = new Segment(path, channel, firstId, capacity, createdNanos);
+        segment.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+        segment.map.putLong(0, MAGIC)
+            .putInt(8, FORMAT)
+            .putInt(12, RECORD_BYTES)
+            .putInt(16, capacity)
+            .putLong(24, firstId)
+            .putLong(32, createdNanos);
+        segment.map.force();
+        return segment;
+    }
+
+    // Opens an existing segment. With a saved index it is sealed as is; otherwise it was the
+    // active segment when the process stopped, and its valid prefix is recovered by checking
+    // records from the start. Whatever a crash left past that prefix is zeroed, so stale
+    // records can't reappear behind later appends.
+    static Segment open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getLong(0) != MAGIC || header.getInt(8) != FORMAT || header.getInt(12) != RECORD_BYTES) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            Segment segment = new Segment(path, channel, header.getLong(24), header.getInt(16), header.getLong(32));
+            if (!segment.loadIndex()) {
+                segment.recover();
+            }
+            return segment;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void recover() throws IOException {
+        ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_BYTES);
+        int valid = 0;
+        scan:
+        for (int start = 0; start < capacity; start += BLOCK_RECORDS) {
+            int records = Math.min(BLOCK_RECORDS, capacity - start);
+            readBlock(start, records, block);
+            for (int i = 0; i < records; i++) {
+                if (!isValid(block, i * RECORD_BYTES)) {
+                    break scan;
+                }
+                index(start + i, block.getLong(i * RECORD_BYTES + TIMESTAMP));
+                valid++;
+            }
+        }
+        count = valid;
+        published = valid;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity * RECORD_BYTES);
+
+        // Records after the first invalid one were written by the crashed run, if at all;
+        // they end at the first window that was never touched
+        for (int start = valid; start < capacity; start += BLOCK_RECORDS) {
+            int records = Math.min(BLOCK_RECORDS, capacity - start);
+            boolean dirty = false;
+            int offset = HEADER_BYTES + start * RECORD_BYTES;
+            for (int i = 0; i < records * RECORD_BYTES; i += Long.BYTES) {
+                if (map.getLong(offset + i) != 0) {
+                    dirty = true;
+                    break;
+                }
+            }
+            if (!dirty) {
+                break;
+            }
+            for (int i = 0; i < records * RECORD_BYTES; i += Long.BYTES) {
+                map.putLong(offset + i, 0);
+            }
+        }
+        map.force();
+    }
+
+    boolean isFull() {
+        return count == capacity;
+    }
+
+    // Writer thread only; false when the segment is full
+    boolean append(PacketData packet) {
+        if (count == capacity || map == null) {
+            return false;
+        }
+        int offset = HEADER_BYTES + count * RECORD_BYTES;
+        long timestamp = packet.getTimestampNanos();
+        map.putLong(offset + TIMESTAMP, timestamp)
+            .putLong(offset + SRC_HI, packet.getSrcHi())
+            .putLong(offset + SRC_LO, packet.getSrcLo())
+            .putLong(offset + DST_HI, packet.getDstHi())
+            .putLong(offset + DST_LO, packet.getDstLo())
+            .putInt(offset + SIZE, packet.getSize())
+            .put(offset + VERSION, (byte) (WRITTEN | packet.getIpVersion()))
+            .put(offset + PROTOCOL, packet.getProtocolType().code());
+        map.putShort(offset + CHECK, check(map, offset));
+        index(count, timestamp);
+        count++;
+        return true;
+    }
+
+    // Makes everything appended so far visible to readers
+    void publish() {
+        published = count;
+    }
+
+    void force() {
+        if (map != null) {
+            map.force();
+        }
+    }
+
+    // No more appends: flushes the records and saves the sparse index next to the file
+    void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        publish();
+        force();
+        map = null;
+        ByteBuffer index = ByteBuffer.allocate(Long.BYTES + 2 * Integer.BYTES + blockMin.length * 2 * Long.BYTES);
+        index.putLong(INDEX_MAGIC).putInt(count).putInt(blockMin.length);
+        for (int i = 0; i < blockMin.length; i++) {
+            index.putLong(blockMin[i]).putLong(blockMax[i]);
+        }
+        Path temporary = indexPath().resolveSibling(indexPath().getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            index.flip();
+            while (index.hasRemaining()) {
+                out.write(index);
+            }
+            out.force(true);
+        }
+        Files.move(temporary, indexPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+        sealed = true;
+    }
+
+    private boolean loadIndex() throws IOException {
+        if (!Files.exists(indexPath())) {
+            return false;
+        }
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexPath()));
+        if (index.remaining() < Long.BYTES + 2 * Integer.BYTES || index.getLong() != INDEX_MAGIC) {
+            return false;
+        }
+        int savedCount = index.getInt();
+        int blocks = index.getInt();
+        if (savedCount < 0 || savedCount > capacity || blocks != blockMin.length
+                || index.remaining() != blocks * 2 * Long.BYTES) {
+            return false;
+        }
+        for (int i = 0; i < blocks; i++) {
+            blockMin[i] = index.getLong();
+            blockMax[i] = index.getLong();
+        }
+        count = savedCount;
+        published = savedCount;
+        sealed = true;
+        return true;
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("segment close failed file={}", path, e);
+        }
+        map = null;
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(indexPath());
+        Files.deleteIfExists(path);
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    int published() {
+        return published;
+    }
+
+    long fileBytes() {
+        return HEADER_BYTES + (long) capacity * RECORD_BYTES;
+    }
+
+    int blockCount() {
+        return (published + BLOCK_RECORDS - 1) / BLOCK_RECORDS;
+    }
+
+    long blockMin(int block) {
+        return blockMin[block];
+    }
+
+    long blockMax(int block) {
+        return blockMax[block];
+    }
+
+    // Smallest and largest timestamp of the published records; MAX/MIN_VALUE when empty
+    long minTimestamp() {
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < blockCount(); i++) {
+            min = Math.min(min, blockMin[i]);
+        }
+        return min;
+    }
+
+    long maxTimestamp() {
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < blockCount(); i++) {
+            max = Math.max(max, blockMax[i]);
+        }
+        return max;
+    }
+
+    // Reads the published records of a block into `into` (cleared first) and returns how many there are
+    int readBlock(int block, ByteBuffer into) throws IOException {
+        int start = block * BLOCK_RECORDS;
+        int records = Math.min(BLOCK_RECORDS, published - start);
+        if (records <= 0) {
+            return 0;
+        }
+        readBlock(start, records, into);
+        return records;
+    }
+
+    private void readBlock(int start, int records, ByteBuffer into) throws IOException {
+        into.clear().limit(records * RECORD_BYTES);
+        readFully(channel, into, HEADER_BYTES + (long) start * RECORD_BYTES);
+        into.flip();
+    }
+
+    private void index(int record, long timestamp) {
+        int block = record / BLOCK_RECORDS;
+        blockMin[block] = Math.min(blockMin[block], timestamp);
+        blockMax[block] = Math.max(blockMax[block], timestamp);
+    }
+
+    private boolean isValid(ByteBuffer buffer, int offset) {
+        return (buffer.get(offset + VERSION) & WRITTEN) != 0 && buffer.getShort(offset + CHECK) == check(buffer, offset);
+    }
+
+    private short check(ByteBuffer buffer, int offset) {
+        long h = firstId * 0x9E3779B97F4A7C15L + 0x5851F42D4C957F2DL;
+        for (int field = 0; field < SIZE; field += Long.BYTES) {
+            h = mix(h ^ buffer.getLong(offset + field));
+        }
+        h = mix(h ^ (buffer.getInt(offset + SIZE) & 0xFFFFFFFFL) ^ ((long) buffer.getShort(offset + VERSION) << 32));
+        return (short) (h >>> 48);
+    }
+
+    // MurmurHash3 fmix64
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Path indexPath() {
+        return path.resolveSibling(path.getFileName().toString().replace(".seg", ".idx"));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+            position += read;
+        }
+    }
+}
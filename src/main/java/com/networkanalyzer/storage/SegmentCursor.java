@@ -0,0 +1,137 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PageKey;
+
+// PacketCursor over a snapshot of the store's segments, newest record first. Blocks are read
+// one at a time as the cursor gets to them, so the first page of a huge result costs one
+// block read. A key with an id continues below that id; a key from PageKey.before(time) keeps
+// only records older than the time and skips whole blocks that are newer.
+final class SegmentCursor implements PacketCursor {
+    private static final Logger log = LoggerFactory.getLogger(SegmentCursor.class);
+    private final List<Segment> segments;
+    private final PacketFilter filter;
+    private final PageKey before;
+    private final int limit;
+    private final ByteBuffer block = ByteBuffer.allocateDirect(Segment.BLOCK_BYTES);
+    private int segmentIndex;
+    private int blockIndex = -1;
+    // Record within the current block, counting down
+    private int record = -1;
+    private int returned;
+    private PacketData next;
+    private PageKey nextKey;
+    private PageKey lastKey;
+    private volatile boolean cancelled;
+    private boolean exhausted;
+
+    SegmentCursor(List<Segment> segments, PacketFilter filter, PageKey before, int limit) {
+        this.segments = segments;
+        this.filter = filter;
+        this.before = before;
+        this.limit = limit;
+        this.segmentIndex = segments.size() - 1;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (exhausted || cancelled || (limit > 0 && returned >= limit)) {
+            return false;
+        }
+        try {
+            while (!cancelled) {
+                if (record < 0 && !advanceBlock()) {
+                    break;
+                }
+                Segment segment = segments.get(segmentIndex);
+                int offset = record * Segment.RECORD_BYTES;
+                long id = segment.firstId + (long) blockIndex * Segment.BLOCK_RECORDS + record;
+                record--;
+                long timestamp = block.getLong(offset + Segment.TIMESTAMP);
+                if (before != null && (before.id() == Long.MIN_VALUE ? timestamp >= before.timestampNanos() : id >= before.id())) {
+                    continue;
+                }
+                if (SegmentStore.matches(filter, block, offset)) {
+                    next = SegmentStore.read(block, offset);
+                    nextKey = new PageKey(timestamp, id);
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            // Deleted by retention while being read
+            log.warn("segment cursor stopped cause=\"{}\"", e.toString());
+        }
+        exhausted = true;
+        return false;
+    }
+
+    // Moves to the next older block that can hold rows before the key and reads it
+    private boolean advanceBlock() throws IOException {
+        while (segmentIndex >= 0) {
+            Segment segment = segments.get(segmentIndex);
+            if (blockIndex < 0) {
+                blockIndex = segment.blockCount();
+                if (before != null && before.id() != Long.MIN_VALUE && segment.firstId >= before.id()) {
+                    blockIndex = 0;
+                }
+            }
+            while (--blockIndex >= 0) {
+                if (before != null && before.id() == Long.MIN_VALUE && segment.blockMin(blockIndex) >= before.timestampNanos()) {
+                    continue;
+                }
+                int records = segment.readBlock(blockIndex, block);
+                if (records > 0) {
+                    record = records - 1;
+                    return true;
+                }
+            }
+            segmentIndex--;
+        }
+        return false;
+    }
+
+    @Override
+    public PacketData next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        PacketData packet = next;
+        lastKey = nextKey;
+        next = null;
+        returned++;
+        return packet;
+    }
+
+    @Override
+    public PageKey getLastKey() {
+        return lastKey;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void close() {
+        exhausted = true;
+    }
+}
@@ -0,0 +1,292 @@
+package com.networkanalyzer.storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PageKey;
+import com.networkanalyzer.service.StorageException;
+import com.networkanalyzer.util.RateLimitedLog;
+
+// Embedded packet store: a directory of append-only segment files (see Segment), for running
+// without a MySQL server. Packets get consecutive ids in the order they are saved; the newest
+// segment takes appends and is replaced by a fresh one when it is full or older than the
+// rotation age, and the oldest segments are deleted once the directory is over its size or
+// age budget.
+//
+// Order is arrival order: scan() goes by ascending id and cursors by descending id, which is
+// timestamp order up to the interleaving of the capture threads. Time ranges are matched per
+// record, and the sparse per-block index skips everything outside them, so a scan of a recent
+// range reads only the blocks that hold it, sequentially.
+//
+// Appends are published to readers once per batch and forced to disk every syncMillis; after
+// a crash the store reopens with every record that made it to disk intact, up to the first
+// torn one.
+//
+// -Dnetlyzer.segments.dir             directory (default ~/.netlyzer/segments)
+// -Dnetlyzer.segments.segmentBytes    size of one segment file (default 256 MB)
+// -Dnetlyzer.segments.segmentSeconds  rotate the active segment after this long (default 3600)
+// -Dnetlyzer.segments.maxBytes        delete the oldest segments above this total (default 8 GB)
+// -Dnetlyzer.segments.retentionHours  delete segments created longer ago than this; 0 keeps them (default 0)
+// -Dnetlyzer.segments.syncMillis      interval between forcing appends to disk (default 1000)
+public final class SegmentStore implements PacketStorage {
+    private static final Logger log = LoggerFactory.getLogger(SegmentStore.class);
+    // A full disk fails every batch until space is freed
+    private static final RateLimitedLog writeErrors = new RateLimitedLog(log);
+    private final Path directory;
+    private final int segmentCapacity;
+    private final long segmentNanos;
+    private final long maxBytes;
+    private final long retentionNanos;
+    private final long syncNanos;
+    // Oldest first; readers take a snapshot, the writer replaces entries under the store lock
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private Segment active;
+    private long nextId;
+    private long lastSync = System.nanoTime();
+    private boolean closed;
+
+    public SegmentStore() throws IOException {
+        this(Paths.get(System.getProperty("netlyzer.segments.dir",
+                Paths.get(System.getProperty("user.home"), ".netlyzer", "segments").toString())),
+            Long.getLong("netlyzer.segments.segmentBytes", 256L << 20),
+            TimeUnit.SECONDS.toNanos(Long.getLong("netlyzer.segments.segmentSeconds", 3600)),
+            Long.getLong("netlyzer.segments.maxBytes", 8L << 30),
+            TimeUnit.HOURS.toNanos(Long.getLong("netlyzer.segments.retentionHours", 0)),
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("netlyzer.segments.syncMillis", 1000)));
+    }
+
+    public SegmentStore(Path directory, long segmentBytes, long segmentNanos, long maxBytes, long retentionNanos,
+                        long syncNanos) throws IOException {
+        this.directory = directory;
+        // A segment is mapped in one piece, so it stays below 2 GB
+        long records = (Math.min(segmentBytes, Integer.MAX_VALUE) - Segment.HEADER_BYTES) / Segment.RECORD_BYTES;
+        this.segmentCapacity = (int) Math.max(Segment.BLOCK_RECORDS, records);
+        this.segmentNanos = segmentNanos;
+        this.maxBytes = maxBytes;
+        this.retentionNanos = retentionNanos;
+        this.syncNanos = syncNanos;
+        Files.createDirectories(directory);
+        open();
+    }
+
+    // Picks up the segments already in the directory. Every segment but the newest was sealed
+    // by rotation unless the process died in between, in which case it is recovered and
+    // sealed now; the newest one keeps taking appends if it has room.
+    private void open() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.seg")) {
+            stream.forEach(files::add);
+        }
+        files.sort(null);
+        for (Path file : files) {
+            try {
+                segments.add(Segment.open(file));
+            } catch (IOException e) {
+                log.warn("unreadable segment skipped file={} cause=\"{}\"", file, e.getMessage());
+            }
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            segments.get(i).seal();
+        }
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            nextId = last.firstId + last.published();
+            if (!last.isSealed() && !last.isFull()) {
+                active = last;
+            } else {
+                last.seal();
+            }
+        }
+        log.info("segment store opened directory={} segments={} packets={}", directory, segments.size(), nextId);
+    }
+
+    @Override
+    public synchronized boolean savePackets(List<PacketData> batch) {
+        if (closed) {
+            return false;
+        }
+        try {
+            for (PacketData packet : batch) {
+                if (active == null || active.isFull() || age(active) >= segmentNanos) {
+                    rotate();
+                }
+                active.append(packet);
+                nextId++;
+            }
+            active.publish();
+            long now = System.nanoTime();
+            if (now - lastSync >= syncNanos) {
+                active.force();
+                lastSync = now;
+            }
+            return true;
+        } catch (IOException e) {
+            writeErrors.error("segment write failed rows={}", batch.size(), e);
+            return false;
+        }
+    }
+
+    private void rotate() throws IOException {
+        if (active != null) {
+            active.seal();
+        }
+        active = Segment.create(directory, nextId, segmentCapacity, System.currentTimeMillis() * 1_000_000L);
+        segments.add(active);
+        enforceRetention();
+    }
+
+    private void enforceRetention() {
+        long total = 0;
+        for (Segment segment : segments) {
+            total += segment.fileBytes();
+        }
+        while (segments.size() > 1) {
+            Segment oldest = segments.get(0);
+            boolean expired = retentionNanos > 0 && age(oldest) > retentionNanos;
+            if (total <= maxBytes && !expired) {
+                break;
+            }
+            segments.remove(0);
+            total -= oldest.fileBytes();
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                log.warn("segment delete failed file={} cause=\"{}\"", oldest.path, e.getMessage());
+            }
+        }
+    }
+
+    private static long age(Segment segment) {
+        return System.currentTimeMillis() * 1_000_000L - segment.createdNanos;
+    }
+
+    @Override
+    public PacketCursor openCursor(PacketFilter filter, PageKey before, int limit) {
+        return new SegmentCursor(new ArrayList<>(segments), filter, before, limit);
+    }
+
+    @Override
+    public long[] countByProtocol(PacketFilter filter, long beforeNanos) {
+        long[] counts = new long[Protocol.count()];
+        forEachRecord(Long.MIN_VALUE, beforeNanos, filter, false, (buffer, offset) ->
+            counts[Protocol.fromCode(buffer.get(offset + Segment.PROTOCOL)).code()]++);
+        return counts;
+    }
+
+    @Override
+    public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) {
+        return forEachRecord(fromNanos, toNanos, filter, true, (buffer, offset) -> sink.accept(read(buffer, offset)));
+    }
+
+    @Override
+    public long count(long fromNanos, long toNanos) {
+        return forEachRecord(fromNanos, toNanos, PacketFilter.ALL, true, (buffer, offset) -> { });
+    }
+
+    @Override
+    public long oldestTimestampNanos() {
+        long oldest = Long.MAX_VALUE;
+        for (Segment segment : segments) {
+            oldest = Math.min(oldest, segment.minTimestamp());
+        }
+        return oldest;
+    }
+
+    private interface RecordVisitor {
+        void visit(ByteBuffer block, int offset);
+    }
+
+    // A segment that can't be read is skipped, or fails the whole call when strict
+    private long forEachRecord(long fromNanos, long toNanos, PacketFilter filter, boolean strict, RecordVisitor visitor) {
+        ByteBuffer block = ByteBuffer.allocateDirect(Segment.BLOCK_BYTES);
+        long matched = 0;
+        for (Segment segment : new ArrayList<>(segments)) {
+            try {
+                int blocks = segment.blockCount();
+                for (int b = 0; b < blocks; b++) {
+                    if (segment.blockMax(b) < fromNanos || segment.blockMin(b) >= toNanos) {
+                        continue;
+                    }
+                    int records = segment.readBlock(b, block);
+                    for (int i = 0; i < records; i++) {
+                        int offset = i * Segment.RECORD_BYTES;
+                        long timestamp = block.getLong(offset + Segment.TIMESTAMP);
+                        if (timestamp >= fromNanos && timestamp < toNanos && matches(filter, block, offset)) {
+                            visitor.visit(block, offset);
+                            matched++;
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                // Usually deleted by retention while being read
+                if (strict) {
+                    throw new StorageException("segment unreadable: " + segment.path, e);
+                }
+                log.warn("segment skipped file={} cause=\"{}\"", segment.path, e.toString());
+            }
+        }
+        return matched;
+    }
+
+    static boolean matches(PacketFilter filter, ByteBuffer block, int offset) {
+        if (!filter.matchesProtocol(Protocol.fromCode(block.get(offset + Segment.PROTOCOL)))) {
+            return false;
+        }
+        if (!filter.hasAddress()) {
+            return true;
+        }
+        int version = block.get(offset + Segment.VERSION) & Segment.VERSION_MASK;
+        return filter.matchesAddress(version, block.getLong(offset + Segment.SRC_HI), block.getLong(offset + Segment.SRC_LO))
+            || filter.matchesAddress(version, block.getLong(offset + Segment.DST_HI), block.getLong(offset + Segment.DST_LO));
+    }
+
+    static PacketData read(ByteBuffer block, int offset) {
+        return PacketData.of(block.getLong(offset + Segment.TIMESTAMP),
+            block.get(offset + Segment.VERSION) & Segment.VERSION_MASK,
+            block.getLong(offset + Segment.SRC_HI), block.getLong(offset + Segment.SRC_LO),
+            block.getLong(offset + Segment.DST_HI), block.getLong(offset + Segment.DST_LO),
+            Protocol.fromCode(block.get(offset + Segment.PROTOCOL)), block.getInt(offset + Segment.SIZE));
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public long size() {
+        return nextId;
+    }
+
+    // Flushes the active segment; it stays unsealed and takes appends again after a restart
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (active != null) {
+            active.publish();
+            active.force();
+        }
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+}
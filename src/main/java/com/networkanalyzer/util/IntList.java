@@ -0,0 +1,113 @@
+package com.networkanalyzer.util;
+
+import java.util.Arrays;
+
+// Growable list of primitive ints, used for sorted posting lists.
+// Elements can be dropped from the front cheaply with removeBelow(), which is how
+// indexes forget rows that were evicted from the packet store.
+public final class IntList {
+    private int[] values;
+    private int start;
+    private int end;
+
+    public IntList() {
+        this(16);
+    }
+
+    public IntList(int initialCapacity) {
+        values = new int[Math.max(4, initialCapacity)];
+    }
+
+    public void add(int value) {
+        if (end == values.length) {
+            grow();
+        }
+        values[end++] = value;
+    }
+
+    public int get(int index) {
+        return values[start + index];
+    }
+
+    public int size() {
+        return end - start;
+    }
+
+    public boolean isEmpty() {
+        return end == start;
+    }
+
+    public int last() {
+        return values[end - 1];
+    }
+
+    public void setLast(int value) {
+        values[end - 1] = value;
+    }
+
+    public void clear() {
+        start = end = 0;
+    }
+
+    // First index whose value is >= key; assumes the list is sorted ascending
+    public int lowerBound(int key) {
+        int low = start;
+        int high = end;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - start;
+    }
+
+    // Drops every leading value below key; assumes the list is sorted ascending
+    public void removeBelow(int key) {
+        start += lowerBound(key);
+        if (start == end) {
+            start = end = 0;
+        }
+    }
+
+    // Drops the first count elements, sorted or not
+    public void removeFirst(int count) {
+        start += Math.min(count, size());
+        if (start == end) {
+            start = end = 0;
+        }
+    }
+
+    public void sort() {
+        Arrays.sort(values, start, end);
+    }
+
+    // Removes adjacent duplicates; call after sort()
+    public void dedupe() {
+        if (size() < 2) {
+            return;
+        }
+        int write = start + 1;
+        for (int read = start + 1; read < end; read++) {
+            if (values[read] != values[write - 1]) {
+                values[write++] = values[read];
+            }
+        }
+        end = write;
+    }
+
+    private void grow() {
+        int size = end - start;
+        // Reclaim the dropped prefix before asking for more memory
+        if (start > 0 && start >= values.length / 2) {
+            System.arraycopy(values, start, values, 0, size);
+        } else {
+            values = Arrays.copyOf(values, values.length * 2);
+            System.arraycopy(values, start, values, 0, size);
+        }
+        start = 0;
+        end = size;
+    }
+}
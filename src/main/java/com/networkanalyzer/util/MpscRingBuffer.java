@@ -0,0 +1,94 @@
+package com.networkanalyzer.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+// Bounded lock-free multi-producer / single-consumer queue.
+// Producers claim a slot with a CAS on the tail and then publish the element into it;
+// the single consumer walks the head and clears slots behind it. A null slot below the
+// tail means a producer has claimed it but not published yet, which the consumer treats
+// as "nothing more for now". offer() never blocks: it returns false when the ring is full.
+public final class MpscRingBuffer<E> {
+    private final AtomicReferenceArray<E> slots;
+    private final int mask;
+    private final int capacity;
+
+    private final AtomicLong tail = new AtomicLong();
+    // Written only by the consumer, read by producers to check for space
+    private final AtomicLong head = new AtomicLong();
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + requestedCapacity);
+        }
+        this.capacity = 1 << (32 - Integer.numberOfLeadingZeros(requestedCapacity - 1));
+        this.mask = capacity - 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("Null elements are not supported");
+        }
+        long claimed;
+        do {
+            claimed = tail.get();
+            if (claimed - head.get() >= capacity) {
+                return false;
+            }
+        } while (!tail.compareAndSet(claimed, claimed + 1));
+
+        slots.lazySet((int) claimed & mask, element);
+        return true;
+    }
+
+    // Consumer side only
+    public E poll() {
+        long current = head.get();
+        int index = (int) current & mask;
+        E element = slots.get(index);
+        if (element == null) {
+            return null;
+        }
+        slots.lazySet(index, null);
+        head.lazySet(current + 1);
+        return element;
+    }
+
+    // Consumer side only; hands at most limit elements to the sink and returns how many
+    public int drain(Consumer<? super E> sink, int limit) {
+        long current = head.get();
+        int drained = 0;
+        try {
+            while (drained < limit) {
+                int index = (int) current & mask;
+                E element = slots.get(index);
+                if (element == null) {
+                    break;
+                }
+                slots.lazySet(index, null);
+                current++;
+                drained++;
+                sink.accept(element);
+            }
+        } finally {
+            // One head update per drain keeps producers' view of free space cheap to maintain
+            head.lazySet(current);
+        }
+        return drained;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
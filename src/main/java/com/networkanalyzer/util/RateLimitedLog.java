@@ -0,0 +1,76 @@
+package com.networkanalyzer.util;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+// For messages that can repeat per packet or per batch: at most `permits` of them per interval
+// reach the logger, the rest are only counted, and the next one that gets through carries
+// suppressed=<count>. One instance per call site (or per kind of failure), shared by all the
+// threads that can hit it.
+public final class RateLimitedLog {
+    private final Logger logger;
+    private final int permits;
+    private final long intervalNanos;
+    private long windowStart = System.nanoTime();
+    private int used;
+    private long suppressed;
+
+    public RateLimitedLog(Logger logger, int permits, long interval, TimeUnit unit) {
+        this.logger = logger;
+        this.permits = Math.max(1, permits);
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    // Ten a minute, which is plenty to see what is going on
+    public RateLimitedLog(Logger logger) {
+        this(logger, 10, 1, TimeUnit.MINUTES);
+    }
+
+    public void warn(String format, Object... args) {
+        long dropped = admit();
+        if (dropped >= 0 && logger.isWarnEnabled()) {
+            logger.warn(dropped > 0 ? format + " suppressed={}" : format, withSuppressed(args, dropped));
+        }
+    }
+
+    public void error(String format, Object... args) {
+        long dropped = admit();
+        if (dropped >= 0 && logger.isErrorEnabled()) {
+            logger.error(dropped > 0 ? format + " suppressed={}" : format, withSuppressed(args, dropped));
+        }
+    }
+
+    // Messages suppressed since the last one logged, or -1 if this one is suppressed too
+    private synchronized long admit() {
+        long now = System.nanoTime();
+        if (now - windowStart >= intervalNanos) {
+            windowStart = now;
+            used = 0;
+        }
+        if (used >= permits) {
+            suppressed++;
+            return -1;
+        }
+        used++;
+        long dropped = suppressed;
+        suppressed = 0;
+        return dropped;
+    }
+
+    // The count goes before a trailing exception, which slf4j only recognizes in last place
+    private static Object[] withSuppressed(Object[] args, long dropped) {
+        if (dropped <= 0) {
+            return args;
+        }
+        Object[] extended = Arrays.copyOf(args, args.length + 1);
+        if (args.length > 0 && args[args.length - 1] instanceof Throwable) {
+            extended[args.length - 1] = dropped;
+            extended[args.length] = args[args.length - 1];
+        } else {
+            extended[args.length] = dropped;
+        }
+        return extended;
+    }
+}
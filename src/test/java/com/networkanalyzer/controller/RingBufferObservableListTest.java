@@ -0,0 +1,99 @@
+package com.networkanalyzer.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javafx.collections.ListChangeListener;
+
+import org.junit.jupiter.api.Test;
+
+class RingBufferObservableListTest {
+    private static List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    // Each change event as "-removed+added@from" per sub-change
+    private static List<String> recordChanges(RingBufferObservableList<Integer> list) {
+        List<String> events = new ArrayList<>();
+        list.addListener((ListChangeListener<Integer>) change -> {
+            StringBuilder event = new StringBuilder();
+            while (change.next()) {
+                event.append('-').append(change.getRemovedSize()).append('+').append(change.getAddedSize())
+                    .append('@').append(change.getFrom()).append(' ');
+            }
+            events.add(event.toString().trim());
+        });
+        return events;
+    }
+
+    @Test
+    void appendingPastCapacityEvictsTheOldest() {
+        RingBufferObservableList<Integer> list = new RingBufferObservableList<>(4);
+        List<String> events = recordChanges(list);
+        list.addAll(range(0, 3));
+        list.addAll(range(3, 6));
+        assertEquals(range(2, 6), list);
+        assertTrue(list.isFull());
+        list.add(6);
+        assertEquals(range(3, 7), list);
+        assertEquals(List.of("-0+3@0", "-2+0@0 -0+3@1", "-1+0@0 -0+1@3"), events);
+    }
+
+    @Test
+    void anOversizedBatchKeepsItsNewestElements() {
+        RingBufferObservableList<Integer> list = new RingBufferObservableList<>(4);
+        list.addAll(range(0, 2));
+        list.addAll(range(10, 20));
+        assertEquals(range(16, 20), list);
+        list.setAll(range(0, 9));
+        assertEquals(range(5, 9), list);
+        assertFalse(list.addAll(List.of()));
+    }
+
+    @Test
+    void prependingEvictsTheNewest() {
+        RingBufferObservableList<Integer> list = new RingBufferObservableList<>(5);
+        list.addAll(range(10, 14));
+        List<String> events = recordChanges(list);
+        assertEquals(3, list.prependAll(range(7, 10)));
+        assertEquals(range(7, 12), list);
+        assertEquals(List.of("-0+3@0 -2+0@5"), events);
+        // Only the capacity rows nearest the current ones fit
+        assertEquals(5, list.prependAll(range(0, 7)));
+        assertEquals(range(2, 7), list);
+    }
+
+    @Test
+    void wrapsAroundTheArray() {
+        RingBufferObservableList<Integer> list = new RingBufferObservableList<>(3);
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+        assertEquals(List.of(7, 8, 9), list);
+        list.prependAll(List.of(6));
+        assertEquals(List.of(6, 7, 8), list);
+        assertThrows(IndexOutOfBoundsException.class, () -> list.get(3));
+    }
+
+    @Test
+    void clearAndSetAllFireOneChange() {
+        RingBufferObservableList<Integer> list = new RingBufferObservableList<>(4);
+        list.addAll(range(0, 4));
+        List<String> events = recordChanges(list);
+        list.setAll(range(4, 6));
+        list.clear();
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertEquals(List.of("-4+2@0", "-2+0@0"), events);
+        assertThrows(IllegalArgumentException.class, () -> new RingBufferObservableList<Integer>(0));
+    }
+}
@@ -0,0 +1,168 @@
+package com.networkanalyzer.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+
+class FrameDecoderTest {
+    private static final int SRC_V4 = 0xC0A80001;
+    private static final int DST_V4 = 0x0A000002;
+
+    private final FrameDecoder decoder = new FrameDecoder();
+
+    // Ethernet header with the given tags (TPID, TCI pairs) in front of etherType
+    private static ByteBuffer ethernet(ByteBuffer frame, int etherType, int... vlanTpids) {
+        frame.put(new byte[12]);
+        for (int tpid : vlanTpids) {
+            frame.putShort((short) tpid).putShort((short) 100);
+        }
+        return frame.putShort((short) etherType);
+    }
+
+    private static ByteBuffer ipV4(ByteBuffer frame, int protocol, int flagsFragment, int payloadLength) {
+        return frame.put((byte) 0x45).put((byte) 0).putShort((short) (20 + payloadLength)).putShort((short) 1)
+            .putShort((short) flagsFragment).put((byte) 64).put((byte) protocol).putShort((short) 0)
+            .putInt(SRC_V4).putInt(DST_V4);
+    }
+
+    private static ByteBuffer tcp(ByteBuffer frame, int srcPort, int dstPort, int flags, byte[] payload) {
+        return frame.putShort((short) srcPort).putShort((short) dstPort).putInt(1).putInt(0)
+            .put((byte) 0x50).put((byte) flags).putShort((short) 65535).putInt(0).put(payload);
+    }
+
+    private static ByteBuffer udp(ByteBuffer frame, int srcPort, int dstPort, byte[] payload) {
+        return frame.putShort((short) srcPort).putShort((short) dstPort).putShort((short) (8 + payload.length))
+            .putShort((short) 0).put(payload);
+    }
+
+    private static ByteBuffer done(ByteBuffer frame) {
+        return frame.flip();
+    }
+
+    @Test
+    void decodesEthernetIpV4Tcp() {
+        byte[] payload = "GET / HTTP/1.1\r\n".getBytes();
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        ethernet(frame, 0x0800);
+        ipV4(frame, FrameDecoder.IPPROTO_TCP, 0x4000, 20 + payload.length);
+        done(tcp(frame, 51000, 80, 0x18, payload));
+
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_ETHERNET));
+        assertEquals(4, decoder.getIpVersion());
+        assertEquals(SRC_V4, decoder.getSrcV4());
+        assertEquals(DST_V4, decoder.getDstV4());
+        assertEquals(FrameDecoder.IPPROTO_TCP, decoder.getIpProtocol());
+        assertEquals(51000, decoder.getSrcPort());
+        assertEquals(80, decoder.getDstPort());
+        assertEquals(0x18, decoder.getTcpFlags());
+        assertEquals(14 + 20 + 20, decoder.getPayloadOffset());
+        assertEquals(payload.length, decoder.getPayloadLength());
+        assertEquals("192.168.0.1", decoder.formatSourceIp());
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    void skipsStackedVlanTags() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        ethernet(frame, 0x0800, 0x88A8, 0x8100);
+        ipV4(frame, FrameDecoder.IPPROTO_UDP, 0, 8 + 4);
+        done(udp(frame, 5353, 53, new byte[4]));
+
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_ETHERNET));
+        assertEquals(FrameDecoder.IPPROTO_UDP, decoder.getIpProtocol());
+        assertEquals(53, decoder.getDstPort());
+        assertEquals(4, decoder.getPayloadLength());
+    }
+
+    @Test
+    void walksIpV6ExtensionHeaders() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        ethernet(frame, 0x86DD);
+        frame.putInt(0x60000000).putShort((short) (8 + 8 + 3)).put((byte) 0).put((byte) 64);
+        frame.putLong(0x20010DB800000000L).putLong(1).putLong(0xFE80000000000000L).putLong(2);
+        // Hop-by-hop options, 8 bytes, then UDP
+        frame.put((byte) FrameDecoder.IPPROTO_UDP).put((byte) 0).put(new byte[6]);
+        done(udp(frame, 546, 547, new byte[3]));
+
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_ETHERNET));
+        assertEquals(6, decoder.getIpVersion());
+        assertEquals(0x20010DB800000000L, decoder.getSrcV6Hi());
+        assertEquals(2, decoder.getDstV6Lo());
+        assertEquals(FrameDecoder.IPPROTO_UDP, decoder.getIpProtocol());
+        assertEquals(547, decoder.getDstPort());
+        assertEquals(3, decoder.getPayloadLength());
+        assertEquals("2001:db8::1", decoder.formatSourceIp());
+    }
+
+    @Test
+    void nonFirstFragmentHasNoPorts() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        ethernet(frame, 0x0800);
+        ipV4(frame, FrameDecoder.IPPROTO_UDP, 0x00B9, 8 + 4);
+        done(udp(frame, 5353, 53, new byte[4]));
+
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_ETHERNET));
+        assertTrue(decoder.isFragment());
+        assertEquals(0, decoder.getSrcPort());
+        assertEquals(0, decoder.getDstPort());
+    }
+
+    @Test
+    void rejectsNonIpAndTruncatedFrames() {
+        ByteBuffer arp = done(ethernet(ByteBuffer.allocate(64), 0x0806).put(new byte[28]));
+        assertFalse(decoder.decode(arp, FrameDecoder.LINKTYPE_ETHERNET));
+
+        ByteBuffer truncated = ByteBuffer.allocate(64);
+        ethernet(truncated, 0x0800).put((byte) 0x45).put(new byte[10]);
+        assertFalse(decoder.decode(done(truncated), FrameDecoder.LINKTYPE_ETHERNET));
+
+        assertFalse(decoder.decode(ByteBuffer.allocate(20), 9999));
+    }
+
+    @Test
+    void readsNetworkOrderFromALittleEndianBufferAtAnOffset() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        frame.put(new byte[7]);
+        ipV4(frame, FrameDecoder.IPPROTO_UDP, 0, 8);
+        udp(frame, 1, 2, new byte[0]);
+        int length = frame.position() - 7;
+        frame.order(ByteOrder.LITTLE_ENDIAN);
+
+        assertTrue(decoder.decode(frame, 7, length, FrameDecoder.LINKTYPE_RAW));
+        assertEquals(SRC_V4, decoder.getSrcV4());
+        assertEquals(DST_V4, decoder.getDstV4());
+        assertEquals(2, decoder.getDstPort());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, frame.order());
+    }
+
+    @Test
+    void decodesLinuxCookedFraming() {
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        frame.put(new byte[14]).putShort((short) 0x0800);
+        ipV4(frame, FrameDecoder.IPPROTO_ICMP, 0, 8);
+        done(frame.put((byte) 8).put((byte) 0).put(new byte[6]));
+
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_LINUX_SLL));
+        assertEquals(8, decoder.getIcmpType());
+        assertEquals(0, decoder.getIcmpCode());
+    }
+
+    @Test
+    void flowHashIsTheSameInBothDirections() {
+        int forward = FrameDecoder.flowHash(0, SRC_V4 & 0xFFFFFFFFL, 51000, 0, DST_V4 & 0xFFFFFFFFL, 443, 6);
+        int reverse = FrameDecoder.flowHash(0, DST_V4 & 0xFFFFFFFFL, 443, 0, SRC_V4 & 0xFFFFFFFFL, 51000, 6);
+        assertEquals(forward, reverse);
+
+        ByteBuffer frame = ByteBuffer.allocate(128);
+        ethernet(frame, 0x0800);
+        ipV4(frame, FrameDecoder.IPPROTO_TCP, 0, 20);
+        done(tcp(frame, 51000, 443, 0x10, new byte[0]));
+        assertTrue(decoder.decode(frame, FrameDecoder.LINKTYPE_ETHERNET));
+        assertEquals(forward, decoder.flowHash());
+    }
+}
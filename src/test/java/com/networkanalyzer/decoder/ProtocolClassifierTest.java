@@ -0,0 +1,92 @@
+package com.networkanalyzer.decoder;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.model.Protocol;
+
+class ProtocolClassifierTest {
+    private static final int TCP = FrameDecoder.IPPROTO_TCP;
+    private static final int UDP = FrameDecoder.IPPROTO_UDP;
+
+    private final ProtocolClassifier classifier = ProtocolClassifier.withDefaults();
+
+    private Protocol classify(int ipProtocol, int srcPort, int dstPort, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.wrap(payload);
+        return classifier.classify(ipProtocol, srcPort, dstPort, frame, 0, payload.length);
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    void wellKnownPortsWinInEitherDirection() {
+        assertEquals(Protocol.HTTP, classify(TCP, 51000, 80, new byte[0]));
+        assertEquals(Protocol.HTTPS, classify(TCP, 443, 51000, new byte[0]));
+        assertEquals(Protocol.DNS, classify(UDP, 5353, 40000, new byte[0]));
+        assertEquals(Protocol.QUIC, classify(UDP, 443, 50000, new byte[0]));
+        // The lower port speaks first: 443 over 8080
+        assertEquals(Protocol.HTTPS, classify(TCP, 8080, 443, new byte[0]));
+    }
+
+    @Test
+    void heuristicsCatchNonStandardPorts() {
+        assertEquals(Protocol.HTTP, classify(TCP, 40000, 9000, ascii("GET /index.html HTTP/1.1\r\n")));
+        assertEquals(Protocol.HTTP, classify(TCP, 9000, 40000, ascii("HTTP/1.1 200 OK\r\n")));
+        assertEquals(Protocol.HTTPS, classify(TCP, 40000, 9443, new byte[] { 22, 3, 1, 0, 64 }));
+        assertEquals(Protocol.QUIC, classify(UDP, 40000, 9443, new byte[] { (byte) 0xC3, 0, 0, 0, 1, 8 }));
+    }
+
+    @Test
+    void unknownTrafficFallsBackToTheTransport() {
+        assertEquals(Protocol.TCP, classify(TCP, 40000, 9000, ascii("SSH-2.0")));
+        assertEquals(Protocol.UDP, classify(UDP, 40000, 9000, new byte[] { 0x40, 0, 0, 0, 1 }));
+        assertEquals(Protocol.TCP, classify(TCP, 40000, 9000, new byte[0]));
+        assertEquals(Protocol.ICMP, classify(FrameDecoder.IPPROTO_ICMPV6, 0, 0, new byte[0]));
+        assertEquals(Protocol.OTHER, classify(47, 0, 0, new byte[0]));
+    }
+
+    @Test
+    void tlsRecordNeedsAKnownVersion() {
+        assertNull(ProtocolClassifier.matchTlsRecord(ByteBuffer.wrap(new byte[] { 22, 3, 9, 0, 64 }), 0, 5));
+        assertNull(ProtocolClassifier.matchTlsRecord(ByteBuffer.wrap(new byte[] { 22, 3, 1 }), 0, 3));
+    }
+
+    @Test
+    void quicVersionIsReadInNetworkOrder() {
+        ByteBuffer frame = ByteBuffer.wrap(new byte[] { 0, 0, (byte) 0xC0, 0x6B, 0x33, 0x43, (byte) 0xCF })
+            .order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(Protocol.QUIC, ProtocolClassifier.matchQuicLongHeader(frame, 2, 5));
+    }
+
+    @Test
+    void registeredPortsOverrideAndAreListed() {
+        ProtocolClassifier custom = ProtocolClassifier.withDefaults();
+        custom.registerTcpPort(9080, Protocol.HTTP);
+        assertEquals(Protocol.HTTP, custom.classify(TCP, 40000, 9080, null, 0, 0));
+        assertArrayEquals(new int[] { 80, 8000, 8080, 9080 }, custom.tcpPortsFor(Protocol.HTTP));
+        assertArrayEquals(new int[] { 53, 5353 }, custom.udpPortsFor(Protocol.DNS));
+    }
+
+    @Test
+    void classifiesFromTheDecoder() {
+        byte[] payload = ascii("POST /api HTTP/1.1\r\n");
+        ByteBuffer frame = ByteBuffer.allocate(20 + 20 + payload.length);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) frame.capacity()).putInt(0)
+            .put((byte) 64).put((byte) TCP).putShort((short) 0).putInt(0x0A000001).putInt(0x0A000002);
+        frame.putShort((short) 40000).putShort((short) 9000).putLong(0).put((byte) 0x50).put((byte) 0x18)
+            .putShort((short) 0).putInt(0).put(payload).flip();
+
+        FrameDecoder decoder = new FrameDecoder();
+        decoder.decode(frame, FrameDecoder.LINKTYPE_RAW);
+        assertEquals(Protocol.HTTP, classifier.classify(decoder, frame));
+    }
+}
@@ -0,0 +1,187 @@
+package com.networkanalyzer.flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.model.Protocol;
+
+class FlowTableTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final int CLIENT = 0x0A000001;
+    private static final int SERVER = 0x5DB8D822;
+    private static final int SYN = 0x02;
+    private static final int ACK = 0x10;
+    private static final int FIN = 0x01;
+    private static final int RST = 0x04;
+
+    private final FrameDecoder decoder = new FrameDecoder();
+    private final List<FlowRecord> exported = new ArrayList<>();
+
+    // Decodes a raw IPv4 TCP or UDP header into the decoder
+    private void decode(int ipProtocol, int src, int srcPort, int dst, int dstPort, int tcpFlags) {
+        ByteBuffer frame = ByteBuffer.allocate(40);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) 40).putInt(0)
+            .put((byte) 64).put((byte) ipProtocol).putShort((short) 0).putInt(src).putInt(dst);
+        frame.putShort((short) srcPort).putShort((short) dstPort);
+        if (ipProtocol == FrameDecoder.IPPROTO_TCP) {
+            frame.putLong(0).put((byte) 0x50).put((byte) tcpFlags).putShort((short) 0).putInt(0);
+        } else {
+            frame.putShort((short) 20).putShort((short) 0).put(new byte[12]);
+        }
+        assertTrue(decoder.decode(frame.flip(), FrameDecoder.LINKTYPE_RAW));
+    }
+
+    private void tcp(FlowTable flows, int src, int srcPort, int dst, int dstPort, int flags, long time, int bytes) {
+        decode(FrameDecoder.IPPROTO_TCP, src, srcPort, dst, dstPort, flags);
+        flows.update(decoder, Protocol.TCP, time, bytes, exported::add);
+    }
+
+    private void udp(FlowTable flows, int src, int srcPort, int dst, int dstPort, Protocol protocol, long time) {
+        decode(FrameDecoder.IPPROTO_UDP, src, srcPort, dst, dstPort, 0);
+        flows.update(decoder, protocol, time, 100, exported::add);
+    }
+
+    private FlowRecord withReason(FlowRecord.EndReason reason) {
+        return exported.stream().filter(flow -> flow.endReason() == reason).findFirst().orElseThrow();
+    }
+
+    private static FlowTable table() {
+        return new FlowTable(1024, 30 * SECOND, 120 * SECOND);
+    }
+
+    @Test
+    void bothDirectionsShareOneFlow() {
+        FlowTable flows = table();
+        tcp(flows, CLIENT, 51000, SERVER, 443, SYN, SECOND, 60);
+        tcp(flows, SERVER, 443, CLIENT, 51000, SYN | ACK, 2 * SECOND, 60);
+        tcp(flows, CLIENT, 51000, SERVER, 443, ACK, 3 * SECOND, 1500);
+        assertEquals(1, flows.size());
+
+        flows.expireAll(exported::add);
+        assertEquals(1, exported.size());
+        FlowRecord flow = exported.get(0);
+        assertEquals(CLIENT, (int) flow.clientLo());
+        assertEquals(51000, flow.clientPort());
+        assertEquals(443, flow.serverPort());
+        assertEquals(2, flow.packetsOut());
+        assertEquals(1560, flow.bytesOut());
+        assertEquals(1, flow.packetsIn());
+        assertEquals(SYN | ACK, flow.tcpFlagsOut());
+        assertEquals(SYN | ACK, flow.tcpFlagsIn());
+        assertEquals(SECOND, flow.firstSeenNanos());
+        assertEquals(3 * SECOND, flow.lastSeenNanos());
+        assertEquals(FlowRecord.EndReason.SHUTDOWN, flow.endReason());
+        assertEquals(0, flows.size());
+    }
+
+    @Test
+    void synAckFirstMakesItsReceiverTheClient() {
+        FlowTable flows = table();
+        tcp(flows, SERVER, 443, CLIENT, 51000, SYN | ACK, 0, 60);
+        flows.expireAll(exported::add);
+        assertEquals(CLIENT, (int) exported.get(0).clientLo());
+        assertEquals(1, exported.get(0).packetsIn());
+    }
+
+    @Test
+    void closedConnectionsEndAfterAGracePeriod() {
+        FlowTable flows = table();
+        tcp(flows, CLIENT, 51000, SERVER, 443, ACK | FIN, 0, 60);
+        tcp(flows, SERVER, 443, CLIENT, 51000, ACK | FIN, SECOND, 60);
+        tcp(flows, CLIENT, 51001, SERVER, 443, RST, SECOND, 60);
+        flows.expire(2 * SECOND, exported::add);
+        assertEquals(0, exported.size());
+        flows.expire(3 * SECOND, exported::add);
+        assertEquals(2, exported.size());
+        for (FlowRecord flow : exported) {
+            assertEquals(FlowRecord.EndReason.TCP_CLOSED, flow.endReason());
+        }
+        assertEquals(0, flows.size());
+    }
+
+    @Test
+    void idleFlowsExpireAndBusyOnesAreSliced() {
+        FlowTable flows = table();
+        udp(flows, CLIENT, 5353, SERVER, 53, Protocol.UDP, 0);
+        udp(flows, CLIENT, 40000, SERVER, 53, Protocol.DNS, 0);
+        flows.expire(29 * SECOND, exported::add);
+        assertEquals(0, exported.size());
+
+        // Keep one flow busy past the active timeout
+        for (long t = 10; t <= 120; t += 10) {
+            udp(flows, CLIENT, 40000, SERVER, 53, Protocol.UDP, t * SECOND);
+        }
+        flows.expire(120 * SECOND, exported::add);
+        assertEquals(2, exported.size());
+        FlowRecord idle = withReason(FlowRecord.EndReason.IDLE);
+        assertEquals(5353, idle.clientPort());
+        FlowRecord slice = withReason(FlowRecord.EndReason.ACTIVE_TIMEOUT);
+        assertEquals(13, slice.packets());
+        // The most specific classification sticks
+        assertEquals(Protocol.DNS, slice.protocol());
+        assertEquals(1, flows.size());
+
+        udp(flows, CLIENT, 40000, SERVER, 53, Protocol.UDP, 125 * SECOND);
+        flows.expireAll(exported::add);
+        assertEquals(1, exported.get(2).packets());
+        assertEquals(125 * SECOND, exported.get(2).firstSeenNanos());
+    }
+
+    @Test
+    void fullTableEvictsAFlowToMakeRoom() {
+        FlowTable flows = new FlowTable(4, 30 * SECOND, 120 * SECOND);
+        for (int i = 0; i < 5; i++) {
+            udp(flows, CLIENT + i, 40000, SERVER, 53, Protocol.UDP, i * SECOND);
+        }
+        assertEquals(4, flows.size());
+        assertEquals(1, flows.getEvicted());
+        assertEquals(1, exported.size());
+        assertEquals(FlowRecord.EndReason.EVICTED, exported.get(0).endReason());
+        assertThrows(IllegalArgumentException.class, () -> new FlowTable(0, SECOND, SECOND));
+    }
+
+    @Test
+    void keepsEveryFlowApartThroughGrowthAndRemoval() {
+        FlowTable flows = new FlowTable(1 << 20, 30 * SECOND, 1000 * SECOND);
+        int count = 20_000;
+        // Even flows go quiet at 0 s, odd ones get a second packet at 20 s
+        for (int i = 0; i < count; i++) {
+            udp(flows, CLIENT + i, 1024 + i % 50_000, SERVER, 53, Protocol.UDP, 0);
+        }
+        for (int i = 1; i < count; i += 2) {
+            udp(flows, SERVER, 53, CLIENT + i, 1024 + i % 50_000, Protocol.UDP, 20 * SECOND);
+        }
+        assertEquals(count, flows.size());
+        assertTrue(flows.capacity() >= count);
+
+        // Removing half shifts entries back; the rest must still be found, not duplicated
+        flows.expire(31 * SECOND, exported::add);
+        assertEquals(count / 2, exported.size());
+        assertEquals(count / 2, flows.size());
+        for (int i = 1; i < count; i += 2) {
+            udp(flows, CLIENT + i, 1024 + i % 50_000, SERVER, 53, Protocol.UDP, 40 * SECOND);
+        }
+        assertEquals(count / 2, flows.size());
+
+        exported.clear();
+        flows.expireAll(exported::add);
+        Map<Long, Long> packetsByClient = new HashMap<>();
+        for (FlowRecord flow : exported) {
+            packetsByClient.merge(flow.clientLo(), flow.packets(), Long::sum);
+        }
+        assertEquals(count / 2, packetsByClient.size());
+        for (long packets : packetsByClient.values()) {
+            assertEquals(3, packets);
+        }
+    }
+}
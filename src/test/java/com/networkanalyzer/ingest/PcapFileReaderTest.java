@@ -0,0 +1,260 @@
+package com.networkanalyzer.ingest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.model.PacketData;
+
+class PcapFileReaderTest {
+    private static final long SECOND = 1_000_000_000L;
+    private static final int LINKTYPE_RAW = 101;
+
+    @TempDir
+    Path directory;
+
+    // Ethernet, IPv4, UDP srcPort -> 53 with an empty payload
+    private static byte[] frame(int srcPort) {
+        ByteBuffer frame = ByteBuffer.allocate(42);
+        frame.put(new byte[12]).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) 28).putShort((short) 1).putShort((short) 0)
+            .put((byte) 64).put((byte) FrameDecoder.IPPROTO_UDP).putShort((short) 0)
+            .putInt(0xC0A80001).putInt(0x0A000002);
+        frame.putShort((short) srcPort).putShort((short) 53).putShort((short) 8).putShort((short) 0);
+        return frame.array();
+    }
+
+    // Classic pcap with one record per {seconds, fraction, wireLength}
+    private Path pcap(String name, ByteOrder order, boolean nanos, long[][] records) throws IOException {
+        ByteBuffer file = ByteBuffer.allocate(24 + records.length * (16 + 42)).order(order);
+        file.putInt(nanos ? 0xA1B23C4D : 0xA1B2C3D4).putShort((short) 2).putShort((short) 4)
+            .putInt(0).putInt(0).putInt(65535).putInt(FrameDecoder.LINKTYPE_ETHERNET);
+        for (int i = 0; i < records.length; i++) {
+            file.putInt((int) records[i][0]).putInt((int) records[i][1]).putInt(42).putInt((int) records[i][2]).put(frame(i));
+        }
+        return write(name, file);
+    }
+
+    // Everything written to contents so far
+    private Path write(String name, ByteBuffer contents) throws IOException {
+        Path path = directory.resolve(name);
+        Files.write(path, Arrays.copyOf(contents.array(), contents.position()));
+        return path;
+    }
+
+    // pcapng blocks in one byte order
+    private static final class Pcapng {
+        final ByteBuffer out = ByteBuffer.allocate(4096);
+
+        Pcapng(ByteOrder order) {
+            out.order(order);
+        }
+
+        private Pcapng block(int type, ByteBuffer body) {
+            body.flip();
+            int padded = (body.remaining() + 3) & ~3;
+            out.putInt(type).putInt(12 + padded).put(body).put(new byte[padded - body.limit()]).putInt(12 + padded);
+            return this;
+        }
+
+        private ByteBuffer body() {
+            return ByteBuffer.allocate(256).order(out.order());
+        }
+
+        Pcapng section() {
+            return block(0x0A0D0D0A, body().putInt(0x1A2B3C4D).putShort((short) 1).putShort((short) 0).putLong(-1));
+        }
+
+        // resolution and offset are left out when negative
+        Pcapng iface(int linkType, int resolution, long offsetSeconds) {
+            ByteBuffer body = body().putShort((short) linkType).putShort((short) 0).putInt(65535);
+            if (resolution >= 0) {
+                body.putShort((short) 9).putShort((short) 1).put((byte) resolution).put(new byte[3]);
+            }
+            if (offsetSeconds >= 0) {
+                body.putShort((short) 14).putShort((short) 8).putLong(offsetSeconds);
+            }
+            body.putShort((short) 0).putShort((short) 0);
+            return block(1, body);
+        }
+
+        Pcapng enhanced(int iface, long units, int srcPort) {
+            return block(6, body().putInt(iface).putInt((int) (units >>> 32)).putInt((int) units)
+                .putInt(42).putInt(60).put(frame(srcPort)));
+        }
+
+        Pcapng obsolete(int iface, long units, int srcPort) {
+            return block(2, body().putShort((short) iface).putShort((short) 0).putInt((int) (units >>> 32)).putInt((int) units)
+                .putInt(42).putInt(60).put(frame(srcPort)));
+        }
+
+        Pcapng simple(int srcPort) {
+            return block(3, body().putInt(42).put(frame(srcPort)));
+        }
+    }
+
+    private record Record(long timestamp, int linkType, int length, int wireLength) { }
+
+    private static List<Record> records(Path file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        try (PcapFileReader reader = new PcapFileReader(file)) {
+            PcapFileReader.RecordCursor cursor = reader.records();
+            while (cursor.next()) {
+                records.add(new Record(cursor.timestampNanos(), cursor.linkType(), cursor.length(), cursor.wireLength()));
+            }
+        }
+        return records;
+    }
+
+    private static List<PacketData> ingest(PcapFileReader reader) {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            List<PacketData> packets = new ArrayList<>();
+            IngestStats stats = reader.ingest(pool, new ProtocolClassifier(), packets::add);
+            assertFalse(stats.cancelled());
+            assertEquals(packets.size(), stats.packets());
+            return packets;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void readsPcapInEitherByteOrderAndResolution() throws IOException {
+        for (ByteOrder order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            for (boolean nanos : new boolean[] {false, true}) {
+                long fraction = nanos ? 123_456_789 : 123_456;
+                // 2^32 - 1 seconds: the field is unsigned
+                Path file = pcap("capture-" + order + nanos + ".pcap", order, nanos,
+                    new long[][] {{1_700_000_000, fraction, 60}, {0xFFFFFFFFL, fraction, 1514}});
+
+                List<Record> records = records(file);
+                long subsecond = nanos ? 123_456_789 : 123_456_000;
+                assertEquals(List.of(
+                    new Record(1_700_000_000 * SECOND + subsecond, FrameDecoder.LINKTYPE_ETHERNET, 42, 60),
+                    new Record(0xFFFFFFFFL * SECOND + subsecond, FrameDecoder.LINKTYPE_ETHERNET, 42, 1514)), records,
+                    order + " nanos=" + nanos);
+            }
+        }
+    }
+
+    @Test
+    void dropsATruncatedLastRecord() throws IOException {
+        Path file = pcap("truncated.pcap", ByteOrder.LITTLE_ENDIAN, false, new long[][] {{1, 0, 60}, {2, 0, 60}, {3, 0, 60}});
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        assertEquals(2, records(file).size());
+        try (PcapFileReader reader = new PcapFileReader(file)) {
+            List<PacketData> packets = ingest(reader);
+            assertEquals(List.of(SECOND, 2 * SECOND), packets.stream().map(PacketData::getTimestampNanos).toList());
+        }
+    }
+
+    @Test
+    void readsPcapngInterfacesAndPacketBlocksInEitherByteOrder() throws IOException {
+        for (ByteOrder order : List.of(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            Pcapng pcapng = new Pcapng(order).section()
+                // Default microseconds; milliseconds 1000 s ahead; 2^-10 s
+                .iface(FrameDecoder.LINKTYPE_ETHERNET, -1, -1)
+                .iface(LINKTYPE_RAW, 3, 1000)
+                .iface(FrameDecoder.LINKTYPE_ETHERNET, 0x80 | 10, -1)
+                .enhanced(0, 1_500_000, 1)
+                .enhanced(1, 2_500, 2)
+                .enhanced(2, 3 * 1024 + 512, 3)
+                // Simple packets have no timestamp and belong to the first interface
+                .simple(4)
+                .obsolete(1, 4_000, 5)
+                // No such interface
+                .enhanced(7, 1, 6);
+            Path file = write("capture-" + order + ".pcapng", pcapng.out);
+
+            assertEquals(List.of(
+                new Record(1_500_000_000L, FrameDecoder.LINKTYPE_ETHERNET, 42, 60),
+                new Record(1002 * SECOND + 500_000_000L, LINKTYPE_RAW, 42, 60),
+                new Record(3_500_000_000L, FrameDecoder.LINKTYPE_ETHERNET, 42, 60),
+                new Record(3_500_000_000L, FrameDecoder.LINKTYPE_ETHERNET, 42, 42),
+                new Record(1004 * SECOND, LINKTYPE_RAW, 42, 60)), records(file), order.toString());
+            try (PcapFileReader reader = new PcapFileReader(file)) {
+                assertTrue(reader.isPcapng());
+            }
+        }
+    }
+
+    @Test
+    void ingestDeliversTimestampOrderAcrossChunks() throws IOException {
+        // Ties in threes, a few packets a second out of order, one from far ahead in the first
+        // chunk and the earliest of all last: several chunks at the smallest chunk size
+        int count = 5000;
+        long[][] records = new long[count][];
+        for (int i = 0; i < count; i++) {
+            long seconds = 10 + i / 3 + (i % 50 == 0 ? -1 : 0);
+            records[i] = new long[] {seconds, 0, 100 + i};
+        }
+        records[10] = new long[] {1_000_000, 0, 110};
+        records[count - 1] = new long[] {1, 0, 100 + count - 1};
+        Path file = pcap("unordered.pcap", ByteOrder.LITTLE_ENDIAN, false, records);
+
+        try (PcapFileReader reader = new PcapFileReader(file, 64 * 1024)) {
+            assertTrue(reader.getChunkCount() > 3, "chunks " + reader.getChunkCount());
+            List<PacketData> packets = ingest(reader);
+
+            assertEquals(count, packets.size());
+            assertEquals(SECOND, packets.get(0).getTimestampNanos());
+            assertEquals(1_000_000 * SECOND, packets.get(count - 1).getTimestampNanos());
+            for (int i = 1; i < count; i++) {
+                PacketData previous = packets.get(i - 1);
+                PacketData packet = packets.get(i);
+                assertTrue(previous.getTimestampNanos() <= packet.getTimestampNanos(), "out of order at " + i);
+                if (previous.getTimestampNanos() == packet.getTimestampNanos()) {
+                    // Sizes grow with the file position
+                    assertTrue(previous.getSize() < packet.getSize(), "tie out of file order at " + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    void simplePacketsAtAChunkStartInheritTheLastTimestamp() throws IOException {
+        Pcapng pcapng = new Pcapng(ByteOrder.LITTLE_ENDIAN).section().iface(FrameDecoder.LINKTYPE_ETHERNET, 9, -1);
+        ByteBuffer out = ByteBuffer.allocate(200_000).order(ByteOrder.LITTLE_ENDIAN).put(pcapng.out.flip());
+        // Enough enhanced packets to fill the first chunk, then only simple ones
+        int enhanced = 0;
+        while (out.position() < 64 * 1024) {
+            Pcapng block = new Pcapng(ByteOrder.LITTLE_ENDIAN).enhanced(0, 5 * SECOND + enhanced, enhanced);
+            out.put(block.out.flip());
+            enhanced++;
+        }
+        for (int i = 0; i < 100; i++) {
+            out.put(new Pcapng(ByteOrder.LITTLE_ENDIAN).simple(i).out.flip());
+        }
+        Path file = write("simple.pcapng", out);
+
+        try (PcapFileReader reader = new PcapFileReader(file, 64 * 1024)) {
+            assertEquals(2, reader.getChunkCount());
+            List<PacketData> packets = ingest(reader);
+            assertEquals(enhanced + 100, packets.size());
+            long last = 5 * SECOND + enhanced - 1;
+            assertEquals(last, packets.get(packets.size() - 1).getTimestampNanos());
+            assertEquals(last, packets.get(enhanced).getTimestampNanos());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.networkanalyzer.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class IpAddressesTest {
+    @Test
+    void formatsAndParsesIpV4() {
+        assertEquals("192.168.1.254", IpAddresses.formatV4(0xC0A801FE));
+        assertEquals("0.0.0.0", IpAddresses.formatV4(0));
+        assertEquals("255.255.255.255", IpAddresses.formatV4(-1));
+        assertEquals(0xC0A801FE, IpAddresses.parseV4("192.168.1.254"));
+        assertTrue(IpAddresses.isV4("10.0.0.1"));
+        for (String bad : new String[] { "", "10.0.0", "10.0.0.1.2", "10.0.0.256", "10..0.1", "10.0.0.1.", "a.b.c.d" }) {
+            assertFalse(IpAddresses.isV4(bad), bad);
+        }
+    }
+
+    // InetAddress is fine for literals in a test; the parser must agree with it
+    private static long[] reference(String literal) throws UnknownHostException {
+        ByteBuffer bytes = ByteBuffer.wrap(InetAddress.getByName(literal).getAddress());
+        return new long[] { bytes.getLong(), bytes.getLong() };
+    }
+
+    @Test
+    void parsesIpV6LikeInetAddress() throws UnknownHostException {
+        for (String literal : new String[] { "::", "::1", "1::", "fe80::1", "2001:db8::8a2e:370:7334",
+                "2001:0DB8:0000:0000:0000:ff00:0042:8329", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6::8",
+                "64:ff9b::10.0.0.1", "1:2:3:4:5:6:1.2.3.4" }) {
+            assertArrayEquals(reference(literal), IpAddresses.parseV6(literal), literal);
+        }
+        // InetAddress turns IPv4-mapped addresses into plain IPv4 ones
+        assertArrayEquals(new long[] { 0, 0x0000FFFFC0000201L }, IpAddresses.parseV6("::ffff:192.0.2.1"));
+    }
+
+    @Test
+    void rejectsWhatIsNotAnIpV6Literal() {
+        for (String bad : new String[] { "", "fe80", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9", "1::2::3", "12345::",
+                "fe80:", ":1", "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3", "g::1", "localhost", "example.com:80" }) {
+            assertThrows(IllegalArgumentException.class, () -> IpAddresses.parseV6(bad), bad);
+        }
+    }
+
+    @Test
+    void formatsIpV6AsRfc5952() {
+        assertEquals("::", IpAddresses.formatV6(0, 0));
+        assertEquals("::1", IpAddresses.formatV6(0, 1));
+        assertEquals("2001:db8::1", IpAddresses.formatV6(0x20010DB800000000L, 1));
+        // A single zero group stays, and the longer zero run gets the "::"
+        assertEquals("2001:db8:0:1:1:1:1:1", IpAddresses.formatV6(0x20010DB800000001L, 0x0001000100010001L));
+        assertEquals("1:0:0:2::3", IpAddresses.formatV6(0x0001000000000002L, 0x0000000000000003L));
+        long[] parsed = IpAddresses.parseV6("fe80::abcd:12");
+        assertEquals("fe80::abcd:12", IpAddresses.formatV6(parsed[0], parsed[1]));
+    }
+
+    @Test
+    void encodesNetworkOrderBytes() {
+        assertArrayEquals(new byte[] { 10, 0, 0, 1 }, IpAddresses.toBytes(4, 0, 0x0A000001L));
+        byte[] v6 = IpAddresses.toBytes(6, 0x20010DB800000000L, 1);
+        assertEquals(16, v6.length);
+        assertEquals(0x20, v6[0]);
+        assertEquals(1, v6[15]);
+        assertNull(IpAddresses.toBytes(0, 0, 0));
+    }
+}
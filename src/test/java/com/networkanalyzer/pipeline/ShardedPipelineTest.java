@@ -0,0 +1,46 @@
+package com.networkanalyzer.pipeline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.decoder.FrameDecoder;
+
+class ShardedPipelineTest {
+    // Ethernet, IPv4, UDP srcPort -> 53 with an empty payload
+    private static byte[] udpFrame(int srcPort) {
+        ByteBuffer frame = ByteBuffer.allocate(42);
+        frame.put(new byte[12]).putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) 28).putShort((short) 1).putShort((short) 0)
+            .put((byte) 64).put((byte) FrameDecoder.IPPROTO_UDP).putShort((short) 0)
+            .putInt(0xC0A80001).putInt(0x0A000002);
+        frame.putShort((short) srcPort).putShort((short) 53).putShort((short) 8).putShort((short) 0);
+        return frame.array();
+    }
+
+    @Test
+    void processesEverythingSubmittedBeforeStopAndCountsTheRest() {
+        AtomicInteger processed = new AtomicInteger();
+        ShardedPipeline pipeline = new ShardedPipeline(2, 1024,
+            (frame, linkType, decoder, flows, timestamp, wireLength) -> processed.incrementAndGet() > 0, () -> null);
+        pipeline.start();
+        FrameDecoder decoder = new FrameDecoder();
+        for (int i = 0; i < 500; i++) {
+            assertTrue(pipeline.submit(udpFrame(5000 + i), FrameDecoder.LINKTYPE_ETHERNET, i, 42, decoder));
+        }
+        pipeline.stop();
+        assertEquals(500, processed.get());
+        assertEquals(0, pipeline.getStranded());
+
+        // A capture thread that outlived stop()
+        for (int i = 0; i < 7; i++) {
+            assertTrue(pipeline.submit(udpFrame(6000 + i), FrameDecoder.LINKTYPE_ETHERNET, i, 42, decoder));
+        }
+        assertEquals(500, processed.get());
+        assertEquals(7, pipeline.getStranded());
+    }
+}
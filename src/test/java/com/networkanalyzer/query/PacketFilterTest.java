@@ -0,0 +1,107 @@
+package com.networkanalyzer.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+class PacketFilterTest {
+    private static PacketData v4(String source, String destination, Protocol protocol) {
+        return PacketData.ofV4(0, IpAddresses.parseV4(source), IpAddresses.parseV4(destination), protocol, 60);
+    }
+
+    private static PacketData v6(String source, String destination) {
+        long[] src = IpAddresses.parseV6(source);
+        long[] dst = IpAddresses.parseV6(destination);
+        return PacketData.ofV6(0, src[0], src[1], dst[0], dst[1], Protocol.UDP, 80);
+    }
+
+    @Test
+    void emptyFilterMatchesEverything() {
+        PacketFilter filter = PacketFilter.parse("All", "  ");
+        assertTrue(filter.isEmpty());
+        assertTrue(filter.matches(v4("1.2.3.4", "5.6.7.8", Protocol.ICMP)));
+        assertEquals(PacketFilter.ALL, filter);
+    }
+
+    @Test
+    void protocolFilterMatchesOnlyThatProtocol() {
+        PacketFilter filter = PacketFilter.parse("HTTPS", null);
+        assertTrue(filter.hasProtocol());
+        assertFalse(filter.hasAddress());
+        assertTrue(filter.matches(v4("1.2.3.4", "5.6.7.8", Protocol.HTTPS)));
+        assertFalse(filter.matches(v4("1.2.3.4", "5.6.7.8", Protocol.TCP)));
+    }
+
+    @Test
+    void fullAddressIsExactAndMatchesEitherEndpoint() {
+        PacketFilter filter = PacketFilter.parse("All", "10.0.0.1");
+        assertEquals(1, filter.getRanges().size());
+        assertTrue(filter.getRanges().get(0).isExact());
+        assertTrue(filter.matches(v4("10.0.0.1", "8.8.8.8", Protocol.UDP)));
+        assertTrue(filter.matches(v4("8.8.8.8", "10.0.0.1", Protocol.UDP)));
+        assertFalse(filter.matches(v4("10.0.0.10", "8.8.8.8", Protocol.UDP)));
+    }
+
+    @Test
+    void cidrBlocks() {
+        PacketFilter v4 = PacketFilter.parse("All", "192.168.0.0/16");
+        assertTrue(v4.matches(v4("192.168.44.1", "8.8.8.8", Protocol.TCP)));
+        assertFalse(v4.matches(v4("192.169.0.1", "8.8.8.8", Protocol.TCP)));
+        assertTrue(PacketFilter.parse("All", "0.0.0.0/0").matches(v4("1.1.1.1", "2.2.2.2", Protocol.TCP)));
+
+        PacketFilter v6 = PacketFilter.parse("All", "fe80::/10");
+        assertTrue(v6.matches(v6("fe80::1", "2001:db8::1")));
+        assertTrue(v6.matches(v6("2001:db8::1", "febf::1")));
+        assertFalse(v6.matches(v6("fec0::1", "2001:db8::1")));
+        // IPv4 and IPv6 never match each other's blocks
+        assertFalse(v4.matches(v6("::ffff:192.168.0.1", "::1")));
+
+        PacketFilter longPrefix = PacketFilter.parse("All", "2001:db8::1:0/112");
+        assertTrue(longPrefix.matches(v6("2001:db8::1:ffff", "::1")));
+        assertFalse(longPrefix.matches(v6("2001:db8::2:0", "::1")));
+    }
+
+    @Test
+    void dottedPrefixBecomesTheBlocksWhoseTextStartsWithIt() {
+        List<PacketFilter.AddressRange> ranges = PacketFilter.parse("All", "192.168.1").getRanges();
+        // 192.168.1.x and 192.168.10-19.x and 192.168.100-199.x
+        assertEquals(1 + 10 + 100, ranges.size());
+        PacketFilter filter = PacketFilter.parse("All", "192.168.1");
+        assertTrue(filter.matches(v4("192.168.1.7", "8.8.8.8", Protocol.TCP)));
+        assertTrue(filter.matches(v4("192.168.150.7", "8.8.8.8", Protocol.TCP)));
+        assertFalse(filter.matches(v4("192.168.2.7", "8.8.8.8", Protocol.TCP)));
+        assertFalse(filter.matches(v4("192.168.200.7", "8.8.8.8", Protocol.TCP)));
+
+        PacketFilter trailingDot = PacketFilter.parse("All", "10.1.");
+        assertEquals(List.of(new PacketFilter.AddressRange(4, 0, 0x0A010000L, 16)), trailingDot.getRanges());
+    }
+
+    @Test
+    void anythingElseFallsBackToSubstring() {
+        PacketFilter filter = PacketFilter.parse("All", "db8:");
+        assertTrue(filter.getRanges().isEmpty());
+        assertEquals("db8:", filter.getSubstring());
+        assertTrue(filter.matches(v6("2001:db8::1", "::1")));
+        assertFalse(filter.matches(v4("10.0.0.1", "10.0.0.2", Protocol.TCP)));
+
+        assertEquals("300.1", PacketFilter.parse("All", "300.1").getSubstring());
+        assertEquals("10.0.0.0/40", PacketFilter.parse("All", "10.0.0.0/40").getSubstring());
+    }
+
+    @Test
+    void protocolAndAddressMustBothMatch() {
+        PacketFilter filter = PacketFilter.parse("DNS", "10.0.0.0/8");
+        assertTrue(filter.matches(v4("10.1.1.1", "8.8.8.8", Protocol.DNS)));
+        assertFalse(filter.matches(v4("10.1.1.1", "8.8.8.8", Protocol.UDP)));
+        assertFalse(filter.matches(v4("11.1.1.1", "8.8.8.8", Protocol.DNS)));
+        assertEquals(filter, PacketFilter.parse("DNS", " 10.0.0.0/8 "));
+    }
+}
@@ -0,0 +1,111 @@
+package com.networkanalyzer.query;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.PacketStore;
+import com.networkanalyzer.model.Protocol;
+
+class QueryEngineTest {
+    private static final long START = 1_700_000_000_000_000_000L;
+
+    // Rows the way sharded workers append them: each shard in order, shards interleaved in
+    // batches, so timestamps run up to a few milliseconds backwards. One packet is 3 s late.
+    // The size holds the packet's position so results can be told apart.
+    private static List<PacketData> shardedRows(int count) {
+        Random random = new Random(42);
+        int shards = 4;
+        List<List<PacketData>> perShard = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            perShard.add(new ArrayList<>());
+        }
+        for (int i = 0; i < count; i++) {
+            long timestamp = START + i * 250_000L + random.nextInt(1000);
+            if (i == count / 2) {
+                timestamp -= 3_000_000_000L;
+            }
+            Protocol protocol = i % 3 == 0 ? Protocol.UDP : Protocol.TCP;
+            perShard.get(random.nextInt(shards)).add(PacketData.ofV4(timestamp, 0x0A000001 + i % 7, 0x0A000100, protocol, i));
+        }
+        List<PacketData> rows = new ArrayList<>(count);
+        int[] next = new int[shards];
+        while (rows.size() < count) {
+            int s = random.nextInt(shards);
+            int batch = 1 + random.nextInt(64);
+            for (int i = 0; i < batch && next[s] < perShard.get(s).size(); i++) {
+                rows.add(perShard.get(s).get(next[s]++));
+            }
+        }
+        return rows;
+    }
+
+    private static List<Integer> expected(List<PacketData> rows, PacketFilter filter, long beforeNanos, int limit) {
+        List<PacketData> matching = new ArrayList<>();
+        for (PacketData row : rows) {
+            if (row.getTimestampNanos() < beforeNanos && filter.matches(row)) {
+                matching.add(row);
+            }
+        }
+        matching.sort(Comparator.comparingLong(PacketData::getTimestampNanos));
+        return sizes(matching.subList(Math.max(0, matching.size() - limit), matching.size()));
+    }
+
+    private static List<Integer> sizes(List<PacketData> rows) {
+        List<Integer> sizes = new ArrayList<>(rows.size());
+        for (PacketData row : rows) {
+            sizes.add(row.getSize());
+        }
+        return sizes;
+    }
+
+    private static QueryEngine engineOver(List<PacketData> rows) {
+        PacketStore store = new PacketStore(rows.size(), false);
+        for (PacketData row : rows) {
+            store.append(row);
+        }
+        QueryEngine engine = new QueryEngine(store);
+        engine.catchUp();
+        return engine;
+    }
+
+    @Test
+    void newestMatchesTimestampOrderDespiteOutOfOrderAppends() {
+        List<PacketData> rows = shardedRows(40_000);
+        QueryEngine engine = engineOver(rows);
+        Random random = new Random(7);
+        for (PacketFilter filter : List.of(PacketFilter.ALL, PacketFilter.parse("UDP", ""), PacketFilter.parse("All", "10.0.0.3"))) {
+            assertEquals(expected(rows, filter, Long.MAX_VALUE, 500), sizes(engine.newest(filter, Long.MAX_VALUE, 500)));
+            for (int i = 0; i < 50; i++) {
+                long before = START - 3_500_000_000L + (long) (random.nextDouble() * 14_000_000_000L);
+                assertEquals(expected(rows, filter, before, 300), sizes(engine.newest(filter, before, 300)), "before " + before);
+            }
+        }
+    }
+
+    @Test
+    void pagingVisitsEveryRowOnce() {
+        List<PacketData> rows = shardedRows(20_000);
+        QueryEngine engine = engineOver(rows);
+        PacketFilter filter = PacketFilter.parse("TCP", "");
+        Set<Integer> seen = new HashSet<>();
+        long before = Long.MAX_VALUE;
+        List<PacketData> page;
+        while (!(page = engine.newest(filter, before, 1000)).isEmpty()) {
+            for (PacketData row : page) {
+                assertTrue(seen.add(row.getSize()), "repeated row " + row.getSize());
+            }
+            before = page.get(0).getTimestampNanos();
+        }
+        assertEquals(expected(rows, filter, Long.MAX_VALUE, rows.size()).size(), seen.size());
+    }
+}
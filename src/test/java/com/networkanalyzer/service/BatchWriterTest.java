@@ -0,0 +1,102 @@
+package com.networkanalyzer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BatchWriterTest {
+    private static final Integer WAKE_UP = Integer.MIN_VALUE;
+
+    @Test
+    void writesInBatchesAndFlushesOnStop() {
+        List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        BatchWriter<Integer> writer = new BatchWriter<>("test-writer-batches", WAKE_UP, batch -> batches.add(new ArrayList<>(batch)),
+            1000, 10, 60_000);
+        writer.start();
+        for (int i = 0; i < 25; i++) {
+            assertTrue(writer.offer(i));
+        }
+        writer.stop();
+        List<Integer> written = new ArrayList<>();
+        for (List<Integer> batch : batches) {
+            assertTrue(batch.size() <= 10);
+            written.addAll(batch);
+        }
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, written);
+        assertEquals(25, writer.getWrittenCount());
+
+        // Nothing drains the queue while stopped
+        assertFalse(writer.offer(99));
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    void rejectedBatchesAreCountedAsFailed() {
+        BatchWriter<Integer> writer = new BatchWriter<>("test-writer-failed", WAKE_UP, batch -> false, 100, 10, 60_000);
+        writer.start();
+        writer.offer(1);
+        writer.offer(2);
+        writer.stop();
+        assertEquals(2, writer.getFailedCount());
+        assertEquals(0, writer.getWrittenCount());
+    }
+
+    @Test
+    void restartWaitsForAWriterThatOutlivedStop() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger inSink = new AtomicInteger();
+        AtomicInteger maxInSink = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        BatchWriter<Integer> writer = new BatchWriter<>("test-writer-restart", WAKE_UP, batch -> {
+            maxInSink.accumulateAndGet(inSink.incrementAndGet(), Math::max);
+            try {
+                // The first batch hangs like a stalled database
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.addAndGet(batch.size());
+            inSink.decrementAndGet();
+            return true;
+        }, 100, 5, 60_000);
+        writer.start();
+        for (int i = 0; i < 12; i++) {
+            writer.offer(i);
+        }
+        // Gives up after the stop timeout with the writer stuck in the sink
+        writer.stop();
+        assertEquals(0, written.get());
+
+        Thread releaser = new Thread(() -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                return;
+            }
+            release.countDown();
+        });
+        releaser.start();
+        // Only returns once the old writer has flushed its backlog
+        writer.start();
+        assertEquals(12, written.get());
+        writer.offer(12);
+        writer.stop();
+        releaser.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(13, written.get());
+        assertEquals(1, maxInSink.get());
+    }
+}
@@ -0,0 +1,80 @@
+package com.networkanalyzer.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.networkanalyzer.decoder.ProtocolClassifier;
+import com.networkanalyzer.query.PacketFilter;
+
+class CaptureFilterTest {
+    private final ProtocolClassifier classifier = ProtocolClassifier.withDefaults();
+
+    private String bpf(String protocol, String ip, int port) {
+        return CaptureFilter.toBpf(PacketFilter.parse(protocol, ip), port, classifier);
+    }
+
+    private String bpf(String ip) {
+        return bpf("All", ip, 0);
+    }
+
+    @Test
+    void emptySelectionCapturesEverything() {
+        assertEquals("", bpf("All", "", 0));
+    }
+
+    @Test
+    void protocolsMapToBpfPrimitivesOrTheirPorts() {
+        assertEquals("tcp", bpf("TCP", null, 0));
+        assertEquals("udp", bpf("UDP", null, 0));
+        assertEquals("(icmp or icmp6)", bpf("ICMP", null, 0));
+        assertEquals("(tcp port 443 or tcp port 8443)", bpf("HTTPS", null, 0));
+        assertEquals("(tcp port 53 or udp port 53 or udp port 5353)", bpf("DNS", null, 0));
+        // Nothing registered, so nothing the kernel could match on
+        assertThrows(IllegalArgumentException.class,
+            () -> CaptureFilter.toBpf(PacketFilter.parse("HTTPS", null), 0, new ProtocolClassifier()));
+    }
+
+    @Test
+    void exactAddressesBecomeHosts() {
+        assertEquals("host 192.168.1.10", bpf("192.168.1.10"));
+        assertEquals("host 10.1.2.3", bpf("10.1.2.3/32"));
+        assertEquals("host 2001:db8::1", bpf("2001:db8::1"));
+        assertEquals("host 2001:db8:1:2:3:4:5:6", bpf("2001:db8:1:2:3:4:5:6/128"));
+    }
+
+    @Test
+    void blocksAreMaskedToTheirNetwork() {
+        // libpcap rejects a net with host bits set
+        assertEquals("net 192.168.1.0/24", bpf("192.168.1.77/24"));
+        assertEquals("net 10.0.0.0/9", bpf("10.127.255.255/9"));
+        assertEquals("net 0.0.0.0/0", bpf("10.1.2.3/0"));
+        assertEquals("net 10.1.0.0/16", bpf("10.1."));
+
+        assertEquals("net ::/0", bpf("2001:db8:1:2:3:4:5:6/0"));
+        assertEquals("net 2001:db8::/32", bpf("2001:db8:1:2:3:4:5:6/32"));
+        assertEquals("net 2001:db8:1:2::/64", bpf("2001:db8:1:2:3:4:5:6/64"));
+        assertEquals("net 2001:db8:1:2:8000::/65", bpf("2001:db8:1:2:ffff:4:5:6/65"));
+        assertEquals("net 2001:db8:1:2:3:4::/96", bpf("2001:db8:1:2:3:4:5:6/96"));
+    }
+
+    @Test
+    void clausesAreCombined() {
+        assertEquals("tcp and net 192.168.0.0/16 and port 8080", bpf("TCP", "192.168.3.4/16", 8080));
+    }
+
+    @Test
+    void portMustFitSixteenBits() {
+        assertEquals("port 1", bpf("All", "", 1));
+        assertEquals("port 65535", bpf("All", "", 65535));
+        assertThrows(IllegalArgumentException.class, () -> bpf("All", "", 65536));
+    }
+
+    @Test
+    void substringMatchesHaveNoBpfEquivalent() {
+        assertThrows(IllegalArgumentException.class, () -> bpf("foo"));
+        assertThrows(IllegalArgumentException.class, () -> bpf("1.2.3.4/33"));
+        assertThrows(IllegalArgumentException.class, () -> bpf("TCP", "db8:", 80));
+    }
+}
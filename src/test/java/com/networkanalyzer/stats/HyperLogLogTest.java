@@ -0,0 +1,79 @@
+package com.networkanalyzer.stats;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class HyperLogLogTest {
+    // MurmurHash3 fmix64, standing in for the callers' hashes
+    private static long hash(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static HyperLogLog sketchOf(int precision, long from, long to) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (long key = from; key < to; key++) {
+            sketch.add(hash(key));
+        }
+        return sketch;
+    }
+
+    private static void assertWithin(double relativeError, long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= relativeError * expected,
+            "estimate " + actual + " not within " + relativeError + " of " + expected);
+    }
+
+    @Test
+    void estimatesSmallAndLargeCardinalities() {
+        assertEquals(0, new HyperLogLog(12).estimate());
+        assertWithin(0.02, 100, sketchOf(12, 0, 100).estimate());
+        assertWithin(0.02, 5_000, sketchOf(12, 0, 5_000).estimate());
+        // 1.6% standard error at precision 12; allow three of them
+        assertWithin(0.05, 1_000_000, sketchOf(12, 0, 1_000_000).estimate());
+        assertWithin(0.15, 100_000, sketchOf(6, 0, 100_000).estimate());
+    }
+
+    @Test
+    void repeatsDoNotCount() {
+        HyperLogLog sketch = sketchOf(12, 0, 1000);
+        byte[] before = sketch.toBytes();
+        for (int round = 0; round < 5; round++) {
+            for (long key = 0; key < 1000; key++) {
+                sketch.add(hash(key));
+            }
+        }
+        assertArrayEquals(before, sketch.toBytes());
+    }
+
+    @Test
+    void mergeIsTheSketchOfTheCombinedStream() {
+        HyperLogLog merged = sketchOf(12, 0, 60_000);
+        merged.merge(sketchOf(12, 40_000, 100_000));
+        assertArrayEquals(sketchOf(12, 0, 100_000).toBytes(), merged.toBytes());
+        assertWithin(0.05, 100_000, merged.estimate());
+        assertThrows(IllegalArgumentException.class, () -> merged.merge(new HyperLogLog(10)));
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        HyperLogLog sketch = sketchOf(10, 0, 12_345);
+        HyperLogLog copy = HyperLogLog.fromBytes(sketch.toBytes());
+        assertEquals(10, copy.precision());
+        assertEquals(sketch.estimate(), copy.estimate());
+        copy.clear();
+        assertEquals(0, copy.estimate());
+        assertEquals(1024, sketch.toBytes().length);
+        assertThrows(IllegalArgumentException.class, () -> HyperLogLog.fromBytes(new byte[1000]));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(3));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(19));
+    }
+}
@@ -0,0 +1,94 @@
+package com.networkanalyzer.stats;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LogHistogramTest {
+    @Test
+    void smallValuesAreExact() {
+        LogHistogram histogram = new LogHistogram(1000);
+        for (int v = 1; v <= 20; v++) {
+            histogram.record(v);
+        }
+        assertEquals(1, histogram.quantile(0));
+        assertEquals(10, histogram.quantile(0.5));
+        assertEquals(19, histogram.quantile(0.95));
+        assertEquals(20, histogram.quantile(1));
+        assertEquals(10.5, histogram.mean());
+        assertEquals(20, histogram.count());
+    }
+
+    @Test
+    void quantilesAreWithinTheBucketWidth() {
+        LogHistogram histogram = new LogHistogram(1L << 40);
+        Random random = new Random(3);
+        long[] values = new long[100_000];
+        for (int i = 0; i < values.length; i++) {
+            // Spread over many orders of magnitude
+            values[i] = (long) Math.pow(10, 1 + random.nextDouble() * 10);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+        for (double q : new double[] { 0.01, 0.25, 0.5, 0.9, 0.99, 0.999, 1 }) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            long estimate = histogram.quantile(q);
+            assertTrue(Math.abs(estimate - exact) <= exact / 32 + 1, "q" + q + ": " + estimate + " vs " + exact);
+        }
+        assertEquals(values[0], histogram.min());
+        assertEquals(values[values.length - 1], histogram.max());
+    }
+
+    @Test
+    void clampsToZeroAndMaxValue() {
+        LogHistogram histogram = new LogHistogram(10_000);
+        histogram.record(-5);
+        histogram.record(1_000_000);
+        assertEquals(0, histogram.min());
+        assertEquals(10_000, histogram.max());
+        assertEquals(10_000, histogram.quantile(1));
+        assertEquals(0, new LogHistogram(100).quantile(0.5));
+        assertEquals(0, new LogHistogram(100).mean());
+    }
+
+    @Test
+    void mergeAddsCounts() {
+        LogHistogram a = new LogHistogram(1_000_000);
+        LogHistogram b = new LogHistogram(1_000_000);
+        LogHistogram both = new LogHistogram(1_000_000);
+        for (int v = 0; v < 5000; v++) {
+            (v % 3 == 0 ? a : b).record(v * 37L);
+            both.record(v * 37L);
+        }
+        a.merge(b);
+        assertArrayEquals(both.toBytes(), a.toBytes());
+
+        // A wider histogram merged into a narrower one lands in the last bucket
+        LogHistogram narrow = new LogHistogram(100);
+        LogHistogram wide = new LogHistogram(1_000_000);
+        wide.record(500_000);
+        narrow.merge(wide);
+        assertEquals(1, narrow.count());
+        assertEquals(100, narrow.max());
+    }
+
+    @Test
+    void roundTripsThroughBytes() {
+        LogHistogram histogram = new LogHistogram(1L << 30);
+        for (long v = 1; v < 1L << 30; v *= 3) {
+            histogram.record(v);
+        }
+        byte[] bytes = histogram.toBytes();
+        LogHistogram copy = LogHistogram.fromBytes(bytes);
+        assertArrayEquals(bytes, copy.toBytes());
+        assertEquals(histogram.quantile(0.5), copy.quantile(0.5));
+        assertEquals(histogram.maxValue(), copy.maxValue());
+        // Only non-empty buckets are written
+        assertEquals(5 * Long.BYTES + Integer.BYTES + histogram.count() * (Integer.BYTES + Long.BYTES), bytes.length);
+    }
+}
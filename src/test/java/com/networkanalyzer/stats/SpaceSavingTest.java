@@ -0,0 +1,100 @@
+package com.networkanalyzer.stats;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class SpaceSavingTest {
+    private static Map<Long, long[]> counters(SpaceSaving summary) {
+        Map<Long, long[]> counters = new HashMap<>();
+        for (int counter = 0; counter < summary.size(); counter++) {
+            counters.put(summary.key(counter, 0), new long[] { summary.count(counter), summary.error(counter) });
+        }
+        return counters;
+    }
+
+    @Test
+    void countsExactlyWhileEveryKeyFits() {
+        SpaceSaving summary = new SpaceSaving(8);
+        for (long key = 0; key < 8; key++) {
+            for (int i = 0; i <= key; i++) {
+                summary.add(key, 0, 0, 0, 4, (int) key, 10);
+            }
+        }
+        assertEquals(8, summary.size());
+        assertEquals(360, summary.total());
+        assertEquals(10, summary.minCount());
+        Map<Long, long[]> counters = counters(summary);
+        for (long key = 0; key < 8; key++) {
+            assertEquals((key + 1) * 10, counters.get(key)[0]);
+            assertEquals(0, counters.get(key)[1]);
+        }
+    }
+
+    @Test
+    void keysWithTheSameHashOrDifferentTagsStayApart() {
+        SpaceSaving summary = new SpaceSaving(4);
+        summary.add(1, 2, 3, 4, 4, 7, 1);
+        summary.add(1, 2, 3, 5, 4, 7, 2);
+        summary.add(1, 2, 3, 4, 6, 7, 4);
+        summary.add(1, 2, 3, 4, 4, 7, 8);
+        assertEquals(3, summary.size());
+        for (int counter = 0; counter < summary.size(); counter++) {
+            long expected = summary.key(counter, 3) == 5 ? 2 : summary.tag(counter) == 6 ? 4 : 9;
+            assertEquals(expected, summary.count(counter));
+        }
+    }
+
+    @Test
+    void boundsHoldOnASkewedStream() {
+        int capacity = 64;
+        SpaceSaving summary = new SpaceSaving(capacity);
+        Map<Long, Long> exact = new HashMap<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            // Roughly Zipf over 5000 keys; a poor hash forces long probe runs and shifts
+            long key = (long) Math.floor(Math.pow(5000, random.nextDouble()));
+            long weight = 1 + random.nextInt(1500);
+            summary.add(key, ~key, 0, 0, 4, (int) (key % 13), weight);
+            exact.merge(key, weight, Long::sum);
+        }
+
+        Map<Long, long[]> counters = counters(summary);
+        assertEquals(capacity, counters.size());
+        long total = 0;
+        for (long count : exact.values()) {
+            total += count;
+        }
+        assertEquals(total, summary.total());
+        for (Map.Entry<Long, Long> entry : exact.entrySet()) {
+            long[] counter = counters.get(entry.getKey());
+            if (counter == null) {
+                assertTrue(entry.getValue() <= summary.minCount(), "untracked key " + entry.getKey());
+                assertTrue(entry.getValue() <= total / capacity, "heavy key " + entry.getKey() + " was dropped");
+            } else {
+                assertTrue(counter[0] >= entry.getValue());
+                assertTrue(counter[0] - counter[1] <= entry.getValue());
+            }
+        }
+    }
+
+    @Test
+    void clearStartsOver() {
+        SpaceSaving summary = new SpaceSaving(2);
+        summary.add(1, 0, 0, 0, 4, 1, 5);
+        summary.add(2, 0, 0, 0, 4, 2, 5);
+        summary.add(3, 0, 0, 0, 4, 3, 5);
+        summary.clear();
+        assertEquals(0, summary.size());
+        assertEquals(0, summary.total());
+        assertEquals(0, summary.minCount());
+        summary.add(1, 0, 0, 0, 4, 1, 3);
+        assertEquals(3, summary.count(0));
+        assertEquals(0, summary.error(0));
+    }
+}
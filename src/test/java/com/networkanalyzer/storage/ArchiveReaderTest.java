@@ -0,0 +1,191 @@
+package com.networkanalyzer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.query.PacketFilter;
+
+class ArchiveReaderTest {
+    private static final long BASE = 1_700_000_000_000_000_000L;
+    private static final int BLOCK = ArchiveWriter.BLOCK_ROWS;
+
+    @TempDir
+    Path directory;
+
+    private static String describe(PacketData packet) {
+        return packet.getTimestampNanos() + " " + packet.getIpVersion() + " " + packet.getSrcHi() + " " + packet.getSrcLo()
+            + " " + packet.getDstHi() + " " + packet.getDstLo() + " " + packet.getProtocolType() + " " + packet.getSize();
+    }
+
+    private Path write(List<PacketData> packets) throws IOException {
+        Path file = directory.resolve("archive-test.nlzc");
+        try (ArchiveWriter writer = new ArchiveWriter(file)) {
+            for (PacketData packet : packets) {
+                writer.append(packet);
+            }
+        }
+        return file;
+    }
+
+    private static List<String> scan(ArchiveReader reader, long from, long to, PacketFilter filter) throws IOException {
+        List<String> rows = new ArrayList<>();
+        reader.scan(from, to, filter, packet -> rows.add(describe(packet)));
+        return rows;
+    }
+
+    // A microsecond apart, every 7th one a little late, so some deltas are negative
+    private static long timestamp(int i) {
+        return BASE + i * 1000L - (i % 7 == 0 ? 2500 : 0);
+    }
+
+    private static PacketData mixed(int i) {
+        Protocol protocol = Protocol.fromCode(i % Protocol.count());
+        if (i % 3 == 0) {
+            return PacketData.ofV6(timestamp(i), 0x20010DB800000000L, i % 50, 0xFE80000000000000L, 1, protocol, i % 9000);
+        }
+        return PacketData.ofV4(timestamp(i), 0x0A000000 + i % 300, 0x08080808, protocol, 40 + i % 1460);
+    }
+
+    @Test
+    void roundTripsRowsAcrossBlocks() throws IOException {
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOCK + 1234; i++) {
+            packets.add(mixed(i));
+        }
+        packets.add(PacketData.ofV4(timestamp(packets.size()), 0, 0, Protocol.OTHER, Integer.MAX_VALUE));
+        try (ArchiveReader reader = ArchiveReader.open(write(packets))) {
+            assertEquals(packets.size(), reader.getRowCount());
+            assertEquals(3, reader.getBlockCount());
+            assertEquals(2L * BLOCK, reader.getBlockFirstRow(2));
+            List<String> expected = new ArrayList<>();
+            long[] counts = new long[Protocol.count()];
+            for (PacketData packet : packets) {
+                expected.add(describe(packet));
+                counts[packet.getProtocolType().code()]++;
+            }
+            assertEquals(expected, scan(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL));
+            assertArrayEquals(counts, reader.countByProtocol(PacketFilter.ALL, Long.MIN_VALUE, Long.MAX_VALUE));
+            assertEquals(timestamp(0), reader.getMinTimestamp());
+        }
+    }
+
+    @Test
+    void emptyArchiveHasNoBlocks() throws IOException {
+        try (ArchiveReader reader = ArchiveReader.open(write(List.of()))) {
+            assertEquals(0, reader.getRowCount());
+            assertEquals(0, reader.getBlockCount());
+            assertEquals(Long.MAX_VALUE, reader.getMinTimestamp());
+            assertTrue(scan(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL).isEmpty());
+        }
+        Path garbage = directory.resolve("garbage.nlzc");
+        Files.write(garbage, new byte[100]);
+        assertThrows(IOException.class, () -> ArchiveReader.open(garbage));
+        assertFalse(Files.exists(directory.resolve("archive-test.nlzc.tmp")));
+    }
+
+    @Test
+    void addressDictionaryHoldsEveryDistinctAddressOfABlock() throws IOException {
+        // Every row has two addresses nobody else has: 2 * 65536 entries, 17 bits per index
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < BLOCK; i++) {
+            packets.add(PacketData.ofV6(timestamp(i), i, 1, i, 2, Protocol.TCP, 100));
+        }
+        // Then a block where every row is the same, packed at 0 bits per address and size
+        for (int i = BLOCK; i < BLOCK + 500; i++) {
+            packets.add(PacketData.ofV4(timestamp(i), 0x0A000001, 0x0A000002, Protocol.TCP, 100));
+        }
+        try (ArchiveReader reader = ArchiveReader.open(write(packets))) {
+            List<String> rows = scan(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL);
+            assertEquals(packets.size(), rows.size());
+            for (int i = 0; i < packets.size(); i += 997) {
+                assertEquals(describe(packets.get(i)), rows.get(i));
+            }
+            assertEquals(describe(packets.get(BLOCK - 1)), rows.get(BLOCK - 1));
+            assertEquals(List.of(describe(packets.get(BLOCK - 1))),
+                scan(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.parse("All", "0:0:0:ffff::1")));
+        }
+    }
+
+    @Test
+    void footerRangesSkipBlocksWithoutReadingThem() throws IOException {
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < 3 * BLOCK; i++) {
+            // Only the middle block has DNS
+            Protocol protocol = i / BLOCK == 1 && i % 2 == 0 ? Protocol.DNS : Protocol.TCP;
+            packets.add(PacketData.ofV4(BASE + i * 1000L, 0x0A000000 + i % 10, 0x08080808, protocol, 60 + i * 31 % 1400));
+        }
+        try (ArchiveReader reader = ArchiveReader.open(write(packets))) {
+            // Before, between and after the blocks' time ranges
+            assertTrue(scan(reader, Long.MIN_VALUE, BASE, PacketFilter.ALL).isEmpty());
+            assertTrue(scan(reader, BASE + 3L * BLOCK * 1000, Long.MAX_VALUE, PacketFilter.ALL).isEmpty());
+            assertEquals(0, reader.getBytesRead());
+
+            long full = bytesRead(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL);
+            // The middle block alone
+            List<String> middle = new ArrayList<>();
+            long readMiddle = bytesRead(reader, BASE + BLOCK * 1000L, BASE + 2L * BLOCK * 1000, PacketFilter.ALL, middle);
+            assertEquals(BLOCK, middle.size());
+            assertTrue(readMiddle * 2 < full, readMiddle + " of " + full);
+            // Only the middle block has a row of the protocol
+            List<String> dns = new ArrayList<>();
+            assertEquals(readMiddle, bytesRead(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.parse("DNS", null), dns));
+            assertEquals(BLOCK / 2, dns.size());
+            // No address in any block's dictionary matches: only the dictionaries are read
+            long readAddresses = bytesRead(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.parse("All", "192.168.0.0/16"));
+            assertTrue(readAddresses * 4 < full, readAddresses + " of " + full);
+        }
+    }
+
+    @Test
+    void countingInflatesOnlyTheColumnsItNeeds() throws IOException {
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < 2 * BLOCK; i++) {
+            packets.add(mixed(i));
+        }
+        try (ArchiveReader reader = ArchiveReader.open(write(packets))) {
+            // Whole blocks without an IP filter come from the footer
+            long[] counts = reader.countByProtocol(PacketFilter.ALL, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(0, reader.getBytesRead());
+            assertEquals(packets.size(), Arrays.stream(counts).sum());
+
+            long full = bytesRead(reader, Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL);
+            // A partial block needs its timestamps and protocols, nothing else
+            long before = reader.getBytesRead();
+            long[] partial = reader.countByProtocol(PacketFilter.ALL, timestamp(100), timestamp(BLOCK + 100));
+            long readPartial = reader.getBytesRead() - before;
+            assertTrue(readPartial < full, readPartial + " of " + full);
+            List<String> rows = scan(reader, timestamp(100), timestamp(BLOCK + 100), PacketFilter.ALL);
+            assertEquals(rows.size(), Arrays.stream(partial).sum());
+
+            PacketFilter v4 = PacketFilter.parse("All", "10.0.0.0/24");
+            long[] filtered = reader.countByProtocol(v4, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(scan(reader, Long.MIN_VALUE, Long.MAX_VALUE, v4).size(), Arrays.stream(filtered).sum());
+        }
+    }
+
+    private static long bytesRead(ArchiveReader reader, long from, long to, PacketFilter filter) throws IOException {
+        return bytesRead(reader, from, to, filter, new ArrayList<>());
+    }
+
+    private static long bytesRead(ArchiveReader reader, long from, long to, PacketFilter filter, List<String> rows)
+            throws IOException {
+        long before = reader.getBytesRead();
+        reader.scan(from, to, filter, packet -> rows.add(describe(packet)));
+        return reader.getBytesRead() - before;
+    }
+}
@@ -0,0 +1,140 @@
+package com.networkanalyzer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PageKey;
+
+class ArchivedStorageTest {
+    private static final long MINUTE = 60_000_000_000L;
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @TempDir
+    Path directory;
+    private SegmentStore live;
+    private ArchivedStorage storage;
+    // Everything that was ever captured, oldest first
+    private final List<PacketData> all = new ArrayList<>();
+
+    private static List<PacketData> day(LocalDate day, int count) {
+        long start = Timestamps.fromLocalDateTime(day.atStartOfDay());
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Protocol protocol = i % 4 == 0 ? Protocol.DNS : Protocol.HTTPS;
+            packets.add(PacketData.ofV4(start + i * MINUTE, 0x0A000000 + i % 20, 0x08080808, protocol, 60 + i));
+        }
+        return packets;
+    }
+
+    private static String describe(PacketData packet) {
+        return packet.getTimestampNanos() + " " + packet.getSourceIp() + " " + packet.getProtocol() + " " + packet.getSize();
+    }
+
+    private static List<String> describe(List<PacketData> packets) {
+        return packets.stream().map(ArchivedStorageTest::describe).toList();
+    }
+
+    // Three days were archived, then retention dropped the oldest one from the live storage
+    @BeforeEach
+    void setUp() throws IOException {
+        ColumnArchive archive = new ColumnArchive(directory.resolve("archive"), 1, 5);
+        try (SegmentStore before = new SegmentStore(directory.resolve("before"), 64L << 20, Long.MAX_VALUE, Long.MAX_VALUE, 0, 0)) {
+            for (int back = 3; back >= 2; back--) {
+                List<PacketData> packets = day(TODAY.minusDays(back), 500);
+                before.savePackets(packets);
+                all.addAll(packets);
+            }
+            // The empty days get their files too
+            assertEquals(5, archive.compactClosedDays(before));
+        }
+        live = new SegmentStore(directory.resolve("live"), 64L << 20, Long.MAX_VALUE, Long.MAX_VALUE, 0, 0);
+        live.savePackets(day(TODAY.minusDays(2), 500));
+        List<PacketData> yesterday = day(TODAY.minusDays(1), 300);
+        live.savePackets(yesterday);
+        all.addAll(yesterday);
+        storage = new ArchivedStorage(live, archive);
+    }
+
+    @AfterEach
+    void tearDown() {
+        storage.close();
+    }
+
+    private List<PacketData> page(PacketFilter filter, PageKey[] key, int limit) {
+        try (PacketCursor cursor = storage.openCursor(filter, key[0], limit)) {
+            List<PacketData> rows = cursor.nextPage(limit);
+            if (cursor.getLastKey() != null) {
+                key[0] = cursor.getLastKey();
+            }
+            return rows;
+        }
+    }
+
+    private List<PacketData> newestFirst(PacketFilter filter) {
+        List<PacketData> expected = new ArrayList<>(all.stream().filter(filter::matches).toList());
+        Collections.reverse(expected);
+        return expected;
+    }
+
+    @Test
+    void pagingRunsFromTheLiveDaysIntoTheArchivedOnes() {
+        for (PacketFilter filter : List.of(PacketFilter.ALL, PacketFilter.parse("DNS", null), PacketFilter.parse("All", "10.0.0.3"))) {
+            List<PacketData> read = new ArrayList<>();
+            PageKey[] key = { null };
+            while (true) {
+                List<PacketData> rows = page(filter, key, 37);
+                if (rows.isEmpty()) {
+                    break;
+                }
+                read.addAll(rows);
+            }
+            assertEquals(describe(newestFirst(filter)), describe(read));
+        }
+    }
+
+    @Test
+    void aTimeKeyInsideTheArchiveReadsOnlyOlderRows() {
+        long sixThreeDaysAgo = Timestamps.fromLocalDateTime(TODAY.minusDays(3).atTime(6, 0));
+        List<PacketData> expected = newestFirst(PacketFilter.ALL).stream()
+            .filter(packet -> packet.getTimestampNanos() < sixThreeDaysAgo).toList();
+        PageKey[] key = { PageKey.before(sixThreeDaysAgo) };
+        List<PacketData> rows = page(PacketFilter.ALL, key, 1000);
+        assertEquals(360, rows.size());
+        assertEquals(describe(expected), describe(rows));
+        assertTrue(ColumnArchive.isArchived(key[0]));
+    }
+
+    @Test
+    void countsAndScansIncludeTheArchivedDays() {
+        long[] counts = storage.countByProtocol(PacketFilter.ALL, Long.MAX_VALUE);
+        assertEquals(all.size(), Arrays.stream(counts).sum());
+        assertEquals(all.stream().filter(p -> p.getProtocolType() == Protocol.DNS).count(), counts[Protocol.DNS.code()]);
+
+        long yesterday = Timestamps.fromLocalDateTime(TODAY.minusDays(1).atStartOfDay());
+        assertEquals(1000, Arrays.stream(storage.countByProtocol(PacketFilter.ALL, yesterday)).sum());
+
+        List<PacketData> scanned = new ArrayList<>();
+        assertEquals(all.size(), storage.scan(Long.MIN_VALUE, Long.MAX_VALUE, PacketFilter.ALL, scanned::add));
+        assertEquals(describe(all), describe(scanned));
+        assertEquals(all.size(), storage.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertEquals(all.get(0).getTimestampNanos(), storage.oldestTimestampNanos());
+    }
+}
@@ -0,0 +1,166 @@
+package com.networkanalyzer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+import com.networkanalyzer.model.Timestamps;
+import com.networkanalyzer.query.PacketFilter;
+import com.networkanalyzer.service.PacketCursor;
+import com.networkanalyzer.service.PacketStorage;
+import com.networkanalyzer.service.PageKey;
+import com.networkanalyzer.service.StorageException;
+
+class ColumnArchiveTest {
+    private static final long MINUTE = 60_000_000_000L;
+    private static final LocalDate DAY = LocalDate.now().minusDays(3);
+
+    @TempDir
+    Path directory;
+    private SegmentStore store;
+    private ColumnArchive archive;
+
+    // Stands in for a database that fails or miscounts; everything else goes to the store
+    private static class Faulty implements PacketStorage {
+        final PacketStorage storage;
+        int failAfterRows = -1;
+        long extraRows;
+
+        Faulty(PacketStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public boolean savePackets(List<PacketData> batch) {
+            return storage.savePackets(batch);
+        }
+
+        @Override
+        public PacketCursor openCursor(PacketFilter filter, PageKey before, int limit) {
+            return storage.openCursor(filter, before, limit);
+        }
+
+        @Override
+        public long[] countByProtocol(PacketFilter filter, long beforeNanos) {
+            return storage.countByProtocol(filter, beforeNanos);
+        }
+
+        @Override
+        public long scan(long fromNanos, long toNanos, PacketFilter filter, Consumer<PacketData> sink) {
+            int[] rows = new int[1];
+            return storage.scan(fromNanos, toNanos, filter, packet -> {
+                if (rows[0]++ == failAfterRows) {
+                    throw new StorageException("connection lost");
+                }
+                sink.accept(packet);
+            });
+        }
+
+        @Override
+        public long count(long fromNanos, long toNanos) {
+            return storage.count(fromNanos, toNanos) + extraRows;
+        }
+
+        @Override
+        public long oldestTimestampNanos() {
+            return storage.oldestTimestampNanos();
+        }
+
+        @Override
+        public void close() {
+            storage.close();
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        store = new SegmentStore(directory.resolve("segments"), 64L << 20, Long.MAX_VALUE, Long.MAX_VALUE, 0, 0);
+        archive = new ColumnArchive(directory.resolve("archive"), 1, 5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+
+    // One packet a minute from the start of `day`
+    private static List<PacketData> dayOfPackets(LocalDate day, int count) {
+        long start = Timestamps.fromLocalDateTime(day.atStartOfDay());
+        List<PacketData> packets = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            packets.add(PacketData.ofV4(start + i * MINUTE, 0x0A000000 + i, 0x08080808, Protocol.DNS, 80 + i));
+        }
+        return packets;
+    }
+
+    private long archivedRows(LocalDate day) throws IOException {
+        long start = Timestamps.fromLocalDateTime(day.atStartOfDay());
+        return archive.scan(start, Timestamps.fromLocalDateTime(day.plusDays(1).atStartOfDay()), PacketFilter.ALL, p -> { });
+    }
+
+    private List<Path> archiveFiles() throws IOException {
+        try (Stream<Path> files = Files.list(archive.getDirectory())) {
+            return files.toList();
+        }
+    }
+
+    @Test
+    void archivesExactlyTheRowsOfTheDay() throws IOException {
+        store.savePackets(dayOfPackets(DAY.minusDays(1), 100));
+        store.savePackets(dayOfPackets(DAY, 500));
+        store.savePackets(dayOfPackets(DAY.plusDays(1), 100));
+
+        assertEquals(500, archive.compactDay(store, DAY));
+        assertEquals(List.of(DAY), archive.days());
+        assertEquals(500, archivedRows(DAY));
+    }
+
+    @Test
+    void aScanThatFailsPartWayLeavesNoFile() throws IOException {
+        store.savePackets(dayOfPackets(DAY, 500));
+        Faulty source = new Faulty(store);
+        source.failAfterRows = 200;
+        assertEquals(-1, archive.compactDay(source, DAY));
+        assertTrue(archiveFiles().isEmpty());
+    }
+
+    @Test
+    void aShortDayIsNotKept() throws IOException {
+        store.savePackets(dayOfPackets(DAY, 500));
+        Faulty source = new Faulty(store);
+        source.extraRows = 1;
+        assertEquals(-1, archive.compactDay(source, DAY));
+        assertTrue(archiveFiles().isEmpty());
+    }
+
+    @Test
+    void failedDaysAreRetriedAndArchivedOnesSkipped() throws IOException {
+        store.savePackets(dayOfPackets(DAY, 50));
+        Faulty source = new Faulty(store);
+        source.failAfterRows = 10;
+        // Five days back up to yesterday; only DAY has rows
+        assertEquals(4, archive.compactClosedDays(source));
+        assertFalse(archive.days().contains(DAY));
+
+        source.failAfterRows = -1;
+        assertEquals(1, archive.compactClosedDays(source));
+        assertEquals(50, archivedRows(DAY));
+        assertEquals(0, archive.compactClosedDays(source));
+    }
+}
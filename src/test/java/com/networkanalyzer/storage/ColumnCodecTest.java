@@ -0,0 +1,110 @@
+package com.networkanalyzer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import org.junit.jupiter.api.Test;
+
+class ColumnCodecTest {
+    private static final long[] EDGES = { 0, 1, -1, 63, -64, 64, -65, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1, Long.MIN_VALUE + 1 };
+
+    @Test
+    void zigZagVarintsRoundTrip() {
+        Random random = new Random(5);
+        long[] values = new long[EDGES.length + 1000];
+        System.arraycopy(EDGES, 0, values, 0, EDGES.length);
+        for (int i = EDGES.length; i < values.length; i++) {
+            // Every magnitude, both signs
+            values[i] = random.nextLong() >> random.nextInt(64);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            ColumnCodec.writeZigZag(out, value);
+            ColumnCodec.writeLong(out, value);
+        }
+        ColumnCodec.Input in = new ColumnCodec.Input(out.toByteArray());
+        for (long value : values) {
+            assertEquals(value, in.readZigZag());
+            assertEquals(value, in.readLong());
+        }
+    }
+
+    @Test
+    void smallDeltasTakeOneByte() {
+        assertEquals(1, zigZagBytes(0));
+        assertEquals(1, zigZagBytes(-64));
+        assertEquals(1, zigZagBytes(63));
+        assertEquals(2, zigZagBytes(64));
+        assertEquals(2, zigZagBytes(-65));
+        assertEquals(10, zigZagBytes(Long.MIN_VALUE));
+        assertEquals(10, zigZagBytes(Long.MAX_VALUE));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnCodec.writeVarLong(out, -1L);
+        assertEquals(10, out.size());
+        assertEquals(-1L, new ColumnCodec.Input(out.toByteArray()).readVarLong());
+    }
+
+    private static int zigZagBytes(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ColumnCodec.writeZigZag(out, value);
+        return out.size();
+    }
+
+    @Test
+    void bitsForCoversTheWholeLongRange() {
+        assertEquals(0, ColumnCodec.bitsFor(0));
+        assertEquals(0, ColumnCodec.bitsFor(-5));
+        assertEquals(1, ColumnCodec.bitsFor(1));
+        assertEquals(8, ColumnCodec.bitsFor(255));
+        assertEquals(9, ColumnCodec.bitsFor(256));
+        assertEquals(32, ColumnCodec.bitsFor(0xFFFFFFFFL));
+        assertEquals(63, ColumnCodec.bitsFor(Long.MAX_VALUE));
+    }
+
+    @Test
+    void packsEveryWidthFromZeroToThirtyTwoBits() {
+        Random random = new Random(7);
+        for (int bits = 0; bits <= 32; bits++) {
+            // Odd counts leave a partly used last byte
+            int count = 1 + random.nextInt(300);
+            int[] values = new int[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = bits == 0 ? 0 : random.nextInt() >>> (32 - bits);
+            }
+            values[0] = bits == 0 ? 0 : (int) ((1L << bits) - 1);
+            byte[] packed = ColumnCodec.pack(values, count, bits);
+            assertEquals(((long) count * bits + 7) / 8, packed.length, "bits " + bits);
+            assertArrayEquals(values, ColumnCodec.unpack(packed, count, bits), "bits " + bits);
+        }
+        // Only the first count values are packed
+        assertArrayEquals(new int[] { 1, 2 }, ColumnCodec.unpack(ColumnCodec.pack(new int[] { 1, 2, 3 }, 2, 2), 2, 2));
+    }
+
+    @Test
+    void rejectsWidthsAnIntCannotHold() {
+        assertThrows(IllegalArgumentException.class, () -> ColumnCodec.pack(new int[1], 1, 33));
+        assertThrows(IllegalArgumentException.class, () -> ColumnCodec.pack(new int[1], 1, 64));
+        assertThrows(IllegalArgumentException.class, () -> ColumnCodec.unpack(new byte[8], 1, 64));
+        assertThrows(IllegalArgumentException.class, () -> ColumnCodec.unpack(new byte[8], 1, -1));
+    }
+
+    @Test
+    void deflateRoundTripsAndInflateChecksTheLength() throws DataFormatException {
+        byte[] raw = new byte[100_000];
+        new Random(9).nextBytes(raw);
+        for (int i = 0; i < raw.length; i += 3) {
+            raw[i] = 0;
+        }
+        byte[] compressed = ColumnCodec.deflate(raw);
+        assertArrayEquals(raw, ColumnCodec.inflate(compressed, raw.length));
+        assertArrayEquals(new byte[0], ColumnCodec.inflate(ColumnCodec.deflate(new byte[0]), 0));
+        assertThrows(DataFormatException.class, () -> ColumnCodec.inflate(compressed, raw.length + 1));
+    }
+}
@@ -0,0 +1,144 @@
+package com.networkanalyzer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.networkanalyzer.model.IpAddresses;
+import com.networkanalyzer.model.PacketData;
+import com.networkanalyzer.model.Protocol;
+
+class SegmentTest {
+    private static final long BASE = 1_700_000_000_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    // Alternates IPv4 and IPv6 records, with timestamps slightly out of order
+    private static PacketData packet(int i) {
+        long timestamp = BASE + i * 1000L - (i % 3) * 1500L;
+        Protocol protocol = Protocol.fromCode((byte) (i % Protocol.count()));
+        if (i % 2 == 0) {
+            return PacketData.ofV4(timestamp, IpAddresses.parseV4("10.0.0.1") + i, 0x08080808, protocol, 60 + i % 1400);
+        }
+        return PacketData.ofV6(timestamp, 0x20010DB800000000L, i, 0xFE80000000000000L, ~i, protocol, 1500);
+    }
+
+    private static String describe(PacketData packet) {
+        return packet.getTimestampNanos() + " " + packet.getIpVersion() + " " + packet.getSrcHi() + " " + packet.getSrcLo()
+            + " " + packet.getDstHi() + " " + packet.getDstLo() + " " + packet.getProtocolType() + " " + packet.getSize();
+    }
+
+    private static List<String> readAll(Segment segment) throws IOException {
+        List<String> records = new ArrayList<>();
+        ByteBuffer block = ByteBuffer.allocateDirect(Segment.BLOCK_BYTES);
+        for (int b = 0; b < segment.blockCount(); b++) {
+            int count = segment.readBlock(b, block);
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                PacketData packet = SegmentStore.read(block, i * Segment.RECORD_BYTES);
+                records.add(describe(packet));
+                min = Math.min(min, packet.getTimestampNanos());
+                max = Math.max(max, packet.getTimestampNanos());
+            }
+            assertEquals(min, segment.blockMin(b));
+            assertEquals(max, segment.blockMax(b));
+        }
+        return records;
+    }
+
+    private static List<String> expected(int from, int to) {
+        List<String> records = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            records.add(describe(packet(i)));
+        }
+        return records;
+    }
+
+    private static Segment filled(Path directory, int capacity, int records) throws IOException {
+        Segment segment = Segment.create(directory, 1000, capacity, BASE);
+        for (int i = 0; i < records; i++) {
+            assertTrue(segment.append(packet(i)));
+        }
+        return segment;
+    }
+
+    @Test
+    void readsBackWhatWasPublished() throws IOException {
+        int records = Segment.BLOCK_RECORDS + 100;
+        Segment segment = filled(directory, 2 * Segment.BLOCK_RECORDS, records);
+        assertEquals(0, segment.blockCount());
+        segment.publish();
+        assertEquals(2, segment.blockCount());
+        assertEquals(expected(0, records), readAll(segment));
+        assertEquals(packet(2).getTimestampNanos(), segment.minTimestamp());
+        segment.close();
+    }
+
+    @Test
+    void sealedSegmentReopensFromItsIndex() throws IOException {
+        int records = Segment.BLOCK_RECORDS + 7;
+        Segment segment = filled(directory, 2 * Segment.BLOCK_RECORDS, records);
+        segment.seal();
+        assertFalse(segment.append(packet(records)));
+        segment.close();
+        assertTrue(Files.exists(directory.resolve("segment-00000000000000001000.idx")));
+
+        Segment reopened = Segment.open(segment.path);
+        assertTrue(reopened.isSealed());
+        assertEquals(1000, reopened.firstId);
+        assertEquals(BASE, reopened.createdNanos);
+        assertEquals(records, reopened.published());
+        assertEquals(expected(0, records), readAll(reopened));
+        reopened.close();
+    }
+
+    @Test
+    void activeSegmentRecoversItsIntactPrefix() throws IOException {
+        Segment segment = filled(directory, Segment.BLOCK_RECORDS, 50);
+        segment.force();
+        segment.close();
+
+        // Tear record 30 as a crash mid-append would
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.WRITE)) {
+            long offset = Segment.HEADER_BYTES + 30L * Segment.RECORD_BYTES + Segment.SIZE;
+            channel.write(ByteBuffer.wrap(new byte[] { 0x7F }), offset);
+        }
+        Segment reopened = Segment.open(segment.path);
+        assertFalse(reopened.isSealed());
+        assertEquals(30, reopened.published());
+        assertEquals(expected(0, 30), readAll(reopened));
+
+        // Appends continue after the prefix and the stale records are gone
+        assertTrue(reopened.append(packet(1000)));
+        reopened.publish();
+        reopened.force();
+        reopened.close();
+        Segment again = Segment.open(segment.path);
+        List<String> records = expected(0, 30);
+        records.add(describe(packet(1000)));
+        assertEquals(records, readAll(again));
+        again.close();
+    }
+
+    @Test
+    void rejectsFilesThatAreNotSegments() throws IOException {
+        Path file = directory.resolve("segment-00000000000000000000.seg");
+        Files.write(file, new byte[Segment.HEADER_BYTES]);
+        assertThrows(IOException.class, () -> Segment.open(file));
+    }
+}
@@ -0,0 +1,122 @@
+package com.networkanalyzer.util;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+class MpscRingBufferTest {
+    @Test
+    void roundsCapacityUpToAPowerOfTwo() {
+        assertEquals(1, new MpscRingBuffer<>(1).capacity());
+        assertEquals(8, new MpscRingBuffer<>(5).capacity());
+        assertEquals(1024, new MpscRingBuffer<>(1024).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new MpscRingBuffer<>(0));
+        assertThrows(NullPointerException.class, () -> new MpscRingBuffer<String>(4).offer(null));
+    }
+
+    @Test
+    void rejectsOffersWhenFullAndWrapsAround() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(4);
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(ring.offer(round * 10 + i));
+            }
+            assertFalse(ring.offer(99));
+            assertEquals(4, ring.size());
+            assertEquals(round * 10, ring.poll());
+            assertTrue(ring.offer(round * 10 + 4));
+
+            List<Integer> drained = new ArrayList<>();
+            assertEquals(4, ring.drain(drained::add, 10));
+            assertEquals(List.of(round * 10 + 1, round * 10 + 2, round * 10 + 3, round * 10 + 4), drained);
+            assertTrue(ring.isEmpty());
+            assertNull(ring.poll());
+        }
+    }
+
+    @Test
+    void drainStopsAtTheLimitAndKeepsTheRest() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(8);
+        for (int i = 0; i < 6; i++) {
+            ring.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(4, ring.drain(drained::add, 4));
+        assertEquals(List.of(0, 1, 2, 3), drained);
+        assertEquals(2, ring.size());
+    }
+
+    @Test
+    void drainKeepsItsPlaceWhenTheSinkThrows() {
+        MpscRingBuffer<Integer> ring = new MpscRingBuffer<>(8);
+        for (int i = 0; i < 4; i++) {
+            ring.offer(i);
+        }
+        assertThrows(IllegalStateException.class, () -> ring.drain(i -> {
+            if (i == 1) {
+                throw new IllegalStateException();
+            }
+        }, 10));
+        // Elements up to and including the one that threw are consumed
+        assertEquals(2, ring.poll());
+        assertEquals(1, ring.size());
+    }
+
+    @Test
+    void deliversEveryElementOnceFromConcurrentProducers() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 50_000;
+        MpscRingBuffer<Long> ring = new MpscRingBuffer<>(1024);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long producer = p;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (long i = 0; i < perProducer; i++) {
+                    while (!ring.offer(producer << 32 | i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        // Per producer the elements must arrive in the order they were offered
+        long[] next = new long[producers];
+        long[] expected = new long[producers];
+        Arrays.fill(expected, perProducer);
+        start.countDown();
+        int received = 0;
+        while (received < producers * perProducer) {
+            Long element = ring.poll();
+            if (element == null) {
+                Thread.yield();
+                continue;
+            }
+            int producer = (int) (element >>> 32);
+            assertEquals(next[producer]++, element & 0xFFFFFFFFL);
+            received++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertArrayEquals(expected, next);
+        assertTrue(ring.isEmpty());
+    }
+}